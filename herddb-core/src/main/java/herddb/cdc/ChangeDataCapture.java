@@ -30,6 +30,7 @@ import herddb.cluster.BookkeeperCommitLog;
 import herddb.cluster.BookkeeperCommitLogManager;
 import herddb.cluster.ZookeeperMetadataStorageManager;
 import herddb.codec.DataAccessorForFullRecord;
+import herddb.codec.RecordDelta;
 import herddb.log.CommitLog;
 import herddb.log.LogEntry;
 import herddb.log.LogEntryType;
@@ -42,6 +43,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 
 /**
@@ -70,15 +72,23 @@ public class ChangeDataCapture implements AutoCloseable {
         private final DataAccessorForFullRecord record;
         private final LogSequenceNumber logSequenceNumber;
         private final long timestamp;
+        private final Set<String> changedColumns;
 
         public Mutation(Table table, MutationType mutationType,
                         DataAccessorForFullRecord record, LogSequenceNumber logSequenceNumber,
                         long timestamp) {
+            this(table, mutationType, record, logSequenceNumber, timestamp, null);
+        }
+
+        public Mutation(Table table, MutationType mutationType,
+                        DataAccessorForFullRecord record, LogSequenceNumber logSequenceNumber,
+                        long timestamp, Set<String> changedColumns) {
             this.table = table;
             this.mutationType = mutationType;
             this.record = record;
             this.logSequenceNumber = logSequenceNumber;
             this.timestamp = timestamp;
+            this.changedColumns = changedColumns;
         }
 
         public Table getTable() {
@@ -101,6 +111,23 @@ public class ChangeDataCapture implements AutoCloseable {
             return timestamp;
         }
 
+        /**
+         * Columns modified by an UPDATE which has been logged as a delta (see
+         * server.tablemanager.deltaupdates). In this case the record contains
+         * only the primary key and the changed columns, the other columns
+         * keep the previous value.
+         *
+         * @return the names of the changed columns, null if the record
+         * contains the full new version of the row
+         */
+        public Set<String> getChangedColumns() {
+            return changedColumns;
+        }
+
+        public boolean isPartialUpdate() {
+            return changedColumns != null;
+        }
+
         @Override
         public String toString() {
             return "Mutation{"
@@ -109,6 +136,7 @@ public class ChangeDataCapture implements AutoCloseable {
                     + ", record=" + record
                     + ", logSequenceNumber=" + logSequenceNumber
                     + ", timestamp=" + timestamp
+                    + ", changedColumns=" + changedColumns
                     + '}';
         }
     }
@@ -293,6 +321,14 @@ public class ChangeDataCapture implements AutoCloseable {
                 fire(new Mutation(table, MutationType.UPDATE, record, lsn, entry.timestamp), entry.transactionId);
             }
             break;
+            case LogEntryType.UPDATE_DELTA: {
+                Table table = lookupTable(lsn, entry);
+                DataAccessorForFullRecord record = new DataAccessorForFullRecord(table,
+                        new Record(entry.key, RecordDelta.changedValues(entry.value)));
+                fire(new Mutation(table, MutationType.UPDATE, record, lsn, entry.timestamp,
+                        RecordDelta.changedColumns(entry.value, table)), entry.transactionId);
+            }
+            break;
             case LogEntryType.BEGINTRANSACTION: {
                 transactions.put(entry.transactionId, new TransactionHolder());
             }
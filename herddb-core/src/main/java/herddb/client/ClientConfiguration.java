@@ -127,6 +127,33 @@ public class ClientConfiguration {
     public static final String PROPERTY_ALLOW_READS_FROM_FOLLOWERS = "client.allowReadsFromFollowers";
     public static final boolean PROPERTY_ALLOW_READS_FROM_FOLLOWERS_DEFAULT = false;
 
+    /**
+     * Let the server push the chunks of the result sets, instead of fetching
+     * every chunk with a round trip.
+     */
+    public static final String PROPERTY_SCANNER_STREAMING = "client.scanner.streaming";
+    public static final boolean PROPERTY_SCANNER_STREAMING_DEFAULT = false;
+
+    /**
+     * Maximum number of rows that the server can push in streaming mode
+     * before the client consumes them.
+     */
+    public static final String PROPERTY_SCANNER_STREAMING_CREDITS = "client.scanner.streaming.credits";
+    public static final int PROPERTY_SCANNER_STREAMING_CREDITS_DEFAULT = 10000;
+
+    /**
+     * Ask the server to encode the chunks of the result sets column by
+     * column, servers which do not support it send the usual format.
+     */
+    public static final String PROPERTY_SCANNER_COLUMNAR = "client.scanner.columnar";
+    public static final boolean PROPERTY_SCANNER_COLUMNAR_DEFAULT = false;
+
+    /**
+     * Allow the server to compress the columnar chunks with LZ4.
+     */
+    public static final String PROPERTY_SCANNER_COLUMNAR_COMPRESSION = "client.scanner.columnar.compression";
+    public static final boolean PROPERTY_SCANNER_COLUMNAR_COMPRESSION_DEFAULT = false;
+
 
     public ClientConfiguration(Properties properties) {
         this.properties = new Properties();
@@ -56,6 +56,13 @@ public interface ClientSideConnectionPeer {
         return executeScan(tableSpace, query, usePreparedStatement, params, tx, maxRows, fetchSize, keepReadLocks);
     }
 
+    /**
+     * Opens a scanner without waiting for the reply of the server, many scanners
+     * and statements can be in flight on the same connection.
+     */
+    CompletableFuture<ScanResultSet> executeScanAsync(String tableSpace, String query, boolean usePreparedStatement, List<Object> params, long tx, int maxRows, int fetchSize,
+                                                      boolean keepReadLocks, boolean allowFollowerReads);
+
     CompletableFuture<DMLResult> executeUpdateAsync(String tableSpace, String query, long tx, boolean returnValues, boolean usePreparedStatement, List<Object> params);
 
     CompletableFuture<List<DMLResult>> executeUpdatesAsync(
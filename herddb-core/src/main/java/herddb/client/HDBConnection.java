@@ -362,6 +362,64 @@ public class HDBConnection implements AutoCloseable {
         throw new HDBException("client is closed");
     }
 
+    /**
+     * Opens a scanner without waiting for the first chunk of data, this way
+     * many queries can be in flight on the same connection. When the
+     * statement is not prepared yet the scanner is opened after the reply to
+     * the PREPARE, which is not awaited either.
+     *
+     * @see #executeScan(java.lang.String, java.lang.String, boolean, java.util.List, long, int, int, boolean)
+     */
+    public CompletableFuture<ScanResultSet> executeScanAsync(String tableSpace, String query, boolean usePreparedStatement, List<Object> params, long tx, int maxRows, int fetchSize, boolean keepReadLocks) {
+        if (discoverTablespaceFromSql) {
+            tableSpace = discoverTablespace(tableSpace, query);
+        }
+        if (closed) {
+            return Futures.exception(new HDBException("client is closed"));
+        }
+        CompletableFuture<ScanResultSet> res = new CompletableFuture<>();
+
+        AtomicInteger count = new AtomicInteger(0);
+        executeScanAsyncInternal(tableSpace, res, query, usePreparedStatement, params, tx, maxRows, fetchSize, keepReadLocks, count);
+        return res;
+    }
+
+    private void executeScanAsyncInternal(String tableSpace, CompletableFuture<ScanResultSet> res, String query, boolean usePreparedStatement, List<Object> params, long tx, int maxRows, int fetchSize, boolean keepReadLocks, AtomicInteger count) {
+        boolean useFollowerReads = client.isAllowReadsFromFollowers() && tx == 0;
+        ClientSideConnectionPeer route;
+        try {
+            if (useFollowerReads) {
+                route = getRouteToTableSpaceReplica(tableSpace);
+            } else {
+                route = getRouteToTableSpace(tableSpace);
+            }
+        } catch (ClientSideMetadataProviderException | HDBException err) {
+            res.completeExceptionally(err);
+            return;
+        }
+        route.executeScanAsync(tableSpace, query, usePreparedStatement, params, tx, maxRows, fetchSize, keepReadLocks, useFollowerReads)
+                .whenComplete((scanResultSet, error) -> {
+                    if (error != null) {
+                        if (error instanceof RetryRequestException
+                                && !closed) {
+                            try {
+                                handleRetryError(error, count.getAndIncrement());
+                            } catch (ClientSideMetadataProviderException | HDBException err) {
+                                res.completeExceptionally(err);
+                                return;
+                            }
+                            LOGGER.log(Level.INFO, "retry #{0} {1}: {2}", new Object[]{count, query, error});
+                            executeScanAsyncInternal(tableSpace, res, query, usePreparedStatement, params, tx, maxRows, fetchSize, keepReadLocks, count);
+                        } else {
+                            res.completeExceptionally(error);
+                        }
+                    } else if (!res.complete(scanResultSet)) {
+                        // the caller cancelled the request
+                        scanResultSet.close();
+                    }
+                });
+    }
+
     private void handleRetryError(Throwable retry, int trialCount) throws HDBException, ClientSideMetadataProviderException {
         LOGGER.log(Level.INFO, "retry #{0}:" + retry, trialCount); // no stracktrace
         int sleepTimeout = client.getOperationRetryDelay();
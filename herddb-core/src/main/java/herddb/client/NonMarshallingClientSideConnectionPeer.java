@@ -139,6 +139,17 @@ public class NonMarshallingClientSideConnectionPeer implements ClientSideConnect
         return serverSidePeer.executeScan(tableSpace, query, usePreparedStatement, params, tx, maxRows, fetchSize, keepReadLocks, allowFollowerReads);
     }
 
+    @Override
+    public CompletableFuture<ScanResultSet> executeScanAsync(String tableSpace, String query, boolean usePreparedStatement, List<Object> params, long tx, int maxRows, int fetchSize, boolean keepReadLocks, boolean allowFollowerReads) {
+        CompletableFuture<ScanResultSet> res = new CompletableFuture<>();
+        try {
+            res.complete(executeScan(tableSpace, query, usePreparedStatement, params, tx, maxRows, fetchSize, keepReadLocks, allowFollowerReads));
+        } catch (ClientSideMetadataProviderException | HDBException t) {
+            res.completeExceptionally(t);
+        }
+        return res;
+    }
+
     @Override
     public void dumpTableSpace(String tableSpace, int fetchSize, boolean includeTransactionLog, TableSpaceDumpReceiver receiver) throws HDBException, ClientSideMetadataProviderException {
         // no need to implement this stuff in LocalMode, there is no gain and it would be very complex
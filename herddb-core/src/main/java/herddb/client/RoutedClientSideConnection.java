@@ -84,6 +84,13 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
     private final ClientSideQueryCache preparedStatements = new ClientSideQueryCache();
 
     private final Map<String, TableSpaceDumpReceiver> dumpReceivers = new ConcurrentHashMap<>();
+    private final boolean scannerStreaming;
+    private final int scannerStreamingCredits;
+    private final byte resultSetFormat;
+    /**
+     * Scanners which receive data pushed by the server.
+     */
+    private final Map<Long, ScanResultSetImpl> streamingScanners = new ConcurrentHashMap<>();
 
     public RoutedClientSideConnection(HDBConnection connection, String nodeId, ServerHostData server) {
         this.connection = connection;
@@ -92,6 +99,17 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
 
         this.timeout = connection.getClient().getConfiguration().getLong(ClientConfiguration.PROPERTY_TIMEOUT, ClientConfiguration.PROPERTY_TIMEOUT_DEFAULT);
         this.clientId = connection.getClient().getConfiguration().getString(ClientConfiguration.PROPERTY_CLIENTID, ClientConfiguration.PROPERTY_CLIENTID_DEFAULT);
+        this.scannerStreaming = connection.getClient().getConfiguration().getBoolean(ClientConfiguration.PROPERTY_SCANNER_STREAMING, ClientConfiguration.PROPERTY_SCANNER_STREAMING_DEFAULT);
+        this.scannerStreamingCredits = connection.getClient().getConfiguration().getInt(ClientConfiguration.PROPERTY_SCANNER_STREAMING_CREDITS, ClientConfiguration.PROPERTY_SCANNER_STREAMING_CREDITS_DEFAULT);
+        boolean columnar = connection.getClient().getConfiguration().getBoolean(ClientConfiguration.PROPERTY_SCANNER_COLUMNAR, ClientConfiguration.PROPERTY_SCANNER_COLUMNAR_DEFAULT);
+        boolean columnarCompression = connection.getClient().getConfiguration().getBoolean(ClientConfiguration.PROPERTY_SCANNER_COLUMNAR_COMPRESSION, ClientConfiguration.PROPERTY_SCANNER_COLUMNAR_COMPRESSION_DEFAULT);
+        if (!columnar) {
+            this.resultSetFormat = PduCodec.ResultSetChunk.FORMAT_ROWS;
+        } else if (columnarCompression) {
+            this.resultSetFormat = PduCodec.ResultSetChunk.FORMAT_COLUMNAR_COMPRESSED;
+        } else {
+            this.resultSetFormat = PduCodec.ResultSetChunk.FORMAT_COLUMNAR;
+        }
     }
 
     @Override
@@ -184,8 +202,21 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
     @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT")
     @SuppressWarnings("empty-statement")
     public void requestReceived(Pdu message, Channel channel) {
+        boolean releaseMessage = true;
         try {
             switch (message.type) {
+                case Pdu.TYPE_RESULTSET_CHUNK:
+                case Pdu.TYPE_ERROR: {
+                    // pushed by the server on a streaming scanner, the messageId is the id of the scanner
+                    ScanResultSetImpl scanner = streamingScanners.get(message.messageId);
+                    if (scanner == null) {
+                        LOGGER.log(Level.FINE, "discarding data for unknown scanner {0}", message.messageId);
+                        break;
+                    }
+                    releaseMessage = false;
+                    scanner.pushReceived(message);
+                }
+                break;
                 case Pdu.TYPE_TABLESPACE_DUMP_DATA: {
                     String dumpId = PduCodec.TablespaceDumpData.readDumpId(message);
                     TableSpaceDumpReceiver receiver = dumpReceivers.get(dumpId);
@@ -284,7 +315,9 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
 
             }
         } finally {
-            message.close();
+            if (releaseMessage) {
+                message.close();
+            }
         }
     }
 
@@ -300,7 +333,11 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
         } finally {
             connectionLock.writeLock().unlock();
         }
-
+        for (ScanResultSetImpl scanner : streamingScanners.values()) {
+            if (scanner.channel == channel) {
+                scanner.streamingFailed("channel " + channel + " closed");
+            }
+        }
     }
 
     @Override
@@ -410,6 +447,42 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
         }
     }
 
+    /**
+     * Same as {@link #prepareQuery(String, String)}, but when the statement is
+     * not in the cache the reply of the server is not awaited: the future is
+     * completed by the thread which receives it.
+     */
+    CompletableFuture<Long> prepareQueryAsync(Channel channel, String tableSpace, String query) {
+        long existing = preparedStatements.getQueryId(tableSpace, query);
+        if (existing != 0) {
+            return CompletableFuture.completedFuture(existing);
+        }
+        CompletableFuture<Long> res = new CompletableFuture<>();
+        long requestId = channel.generateRequestId();
+        ByteBuf message = PduCodec.PrepareStatement.write(requestId, tableSpace, query);
+        channel.sendRequestWithAsyncReply(requestId, message, timeout,
+                (msg, error) -> {
+                    if (error != null) {
+                        res.completeExceptionally(error);
+                        return;
+                    }
+                    try (Pdu reply = msg) {
+                        if (reply.type == Pdu.TYPE_ERROR) {
+                            handleGenericError(reply, 0);
+                            return;
+                        } else if (reply.type != Pdu.TYPE_PREPARE_STATEMENT_RESULT) {
+                            throw new HDBException(reply);
+                        }
+                        long statementId = PduCodec.PrepareStatementResult.readStatementId(reply);
+                        preparedStatements.registerQueryId(tableSpace, query, statementId);
+                        res.complete(statementId);
+                    } catch (HDBException | ClientSideMetadataProviderException err) {
+                        res.completeExceptionally(err);
+                    }
+                });
+        return res;
+    }
+
     @Override
     public DMLResult executeUpdate(String tableSpace, String query, long tx, boolean returnValues, boolean usePreparedStatement, List<Object> params) throws HDBException, ClientSideMetadataProviderException {
         Channel channel = ensureOpen();
@@ -762,25 +835,10 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
             long statementId = usePreparedStatement ? prepareQuery(tableSpace, query) : 0;
             query = statementId > 0 ? "" : query;
             ByteBuf message = PduCodec.OpenScanner.write(requestId, tableSpace, query, scannerId, tx, params, statementId,
-                    fetchSize, maxRows, keepReadLocks, allowFollowerReads);
+                    fetchSize, maxRows, keepReadLocks, allowFollowerReads, scannerStreaming, resultSetFormat);
             LOGGER.log(Level.FINEST, "open scanner {0} for query {1}, params {2}", new Object[]{scannerId, query, params});
             reply = channel.sendMessageWithPduReply(requestId, message, timeout);
-
-            if (reply.type == Pdu.TYPE_ERROR) {
-                handleGenericError(reply, statementId, true);
-                return null; // not possible
-            } else if (reply.type != Pdu.TYPE_RESULTSET_CHUNK) {
-                HDBException err = new HDBException(reply);
-                reply.close();
-                throw err;
-            }
-
-            boolean last = PduCodec.ResultSetChunk.readIsLast(reply);
-            long transactionId = PduCodec.ResultSetChunk.readTx(reply);
-            RecordsBatch data = PduCodec.ResultSetChunk.startReadingData(reply);
-            //LOGGER.log(Level.SEVERE, "received first " + initialFetchBuffer.size() + " records for query " + query);
-            ScanResultSetImpl impl = new ScanResultSetImpl(scannerId, data, fetchSize, last, transactionId, channel);
-            return impl;
+            return startScanResultSet(reply, scannerId, statementId, fetchSize, channel);
         } catch (InterruptedException err) {
             if (reply != null) {
                 reply.close();
@@ -795,6 +853,84 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
         }
     }
 
+    @Override
+    public CompletableFuture<ScanResultSet> executeScanAsync(String tableSpace, String query, boolean usePreparedStatement, List<Object> params, long tx, int maxRows, int fetchSize,
+                                                             boolean keepReadLocks, boolean allowFollowerReads) {
+        CompletableFuture<ScanResultSet> res = new CompletableFuture<>();
+        try {
+            Channel channel = ensureOpen();
+            // the scanner is opened when the statement has been prepared,
+            // on a cache miss the caller does not wait for the PREPARE
+            CompletableFuture<Long> prepared = usePreparedStatement
+                    ? prepareQueryAsync(channel, tableSpace, query) : CompletableFuture.completedFuture(0L);
+            prepared.whenComplete((statementId, error) -> {
+                if (error != null) {
+                    res.completeExceptionally(error);
+                    return;
+                }
+                openScannerAsync(channel, tableSpace, statementId > 0 ? "" : query, statementId, params, tx,
+                        maxRows, fetchSize, keepReadLocks, allowFollowerReads, res);
+            });
+        } catch (HDBException err) {
+            res.completeExceptionally(err);
+        }
+        return res;
+    }
+
+    private void openScannerAsync(Channel channel, String tableSpace, String query, long statementId, List<Object> params,
+                                  long tx, int maxRows, int fetchSize, boolean keepReadLocks, boolean allowFollowerReads,
+                                  CompletableFuture<ScanResultSet> res) {
+        long scannerId = scannerIdGenerator.incrementAndGet();
+        long requestId = channel.generateRequestId();
+        ByteBuf message = PduCodec.OpenScanner.write(requestId, tableSpace, query, scannerId, tx, params, statementId,
+                fetchSize, maxRows, keepReadLocks, allowFollowerReads, scannerStreaming, resultSetFormat);
+        LOGGER.log(Level.FINEST, "open scanner {0} for query {1}, params {2}", new Object[]{scannerId, query, params});
+        channel.sendRequestWithAsyncReply(requestId, message, timeout,
+                (reply, error) -> {
+                    if (error != null) {
+                        res.completeExceptionally(error);
+                        return;
+                    }
+                    try {
+                        ScanResultSet scanResultSet = startScanResultSet(reply, scannerId, statementId, fetchSize, channel);
+                        if (!res.complete(scanResultSet)) {
+                            // the caller cancelled the request
+                            scanResultSet.close();
+                        }
+                    } catch (HDBException | ClientSideMetadataProviderException err) {
+                        res.completeExceptionally(err);
+                    }
+                });
+    }
+
+    /**
+     * Creates the ScanResultSet from the reply to a TYPE_OPENSCANNER request,
+     * the reply is owned by the result set or released in case of error.
+     */
+    private ScanResultSet startScanResultSet(Pdu reply, long scannerId, long statementId, int fetchSize, Channel channel)
+            throws HDBException, ClientSideMetadataProviderException {
+        if (reply.type == Pdu.TYPE_ERROR) {
+            handleGenericError(reply, statementId, true);
+            return null; // not possible
+        } else if (reply.type != Pdu.TYPE_RESULTSET_CHUNK) {
+            HDBException err = new HDBException(reply);
+            reply.close();
+            throw err;
+        }
+
+        boolean last = PduCodec.ResultSetChunk.readIsLast(reply);
+        // servers which do not support streaming ignore the request
+        boolean streaming = PduCodec.ResultSetChunk.readIsStreaming(reply);
+        long transactionId = PduCodec.ResultSetChunk.readTx(reply);
+        RecordsBatch data = PduCodec.ResultSetChunk.startReadingData(reply);
+        //LOGGER.log(Level.SEVERE, "received first " + initialFetchBuffer.size() + " records for query " + query);
+        ScanResultSetImpl impl = new ScanResultSetImpl(scannerId, data, fetchSize, last, transactionId, channel);
+        if (streaming && !last) {
+            impl.startStreaming();
+        }
+        return impl;
+    }
+
     @Override
     public void dumpTableSpace(String tableSpace, int fetchSize, boolean includeTransactionLog, TableSpaceDumpReceiver receiver) throws HDBException, ClientSideMetadataProviderException {
         Channel channel = ensureOpen();
@@ -927,6 +1063,16 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
         // in case of client death
         final Channel channel;
 
+        // streaming mode, the server pushes the chunks
+        boolean streaming;
+        int credits;
+        int consumedRows;
+        int nextPushSequence = 1;
+        boolean streamingClosed;
+        String streamingError;
+        // guarded by itself
+        final Map<Integer, Pdu> pushedChunks = new HashMap<>();
+
         private ScanResultSetImpl(
                 long scannerId, RecordsBatch firstFetchBuffer, int fetchSize, boolean onlyOneChunk, long tx,
                 Channel channel
@@ -952,10 +1098,113 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
             return metadata;
         }
 
+        private void startStreaming() {
+            streaming = true;
+            // at least one chunk
+            credits = Math.max(scannerStreamingCredits, fetchSize);
+            streamingScanners.put(scannerId, this);
+            grantCredits(credits);
+        }
+
+        private void grantCredits(int rows) {
+            long requestId = channel.generateRequestId();
+            ByteBuf message = PduCodec.ScannerCredits.write(requestId, scannerId, rows);
+            channel.sendOneWayMessage(message, (Throwable error) -> {
+                if (error != null) {
+                    LOGGER.log(Level.SEVERE, "Cannot send credits to scanner " + scannerId + ", con " + RoutedClientSideConnection.this, error);
+                    streamingFailed("cannot send credits to the server: " + error);
+                }
+            });
+        }
+
+        private void pushReceived(Pdu message) {
+            synchronized (pushedChunks) {
+                if (streamingClosed) {
+                    message.close();
+                    return;
+                }
+                if (message.type == Pdu.TYPE_ERROR) {
+                    streamingError = PduCodec.ErrorResponse.readError(message);
+                    message.close();
+                } else {
+                    pushedChunks.put(PduCodec.ResultSetChunk.readPushSequence(message), message);
+                }
+                pushedChunks.notifyAll();
+            }
+        }
+
+        private void streamingFailed(String error) {
+            synchronized (pushedChunks) {
+                if (streamingError == null) {
+                    streamingError = error;
+                }
+                pushedChunks.notifyAll();
+            }
+        }
+
+        private void closeStreaming() {
+            streamingScanners.remove(scannerId, this);
+            synchronized (pushedChunks) {
+                streamingClosed = true;
+                pushedChunks.values().forEach(Pdu::close);
+                pushedChunks.clear();
+            }
+        }
+
+        private Pdu waitForPushedChunk() throws HDBException {
+            long deadline = System.currentTimeMillis() + timeout;
+            synchronized (pushedChunks) {
+                while (true) {
+                    Pdu result = pushedChunks.remove(nextPushSequence);
+                    if (result != null) {
+                        nextPushSequence++;
+                        return result;
+                    }
+                    if (streamingError != null) {
+                        finished = true;
+                        throw new HDBException(streamingError);
+                    }
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        finished = true;
+                        throw new HDBException(new TimeoutException("Timed out while waiting for data of scanner " + scannerId + " from " + channel.getRemoteAddress()));
+                    }
+                    try {
+                        pushedChunks.wait(wait);
+                    } catch (InterruptedException err) {
+                        Thread.currentThread().interrupt();
+                        throw new HDBException(err);
+                    }
+                }
+            }
+        }
+
+        private void fillBufferFromPushedChunks() throws HDBException {
+            Pdu result = waitForPushedChunk();
+            lastChunk = PduCodec.ResultSetChunk.readIsLast(result);
+            fetchBuffer = PduCodec.ResultSetChunk.startReadingData(result);
+            if (lastChunk) {
+                closeStreaming();
+            } else {
+                // give back the credits, not for every chunk in order to save messages
+                consumedRows += fetchBuffer.numRecords;
+                if (consumedRows >= credits / 2) {
+                    grantCredits(consumedRows);
+                    consumedRows = 0;
+                }
+            }
+            if (!fetchBuffer.hasNext()) {
+                noMoreData = true;
+            }
+        }
+
         @Override
         public void close() {
             finished = true;
             releaseBuffer();
+            if (streaming) {
+                closeStreaming();
+            }
 
             if (!noMoreData) {
                 // try to release resources on the server
@@ -992,6 +1241,10 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
                 noMoreData = true;
                 return;
             }
+            if (streaming) {
+                fillBufferFromPushedChunks();
+                return;
+            }
 
             Pdu result = null;
             try {
@@ -28,12 +28,9 @@ import herddb.log.LogEntryType;
 import herddb.log.LogNotAvailableException;
 import herddb.log.LogSequenceNumber;
 import herddb.utils.EnsureLongIncrementAccumulator;
-import herddb.utils.ExtendedDataInputStream;
 import herddb.utils.SystemProperties;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -208,7 +205,7 @@ public class BookkeeperCommitLog extends CommitLog {
 
         public CompletableFuture<LogSequenceNumber> writeEntry(LogEntry edit) {
             // BK will release the buffer after handling the entry
-            ByteBuf serialize = edit.serializeAsByteBuf();
+            ByteBuf serialize = edit.serializeAsByteBuf(parent.isCompressEntries());
             pendingAdds.incrementAndGet();
             final CompletableFuture<LogSequenceNumber> res = this.out.appendAsync(serialize)
                     .handle((offset, error) -> {
@@ -1139,14 +1136,7 @@ public class BookkeeperCommitLog extends CommitLog {
     }
 
     private LogEntry readLogEntry(org.apache.bookkeeper.client.api.LedgerEntry e) throws IOException {
-        LogEntry statusEdit;
-        try (InputStream entryData = new ByteBufInputStream(e.getEntryBuffer(), false /*
-         * releaseOnClose
-         */);
-                ExtendedDataInputStream in = new ExtendedDataInputStream(entryData)) {
-            statusEdit = LogEntry.deserialize(in);
-        }
-        return statusEdit;
+        return LogEntry.deserialize(e.getEntryBuffer());
     }
 
     @Override
@@ -22,6 +22,7 @@ package herddb.cluster;
 
 import com.google.common.annotations.VisibleForTesting;
 import herddb.log.CommitLogManager;
+import herddb.log.LogCompression;
 import herddb.log.LogEntry;
 import herddb.log.LogNotAvailableException;
 import herddb.log.LogSequenceNumber;
@@ -78,12 +79,15 @@ public class BookkeeperCommitLogManager extends CommitLogManager {
     private long maxLedgerSizeBytes = 100 * 1024 * 1024 * 1024;
     private long maxIdleTime = 0;
     private long bookkeeperClusterReadyWaitTime = 60_000;
+    private final boolean compressEntries;
 
     private ConcurrentHashMap<String, BookkeeperCommitLog> activeLogs = new ConcurrentHashMap<>();
 
     public BookkeeperCommitLogManager(ZookeeperMetadataStorageManager metadataStorageManager, ServerConfiguration serverConfiguration, StatsLogger statsLogger) {
         this.statsLogger = statsLogger;
         this.bookkeeperClusterReadyWaitTime = serverConfiguration.getLong(ServerConfiguration.PROPERTY_BOOKKEEPER_WAIT_CLUSTER_READY_TIMEOUT, ServerConfiguration.PROPERTY_BOOKKEEPER_WAIT_CLUSTER_READY_TIMEOUT_DEFAULT);
+        this.compressEntries = LogCompression.isCompressionEnabled(
+                serverConfiguration.getString(ServerConfiguration.PROPERTY_TXLOG_COMPRESSION, ServerConfiguration.PROPERTY_TXLOG_COMPRESSION_DEFAULT));
         config = new ClientConfiguration();
 
         config.setThrottleValue(0);
@@ -241,6 +245,10 @@ public class BookkeeperCommitLogManager extends CommitLogManager {
         return bookkeeperClusterReadyWaitTime;
     }
 
+    public boolean isCompressEntries() {
+        return compressEntries;
+    }
+
     public void setBookkeeperClusterReadyWaitTime(long bookkeeperClusterReadyWaitTime) {
         this.bookkeeperClusterReadyWaitTime = bookkeeperClusterReadyWaitTime;
     }
@@ -0,0 +1,216 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.codec;
+
+import herddb.model.Table;
+import herddb.utils.SystemProperties;
+import java.util.Arrays;
+
+/**
+ * Version 2 of the format of the value of a record, which starts with a table
+ * of the offsets of the columns, indexed by serial position, so that any
+ * column can be accessed without decoding the others.
+ * <pre>
+ * byte 0x80, byte 0x00
+ * byte slotWidth (2 or 4)
+ * vint numSlots
+ * (slotWidth bytes, big endian offset from the beginning of the value) * numSlots
+ * (type and value) * numColumns
+ * </pre>
+ * The slot of a column which is not present (NULL) is 0. Types and values are
+ * encoded like in the version 1 format, which is a sequence of (vint
+ * serialPosition, type and value): numeric values already have a fixed width.
+ * <p>
+ * A version 1 value never starts with 0x80 0x00, which is a non canonical
+ * vint, so both formats can be read at any time: pages and log entries written
+ * in version 1 are still readable and the two formats can be mixed in the same
+ * table.
+ * <p>
+ * New records are written in version 2 format only when
+ * {@code herddb.serializer.columnoffsettable=true}: followers, CDC and the
+ * indexing service must run a version which can read it.
+ *
+ * @author enrico.olivelli
+ */
+public final class ColumnOffsetTable {
+
+    /**
+     * Write new records in version 2 format, opt-in.
+     */
+    public static final boolean ENABLED = SystemProperties.getBooleanSystemProperty("herddb.serializer.columnoffsettable", false);
+
+    /**
+     * Minimum number of columns, excluding the primary key, for which new
+     * records are written in version 2 format when {@link #ENABLED}. On
+     * narrow tables a sequential scan is as fast as a lookup in the offset
+     * table and the offset table makes the value larger.
+     */
+    public static final int MIN_COLUMNS = SystemProperties.getIntSystemProperty("herddb.serializer.columnoffsettable.mincolumns", 8);
+
+    private static final byte MAGIC_0 = (byte) 0x80;
+    private static final byte MAGIC_1 = 0x00;
+    private static final int SLOTS_COUNT_OFFSET = 3;
+
+    private ColumnOffsetTable() {
+    }
+
+    /**
+     * Checks if new records of the table are written with the column offset
+     * table.
+     */
+    public static boolean isEnabled(Table table) {
+        return ENABLED && table.columns.length - table.primaryKey.length >= MIN_COLUMNS;
+    }
+
+    /**
+     * Checks if a value is in version 2 format.
+     */
+    public static boolean isColumnOffsetTable(byte[] array, int offset, int length) {
+        return length > SLOTS_COUNT_OFFSET
+                && array[offset] == MAGIC_0
+                && array[offset + 1] == MAGIC_1;
+    }
+
+    /**
+     * Number of slots of a value in version 2 format, all the serial positions
+     * of the columns present in the value are lower.
+     */
+    public static int getNumSlots(byte[] array, int offset) {
+        int pos = offset + SLOTS_COUNT_OFFSET;
+        byte b = array[pos++];
+        int i = b & 0x7F;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            b = array[pos++];
+            i |= (b & 0x7F) << shift;
+        }
+        return i;
+    }
+
+    /**
+     * Locates a column inside a value in version 2 format.
+     *
+     * @param array          the array
+     * @param offset         the beginning of the value
+     * @param serialPosition serial position of the column
+     * @return the position in the array of the type and value of the column,
+     * -1 if the column is not present
+     */
+    public static int findColumn(byte[] array, int offset, int serialPosition) {
+        int pos = offset + SLOTS_COUNT_OFFSET;
+        byte b = array[pos++];
+        int numSlots = b & 0x7F;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            b = array[pos++];
+            numSlots |= (b & 0x7F) << shift;
+        }
+        if (serialPosition < 0 || serialPosition >= numSlots) {
+            return -1;
+        }
+        int slotWidth = array[offset + 2];
+        int slot = pos + serialPosition * slotWidth;
+        int columnOffset;
+        if (slotWidth == 2) {
+            columnOffset = (array[slot] & 0xff) << 8 | (array[slot + 1] & 0xff);
+        } else {
+            columnOffset = (array[slot] & 0xff) << 24
+                    | (array[slot + 1] & 0xff) << 16
+                    | (array[slot + 2] & 0xff) << 8
+                    | (array[slot + 3] & 0xff);
+        }
+        return columnOffset == 0 ? -1 : offset + columnOffset;
+    }
+
+    /**
+     * Builds a value in version 2 format. Types and values are appended to
+     * a buffer, then {@link #build(byte[], int)} prepends the offset table.
+     */
+    static final class Builder {
+
+        private int[] serialPositions = new int[16];
+        private int[] starts = new int[16];
+        private int size;
+        private int maxSerialPosition = -1;
+
+        /**
+         * Records that the type and value of a column start at the given
+         * position of the buffer.
+         */
+        void add(int serialPosition, int start) {
+            if (size == serialPositions.length) {
+                serialPositions = Arrays.copyOf(serialPositions, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+            }
+            serialPositions[size] = serialPosition;
+            starts[size] = start;
+            size++;
+            maxSerialPosition = Math.max(maxSerialPosition, serialPosition);
+        }
+
+        byte[] build(byte[] data, int dataLength) {
+            if (size == 0) {
+                return new byte[0];
+            }
+            int numSlots = maxSerialPosition + 1;
+            int numSlotsLength = vIntLength(numSlots);
+            int slotWidth = 2;
+            int headerLength = SLOTS_COUNT_OFFSET + numSlotsLength + numSlots * slotWidth;
+            if (headerLength + dataLength > 0xFFFF) {
+                slotWidth = 4;
+                headerLength = SLOTS_COUNT_OFFSET + numSlotsLength + numSlots * slotWidth;
+            }
+            byte[] result = new byte[headerLength + dataLength];
+            result[0] = MAGIC_0;
+            result[1] = MAGIC_1;
+            result[2] = (byte) slotWidth;
+            int pos = SLOTS_COUNT_OFFSET;
+            int i = numSlots;
+            while ((i & ~0x7F) != 0) {
+                result[pos++] = (byte) ((i & 0x7F) | 0x80);
+                i >>>= 7;
+            }
+            result[pos++] = (byte) i;
+            for (int k = 0; k < size; k++) {
+                int slot = pos + serialPositions[k] * slotWidth;
+                int columnOffset = headerLength + starts[k];
+                if (slotWidth == 2) {
+                    result[slot] = (byte) (columnOffset >>> 8);
+                    result[slot + 1] = (byte) columnOffset;
+                } else {
+                    result[slot] = (byte) (columnOffset >>> 24);
+                    result[slot + 1] = (byte) (columnOffset >>> 16);
+                    result[slot + 2] = (byte) (columnOffset >>> 8);
+                    result[slot + 3] = (byte) columnOffset;
+                }
+            }
+            System.arraycopy(data, 0, result, headerLength, dataLength);
+            return result;
+        }
+
+        private static int vIntLength(int i) {
+            int length = 1;
+            while ((i & ~0x7F) != 0) {
+                length++;
+                i >>>= 7;
+            }
+            return length;
+        }
+    }
+}
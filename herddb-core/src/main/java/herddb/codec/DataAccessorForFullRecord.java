@@ -71,6 +71,22 @@ public class DataAccessorForFullRecord extends AbstractDataAccessor {
         }
     }
 
+    /**
+     * Accesses the serialized value of a FLOATARRAY column which is not part
+     * of the primary key, without decoding it.
+     *
+     * @param column the column
+     * @return a view on the serialized floats, null if the value is null
+     * @see RecordSerializer#accessRawFloatArrayFromValue(Column, Bytes, Table)
+     */
+    public Bytes getRawFloatArray(Column column) {
+        try {
+            return RecordSerializer.accessRawFloatArrayFromValue(column, record.value, table);
+        } catch (IOException err) {
+            throw new IllegalStateException("bad data:" + err, err);
+        }
+    }
+
     @Override
     public boolean fieldEqualsTo(int index, Object value) {
         try {
@@ -142,6 +158,18 @@ public class DataAccessorForFullRecord extends AbstractDataAccessor {
                 }
             }
 
+            if (RecordSerializer.isColumnOffsetTable(record.value)) {
+                // columns are in serial position order, like in the table
+                for (Column col : table.columns) {
+                    if (!table.isPrimaryKeyColumn(col.name)) {
+                        Object value = get(col.name);
+                        if (value != null) {
+                            consumer.accept(col.name, value);
+                        }
+                    }
+                }
+                return;
+            }
             try (ByteArrayCursor din = record.value.newCursor()) {
                 while (!din.isEof()) {
                     int serialPosition;
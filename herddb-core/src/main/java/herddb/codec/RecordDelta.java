@@ -0,0 +1,309 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.codec;
+
+import herddb.model.Column;
+import herddb.model.Table;
+import herddb.utils.ByteArrayCursor;
+import herddb.utils.Bytes;
+import herddb.utils.CompareBytesUtils;
+import herddb.utils.ExtendedDataOutputStream;
+import herddb.utils.VisibleByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Column level difference between two versions of the value of a record, used
+ * by {@link herddb.log.LogEntryType#UPDATE_DELTA} log entries.
+ * <p>
+ * A delta contains the serial positions of the columns which are no more
+ * present (NULL) in the new version, followed by the new values of the changed
+ * columns, encoded like the value of a record:
+ * <pre>
+ * vint numRemovedColumns, vint serialPosition * numRemovedColumns
+ * (vint serialPosition, type and value) * numChangedColumns
+ * </pre>
+ * Applying a delta rewrites the value in table column order, so the result is
+ * the same as {@link RecordSerializer#serializeValueRaw}, including the
+ * {@link ColumnOffsetTable} if the table uses it, values of columns which are
+ * no more defined in the table are discarded. Both the previous value and the
+ * new value can be in any of the two formats.
+ *
+ * @author enrico.olivelli
+ */
+public final class RecordDelta {
+
+    private RecordDelta() {
+    }
+
+    /**
+     * Value of a record split by column
+     */
+    private static final class ColumnValues {
+
+        private final byte[] array;
+        private int size;
+        private int[] serialPositions = new int[8];
+        /**
+         * Type and value of column i go from bounds[2 * i] to bounds[2 * i + 1]
+         */
+        private int[] bounds = new int[16];
+
+        private ColumnValues(byte[] array) {
+            this.array = array;
+        }
+
+        private void add(int serialPosition, int start, int end) {
+            if (size == serialPositions.length) {
+                serialPositions = Arrays.copyOf(serialPositions, size * 2);
+                bounds = Arrays.copyOf(bounds, size * 4);
+            }
+            serialPositions[size] = serialPosition;
+            bounds[2 * size] = start;
+            bounds[2 * size + 1] = end;
+            size++;
+        }
+
+        private int indexOf(int serialPosition) {
+            for (int i = 0; i < size; i++) {
+                if (serialPositions[i] == serialPosition) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean sameValue(int index, ColumnValues other, int otherIndex) {
+            return CompareBytesUtils.compare(array, bounds[2 * index], bounds[2 * index + 1],
+                    other.array, other.bounds[2 * otherIndex], other.bounds[2 * otherIndex + 1]) == 0;
+        }
+
+        private void write(int index, ExtendedDataOutputStream out) throws IOException {
+            out.writeVInt(serialPositions[index]);
+            writeTypeAndValue(index, out);
+        }
+
+        private void writeTypeAndValue(int index, ExtendedDataOutputStream out) throws IOException {
+            out.write(array, bounds[2 * index], bounds[2 * index + 1] - bounds[2 * index]);
+        }
+    }
+
+    private static ColumnValues parseValue(byte[] array, int offset, int length) throws IOException {
+        ColumnValues result = new ColumnValues(array);
+        if (ColumnOffsetTable.isColumnOffsetTable(array, offset, length)) {
+            int end = offset + length;
+            int numSlots = ColumnOffsetTable.getNumSlots(array, offset);
+            for (int serialPosition = 0; serialPosition < numSlots; serialPosition++) {
+                int start = ColumnOffsetTable.findColumn(array, offset, serialPosition);
+                if (start >= 0) {
+                    try (ByteArrayCursor din = ByteArrayCursor.wrap(array, start, end - start)) {
+                        RecordSerializer.skipTypeAndValue(din);
+                        result.add(serialPosition, start, din.getPosition());
+                    }
+                }
+            }
+            return result;
+        }
+        try (ByteArrayCursor din = ByteArrayCursor.wrap(array, offset, length)) {
+            parseColumns(din, result);
+        }
+        return result;
+    }
+
+    private static void parseColumns(ByteArrayCursor din, ColumnValues result) throws IOException {
+        while (true) {
+            int serialPosition = din.readVIntNoEOFException();
+            if (din.isEof()) {
+                break;
+            }
+            int start = din.getPosition();
+            RecordSerializer.skipTypeAndValue(din);
+            result.add(serialPosition, start, din.getPosition());
+        }
+    }
+
+    /**
+     * Computes the delta between two versions of a record.
+     *
+     * @param previous the previous value
+     * @param newValue the new value
+     * @param table    the table
+     * @return the delta or null if the delta is not smaller than the new value
+     */
+    public static byte[] computeDelta(Bytes previous, byte[] newValue, Table table) {
+        try {
+            ColumnValues before = parseValue(previous.getBuffer(), previous.getOffset(), previous.getLength());
+            ColumnValues after = parseValue(newValue, 0, newValue.length);
+            VisibleByteArrayOutputStream buffer = new VisibleByteArrayOutputStream(newValue.length);
+            try (ExtendedDataOutputStream out = new ExtendedDataOutputStream(buffer)) {
+                int removed = 0;
+                for (int i = 0; i < before.size; i++) {
+                    if (after.indexOf(before.serialPositions[i]) < 0) {
+                        removed++;
+                    }
+                }
+                out.writeVInt(removed);
+                for (int i = 0; i < before.size; i++) {
+                    if (after.indexOf(before.serialPositions[i]) < 0) {
+                        out.writeVInt(before.serialPositions[i]);
+                    }
+                }
+                for (int i = 0; i < after.size; i++) {
+                    int previousIndex = before.indexOf(after.serialPositions[i]);
+                    if (previousIndex < 0 || !after.sameValue(i, before, previousIndex)) {
+                        after.write(i, out);
+                    }
+                }
+            }
+            if (buffer.size() >= newValue.length) {
+                return null;
+            }
+            byte[] delta = buffer.toByteArray();
+            // the delta must rebuild exactly the same bytes, this is not the
+            // case if the new value has not been written in table order
+            byte[] rebuilt = applyDelta(previous, Bytes.from_array(delta), table);
+            if (!Arrays.equals(rebuilt, newValue)) {
+                return null;
+            }
+            return delta;
+        } catch (IOException err) {
+            throw new IllegalArgumentException("malformed record", err);
+        }
+    }
+
+    /**
+     * Applies a delta to the previous version of a record.
+     *
+     * @param previous the previous value
+     * @param delta    the delta
+     * @param table    the table
+     * @return the new value
+     */
+    public static byte[] applyDelta(Bytes previous, Bytes delta, Table table) {
+        try {
+            ColumnValues before = parseValue(previous.getBuffer(), previous.getOffset(), previous.getLength());
+            ColumnValues changed = new ColumnValues(delta.getBuffer());
+            int[] removed;
+            try (ByteArrayCursor din = delta.newCursor()) {
+                removed = new int[din.readVInt()];
+                for (int i = 0; i < removed.length; i++) {
+                    removed[i] = din.readVInt();
+                }
+                parseColumns(din, changed);
+            }
+            VisibleByteArrayOutputStream buffer = new VisibleByteArrayOutputStream(previous.getLength() + delta.getLength());
+            ColumnOffsetTable.Builder offsetTable = ColumnOffsetTable.isEnabled(table) ? new ColumnOffsetTable.Builder() : null;
+            try (ExtendedDataOutputStream out = new ExtendedDataOutputStream(buffer)) {
+                for (Column c : table.columns) {
+                    if (table.isPrimaryKeyColumn(c.name)) {
+                        continue;
+                    }
+                    ColumnValues source = changed;
+                    int index = changed.indexOf(c.serialPosition);
+                    if (index < 0 && !contains(removed, c.serialPosition)) {
+                        source = before;
+                        index = before.indexOf(c.serialPosition);
+                    }
+                    if (index < 0) {
+                        continue;
+                    }
+                    if (offsetTable != null) {
+                        offsetTable.add(c.serialPosition, buffer.size());
+                        source.writeTypeAndValue(index, out);
+                    } else {
+                        source.write(index, out);
+                    }
+                }
+            }
+            if (offsetTable != null) {
+                return offsetTable.build(buffer.getBuffer(), buffer.size());
+            }
+            return buffer.toByteArray();
+        } catch (IOException err) {
+            throw new IllegalArgumentException("malformed delta", err);
+        }
+    }
+
+    /**
+     * New values of the changed columns, in the same format of the value of a
+     * record. Columns set to NULL are not present.
+     *
+     * @param delta the delta
+     * @return a view over the delta
+     */
+    public static Bytes changedValues(Bytes delta) {
+        try (ByteArrayCursor din = delta.newCursor()) {
+            int removed = din.readVInt();
+            for (int i = 0; i < removed; i++) {
+                din.readVInt();
+            }
+            int start = din.getPosition();
+            return Bytes.from_array(delta.getBuffer(), start, delta.getOffset() + delta.getLength() - start);
+        } catch (IOException err) {
+            throw new IllegalArgumentException("malformed delta", err);
+        }
+    }
+
+    /**
+     * Names of the columns modified by the delta, including the ones set to
+     * NULL.
+     *
+     * @param delta the delta
+     * @param table the table
+     * @return the names of the columns, columns not defined in the table are
+     * not reported
+     */
+    public static Set<String> changedColumns(Bytes delta, Table table) {
+        Set<String> result = new HashSet<>();
+        try (ByteArrayCursor din = delta.newCursor()) {
+            int removed = din.readVInt();
+            for (int i = 0; i < removed; i++) {
+                addColumn(table, din.readVInt(), result);
+            }
+            ColumnValues changed = new ColumnValues(delta.getBuffer());
+            parseColumns(din, changed);
+            for (int i = 0; i < changed.size; i++) {
+                addColumn(table, changed.serialPositions[i], result);
+            }
+        } catch (IOException err) {
+            throw new IllegalArgumentException("malformed delta", err);
+        }
+        return result;
+    }
+
+    private static void addColumn(Table table, int serialPosition, Set<String> result) {
+        Column column = table.getColumnBySerialPosition(serialPosition);
+        if (column != null) {
+            result.add(column.name);
+        }
+    }
+
+    private static boolean contains(int[] array, int value) {
+        for (int v : array) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
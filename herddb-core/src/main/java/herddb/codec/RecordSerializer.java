@@ -708,6 +708,9 @@ public final class RecordSerializer {
         if (table.getColumn(property) == null) {
             throw new herddb.utils.IllegalDataAccessException("table " + table.tablespace + "." + table.name + " does not define column " + property);
         }
+        if (isColumnOffsetTable(value)) {
+            return accessRawDataFromColumnOffsetTable(table.getColumn(property), value);
+        }
         try (ByteArrayCursor din = value.newCursor()) {
             while (!din.isEof()) {
                 int serialPosition;
@@ -729,6 +732,9 @@ public final class RecordSerializer {
 
     static Object accessRawDataFromValue(int index, Bytes value, Table table) throws IOException {
         Column column = table.getColumn(index);
+        if (isColumnOffsetTable(value)) {
+            return accessRawDataFromColumnOffsetTable(column, value);
+        }
         try (ByteArrayCursor din = value.newCursor()) {
             while (!din.isEof()) {
                 int serialPosition;
@@ -748,8 +754,91 @@ public final class RecordSerializer {
         }
     }
 
+    /**
+     * Locates the value of a FLOATARRAY column inside a serialized record
+     * without decoding it, the floats can be copied directly into contiguous
+     * storage with {@link Bytes#to_float_array(byte[], int, int, float[], int)}.
+     *
+     * @return a view on the serialized floats, null if the value is null
+     */
+    public static Bytes accessRawFloatArrayFromValue(Column column, Bytes value, Table table) throws IOException {
+        if (isColumnOffsetTable(value)) {
+            int position = ColumnOffsetTable.findColumn(value.getBuffer(), value.getOffset(), column.serialPosition);
+            if (position < 0) {
+                return null;
+            }
+            try (ByteArrayCursor din = cursorAt(value, position)) {
+                return readRawFloatArray(column, din);
+            }
+        }
+        try (ByteArrayCursor din = value.newCursor()) {
+            while (!din.isEof()) {
+                int serialPosition;
+                serialPosition = din.readVIntNoEOFException();
+                if (din.isEof()) {
+                    return null;
+                }
+                Column col = table.getColumnBySerialPosition(serialPosition);
+                if (col != null && col.serialPosition == column.serialPosition) {
+                    return readRawFloatArray(column, din);
+                } else {
+                    // we have to deserialize always the value, even the column is no more present
+                    skipTypeAndValue(din);
+                }
+            }
+            return null;
+        }
+    }
+
+    private static Bytes readRawFloatArray(Column column, ByteArrayCursor din) throws IOException {
+        int type = din.readVInt();
+        if (type == ColumnTypes.NULL) {
+            return null;
+        }
+        if (type != ColumnTypes.FLOATARRAY && type != ColumnTypes.NOTNULL_FLOATARRAY) {
+            throw new IllegalArgumentException("column " + column.name + " is not a float array (type " + type + ")");
+        }
+        int len = din.readArrayLen();
+        if (len < 0) {
+            return null;
+        }
+        return Bytes.from_array(din.getArray(), din.getPosition(), len * 4);
+    }
+
+    /**
+     * Checks if the value of a record starts with a column offset table.
+     *
+     * @see ColumnOffsetTable
+     */
+    public static boolean isColumnOffsetTable(Bytes value) {
+        return ColumnOffsetTable.isColumnOffsetTable(value.getBuffer(), value.getOffset(), value.getLength());
+    }
+
+    private static ByteArrayCursor cursorAt(Bytes value, int position) {
+        return ByteArrayCursor.wrap(value.getBuffer(), position, value.getOffset() + value.getLength() - position);
+    }
+
+    private static Object accessRawDataFromColumnOffsetTable(Column column, Bytes value) throws IOException {
+        int position = ColumnOffsetTable.findColumn(value.getBuffer(), value.getOffset(), column.serialPosition);
+        if (position < 0) {
+            return null;
+        }
+        try (ByteArrayCursor din = cursorAt(value, position)) {
+            return deserializeTypeAndValue(din);
+        }
+    }
+
     static SQLRecordPredicateFunctions.CompareResult compareRawDataFromValue(int index, Bytes value, Table table, Object cvalue) throws IOException {
         Column column = table.getColumn(index);
+        if (isColumnOffsetTable(value)) {
+            int position = ColumnOffsetTable.findColumn(value.getBuffer(), value.getOffset(), column.serialPosition);
+            if (position < 0) {
+                return CompareResult.NULL;
+            }
+            try (ByteArrayCursor din = cursorAt(value, position)) {
+                return compareDeserializeTypeAndValue(din, cvalue);
+            }
+        }
         try (ByteArrayCursor din = value.newCursor()) {
             while (!din.isEof()) {
                 int serialPosition;
@@ -1002,21 +1091,7 @@ public final class RecordSerializer {
     }
 
     public static byte[] serializeValueRaw(Map<String, Object> record, Table table, int expectedSize) {
-        VisibleByteArrayOutputStream value = TL_BUFFER.get();
-        value.reset();
-        try (ExtendedDataOutputStream doo = new ExtendedDataOutputStream(value)) {
-            for (Column c : table.columns) {
-                Object v = record.get(c.name);
-                if (v != null && !table.isPrimaryKeyColumn(c.name)) {
-                    doo.writeVInt(c.serialPosition);
-                    serializeTypeAndValue(v, c.type, doo);
-                }
-            }
-        } catch (IOException err) {
-            throw new RuntimeException(err);
-        }
-
-        return value.toByteArray();
+        return buildRecord(expectedSize, table, record::get);
     }
 
     public static byte[] buildRecord(
@@ -1025,12 +1100,17 @@ public final class RecordSerializer {
     ) {
         VisibleByteArrayOutputStream value = TL_BUFFER.get();
         value.reset();
+        ColumnOffsetTable.Builder offsetTable = ColumnOffsetTable.isEnabled(table) ? new ColumnOffsetTable.Builder() : null;
         try (ExtendedDataOutputStream doo = new ExtendedDataOutputStream(value)) {
             for (Column c : table.columns) {
                 if (!table.isPrimaryKeyColumn(c.name)) {
                     Object v = evaluator.apply(c.name);
                     if (v != null) {
-                        doo.writeVInt(c.serialPosition);
+                        if (offsetTable != null) {
+                            offsetTable.add(c.serialPosition, value.size());
+                        } else {
+                            doo.writeVInt(c.serialPosition);
+                        }
                         serializeTypeAndValue(v, c.type, doo);
                     }
                 }
@@ -1039,6 +1119,9 @@ public final class RecordSerializer {
             throw new RuntimeException(err);
         }
 
+        if (offsetTable != null) {
+            return offsetTable.build(value.getBuffer(), value.size());
+        }
         return value.toByteArray();
     }
 
@@ -1064,7 +1147,19 @@ public final class RecordSerializer {
                 deserializeMultiColumnPrimaryKey(record.key, table, res);
             }
 
-            if (record.value != null && record.value.getLength() > 0) {
+            if (record.value != null && isColumnOffsetTable(record.value)) {
+                Bytes value = record.value;
+                int numSlots = ColumnOffsetTable.getNumSlots(value.getBuffer(), value.getOffset());
+                for (int serialPosition = 0; serialPosition < numSlots; serialPosition++) {
+                    Column col = table.getColumnBySerialPosition(serialPosition);
+                    if (col != null) {
+                        Object v = accessRawDataFromColumnOffsetTable(col, value);
+                        if (v != null) {
+                            res.put(col.name, v);
+                        }
+                    }
+                }
+            } else if (record.value != null && record.value.getLength() > 0) {
                 try (ByteArrayCursor din = record.value.newCursor()) {
                     while (true) {
                         int serialPosition;
@@ -21,6 +21,7 @@
 package herddb.core;
 
 import herddb.core.stats.TableManagerStats;
+import herddb.core.stats.TableStatistics;
 import herddb.index.KeyToPageIndex;
 import herddb.log.CommitLogResult;
 import herddb.log.LogEntry;
@@ -66,6 +67,24 @@ public interface AbstractTableManager extends AutoCloseable {
 
     boolean isSystemTable();
 
+    /**
+     * Drops the previous versions of the records which are not needed anymore
+     * by the transactions which read from a snapshot.
+     *
+     * @param oldestActiveSnapshot versions saved for older snapshots are not
+     *                             needed anymore
+     */
+    default void pruneRecordVersions(long oldestActiveSnapshot) {
+    }
+
+    /**
+     * @return the statistics computed by the last ANALYZE TABLE, null if the
+     * table has never been analyzed
+     */
+    default TableStatistics getStatistics() {
+        return null;
+    }
+
     default boolean isKeyToPageSortedAscending() {
         return false;
     }
@@ -103,6 +103,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
@@ -138,6 +140,11 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
     private final Activator activatorJ;
     private final AtomicBoolean stopped = new AtomicBoolean();
     private final ExecutorService callbacksExecutor;
+    /**
+     * Runs statements which waited for a lock, it is never a direct executor
+     * otherwise they would run inside the thread which releases the lock
+     */
+    private final ExecutorService lockWaitersExecutor;
     private final AbstractSQLPlanner planner;
     private final ServerSidePreparedStatementCache preparedStatementsCache;
     private final Path tmpDirectory;
@@ -174,6 +181,10 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
     private final RunningStatementsStats runningStatements;
     private Gauge<Integer> activeTablespacesGauge;
     private final ExecutorService followersThreadPool;
+    private final ForkJoinPool tableScanExecutor;
+    private final ExecutorService pagePrefetchExecutor;
+    private final int scanPrefetchPages;
+    private final long scanPrefetchMemory;
 
     public DBManager(
             String nodeId, MetadataStorageManager metadataStorageManager, DataStorageManager dataStorageManager,
@@ -212,6 +223,37 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
         // todo: make it configurable, cached have some pitfalls under load
         this.followersThreadPool = Executors.newCachedThreadPool((Runnable r) -> new FastThreadLocalThread(
                 r, "herddb-worker-" + (hostData == null ? "local" : hostData.getHost() + ":" + hostData.getPort()) + "-" + r));
+        this.lockWaitersExecutor = asyncWorkerThreads <= 0 ? followersThreadPool : callbacksExecutor;
+        int tableScanParallelism = configuration.getInt(ServerConfiguration.PROPERTY_TABLE_SCAN_PARALLELISM,
+                ServerConfiguration.PROPERTY_TABLE_SCAN_PARALLELISM_DEFAULT);
+        if (tableScanParallelism > 0) {
+            this.tableScanExecutor = new ForkJoinPool(tableScanParallelism, (ForkJoinPool pool) -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("herddb-scan-" + (hostData == null ? "local" : hostData.getHost() + ":" + hostData.getPort())
+                        + "-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        } else {
+            this.tableScanExecutor = null;
+        }
+        this.scanPrefetchPages = configuration.getInt(ServerConfiguration.PROPERTY_SCAN_PREFETCH_PAGES,
+                ServerConfiguration.PROPERTY_SCAN_PREFETCH_PAGES_DEFAULT);
+        this.scanPrefetchMemory = configuration.getLong(ServerConfiguration.PROPERTY_SCAN_PREFETCH_MEMORY,
+                ServerConfiguration.PROPERTY_SCAN_PREFETCH_MEMORY_DEFAULT);
+        if (scanPrefetchPages > 0) {
+            int prefetchThreads = configuration.getInt(ServerConfiguration.PROPERTY_SCAN_PREFETCH_THREADS,
+                    ServerConfiguration.PROPERTY_SCAN_PREFETCH_THREADS_DEFAULT);
+            AtomicLong prefetchThreadsCount = new AtomicLong();
+            this.pagePrefetchExecutor = Executors.newFixedThreadPool(prefetchThreads, (Runnable r) -> {
+                Thread thread = new FastThreadLocalThread(r, "herddb-prefetch-"
+                        + (hostData == null ? "local" : hostData.getHost() + ":" + hostData.getPort())
+                        + "-" + prefetchThreadsCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.pagePrefetchExecutor = null;
+        }
         this.recordSetFactory = dataStorageManager.createRecordSetFactory();
         this.metadataStorageManager = metadataStorageManager;
         this.dataStorageManager = dataStorageManager;
@@ -1010,6 +1052,12 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
         }
         mainStatsLogger.unregisterGauge("active_tablespaces", activeTablespacesGauge);
         callbacksExecutor.shutdownNow();
+        if (tableScanExecutor != null) {
+            tableScanExecutor.shutdownNow();
+        }
+        if (pagePrefetchExecutor != null) {
+            pagePrefetchExecutor.shutdownNow();
+        }
 
         // lastly give a chance to not "leak" even if not critical (ie not keep used instances after close())
         try {
@@ -1606,6 +1654,53 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
         return callbacksExecutor;
     }
 
+    /**
+     * Executor for the statements which waited for a lock on a record.
+     *
+     * @return a thread pool, even when {@link #getCallbacksExecutor()} runs
+     * tasks in the caller thread
+     */
+    public ExecutorService getLockWaitersExecutor() {
+        return lockWaitersExecutor;
+    }
+
+    /**
+     * Pool which reads the pages of the tables during parallel scans.
+     *
+     * @return the pool, null if parallel scans are disabled
+     */
+    public ForkJoinPool getTableScanExecutor() {
+        return tableScanExecutor;
+    }
+
+    /**
+     * Pool which reads ahead the pages needed by scans, when the storage does
+     * not support asynchronous reads.
+     *
+     * @return the pool, null if the read ahead of pages is disabled
+     */
+    public ExecutorService getPagePrefetchExecutor() {
+        return pagePrefetchExecutor;
+    }
+
+    /**
+     * Maximum number of pages read ahead by each scan.
+     *
+     * @return the number of pages, 0 if the read ahead of pages is disabled
+     */
+    public int getScanPrefetchPages() {
+        return scanPrefetchPages;
+    }
+
+    /**
+     * Maximum amount of memory held by the pages read ahead by each scan.
+     *
+     * @return the memory, in bytes
+     */
+    public long getScanPrefetchMemory() {
+        return scanPrefetchMemory;
+    }
+
     public ServerSidePreparedStatementCache getPreparedStatementsCache() {
         return preparedStatementsCache;
     }
@@ -255,6 +255,10 @@ public final class DataPage extends Page<TableManager> {
     }
 
     void flushRecordsCache() {
+        if (data instanceof PackedPageRecords) {
+            // records are built at every access, there is no cache
+            return;
+        }
         data.values().forEach(r -> r.clearCache());
     }
 
@@ -37,6 +37,12 @@ public class MemoryManager {
     private static final String PAGE_REPLACEMENT_POLICY = SystemProperties.getStringSystemProperty(
             MemoryManager.class.getName() + ".pageReplacementPolicy", "cp").toLowerCase(Locale.US);
 
+    /**
+     * Maximum number of shards of the "scp" (sharded ClockPro) policy, see {@link ShardedPageReplacementPolicy}
+     */
+    private static final int PAGE_REPLACEMENT_POLICY_SHARDS = SystemProperties.getIntSystemProperty(
+            MemoryManager.class.getName() + ".pageReplacementPolicyShards", Runtime.getRuntime().availableProcessors());
+
     private final long maxDataUsedMemory;
     private final long maxIndexUsedMemory;
     private final long maxPKUsedMemory;
@@ -99,6 +105,12 @@ public class MemoryManager {
                 pkPageReplacementPolicy = new ClockProPolicy(pkPages);
                 break;
 
+            case "scp":
+                dataPageReplacementPolicy = shardedClockPro(dataPages);
+                indexPageReplacementPolicy = indexPages > 0 ? shardedClockPro(dataPages) : dataPageReplacementPolicy;
+                pkPageReplacementPolicy = shardedClockPro(pkPages);
+                break;
+
             case "car":
             default:
                 dataPageReplacementPolicy = new ClockAdaptiveReplacement(dataPages);
@@ -108,6 +120,10 @@ public class MemoryManager {
 
     }
 
+    private static PageReplacementPolicy shardedClockPro(int pages) {
+        return new ShardedPageReplacementPolicy(pages, PAGE_REPLACEMENT_POLICY_SHARDS, ClockProPolicy::new);
+    }
+
     public long getMaxDataUsedMemory() {
         return maxDataUsedMemory;
     }
@@ -0,0 +1,239 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import herddb.model.Record;
+import herddb.utils.Bytes;
+import herddb.utils.CompareBytesUtils;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compact read only representation of the records of an immutable
+ * {@link DataPage}.
+ * <p>
+ * Keys and values are packed in a single byte array, sorted by key, and an
+ * offset array delimits each key and value. Lookups use a binary search and
+ * there is no per record overhead like with an {@link java.util.HashMap}.
+ * <p>
+ * Returned {@link Record records} share the page buffer (see
+ * {@link Bytes#isShared()}), callers which retain them must use
+ * {@link Record#nonShared()}.
+ *
+ * @author enrico.olivelli
+ */
+final class PackedPageRecords extends AbstractMap<Bytes, Record> {
+
+    /**
+     * Fixed heap overhead of an instance (object and array headers and
+     * references)
+     */
+    private static final long CONSTANT_BYTE_SIZE = 80;
+
+    private final byte[] data;
+    /**
+     * Key of record i goes from offsets[2 * i] to offsets[2 * i + 1], its value
+     * from offsets[2 * i + 1] to offsets[2 * i + 2]
+     */
+    private final int[] offsets;
+    private final int size;
+
+    private PackedPageRecords(byte[] data, int[] offsets, int size) {
+        this.data = data;
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+    /**
+     * Packs a list of records. Keys must be unique.
+     *
+     * @param records the records
+     * @return the packed records
+     */
+    static PackedPageRecords pack(Collection<Record> records) {
+        Record[] sorted = records.toArray(new Record[0]);
+        Arrays.sort(sorted, (a, b) -> a.key.compareTo(b.key));
+        long totalSize = 0;
+        for (Record r : sorted) {
+            totalSize += r.key.getLength() + r.value.getLength();
+        }
+        if (totalSize > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("page too big to be packed: " + totalSize + " bytes");
+        }
+        byte[] data = new byte[(int) totalSize];
+        int[] offsets = new int[2 * sorted.length + 1];
+        int position = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            Record r = sorted[i];
+            offsets[2 * i] = position;
+            System.arraycopy(r.key.getBuffer(), r.key.getOffset(), data, position, r.key.getLength());
+            position += r.key.getLength();
+            offsets[2 * i + 1] = position;
+            System.arraycopy(r.value.getBuffer(), r.value.getOffset(), data, position, r.value.getLength());
+            position += r.value.getLength();
+        }
+        offsets[2 * sorted.length] = position;
+        return new PackedPageRecords(data, offsets, sorted.length);
+    }
+
+    /**
+     * Estimated heap size of the page
+     *
+     * @return size in bytes
+     */
+    long getEstimatedSize() {
+        return CONSTANT_BYTE_SIZE + data.length + (long) offsets.length * Integer.BYTES;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf((Bytes) key) >= 0;
+    }
+
+    @Override
+    public Record get(Object key) {
+        int index = indexOf((Bytes) key);
+        if (index < 0) {
+            return null;
+        }
+        return record(index);
+    }
+
+    private int indexOf(Bytes key) {
+        byte[] keyBuffer = key.getBuffer();
+        int keyStart = key.getOffset();
+        int keyEnd = keyStart + key.getLength();
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = CompareBytesUtils.compare(data, offsets[2 * mid], offsets[2 * mid + 1],
+                    keyBuffer, keyStart, keyEnd);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private Record record(int index) {
+        int keyStart = offsets[2 * index];
+        int valueStart = offsets[2 * index + 1];
+        int valueEnd = offsets[2 * index + 2];
+        return new Record(Bytes.from_array(data, keyStart, valueStart - keyStart),
+                Bytes.from_array(data, valueStart, valueEnd - valueStart));
+    }
+
+    @Override
+    public Record put(Bytes key, Record value) {
+        throw new UnsupportedOperationException("page is read only");
+    }
+
+    @Override
+    public Record remove(Object key) {
+        throw new UnsupportedOperationException("page is read only");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("page is read only");
+    }
+
+    private abstract class PackedIterator<T> implements Iterator<T> {
+
+        private int index;
+
+        @Override
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        Record nextRecord() {
+            if (index >= size) {
+                throw new NoSuchElementException();
+            }
+            return record(index++);
+        }
+    }
+
+    @Override
+    public Collection<Record> values() {
+        return new AbstractCollection<Record>() {
+            @Override
+            public Iterator<Record> iterator() {
+                return new PackedIterator<Record>() {
+                    @Override
+                    public Record next() {
+                        return nextRecord();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<Bytes, Record>> entrySet() {
+        return new AbstractSet<Map.Entry<Bytes, Record>>() {
+            @Override
+            public Iterator<Map.Entry<Bytes, Record>> iterator() {
+                return new PackedIterator<Map.Entry<Bytes, Record>>() {
+                    @Override
+                    public Map.Entry<Bytes, Record> next() {
+                        Record record = nextRecord();
+                        return new AbstractMap.SimpleImmutableEntry<>(record.key, record);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import herddb.utils.Bytes;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * State of a full table scan which reads the pages of the table directly,
+ * without walking the primary key index.
+ * <p>
+ * A record of a page is returned only if the primary key index still points to
+ * that page, but a record can move to another page while the scan is running
+ * (UPDATE, checkpoint) and the scan could see it twice or never. For this
+ * reason the {@link TableManager} notifies every move to the running scans,
+ * holding the scan locks of both of the pages, the same locks are held by the
+ * scan while it processes a page:
+ * <ul>
+ * <li>a record which moves away from an immutable page which has already been
+ * processed has already been returned, it is marked as <i>emitted</i> and it
+ * will be skipped in the other pages
+ * <li>any other record which moves is marked as <i>moved</i>, it is skipped
+ * in every page and its last version is read from the primary key index at the
+ * end of the scan
+ * </ul>
+ * Only the keys of the records which change during the scan and the keys of
+ * the records of mutable pages are retained.
+ *
+ * @author enrico.olivelli
+ */
+final class PageOrderScan {
+
+    private volatile Set<Long> immutablePages = Collections.emptySet();
+    private final Set<Long> processedPages = ConcurrentHashMap.newKeySet();
+    private final Set<Bytes> emittedKeys = ConcurrentHashMap.newKeySet();
+    private final Set<Bytes> movedKeys = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * Sets the pages which cannot receive records anymore, they are processed
+     * without keeping track of the returned records.
+     */
+    void setImmutablePages(Set<Long> immutablePages) {
+        this.immutablePages = immutablePages;
+    }
+
+    boolean isImmutablePage(Long pageId) {
+        return immutablePages.contains(pageId);
+    }
+
+    /**
+     * Notifies that a record has been moved to another page, the caller holds
+     * the scan locks of both of the pages.
+     */
+    void recordMoved(Bytes key, Long fromPageId) {
+        if (isImmutablePage(fromPageId) && processedPages.contains(fromPageId) && !movedKeys.contains(key)) {
+            emittedKeys.add(key);
+        } else {
+            movedKeys.add(key);
+        }
+    }
+
+    /**
+     * Checks if a record of a page which is being processed has to be
+     * returned, the caller holds the scan lock of the page and the primary key
+     * index points to the page.
+     */
+    boolean acceptRecord(Bytes key, boolean immutablePage) {
+        if (movedKeys.contains(key)) {
+            return false;
+        }
+        if (immutablePage) {
+            return !emittedKeys.contains(key);
+        }
+        return emittedKeys.add(key);
+    }
+
+    /**
+     * Marks a page as processed, the caller holds the scan lock of the page.
+     */
+    void pageProcessed(Long pageId) {
+        processedPages.add(pageId);
+    }
+
+    /**
+     * Records which moved during the scan and that still have to be returned.
+     */
+    Set<Bytes> getMovedKeys() {
+        return movedKeys;
+    }
+
+    /**
+     * Marks a moved record as returned.
+     *
+     * @return false if the record has already been returned
+     */
+    boolean emitMovedRecord(Bytes key) {
+        return emittedKeys.add(key);
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        closed = true;
+    }
+}
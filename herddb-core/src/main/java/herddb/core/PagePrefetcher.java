@@ -0,0 +1,255 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import herddb.model.Record;
+import herddb.utils.Bytes;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads ahead the pages needed by a scan.
+ * <p>
+ * The scan passes the (key, page) entries it is going to access through
+ * {@link #lookAhead(java.util.Iterator, int)}, which keeps a window of
+ * upcoming entries and starts an asynchronous read for every page of the
+ * window which is not in memory. When the scan needs one of these pages the
+ * records are taken from the pending read instead of issuing a new one, see
+ * {@link #take(java.lang.Long)}.
+ * <p>
+ * The number of pages read ahead, besides the one which is being accessed,
+ * starts from one and doubles every time a prefetched page is used, up to the configured limit, so that short scans
+ * (LIMIT, early exit) do not read many useless pages. The records read ahead
+ * are held outside of the page replacement policy until the scan uses them, so
+ * no page is read ahead when they would exceed the configured amount of memory:
+ * pending reads count as a full page, completed reads count as the estimated
+ * size of their records.
+ * <p>
+ * A prefetcher belongs to a single scan and it is used by one thread at a
+ * time. Pages are immutable once written, so a page read ahead is always
+ * valid; if a read fails the page is simply read again synchronously.
+ *
+ * @author enrico.olivelli
+ */
+final class PagePrefetcher {
+
+    private static final Logger LOGGER = Logger.getLogger(PagePrefetcher.class.getName());
+
+    private final int maxPages;
+    private final long maxMemory;
+    private final long pageSize;
+    private final Predicate<Long> pageLoaded;
+    private final Function<Long, CompletableFuture<List<Record>>> pageReader;
+    private final Map<Long, PendingRead> pendingReads = new HashMap<>();
+    private final Map<Long, Integer> upcomingPages = new HashMap<>();
+    private int depth = 1;
+    private long prefetchedPages;
+    private long usedPages;
+
+    /**
+     * A page which is being read ahead.
+     */
+    private final class PendingRead {
+
+        private final CompletableFuture<List<Record>> read;
+        private long memory = -1;
+
+        PendingRead(CompletableFuture<List<Record>> read) {
+            this.read = read;
+        }
+
+        long memory() {
+            if (memory < 0 && read.isDone()) {
+                long size = 0;
+                List<Record> records = read.isCompletedExceptionally() ? null : read.getNow(null);
+                if (records != null) {
+                    for (Record record : records) {
+                        size += DataPage.estimateEntrySize(record);
+                    }
+                }
+                memory = size;
+            }
+            return memory >= 0 ? memory : pageSize;
+        }
+    }
+
+    /**
+     * @param maxPages   maximum number of pages read ahead
+     * @param maxMemory  maximum amount of memory held by the pages read ahead
+     * @param pageSize   maximum size of a page
+     * @param pageLoaded tells if a page is already in memory
+     * @param pageReader starts the read of a page
+     */
+    PagePrefetcher(
+            int maxPages, long maxMemory, long pageSize,
+            Predicate<Long> pageLoaded, Function<Long, CompletableFuture<List<Record>>> pageReader
+    ) {
+        this.maxPages = maxPages;
+        this.maxMemory = maxMemory;
+        this.pageSize = pageSize;
+        this.pageLoaded = pageLoaded;
+        this.pageReader = pageReader;
+    }
+
+    /**
+     * Wraps the entries accessed by the scan, the entries are returned in the
+     * same order.
+     *
+     * @param entries entries to access, the value is the id of the page
+     * @param window  maximum number of entries kept in the look ahead window
+     */
+    Iterator<Map.Entry<Bytes, Long>> lookAhead(Iterator<Map.Entry<Bytes, Long>> entries, int window) {
+        return new Iterator<Map.Entry<Bytes, Long>>() {
+
+            private final ArrayDeque<Map.Entry<Bytes, Long>> buffer = new ArrayDeque<>();
+            private Map.Entry<Bytes, Long> current;
+
+            @Override
+            public boolean hasNext() {
+                advance();
+                return !buffer.isEmpty();
+            }
+
+            @Override
+            public Map.Entry<Bytes, Long> next() {
+                advance();
+                if (buffer.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                current = buffer.poll();
+                return current;
+            }
+
+            private void advance() {
+                if (current != null) {
+                    /* the scan is done with the previous entry */
+                    accessed(current.getValue());
+                    current = null;
+                }
+                /* keep in the window the entries of the current page and of the next pages */
+                while (entries.hasNext()
+                        && (buffer.isEmpty() || (buffer.size() < window && upcomingPages.size() <= depth))) {
+                    Map.Entry<Bytes, Long> entry = entries.next();
+                    buffer.add(entry);
+                    Long pageId = entry.getValue();
+                    if (pageId != null && upcomingPages.merge(pageId, 1, Integer::sum) == 1) {
+                        prefetch(pageId);
+                    }
+                }
+            }
+        };
+    }
+
+    private void prefetch(Long pageId) {
+        if (pendingReads.containsKey(pageId) || pageLoaded.test(pageId)) {
+            return;
+        }
+        if (getPendingMemory() > maxMemory - pageSize) {
+            // the page will be read synchronously
+            return;
+        }
+        CompletableFuture<List<Record>> read;
+        try {
+            read = pageReader.apply(pageId);
+        } catch (RuntimeException err) {
+            // the page will be read synchronously
+            LOGGER.log(Level.FINE, "cannot prefetch page " + pageId, err);
+            return;
+        }
+        pendingReads.put(pageId, new PendingRead(read));
+        prefetchedPages++;
+    }
+
+    /**
+     * Memory held by the pages which are being read ahead.
+     */
+    long getPendingMemory() {
+        long memory = 0;
+        for (PendingRead pending : pendingReads.values()) {
+            memory += pending.memory();
+        }
+        return memory;
+    }
+
+    private void accessed(Long pageId) {
+        if (pageId == null) {
+            return;
+        }
+        Integer remaining = upcomingPages.computeIfPresent(pageId, (id, count) -> count == 1 ? null : count - 1);
+        if (remaining == null) {
+            // no more entries of the window need the page, drop the read if
+            // it has not been used (the page was already in memory)
+            PendingRead dropped = pendingReads.remove(pageId);
+            if (dropped != null) {
+                dropped.read.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Takes the records of a page read ahead, waiting for the read to
+     * complete.
+     *
+     * @return the records, null if the page has not been read ahead or if the
+     * read failed
+     */
+    List<Record> take(Long pageId) {
+        PendingRead pending = pendingReads.remove(pageId);
+        if (pending == null) {
+            return null;
+        }
+        List<Record> records;
+        try {
+            records = pending.read.join();
+        } catch (CompletionException | CancellationException err) {
+            LOGGER.log(Level.FINE, "prefetch of page " + pageId + " failed", err);
+            return null;
+        }
+        if (records != null) {
+            usedPages++;
+            depth = Math.min(depth * 2, maxPages);
+        }
+        return records;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    long getPrefetchedPages() {
+        return prefetchedPages;
+    }
+
+    long getUsedPages() {
+        return usedPages;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import herddb.utils.Bytes;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Previous versions of the records of a table, needed by the transactions
+ * which read from a snapshot, see {@link TransactionSnapshots}.
+ * <p>
+ * Before applying a change to a record while there are active snapshots the
+ * table saves the current value of the record (null if the record does not
+ * exist), tagged with the id of the last snapshot: the change is not visible to
+ * that snapshot and to the older ones. A new version is saved only if the
+ * latest version of the record has been saved for an older snapshot, so the
+ * chain of versions of a record contains at most one version per snapshot,
+ * from the newest to the oldest.
+ * <p>
+ * Versions which are not needed by any active snapshot are dropped when a
+ * snapshot is released.
+ *
+ * @author enrico.olivelli
+ */
+final class RecordVersions {
+
+    static final class Version {
+
+        /**
+         * the change is not visible to this snapshot and to the older ones
+         */
+        final long snapshotId;
+        /**
+         * value of the record before the change, null if the record did not
+         * exist
+         */
+        final Bytes value;
+        volatile Version older;
+
+        Version(long snapshotId, Bytes value, Version older) {
+            this.snapshotId = snapshotId;
+            this.value = value;
+            this.older = older;
+        }
+    }
+
+    private final ConcurrentHashMap<Bytes, Version> versions = new ConcurrentHashMap<>();
+
+    /**
+     * Saves the current value of a record which is going to be changed. The
+     * caller holds the lock on the record and it is applying the change.
+     *
+     * @param lastSnapshotId id of the last snapshot taken
+     * @param currentValue   reads the current value of the record, null if
+     *                       the record does not exist
+     */
+    void recordChange(Bytes key, long lastSnapshotId, Supplier<Bytes> currentValue) {
+        Version head = versions.get(key);
+        if (head != null && head.snapshotId == lastSnapshotId) {
+            // the last snapshot already sees an older version
+            return;
+        }
+        Bytes value = currentValue.get();
+        versions.compute(key, (k, current) -> {
+            if (current != null && current.snapshotId == lastSnapshotId) {
+                return current;
+            }
+            return new Version(lastSnapshotId, value, current);
+        });
+    }
+
+    /**
+     * Looks for the version of a record seen by a snapshot. The current value
+     * of the record must have been read before calling this method: a change
+     * always saves the previous version before modifying the record.
+     *
+     * @return null if the record has not been changed after the snapshot, that
+     * is the current value of the record is the one seen by the snapshot
+     */
+    Version lookup(Bytes key, long snapshotId) {
+        Version version = versions.get(key);
+        Version result = null;
+        while (version != null && version.snapshotId >= snapshotId) {
+            result = version;
+            version = version.older;
+        }
+        return result;
+    }
+
+    /**
+     * Records changed after some active snapshot
+     */
+    Set<Bytes> keys() {
+        return versions.keySet();
+    }
+
+    /**
+     * Drops the versions which are not needed by any active snapshot.
+     *
+     * @param oldestActiveSnapshot versions saved for older snapshots are not
+     *                             needed anymore
+     */
+    void prune(long oldestActiveSnapshot) {
+        for (Bytes key : versions.keySet()) {
+            versions.computeIfPresent(key, (k, head) -> {
+                if (head.snapshotId < oldestActiveSnapshot) {
+                    return null;
+                }
+                Version version = head;
+                while (version.older != null && version.older.snapshotId >= oldestActiveSnapshot) {
+                    version = version.older;
+                }
+                version.older = null;
+                return head;
+            });
+        }
+    }
+
+    int size() {
+        return versions.size();
+    }
+}
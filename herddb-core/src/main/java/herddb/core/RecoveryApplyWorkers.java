@@ -0,0 +1,191 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import herddb.utils.Bytes;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Striped workers which apply DML log entries during the recovery of a
+ * tablespace.
+ * <p>
+ * Entries are routed by table and primary key, so all the changes to the same
+ * record are applied in log order by the same worker. The caller must
+ * {@link #drain() drain} the workers before applying any other entry (DMLs
+ * inside transactions, commits, rollbacks, DDLs) in its own thread.
+ * <p>
+ * Each worker has a bounded queue, when it is full the reader of the log
+ * blocks: we cannot run the task in the caller thread, it would break the
+ * ordering of the entries of the stripe.
+ *
+ * @author enrico.olivelli
+ */
+final class RecoveryApplyWorkers implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(RecoveryApplyWorkers.class.getName());
+
+    /**
+     * A change to apply
+     */
+    @FunctionalInterface
+    interface ApplyTask {
+
+        void apply() throws Exception;
+    }
+
+    private static final ApplyTask POISON_PILL = () -> {
+    };
+
+    private static final class Barrier implements ApplyTask {
+
+        private final CountDownLatch latch;
+
+        private Barrier(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void apply() {
+            latch.countDown();
+        }
+    }
+
+    private final Worker[] workers;
+    private volatile Throwable error;
+
+    RecoveryApplyWorkers(String tableSpaceName, int parallelism, int queueCapacity) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("invalid parallelism " + parallelism);
+        }
+        this.workers = new Worker[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            workers[i] = new Worker("hdb-recovery-" + tableSpaceName + "-" + i, queueCapacity);
+            workers[i].start();
+        }
+    }
+
+    int getParallelism() {
+        return workers.length;
+    }
+
+    /**
+     * Schedules a change.
+     *
+     * @param tableName the table
+     * @param key       the primary key of the record
+     * @param task      the change
+     */
+    void submit(String tableName, Bytes key, ApplyTask task) {
+        checkError();
+        int hash = 31 * tableName.hashCode() + key.hashCode();
+        Worker worker = workers[Math.floorMod(hash, workers.length)];
+        try {
+            worker.queue.put(task);
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(err);
+        }
+    }
+
+    /**
+     * Waits for all the scheduled changes to be applied.
+     *
+     * @throws RuntimeException if a change could not be applied
+     */
+    void drain() {
+        CountDownLatch latch = new CountDownLatch(workers.length);
+        Barrier barrier = new Barrier(latch);
+        try {
+            for (Worker worker : workers) {
+                worker.queue.put(barrier);
+            }
+            latch.await();
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(err);
+        }
+        checkError();
+    }
+
+    private void checkError() {
+        Throwable err = error;
+        if (err != null) {
+            throw new RuntimeException("recovery failed: " + err, err);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Worker worker : workers) {
+            worker.queue.clear();
+            worker.queue.offer(POISON_PILL);
+        }
+        for (Worker worker : workers) {
+            try {
+                worker.join(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException err) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private final class Worker extends Thread {
+
+        private final BlockingQueue<ApplyTask> queue;
+
+        Worker(String name, int queueCapacity) {
+            super(name);
+            setDaemon(true);
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                ApplyTask task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException err) {
+                    return;
+                }
+                if (task == POISON_PILL) {
+                    return;
+                }
+                if (error != null && !(task instanceof Barrier)) {
+                    // after an error we only release the drain barriers
+                    continue;
+                }
+                try {
+                    task.apply();
+                } catch (Throwable err) {
+                    LOGGER.log(Level.SEVERE, "error while applying a log entry on " + getName(), err);
+                    error = err;
+                }
+            }
+        }
+    }
+}
@@ -22,9 +22,12 @@ package herddb.core;
 
 import static herddb.sql.JSQLParserPlanner.delimit;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import herddb.codec.RecordDelta;
 import herddb.codec.RecordSerializer;
 import herddb.core.PageSet.DataPageMetaData;
 import herddb.core.stats.TableManagerStats;
+import herddb.core.stats.TableStatistics;
+import herddb.core.stats.TableStatisticsCollector;
 import herddb.index.IndexOperation;
 import herddb.index.KeyToPageIndex;
 import herddb.index.PrimaryIndexSeek;
@@ -38,6 +41,7 @@ import herddb.log.LogSequenceNumber;
 import herddb.model.Column;
 import herddb.model.ColumnTypes;
 import herddb.model.DDLException;
+import herddb.model.DDLStatementExecutionResult;
 import herddb.model.DMLStatementExecutionResult;
 import herddb.model.DataScanner;
 import herddb.model.DataScannerException;
@@ -63,6 +67,7 @@ import herddb.model.Transaction;
 import herddb.model.TransactionContext;
 import herddb.model.TupleComparator;
 import herddb.model.UniqueIndexContraintViolationException;
+import herddb.model.commands.AnalyzeTableStatement;
 import herddb.model.commands.DeleteStatement;
 import herddb.model.commands.GetStatement;
 import herddb.model.commands.InsertStatement;
@@ -89,6 +94,7 @@ import herddb.utils.LockHandle;
 import herddb.utils.NullLockManager;
 import herddb.utils.SystemProperties;
 import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -101,9 +107,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
@@ -120,6 +133,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -152,6 +166,16 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
     private static final boolean ENABLE_STREAMING_DATA_SCANNER = SystemProperties.
             getBooleanSystemProperty("herddb.tablemanager.enableStreamingDataScanner", true);
 
+    private static final int PAGE_ORDER_SCAN_LOCKS = 64;
+
+    /**
+     * Store pages loaded from disk in the compact {@link PackedPageRecords} format instead of an
+     * {@link HashMap}. This is opt-in: packed pages use less memory but every lookup builds a new
+     * {@link Record}, losing its deserialization cache
+     */
+    private static final boolean ENABLE_PACKED_IMMUTABLE_PAGES = SystemProperties.
+            getBooleanSystemProperty("herddb.tablemanager.enablePackedImmutablePages", false);
+
     /**
      * Ignores insert/update/delete failures due to missing transactions during recovery. The operation in
      * recovery will be ignored.
@@ -314,6 +338,51 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
 
     private final boolean keyToPageSortedAscending;
 
+    /**
+     * Log only the changed columns for UPDATEs
+     */
+    private final boolean deltaUpdates;
+
+    /**
+     * Minimum number of pages in order to scan the table in page order, see
+     * {@link #accessTableDataInPageOrder}
+     */
+    private final int pageOrderScanMinPages;
+
+    /**
+     * Maximum number of pages read ahead by each scan, see {@link PagePrefetcher}
+     */
+    private final int scanPrefetchPages;
+
+    /**
+     * Snapshots read by transactions without read locks, null if snapshot
+     * reads are disabled
+     */
+    private final TransactionSnapshots snapshots;
+
+    /**
+     * Previous versions of the records changed after the active snapshots
+     */
+    private final RecordVersions recordVersions;
+
+    /**
+     * Statistics computed by the last ANALYZE TABLE, they are persisted at
+     * checkpoint
+     */
+    private volatile TableStatistics statistics;
+
+    /**
+     * Running page order scans, they are notified about every record which
+     * changes page
+     */
+    private final List<PageOrderScan> pageOrderScans = new CopyOnWriteArrayList<>();
+
+    /**
+     * Striped locks by page id, held while a record moves away from a page and
+     * while a page order scan processes a page
+     */
+    private final ReentrantLock[] pageOrderScanLocks = new ReentrantLock[PAGE_ORDER_SCAN_LOCKS];
+
     private volatile boolean closed;
 
     private StatsLogger tableStatsLogger;
@@ -548,6 +617,20 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         }
         this.keyToPageSortedAscending = keyToPage.isSortedAscending(pkTypes);
 
+        this.deltaUpdates = tableSpaceManager.getDbmanager().getServerConfiguration().getBoolean(
+                ServerConfiguration.PROPERTY_TABLEMANAGER_DELTA_UPDATES,
+                ServerConfiguration.PROPERTY_TABLEMANAGER_DELTA_UPDATES_DEFAULT);
+
+        this.pageOrderScanMinPages = tableSpaceManager.getDbmanager().getServerConfiguration().getInt(
+                ServerConfiguration.PROPERTY_TABLE_SCAN_PARALLEL_MIN_PAGES,
+                ServerConfiguration.PROPERTY_TABLE_SCAN_PARALLEL_MIN_PAGES_DEFAULT);
+        this.scanPrefetchPages = tableSpaceManager.getDbmanager().getScanPrefetchPages();
+        this.snapshots = tableSpaceManager.getTransactionSnapshots();
+        this.recordVersions = snapshots != null ? new RecordVersions() : null;
+        for (int i = 0; i < pageOrderScanLocks.length; i++) {
+            pageOrderScanLocks[i] = new ReentrantLock();
+        }
+
         boolean nolocks = tableSpaceManager.getDbmanager().getServerConfiguration().getBoolean(
                 ServerConfiguration.PROPERTY_TABLEMANAGER_DISABLE_ROWLEVELLOCKS,
                 ServerConfiguration.PROPERTY_TABLEMANAGER_DISABLE_ROWLEVELLOCKS_DEFAULT
@@ -694,6 +777,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             bootSequenceNumber = tableStatus.sequenceNumber;
             lastAppliedSequenceNumber.set(bootSequenceNumber);
             activePagesAtBoot.putAll(tableStatus.activePages);
+            statistics = tableStatus.statistics;
         }
         keyToPage.start(bootSequenceNumber, created);
 
@@ -739,6 +823,13 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                 LOGGER.log(Level.SEVERE, "Truncate table failed", err);
                 res = Futures.exception(err);
             }
+        } else if (statement instanceof AnalyzeTableStatement) {
+            try {
+                res = CompletableFuture.completedFuture(executeAnalyzeTable(transaction));
+            } catch (DataStorageManagerException err) {
+                LOGGER.log(Level.SEVERE, "Analyze table failed", err);
+                res = Futures.exception(new StatementExecutionException("internal data error: " + err, err));
+            }
         } else if (statement instanceof TableConsistencyCheckStatement) {
             DBManager manager = this.tableSpaceManager.getDbmanager();
             res = CompletableFuture.completedFuture(manager.createTableCheckSum((TableConsistencyCheckStatement) statement, context));
@@ -1158,7 +1249,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                 Record record = records.next().nonShared();
                 add = page.put(record);
                 if (add) {
-                    boolean moved = keyToPage.put(record.key, page.pageId, spareDataPage.pageId);
+                    boolean moved = moveRecordReference(record.key, spareDataPage.pageId, page.pageId, true);
                     if (!moved) {
                         LOGGER.log(Level.SEVERE,
                                 "Detected a dirty page as spare data page while flushing new page. Flushing new page {0}. Spare data page {1}",
@@ -1323,6 +1414,114 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         }
     }
 
+    private CompletableFuture<LockHandle> lockForWriteAsync(Bytes key, Transaction transaction) {
+        return lockForWriteAsync(key, transaction, table.name, locksManager);
+    }
+
+    /**
+     * Same as {@link #lockForWrite(herddb.utils.Bytes, herddb.model.Transaction, java.lang.String, herddb.utils.ILocalLockManager)}
+     * but the current thread does not wait if the key is locked by another
+     * statement.
+     */
+    private static CompletableFuture<LockHandle> lockForWriteAsync(Bytes key, Transaction transaction, String lockKey, ILocalLockManager locksManager) {
+        try {
+            if (transaction != null) {
+                LockHandle lock = transaction.lookupLock(lockKey, key);
+                if (lock != null) {
+                    if (lock.write) {
+                        // transaction already locked the key for writes
+                        return CompletableFuture.completedFuture(lock);
+                    }
+                    // transaction already locked the key, but we need to upgrade the lock
+                    locksManager.releaseLock(lock);
+                    transaction.unregisterUpgradedLocksOnTable(lockKey, lock);
+                }
+                return locksManager.acquireWriteLockForKeyAsync(key).thenApply(handle -> {
+                    transaction.registerLockOnTable(lockKey, handle);
+                    return handle;
+                });
+            } else {
+                return locksManager.acquireWriteLockForKeyAsync(key);
+            }
+        } catch (HerdDBInternalException err) {
+            return Futures.exception(err);
+        } catch (RuntimeException err) {
+            return Futures.exception(new StatementExecutionException(err));
+        }
+    }
+
+    /**
+     * Lock on the record accessed by an UPDATE or a DELETE by primary key,
+     * acquired before the access to the table.
+     */
+    private static final class KeyLock {
+
+        private final LockHandle handle;
+        /**
+         * the transaction was already holding a lock on the key
+         */
+        private final boolean alreadyLocked;
+        /**
+         * the primary key seek took care of the lock
+         */
+        private boolean seeked;
+
+        private KeyLock(LockHandle handle, boolean alreadyLocked) {
+            this.handle = handle;
+            this.alreadyLocked = alreadyLocked;
+        }
+    }
+
+    /**
+     * Acquires the write lock on the record accessed by a statement by primary
+     * key without blocking the current thread, this way many statements on the
+     * same hot record do not hold many threads.
+     *
+     * @return null if the statement does not access a single existing record
+     * or if the lock is not needed
+     */
+    private CompletableFuture<KeyLock> lockPrimaryKeySeekAsync(Predicate predicate, Transaction transaction, StatementEvaluationContext context) {
+        if (predicate == null || !(predicate.getIndexOperation() instanceof PrimaryIndexSeek)) {
+            return null;
+        }
+        Bytes key;
+        try {
+            PrimaryIndexSeek seek = (PrimaryIndexSeek) predicate.getIndexOperation();
+            key = Bytes.from_array(seek.value.computeNewValue(null, context, tableContext));
+        } catch (RuntimeException err) {
+            // the error will be reported by the scan
+            return null;
+        }
+        if (!keyToPage.containsKey(key)) {
+            return null;
+        }
+        LockHandle current = transaction != null ? transaction.lookupLock(table.name, key) : null;
+        if (current != null && current.write) {
+            return null;
+        }
+        return lockForWriteAsync(key, transaction).thenApply(handle -> new KeyLock(handle, current != null));
+    }
+
+    /**
+     * Executes the statement when the lock has been acquired: if the lock has
+     * been granted immediately the statement goes on in the current thread,
+     * otherwise the statement goes on in a thread pool, never in the thread
+     * which released the lock.
+     */
+    private <T> CompletableFuture<StatementExecutionResult> whenLocked(CompletableFuture<T> lock,
+                                                                       Function<T, CompletableFuture<StatementExecutionResult>> statement) {
+        if (lock.isDone()) {
+            T handle;
+            try {
+                handle = lock.join();
+            } catch (CompletionException err) {
+                return Futures.exception(err.getCause());
+            }
+            return statement.apply(handle);
+        }
+        return lock.thenComposeAsync(statement, tableSpaceManager.getDbmanager().getLockWaitersExecutor());
+    }
+
     private LockHandle lockForRead(Bytes key, Transaction transaction) {
         return lockForRead(key, transaction, table.name, locksManager);
     }
@@ -1403,10 +1602,16 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                     .exception(new RecordTooBigException("New record " + key + " is to big to be inserted: size " + size + ", max size " + maxLogicalPageSize));
         }
 
+        final List<UniqueIndexLockReference> _uniqueIndexes = uniqueIndexes;
+        return whenLocked(lockForWriteAsync(key, transaction),
+                lock -> executeInsertAsync(insert, transaction, key, value, _uniqueIndexes, lock));
+    }
+
+    private CompletableFuture<StatementExecutionResult> executeInsertAsync(InsertStatement insert, Transaction transaction,
+                                                                           Bytes key, byte[] value,
+                                                                           List<UniqueIndexLockReference> uniqueIndexes, LockHandle lock) {
         CompletableFuture<StatementExecutionResult> res = null;
-        LockHandle lock = null;
         try {
-            lock = lockForWrite(key, transaction);
             if (uniqueIndexes != null) {
                 for (UniqueIndexLockReference uniqueIndexLock : uniqueIndexes) {
                     AbstractIndexManager index = uniqueIndexLock.indexManager;
@@ -1747,6 +1952,15 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
     }
 
     private CompletableFuture<StatementExecutionResult> executeUpdateAsync(UpdateStatement update, Transaction transaction, StatementEvaluationContext context) throws StatementExecutionException, DataStorageManagerException {
+        CompletableFuture<KeyLock> keyLock = lockPrimaryKeySeekAsync(update.getPredicate(), transaction, context);
+        if (keyLock == null) {
+            return executeUpdateAsync(update, transaction, context, null);
+        }
+        return whenLocked(keyLock, lock -> executeUpdateAsync(update, transaction, context, lock));
+    }
+
+    private CompletableFuture<StatementExecutionResult> executeUpdateAsync(UpdateStatement update, Transaction transaction, StatementEvaluationContext context,
+                                                                           KeyLock keyLock) throws StatementExecutionException, DataStorageManagerException {
 //        LOGGER.log(Level.SEVERE, "executeUpdateAsync, " + update + ", transaction " + transaction);
         AtomicInteger updateCount = new AtomicInteger();
         Holder<Bytes> lastKey = new Holder<>();
@@ -1836,14 +2050,22 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                     }
 
                     LogEntry entry = LogEntryFactory.update(table, current.key, Bytes.from_array(newValue), transaction);
-                    CommitLogResult pos = log.log(entry, entry.transactionId <= 0);
+                    LogEntry logEntry = entry;
+                    if (deltaUpdates) {
+                        byte[] delta = RecordDelta.computeDelta(current.value, newValue, table);
+                        if (delta != null) {
+                            // we already know the new value, so we apply the full UPDATE entry
+                            logEntry = LogEntryFactory.updateDelta(table, current.key, Bytes.from_array(delta), transaction);
+                        }
+                    }
+                    CommitLogResult pos = log.log(logEntry, entry.transactionId <= 0);
                     final List<UniqueIndexLockReference> _uniqueIndexes = uniqueIndexes;
                     writes.add(pos.logSequenceNumber.thenApply(lsn -> new PendingLogEntryWork(entry, pos, lockHandle, _uniqueIndexes)));
                     lastKey.value = current.key;
                     lastValue.value = newValue;
                     updateCount.incrementAndGet();
                 }
-            }, transaction, true, true);
+            }, transaction, true, true, keyLock);
         } catch (HerdDBInternalException err) {
             LOGGER.log(Level.SEVERE, "bad error during an update", err);
             return Futures.exception(err);
@@ -1920,6 +2142,15 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
     }
 
     private CompletableFuture<StatementExecutionResult> executeDeleteAsync(DeleteStatement delete, Transaction transaction, StatementEvaluationContext context) {
+        CompletableFuture<KeyLock> keyLock = lockPrimaryKeySeekAsync(delete.getPredicate(), transaction, context);
+        if (keyLock == null) {
+            return executeDeleteAsync(delete, transaction, context, null);
+        }
+        return whenLocked(keyLock, lock -> executeDeleteAsync(delete, transaction, context, lock));
+    }
+
+    private CompletableFuture<StatementExecutionResult> executeDeleteAsync(DeleteStatement delete, Transaction transaction, StatementEvaluationContext context,
+                                                                           KeyLock keyLock) {
 
         AtomicInteger updateCount = new AtomicInteger();
         Holder<Bytes> lastKey = new Holder<>();
@@ -1990,7 +2221,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                     lastValue.value = current.value;
                     updateCount.incrementAndGet();
                 }
-            }, transaction, true, true);
+            }, transaction, true, true, keyLock);
         } catch (HerdDBInternalException err) {
             LOGGER.log(Level.SEVERE, "bad error during a delete", err);
             return Futures.exception(err);
@@ -2268,6 +2499,17 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             writeResult.getLogSequenceNumber();
         }
 
+        // changes of transactions are applied at commit time, see TableSpaceManager
+        long snapshotsStamp = entry.transactionId <= 0 ? tableSpaceManager.beginApplyCommittedChanges(recovery) : 0;
+        try {
+            applyEntry(writeResult, entry, recovery);
+        } finally {
+            tableSpaceManager.endApplyCommittedChanges(snapshotsStamp);
+        }
+    }
+
+    private void applyEntry(CommitLogResult writeResult, LogEntry entry, boolean recovery) throws DataStorageManagerException,
+            LogNotAvailableException {
         switch (entry.type) {
             case LogEntryType.DELETE: {
                 // remove the record from the set of existing records
@@ -2304,7 +2546,8 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                 }
                 break;
             }
-            case LogEntryType.UPDATE: {
+            case LogEntryType.UPDATE:
+            case LogEntryType.UPDATE_DELTA: {
                 Bytes key = entry.key;
                 Bytes value = entry.value;
                 if (entry.transactionId > 0) {
@@ -2318,9 +2561,15 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                             throw new DataStorageManagerException("no such transaction " + entry.transactionId);
                         }
                     } else {
+                        if (entry.type == LogEntryType.UPDATE_DELTA) {
+                            value = applyDelta(key, value, transaction);
+                        }
                         transaction.registerRecordUpdate(this.table.name, key, value, writeResult);
                     }
                 } else {
+                    if (entry.type == LogEntryType.UPDATE_DELTA) {
+                        value = applyDelta(key, value, null);
+                    }
                     try {
                         applyUpdate(key, value);
                     } catch (PageNotFoundException e) {
@@ -2411,9 +2660,174 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
 
     }
 
+    /**
+     * Saves the current version of a record before applying a committed
+     * change, if some transaction is reading from a snapshot. The caller holds
+     * the lock on the record.
+     */
+    private void saveRecordVersion(Bytes key) throws DataStorageManagerException {
+        if (snapshots == null || !snapshots.hasActiveSnapshots()) {
+            return;
+        }
+        recordVersions.recordChange(key, snapshots.getLastSnapshotId(), () -> {
+            Long pageId = keyToPage.get(key);
+            Record current = pageId != null ? fetchRecord(key, pageId, null) : null;
+            return current != null ? current.value : null;
+        });
+    }
+
+    /**
+     * Returns the version of a record seen by a snapshot, the current version
+     * must have been read before.
+     *
+     * @param current the current version of the record, null if the record
+     *                does not exist
+     * @return null if the record did not exist for the snapshot
+     */
+    private Record readSnapshotVersion(Bytes key, Record current, long snapshotId) {
+        RecordVersions.Version version = recordVersions.lookup(key, snapshotId);
+        if (version == null) {
+            return current;
+        }
+        return version.value != null ? new Record(key, version.value) : null;
+    }
+
+    /**
+     * Reads inside a transaction which do not need to lock the records read
+     * from a snapshot, if snapshot reads are enabled.
+     *
+     * @return the id of the snapshot, 0 if the read does not use a snapshot
+     */
+    private long readSnapshot(Transaction transaction, StatementEvaluationContext context, boolean lockRequired, boolean forWrite) {
+        if (snapshots == null || transaction == null || lockRequired || forWrite || context.isForceRetainReadLock()) {
+            return 0;
+        }
+        return tableSpaceManager.acquireReadSnapshot(transaction);
+    }
+
+    private StatementExecutionResult executeAnalyzeTable(Transaction transaction) throws DataStorageManagerException {
+        long start = System.currentTimeMillis();
+        TableStatisticsCollector collector = new TableStatisticsCollector(table);
+        scanForIndexRebuild(collector::accept);
+        TableStatistics newStatistics = collector.build(start);
+        statistics = newStatistics;
+        LOGGER.log(Level.INFO, "analyzed table {0}.{1}, {2} records in {3} ms",
+                new Object[]{table.tablespace, table.name, newStatistics.getRowCount(), System.currentTimeMillis() - start});
+        // cached plans have been chosen without these statistics
+        tableSpaceManager.getDbmanager().getPlanner().clearCache();
+        return new DDLStatementExecutionResult(transaction != null ? transaction.transactionId : 0);
+    }
+
+    @Override
+    public TableStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public void pruneRecordVersions(long oldestActiveSnapshot) {
+        if (recordVersions != null) {
+            recordVersions.prune(oldestActiveSnapshot);
+        }
+    }
+
+    int getRecordVersionsCount() {
+        return recordVersions != null ? recordVersions.size() : 0;
+    }
+
+    private ReentrantLock pageOrderScanLock(Long pageId) {
+        return pageOrderScanLocks[(int) (pageId % PAGE_ORDER_SCAN_LOCKS)];
+    }
+
+    /**
+     * Changes the page of a record on the PK index, notifying the running page
+     * order scans.
+     *
+     * @param conditional if true the page is changed only if the record is
+     *                    still on the old page
+     * @return false if the record was not on the old page anymore
+     */
+    private boolean moveRecordReference(Bytes key, Long fromPageId, Long toPageId, boolean conditional) {
+        final ReentrantLock fromLock = pageOrderScanLock(fromPageId);
+        fromLock.lock();
+        try {
+            if (pageOrderScans.isEmpty()) {
+                return putRecordReference(key, fromPageId, toPageId, conditional);
+            }
+        } finally {
+            fromLock.unlock();
+        }
+
+        /* Locks must always be acquired in the same order */
+        final ReentrantLock toLock = pageOrderScanLock(toPageId);
+        final boolean fromFirst = (fromPageId % PAGE_ORDER_SCAN_LOCKS) <= (toPageId % PAGE_ORDER_SCAN_LOCKS);
+        final ReentrantLock first = fromFirst ? fromLock : toLock;
+        final ReentrantLock second = fromFirst ? toLock : fromLock;
+        first.lock();
+        second.lock();
+        try {
+            final boolean moved = putRecordReference(key, fromPageId, toPageId, conditional);
+            if (moved) {
+                for (PageOrderScan scan : pageOrderScans) {
+                    scan.recordMoved(key, fromPageId);
+                }
+            }
+            return moved;
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
+    }
+
+    private boolean putRecordReference(Bytes key, Long fromPageId, Long toPageId, boolean conditional) {
+        if (conditional) {
+            return keyToPage.put(key, toPageId, fromPageId);
+        }
+        keyToPage.put(key, toPageId);
+        return true;
+    }
+
+    /**
+     * Removes a record from the PK index, notifying the running page order
+     * scans.
+     *
+     * @return the page of the record, null if the record did not exist
+     */
+    private Long removeRecordReference(Bytes key) {
+        final Long currentPageId = keyToPage.get(key);
+        if (currentPageId == null) {
+            return keyToPage.remove(key);
+        }
+        final ReentrantLock lock = pageOrderScanLock(currentPageId);
+        lock.lock();
+        try {
+            final Long pageId = keyToPage.remove(key);
+            if (pageId != null) {
+                /* A concurrent checkpoint could have moved the record, the scans handle it as any other move */
+                for (PageOrderScan scan : pageOrderScans) {
+                    scan.recordMoved(key, pageId);
+                }
+            }
+            return pageId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the changes to the PK index which started before a change to
+     * the list of running page order scans.
+     */
+    private void awaitPageOrderScanLocks() {
+        for (ReentrantLock lock : pageOrderScanLocks) {
+            lock.lock();
+            lock.unlock();
+        }
+    }
+
     private void applyDelete(Bytes key) throws DataStorageManagerException {
+        saveRecordVersion(key);
         /* This could be a normal or a temporary modifiable page */
-        final Long pageId = keyToPage.remove(key);
+        final Long pageId = removeRecordReference(key);
         if (pageId == null) {
             throw new IllegalStateException("corrupted transaction log: key " + key + " is not present in table "
                     + table.tablespace + "." + table.name);
@@ -2541,9 +2955,39 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         }
     }
 
+    /**
+     * Rebuilds the new value of a record from an {@link LogEntryType#UPDATE_DELTA} entry, the previous version is
+     * the one seen by the transaction.
+     */
+    private Bytes applyDelta(Bytes key, Bytes delta, Transaction transaction) throws DataStorageManagerException {
+        Record previous = null;
+        if (transaction != null) {
+            if (transaction.recordDeleted(table.name, key)) {
+                throw new DataStorageManagerException("corrupted transaction log: key " + key + " has been deleted by transaction "
+                        + transaction.transactionId + " on table " + table.tablespace + "." + table.name);
+            }
+            previous = transaction.recordUpdated(table.name, key);
+            if (previous == null) {
+                previous = transaction.recordInserted(table.name, key);
+            }
+        }
+        if (previous == null) {
+            Long pageId = keyToPage.get(key);
+            if (pageId != null) {
+                previous = fetchRecord(key, pageId, null);
+            }
+            if (previous == null) {
+                throw new DataStorageManagerException("corrupted transaction log: key " + key + " is not present in table "
+                        + table.tablespace + "." + table.name + ", cannot apply delta update");
+            }
+        }
+        return Bytes.from_array(RecordDelta.applyDelta(previous.value, delta, table));
+    }
+
     private void applyUpdate(Bytes key, Bytes value) throws DataStorageManagerException {
         // do not want to retain shared buffers as keys
         key = key.nonShared();
+        saveRecordVersion(key);
 
         /*
          * New record to be updated, it will always updated if there aren't errors thus is simpler to create
@@ -2725,7 +3169,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             }
 
             /* Update the value on keyToPage */
-            keyToPage.put(key, insertionPageId);
+            moveRecordReference(key, prevPageId, insertionPageId, false);
         }
 
         if (LOGGER.isLoggable(Level.FINEST)) {
@@ -2833,6 +3277,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
     private void applyInsert(Bytes key, Bytes value, boolean onTransaction) throws DataStorageManagerException {
         // don't want to keep strong references to shared buffers in the keyToPages
         key = key.nonShared();
+        saveRecordVersion(key);
 
         if (table.auto_increment) {
             // the next auto_increment value MUST be greater than every other explict value
@@ -2946,7 +3391,9 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         boolean requireLock = get.isRequireLock();
         boolean useWriteLock = requireLock && context.isForceAcquireWriteLock();
         long transactionId = transaction != null ? transaction.transactionId : 0;
-        LockHandle lock = (transaction != null || requireLock) ? (useWriteLock ? lockForWrite(key, transaction) : lockForRead(key, transaction)) : null;
+        long snapshotId = readSnapshot(transaction, context, requireLock, useWriteLock);
+        LockHandle lock = ((transaction != null && snapshotId == 0) || requireLock)
+                ? (useWriteLock ? lockForWrite(key, transaction) : lockForRead(key, transaction)) : null;
         CompletableFuture<StatementExecutionResult> res = null;
         try {
             if (transaction != null) {
@@ -2974,15 +3421,14 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             }
             if (res == null) {
                 Long pageId = keyToPage.get(key);
-                if (pageId == null) {
+                Record loaded = pageId != null ? fetchRecord(key, pageId, null) : null;
+                if (snapshotId > 0) {
+                    loaded = readSnapshotVersion(key, loaded, snapshotId);
+                }
+                if (loaded == null || (predicate != null && !predicate.evaluate(loaded, context))) {
                     res = CompletableFuture.completedFuture(GetResult.NOT_FOUND(transactionId));
                 } else {
-                    Record loaded = fetchRecord(key, pageId, null);
-                    if (loaded == null || (predicate != null && !predicate.evaluate(loaded, context))) {
-                        res = CompletableFuture.completedFuture(GetResult.NOT_FOUND(transactionId));
-                    } else {
-                        res = CompletableFuture.completedFuture(new GetResult(transactionId, loaded, table));
-                    }
+                    res = CompletableFuture.completedFuture(new GetResult(transactionId, loaded, table));
                 }
             }
             if (lock != null) {
@@ -3007,7 +3453,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
      * @return loaded page
      * @throws DataStorageManagerException if requested page cannot be read
      */
-    private DataPage temporaryLoadPageToMemory(Long pageId) throws DataStorageManagerException {
+    private DataPage temporaryLoadPageToMemory(Long pageId, PagePrefetcher prefetcher) throws DataStorageManagerException {
 
         long start = System.currentTimeMillis();
 
@@ -3015,9 +3461,9 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
 
         long ioStart = System.currentTimeMillis();
 
-        final List<Record> page;
+        final DataPage result;
         try {
-            page = dataStorageManager.readPage(tableSpaceUUID, table.uuid, pageId);
+            result = readImmutableDataPage(pageId, prefetcher);
         } catch (DataPageDoesNotExistException e) {
             return null;
         } finally {
@@ -3026,8 +3472,6 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
 
         long ioStop = System.currentTimeMillis();
 
-        final DataPage result = buildImmutableDataPage(pageId, page);
-
         if (LOGGER.isLoggable(Level.FINE)) {
             long stop = System.currentTimeMillis();
             LOGGER.log(Level.FINE, "table {0}.{1}, temporary loaded {2} records from page {4} in {5} ms, ({6} ms read)",
@@ -3039,6 +3483,10 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
     }
 
     private DataPage loadPageToMemory(Long pageId, boolean recovery) throws DataStorageManagerException {
+        return loadPageToMemory(pageId, recovery, null);
+    }
+
+    private DataPage loadPageToMemory(Long pageId, boolean recovery, PagePrefetcher prefetcher) throws DataStorageManagerException {
         DataPage result = pages.get(pageId);
         if (result != null) {
             pageReplacementPolicy.pageHit(result);
@@ -3053,17 +3501,17 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             result = pages.computeIfAbsent(pageId, (id) -> {
                 try {
                     computed.value = true;
-                    List<Record> page;
+                    DataPage page;
                     maxCurrentPagesLoads.acquireUninterruptibly();
                     try {
-                        page = dataStorageManager.readPage(tableSpaceUUID, table.uuid, pageId);
+                        page = readImmutableDataPage(pageId, prefetcher);
                     } finally {
                         maxCurrentPagesLoads.release();
                     }
 
                     loadedPagesCount.increment();
 
-                    return buildImmutableDataPage(pageId, page);
+                    return page;
                 } catch (DataStorageManagerException err) {
                     throw new RuntimeException(err);
                 }
@@ -3099,7 +3547,26 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         return result;
     }
 
+    /**
+     * Reads a page from the {@link DataStorageManager}. If the scan has
+     * already read ahead the page the pending read is used.
+     */
+    private DataPage readImmutableDataPage(long pageId, PagePrefetcher prefetcher) throws DataStorageManagerException {
+        if (prefetcher != null) {
+            List<Record> prefetched = prefetcher.take(pageId);
+            if (prefetched != null) {
+                return buildImmutableDataPage(pageId, prefetched);
+            }
+        }
+        List<Record> page = dataStorageManager.readPage(tableSpaceUUID, table.uuid, pageId);
+        return buildImmutableDataPage(pageId, page);
+    }
+
     private DataPage buildImmutableDataPage(long pageId, List<Record> page) {
+        if (ENABLE_PACKED_IMMUTABLE_PAGES) {
+            PackedPageRecords packed = PackedPageRecords.pack(page);
+            return new DataPage(this, pageId, maxLogicalPageSize, packed.getEstimatedSize(), packed, true);
+        }
         Map<Bytes, Record> newPageMap = new HashMap<>(page.size());
         long estimatedPageSize = 0;
         for (Record r : page) {
@@ -3358,7 +3825,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                          * mapping do not update it. (Single read&update lookup). If the conditional put succedes
                          * readers will look for the record inside buildingPage
                          */
-                        boolean handled = keyToPage.put(unshared.key, buildingPage.pageId, page.pageId);
+                        boolean handled = moveRecordReference(unshared.key, page.pageId, buildingPage.pageId, true);
 
                         /* Avoid the record if has been modified or deleted */
                         if (handled) {
@@ -3404,7 +3871,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                          * Abort compaction of this page — leave it for the next checkpoint cycle.
                          * The record already added to buildingPage is orphaned (no keyToPage reference) but harmless.
                          */
-                        boolean handled = keyToPage.put(unshared.key, buildingPage.pageId, page.pageId);
+                        boolean handled = moveRecordReference(unshared.key, page.pageId, buildingPage.pageId, true);
                         if (!handled) {
                             final Long currentPageId = keyToPage.get(unshared.key);
                             LOGGER.log(Level.INFO,
@@ -3735,7 +4202,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         /*
          * Each index implementation has its own internal locking:
          * - VectorIndexManager: stateLock (exclusive during checkpoint, DML also holds it briefly)
-         * - BRINIndexManager, MemoryHashIndexManager: their own internal locks
+         * - BRINIndexManager, MemoryHashIndexManager, BLinkHashIndexManager: their own internal locks
          * - BLinkKeyToPageIndex: per-node ReadWriteLock (primary key index — checkpointed in Phase C)
          *
          * DML on indexed columns will briefly block on the index's internal lock, but NOT on
@@ -3916,7 +4383,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
              */
             TableStatus tableStatus = new TableStatus(table.name, postFlushSequenceNumber,
                     Bytes.longToByteArray(nextPrimaryKeyValue.get()), nextPageId,
-                    pageSet.getActivePagesView());
+                    pageSet.getActivePagesView(), statistics);
 
             final long tableStatusStart = System.currentTimeMillis();
             LOGGER.log(Level.INFO,
@@ -3997,9 +4464,14 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
 
         forWrite = forWrite || context.isForceAcquireWriteLock();
 
+        if (readSnapshot(transaction, context, lockRequired, forWrite) > 0) {
+            // the records changed after the snapshot are read at the end of the scan
+            return scanNoStream(statement, context, transaction, lockRequired, forWrite);
+        }
         TupleComparator comparator = statement.getComparator();
         if (!ENABLE_STREAMING_DATA_SCANNER || (comparator != null
-                && this.stats.getTablesize() > HUGE_TABLE_SIZE_FORCE_MATERIALIZED_RESULTSET)) {
+                && this.stats.getTablesize() > HUGE_TABLE_SIZE_FORCE_MATERIALIZED_RESULTSET)
+                || canScanInPageOrder(statement, transaction, lockRequired || forWrite)) {
             boolean sortedByClusteredIndex = comparator != null
                     && comparator.isOnlyPrimaryKeyAndAscending()
                     && keyToPageSortedAscending;
@@ -4296,27 +4768,66 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
     private void accessTableData(
             ScanStatement statement, StatementEvaluationContext context, ScanResultOperation consumer, Transaction transaction,
             boolean lockRequired, boolean forWrite
+    ) throws StatementExecutionException {
+        accessTableData(statement, context, consumer, transaction, lockRequired, forWrite, null);
+    }
+
+    /**
+     * @param keyLock lock already acquired on the record accessed by primary
+     *                key, it is owned by the scan, can be null
+     */
+    private void accessTableData(
+            ScanStatement statement, StatementEvaluationContext context, ScanResultOperation consumer, Transaction transaction,
+            boolean lockRequired, boolean forWrite, KeyLock keyLock
+    ) throws StatementExecutionException {
+        try {
+            doAccessTableData(statement, context, consumer, transaction, lockRequired, forWrite, keyLock);
+        } finally {
+            if (keyLock != null && !keyLock.seeked) {
+                // the scan failed before looking up the record
+                releaseKeyLock(keyLock, transaction);
+            }
+        }
+    }
+
+    private void doAccessTableData(
+            ScanStatement statement, StatementEvaluationContext context, ScanResultOperation consumer, Transaction transaction,
+            boolean lockRequired, boolean forWrite, KeyLock keyLock
     ) throws StatementExecutionException {
         statement.validateContext(context);
         Predicate predicate = statement.getPredicate();
         long _start = System.currentTimeMillis();
-        boolean acquireLock = transaction != null || forWrite || lockRequired;
+        long snapshotId = readSnapshot(transaction, context, lockRequired, forWrite);
+        boolean acquireLock = (transaction != null && snapshotId == 0) || forWrite || lockRequired;
         LocalScanPageCache lastPageRead = acquireLock ? null : new LocalScanPageCache();
         AtomicInteger count = new AtomicInteger();
+        // keys accessed by a snapshot read, records changed after the snapshot
+        // which are not found by the scan (deleted, or not matching the index) are read at the end
+        Set<Bytes> snapshotKeys = snapshotId > 0 ? new HashSet<>() : null;
+        Bytes seekKey = null;
         try {
 
             IndexOperation indexOperation = predicate != null ? predicate.getIndexOperation() : null;
             boolean primaryIndexSeek = indexOperation instanceof PrimaryIndexSeek;
             AbstractIndexManager useIndex = getIndexForTbleAccess(indexOperation);
+            PagePrefetcher prefetcher = primaryIndexSeek ? null : newPagePrefetcher(lastPageRead);
 
             class RecordProcessor implements BatchOrderedExecutor.Executor<Entry<Bytes, Long>>,
                     Consumer<Map.Entry<Bytes, Long>> {
 
                 @Override
                 public void execute(List<Map.Entry<Bytes, Long>> batch) throws HerdDBInternalException {
-                    batch.forEach((entry) -> {
-                        accept(entry);
-                    });
+                    if (prefetcher == null) {
+                        batch.forEach((entry) -> {
+                            accept(entry);
+                        });
+                        return;
+                    }
+                    // the batch is sorted by page, read ahead the next pages
+                    Iterator<Map.Entry<Bytes, Long>> entries = prefetcher.lookAhead(batch.iterator(), batch.size());
+                    while (entries.hasNext()) {
+                        accept(entries.next());
+                    }
                 }
 
                 @Override
@@ -4325,9 +4836,16 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                         transaction.touch();
                     }
                     Bytes key = entry.getKey();
-                    boolean already_locked = transaction != null && transaction.lookupLock(table.name, key) != null;
+                    if (snapshotKeys != null) {
+                        snapshotKeys.add(key);
+                    }
+                    boolean preLocked = keyLock != null && keyLock.handle.key.equals(key);
+                    boolean already_locked = preLocked
+                            ? keyLock.alreadyLocked
+                            : transaction != null && transaction.lookupLock(table.name, key) != null;
                     boolean record_discarded = !already_locked;
-                    LockHandle lock = acquireLock ? (forWrite ? lockForWrite(key, transaction) : lockForRead(key, transaction)) : null;
+                    LockHandle lock = preLocked ? keyLock.handle
+                            : acquireLock ? (forWrite ? lockForWrite(key, transaction) : lockForRead(key, transaction)) : null;
 //                    LOGGER.log(Level.SEVERE, "CREATED LOCK " + lock + " for " + key);
                     try {
                         if (transaction != null) {
@@ -4359,7 +4877,10 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                                     pkFilterCompleteMatch = true;
                                 }
                             }
-                            Record record = fetchRecord(key, pageId, lastPageRead);
+                            Record record = fetchRecord(key, pageId, lastPageRead, prefetcher);
+                            if (snapshotId > 0) {
+                                record = readSnapshotVersion(key, record, snapshotId);
+                            }
                             if (record != null && (pkFilterCompleteMatch || predicate == null || predicate.evaluate(record, context))) {
                                 // now the consumer is the owner of the lock on the record
                                 record_discarded = false;
@@ -4371,7 +4892,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                         if (record_discarded) {
                             if (transaction == null) {
                                 locksManager.releaseLock(lock);
-                            } else if (!already_locked) {
+                            } else if (!already_locked && lock != null) {
                                 transaction.releaseLockOnKey(table.name, key, locksManager);
                             }
                         }
@@ -4388,12 +4909,23 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                     // no need to craete and use Streams
                     PrimaryIndexSeek seek = (PrimaryIndexSeek) indexOperation;
                     Bytes value = Bytes.from_array(seek.value.computeNewValue(null, context, tableContext));
+                    seekKey = value;
                     Long page = keyToPage.get(value);
+                    if (keyLock != null) {
+                        // from now on the lock is released by the seek
+                        keyLock.seeked = true;
+                    }
+                    if (keyLock != null && (page == null || !keyLock.handle.key.equals(value))) {
+                        // the record has been deleted while waiting for the lock
+                        releaseKeyLock(keyLock, transaction);
+                    }
                     if (page != null) {
                         Map.Entry<Bytes, Long> singleEntry =
                                 new AbstractMap.SimpleImmutableEntry<>(value, page);
                         scanExecutor.accept(singleEntry);
                     }
+                } else if (canScanInPageOrder(statement, transaction, lockRequired || forWrite)) {
+                    accessTableDataInPageOrder(predicate, context, consumer);
                 } else {
                     Stream<Map.Entry<Bytes, Long>> scanner = keyToPage.scanner(indexOperation, context, tableContext, useIndex);
                     BatchOrderedExecutor<Map.Entry<Bytes, Long>> executor = new BatchOrderedExecutor<>(SORTED_PAGE_ACCESS_WINDOW_SIZE,
@@ -4423,6 +4955,24 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
 
             if (!exit && transaction != null) {
                 consumer.beginNewRecordsInTransactionBlock();
+                if (snapshotId > 0) {
+                    Set<Bytes> changedKeys = primaryIndexSeek
+                            ? (seekKey != null ? Collections.singleton(seekKey) : Collections.emptySet())
+                            : recordVersions.keys();
+                    for (Bytes key : changedKeys) {
+                        if (snapshotKeys.contains(key)
+                                || transaction.recordDeleted(table.name, key)
+                                || transaction.recordUpdated(table.name, key) != null
+                                || transaction.recordInserted(table.name, key) != null
+                                || recordVersions.lookup(key, snapshotId) == null) {
+                            continue;
+                        }
+                        Record record = readSnapshotVersion(key, null, snapshotId);
+                        if (record != null && (predicate == null || predicate.evaluate(record, context))) {
+                            consumer.accept(record, null);
+                        }
+                    }
+                }
                 Collection<Record> newRecordsForTable = transaction.getNewRecordsForTable(table.name);
                 if (newRecordsForTable != null) {
                     newRecordsForTable.forEach(record -> {
@@ -4447,6 +4997,166 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         }
     }
 
+    private void releaseKeyLock(KeyLock keyLock, Transaction transaction) {
+        if (transaction == null) {
+            locksManager.releaseLock(keyLock.handle);
+        } else if (!keyLock.alreadyLocked) {
+            transaction.releaseLockOnKey(table.name, keyLock.handle.key, locksManager);
+        }
+    }
+
+    /**
+     * Full scans which do not need locks and do not use an index can read the
+     * pages of the table directly, the records are not returned in PK order.
+     */
+    private boolean canScanInPageOrder(ScanStatement statement, Transaction transaction, boolean lockRequired) {
+        if (transaction != null || lockRequired || tableSpaceManager.getDbmanager().getTableScanExecutor() == null) {
+            return false;
+        }
+        Predicate predicate = statement.getPredicate();
+        if (predicate != null && predicate.getIndexOperation() != null) {
+            return false;
+        }
+        TupleComparator comparator = statement.getComparator();
+        if (comparator != null && comparator.isOnlyPrimaryKeyAndAscending() && keyToPageSortedAscending) {
+            // the scan leverages the order of the PK index
+            return false;
+        }
+        return pageSet.getActivePagesCount() + newPages.size() >= pageOrderScanMinPages;
+    }
+
+    /**
+     * Scans the table reading the pages directly instead of walking the PK
+     * index, the pages are read and filtered in parallel and the results are
+     * passed to the consumer in page order from the current thread.
+     * <p>
+     * The pages which cannot receive records anymore are processed first, then
+     * the mutable pages and the pages created during the scan, lastly the
+     * records which moved during the scan, see {@link PageOrderScan}.
+     */
+    private void accessTableDataInPageOrder(
+            Predicate predicate, StatementEvaluationContext context, ScanResultOperation consumer
+    ) throws StatementExecutionException, DataStorageManagerException {
+        final ForkJoinPool executor = tableSpaceManager.getDbmanager().getTableScanExecutor();
+        // CURRENT_TIMESTAMP must be the same on every thread
+        context.getCurrentTimestamp();
+
+        final PageOrderScan scan = new PageOrderScan();
+        pageOrderScans.add(scan);
+        try {
+            awaitPageOrderScanLocks();
+
+            Set<Long> immutablePages = new HashSet<>(pageSet.getActivePagesView().keySet());
+            immutablePages.removeAll(newPages.keySet());
+            scan.setImmutablePages(immutablePages);
+            processPagesInPageOrder(scan, new TreeSet<>(immutablePages), true, predicate, context, consumer, executor);
+
+            Set<Long> mutablePages = new TreeSet<>(pageSet.getActivePagesView().keySet());
+            mutablePages.addAll(newPages.keySet());
+            mutablePages.addAll(pages.keySet());
+            mutablePages.removeAll(immutablePages);
+            processPagesInPageOrder(scan, mutablePages, false, predicate, context, consumer, executor);
+        } finally {
+            scan.close();
+            pageOrderScans.remove(scan);
+            awaitPageOrderScanLocks();
+        }
+
+        for (Bytes key : scan.getMovedKeys()) {
+            if (scan.emitMovedRecord(key)) {
+                Long pageId = keyToPage.get(key);
+                if (pageId != null) {
+                    Record record = fetchRecord(key, pageId, null);
+                    if (record != null && (predicate == null || predicate.evaluate(record, context))) {
+                        consumer.accept(record, null);
+                    }
+                }
+            }
+        }
+    }
+
+    private void processPagesInPageOrder(
+            PageOrderScan scan, Collection<Long> pageIds, boolean immutablePages,
+            Predicate predicate, StatementEvaluationContext context, ScanResultOperation consumer,
+            ForkJoinPool executor
+    ) throws StatementExecutionException, DataStorageManagerException {
+        final int window = executor.getParallelism() * 2;
+        final ArrayDeque<CompletableFuture<List<Record>>> running = new ArrayDeque<>(window);
+        final Iterator<Long> nextPages = pageIds.iterator();
+        try {
+            while (true) {
+                while (running.size() < window && nextPages.hasNext()) {
+                    final Long pageId = nextPages.next();
+                    running.add(CompletableFuture.supplyAsync(
+                            () -> scanPageInPageOrder(scan, pageId, immutablePages, predicate, context), executor));
+                }
+                CompletableFuture<List<Record>> page = running.poll();
+                if (page == null) {
+                    return;
+                }
+                for (Record record : page.join()) {
+                    consumer.accept(record, null);
+                }
+            }
+        } catch (CompletionException err) {
+            if (err.getCause() instanceof HerdDBInternalException) {
+                throw (HerdDBInternalException) err.getCause();
+            }
+            throw new StatementExecutionException(err.getCause());
+        } finally {
+            for (CompletableFuture<List<Record>> page : running) {
+                page.cancel(false);
+            }
+        }
+    }
+
+    private List<Record> scanPageInPageOrder(
+            PageOrderScan scan, Long pageId, boolean immutablePage,
+            Predicate predicate, StatementEvaluationContext context
+    ) throws StatementExecutionException, DataStorageManagerException {
+        if (scan.isClosed()) {
+            return Collections.emptyList();
+        }
+        // do not load the page in the main buffer, a full scan would evict every other page
+        DataPage dataPage = pages.get(pageId);
+        if (dataPage == null) {
+            dataPage = temporaryLoadPageToMemory(pageId, null);
+            if (dataPage == null) {
+                // the page has been dropped, its records have moved to other pages
+                return Collections.emptyList();
+            }
+        }
+
+        final List<Record> records = new ArrayList<>();
+        final Lock pageLock = dataPage.immutable ? null : dataPage.pageLock.readLock();
+        if (pageLock != null) {
+            pageLock.lock();
+        }
+        try {
+            final ReentrantLock scanLock = pageOrderScanLock(pageId);
+            scanLock.lock();
+            try {
+                for (Record record : dataPage.getRecordsForFlush()) {
+                    // dirty pages contain old versions of the records
+                    if (pageId.equals(keyToPage.get(record.key)) && scan.acceptRecord(record.key, immutablePage)) {
+                        records.add(record);
+                    }
+                }
+                scan.pageProcessed(pageId);
+            } finally {
+                scanLock.unlock();
+            }
+        } finally {
+            if (pageLock != null) {
+                pageLock.unlock();
+            }
+        }
+        if (predicate != null) {
+            records.removeIf(record -> !predicate.evaluate(record, context));
+        }
+        return records;
+    }
+
     private Stream<Record> streamTableData(
             ScanStatement statement, StatementEvaluationContext context,
             Transaction transaction,
@@ -4460,10 +5170,17 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         boolean primaryIndexSeek = indexOperation instanceof PrimaryIndexSeek;
         AbstractIndexManager useIndex = getIndexForTbleAccess(indexOperation);
         Stream<Map.Entry<Bytes, Long>> scanner = keyToPage.scanner(indexOperation, context, tableContext, useIndex);
+        PagePrefetcher prefetcher = primaryIndexSeek ? null : newPagePrefetcher(lastPageRead);
+        if (prefetcher != null) {
+            Stream<Map.Entry<Bytes, Long>> source = scanner;
+            scanner = StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                    prefetcher.lookAhead(source.iterator(), SORTED_PAGE_ACCESS_WINDOW_SIZE), Spliterator.ORDERED), false)
+                    .onClose(source::close);
+        }
 
         Stream<Record> resultFromTable = scanner.map(entry -> {
             return accessRecord(entry, predicate, context,
-                    transaction, lastPageRead, primaryIndexSeek, forWrite, acquireLock);
+                    transaction, lastPageRead, prefetcher, primaryIndexSeek, forWrite, acquireLock);
         }).filter(r -> r != null);
         return resultFromTable;
     }
@@ -4502,7 +5219,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
     public Record accessRecord(
             Map.Entry<Bytes, Long> entry,
             Predicate predicate, StatementEvaluationContext context,
-            Transaction transaction, LocalScanPageCache lastPageRead, boolean primaryIndexSeek,
+            Transaction transaction, LocalScanPageCache lastPageRead, PagePrefetcher prefetcher, boolean primaryIndexSeek,
             boolean forWrite, boolean acquireLock
     ) throws DataStorageManagerException {
 
@@ -4539,7 +5256,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                         pkFilterCompleteMatch = true;
                     }
                 }
-                Record record = fetchRecord(key, pageId, lastPageRead);
+                Record record = fetchRecord(key, pageId, lastPageRead, prefetcher);
                 if (record != null && (pkFilterCompleteMatch || predicate == null || predicate.evaluate(record, context))) {
 
                     keep_lock = context.isForceRetainReadLock() || (lock != null && lock.write);
@@ -4559,6 +5276,23 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         }
     }
 
+    /**
+     * Creates the state which reads ahead the pages needed by a scan.
+     *
+     * @param lastPageRead the page cache of the scan, can be null
+     * @return null if the read ahead of pages is disabled
+     */
+    private PagePrefetcher newPagePrefetcher(LocalScanPageCache lastPageRead) {
+        if (scanPrefetchPages <= 0) {
+            return null;
+        }
+        Executor executor = tableSpaceManager.getDbmanager().getPagePrefetchExecutor();
+        return new PagePrefetcher(scanPrefetchPages, tableSpaceManager.getDbmanager().getScanPrefetchMemory(), maxLogicalPageSize,
+                pageId -> pages.containsKey(pageId)
+                        || (lastPageRead != null && lastPageRead.value != null && lastPageRead.pageId == pageId),
+                pageId -> dataStorageManager.readPageAsync(tableSpaceUUID, table.uuid, pageId, executor));
+    }
+
     private AbstractIndexManager getIndexForTbleAccess(IndexOperation indexOperation) {
         AbstractIndexManager useIndex = null;
         if (indexOperation != null) {
@@ -4589,10 +5323,16 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
     }
 
     private Record fetchRecord(Bytes key, Long pageId, LocalScanPageCache localScanPageCache) throws StatementExecutionException, DataStorageManagerException {
+        return fetchRecord(key, pageId, localScanPageCache, null);
+    }
+
+    private Record fetchRecord(
+            Bytes key, Long pageId, LocalScanPageCache localScanPageCache, PagePrefetcher prefetcher
+    ) throws StatementExecutionException, DataStorageManagerException {
         int maxTrials = 10;
         long[] trialPages = null;
         while (true) {
-            DataPage dataPage = fetchDataPage(pageId, localScanPageCache);
+            DataPage dataPage = fetchDataPage(pageId, localScanPageCache, prefetcher);
             if (dataPage != null) {
                 Record record = dataPage.get(key);
                 if (record != null) {
@@ -4661,12 +5401,12 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         }
     }
 
-    private DataPage fetchDataPage(Long pageId, LocalScanPageCache localScanPageCache) throws DataStorageManagerException {
+    private DataPage fetchDataPage(Long pageId, LocalScanPageCache localScanPageCache, PagePrefetcher prefetcher) throws DataStorageManagerException {
         DataPage dataPage;
         if (localScanPageCache == null
                 || !ENABLE_LOCAL_SCAN_PAGE_CACHE
                 || pages.containsKey(pageId)) {
-            dataPage = loadPageToMemory(pageId, false);
+            dataPage = loadPageToMemory(pageId, false, prefetcher);
         } else {
             if (pageId.equals(localScanPageCache.pageId)) {
                 // same page needed twice
@@ -4678,10 +5418,10 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                 if (dataPage == null) {
                     if (ThreadLocalRandom.current().nextInt(10) < 4) {
                         // 25% of pages will be loaded to main buffer
-                        dataPage = loadPageToMemory(pageId, false);
+                        dataPage = loadPageToMemory(pageId, false, prefetcher);
                     } else {
                         // 75% of pages will be loaded only to current scan buffer
-                        dataPage = temporaryLoadPageToMemory(pageId);
+                        dataPage = temporaryLoadPageToMemory(pageId, prefetcher);
                         localScanPageCache.value = dataPage;
                         localScanPageCache.pageId = pageId;
                     }
@@ -34,6 +34,7 @@ import herddb.core.stats.TableManagerStats;
 import herddb.core.stats.TableSpaceManagerStats;
 import herddb.core.system.SysclientsTableManager;
 import herddb.core.system.SyscolumnsTableManager;
+import herddb.core.system.SyscolumnstatsTableManager;
 import herddb.core.system.SysconfigTableManager;
 import herddb.core.system.SysdualTableManager;
 import herddb.core.system.SysforeignkeysTableManager;
@@ -50,7 +51,9 @@ import herddb.core.system.SystablestatsTableManager;
 import herddb.core.system.SystransactionsTableManager;
 import herddb.data.consistency.TableChecksum;
 import herddb.data.consistency.TableDataChecksum;
+import herddb.index.HashIndexMode;
 import herddb.index.MemoryHashIndexManager;
+import herddb.index.blink.BLinkHashIndexManager;
 import herddb.index.brin.BRINIndexManager;
 import herddb.index.vector.VectorIndexManager;
 import herddb.jmx.JMXUtils;
@@ -155,6 +158,7 @@ import org.apache.bookkeeper.stats.StatsLogger;
  */
 public class TableSpaceManager {
     private static final boolean ENABLE_PENDING_TRANSACTION_CHECK = SystemProperties.getBooleanSystemProperty("herddb.tablespace.checkpendingtransactions", true);
+    private static final int RECOVERY_QUEUE_CAPACITY = SystemProperties.getIntSystemProperty("herddb.tablespace.recoveryqueuecapacity", 10000);
 
     private static final Logger LOGGER = Logger.getLogger(TableSpaceManager.class.getName());
     private static final ObjectMapper MAPPER = new ObjectMapper();
@@ -192,6 +196,7 @@ public class TableSpaceManager {
     private volatile CheckpointFollowerThread checkpointFollowerThread;
     private final ExecutorService callbacksExecutor;
     private final boolean virtual;
+    private final TransactionSnapshots snapshots;
 
     private volatile boolean recoveryInProgress;
     private volatile boolean leader;
@@ -247,6 +252,9 @@ public class TableSpaceManager {
         this.tableSpaceName = tableSpaceName;
         this.tableSpaceUUID = tableSpaceUUID;
         this.virtual = virtual;
+        this.snapshots = dbmanager.getServerConfiguration().getBoolean(
+                ServerConfiguration.PROPERTY_TABLEMANAGER_SNAPSHOT_READS,
+                ServerConfiguration.PROPERTY_TABLEMANAGER_SNAPSHOT_READS_DEFAULT) ? new TransactionSnapshots() : null;
         this.tablespaceStasLogger = this.dbmanager.getStatsLogger().scope(this.tableSpaceName);
         this.checkpointTimeStats = this.tablespaceStasLogger.getOpStatsLogger("checkpointTime");
         registerTableSpaceMetrics();
@@ -355,6 +363,7 @@ public class TableSpaceManager {
             registerSystemTableManager(new SysindexcolumnsTableManager(this));
             registerSystemTableManager(new SysindexstatusTableManager(this));
             registerSystemTableManager(new SyscolumnsTableManager(this));
+            registerSystemTableManager(new SyscolumnstatsTableManager(this));
             registerSystemTableManager(new SystransactionsTableManager(this));
             registerSystemTableManager(new SyslogstatusManager(this));
             registerSystemTableManager(new SysdualTableManager(this));
@@ -457,14 +466,14 @@ public class TableSpaceManager {
                 && dbmanager.getServerConfiguration().getBoolean(ServerConfiguration.PROPERTY_BOOT_FORCE_DOWNLOAD_SNAPSHOT, ServerConfiguration.PROPERTY_BOOT_FORCE_DOWNLOAD_SNAPSHOT_DEFAULT)) {
             LOGGER.log(Level.SEVERE, nodeId + " full recovery of data is forced (" + ServerConfiguration.PROPERTY_BOOT_FORCE_DOWNLOAD_SNAPSHOT + "=true) for tableSpace " + tableSpaceName);
             downloadTableSpaceData();
-            log.recovery(actualLogSequenceNumber, new ApplyEntryOnRecovery(), false);
+            replayLog(actualLogSequenceNumber, false);
         } else {
             try {
-                log.recovery(logSequenceNumber, new ApplyEntryOnRecovery(), false);
+                replayLog(logSequenceNumber, false);
             } catch (FullRecoveryNeededException fullRecoveryNeeded) {
                 LOGGER.log(Level.SEVERE, nodeId + " full recovery of data is needed for tableSpace " + tableSpaceName, fullRecoveryNeeded);
                 downloadTableSpaceData();
-                log.recovery(actualLogSequenceNumber, new ApplyEntryOnRecovery(), false);
+                replayLog(actualLogSequenceNumber, false);
             }
         }
         recoveryInProgress = false;
@@ -483,11 +492,18 @@ public class TableSpaceManager {
         recoveryInProgress = true;
         actualLogSequenceNumber = log.getLastSequenceNumber();
         LOGGER.log(Level.INFO, "recovering tablespace {0} log from sequence number {1}, with fencing", new Object[]{tableSpaceName, actualLogSequenceNumber});
-        log.recovery(actualLogSequenceNumber, new ApplyEntryOnRecovery(), true);
+        replayLog(actualLogSequenceNumber, true);
         LOGGER.log(Level.INFO, "Recovery (with fencing) finished for {0}", tableSpaceName);
         recoveryInProgress = false;
     }
 
+    private void replayLog(LogSequenceNumber from, boolean fencing) throws LogNotAvailableException {
+        try (ApplyEntryOnRecovery applier = new ApplyEntryOnRecovery()) {
+            log.recovery(from, applier, fencing);
+            applier.finish();
+        }
+    }
+
     void apply(CommitLogResult position, LogEntry entry, boolean recovery) throws DataStorageManagerException, DDLException {
         if (!position.deferred || position.sync) {
             // this will wait for the write to be acknowledged by the log
@@ -543,6 +559,7 @@ public class TableSpaceManager {
                     }
                 }
                 transactions.remove(transaction.transactionId);
+                releaseReadSnapshot(transaction);
             }
             break;
             case LogEntryType.COMMITTRANSACTION: {
@@ -554,16 +571,22 @@ public class TableSpaceManager {
                 LogSequenceNumber commit = position.getLogSequenceNumber();
                 transaction.sync(commit);
                 List<AbstractTableManager> managers = new ArrayList<>(tables.values());
-                for (AbstractTableManager manager : managers) {
-                    if (manager.getCreatedInTransaction() == 0 || manager.getCreatedInTransaction() == id) {
-                        manager.onTransactionCommit(transaction, recovery);
-                    }
-                }
                 List<AbstractIndexManager> indexManagers = new ArrayList<>(indexes.values());
-                for (AbstractIndexManager indexManager : indexManagers) {
-                    if (indexManager.getCreatedInTransaction() == 0 || indexManager.getCreatedInTransaction() == id) {
-                        indexManager.onTransactionCommit(transaction, recovery);
+                // snapshots see all of the changes of the transaction or none
+                long snapshotsStamp = beginApplyCommittedChanges(recovery);
+                try {
+                    for (AbstractTableManager manager : managers) {
+                        if (manager.getCreatedInTransaction() == 0 || manager.getCreatedInTransaction() == id) {
+                            manager.onTransactionCommit(transaction, recovery);
+                        }
+                    }
+                    for (AbstractIndexManager indexManager : indexManagers) {
+                        if (indexManager.getCreatedInTransaction() == 0 || indexManager.getCreatedInTransaction() == id) {
+                            indexManager.onTransactionCommit(transaction, recovery);
+                        }
                     }
+                } finally {
+                    endApplyCommittedChanges(snapshotsStamp);
                 }
                 if ((transaction.droppedTables != null && !transaction.droppedTables.isEmpty()) || (transaction.droppedIndexes != null && !transaction.droppedIndexes.isEmpty())) {
 
@@ -595,6 +618,7 @@ public class TableSpaceManager {
                     dbmanager.getPlanner().clearCache();
                 }
                 transactions.remove(transaction.transactionId);
+                releaseReadSnapshot(transaction);
             }
             break;
             case LogEntryType.CREATE_TABLE: {
@@ -2226,8 +2250,13 @@ public class TableSpaceManager {
         AbstractIndexManager indexManager;
         switch (index.type) {
             case Index.TYPE_HASH:
-                indexManager = new MemoryHashIndexManager(index, tableManager, log, dataStorageManager, this, tableSpaceUUID, transaction,
-                        writeLockTimeout, readLockTimeout);
+                if (HashIndexMode.getResolved() == HashIndexMode.Mode.MEMORY) {
+                    indexManager = new MemoryHashIndexManager(index, tableManager, log, dataStorageManager, this, tableSpaceUUID, transaction,
+                            writeLockTimeout, readLockTimeout);
+                } else {
+                    indexManager = new BLinkHashIndexManager(index, dbmanager.getMemoryManager(), tableManager, log, dataStorageManager, this, tableSpaceUUID, transaction,
+                            writeLockTimeout, readLockTimeout);
+                }
                 break;
             case Index.TYPE_BRIN:
                 indexManager = new BRINIndexManager(index, dbmanager.getMemoryManager(), tableManager, log, dataStorageManager, this, tableSpaceUUID, transaction,
@@ -2846,6 +2875,67 @@ public class TableSpaceManager {
         return leader;
     }
 
+    /**
+     * Snapshots read by transactions without read locks.
+     *
+     * @return null if snapshot reads are disabled
+     */
+    TransactionSnapshots getTransactionSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * Returns the snapshot read by a transaction, the snapshot is taken at the
+     * first read of the transaction.
+     *
+     * @return 0 if snapshot reads are disabled or the transaction has been
+     * terminated
+     */
+    long acquireReadSnapshot(Transaction transaction) {
+        if (snapshots == null) {
+            return 0;
+        }
+        synchronized (transaction) {
+            if (transaction.snapshotId == 0) {
+                transaction.snapshotId = snapshots.acquireSnapshot();
+            }
+            return Math.max(transaction.snapshotId, 0);
+        }
+    }
+
+    private void releaseReadSnapshot(Transaction transaction) {
+        if (snapshots == null) {
+            return;
+        }
+        long snapshotId;
+        synchronized (transaction) {
+            snapshotId = transaction.snapshotId;
+            transaction.snapshotId = -1;
+        }
+        if (snapshotId > 0) {
+            long oldestActiveSnapshot = snapshots.releaseSnapshot(snapshotId);
+            for (AbstractTableManager manager : tables.values()) {
+                manager.pruneRecordVersions(oldestActiveSnapshot);
+            }
+        }
+    }
+
+    /**
+     * Starts to apply committed changes to the tables, no snapshot can be
+     * taken meanwhile.
+     *
+     * @return the stamp to pass to {@link #endApplyCommittedChanges(long)}
+     */
+    long beginApplyCommittedChanges(boolean recovery) {
+        return snapshots != null && !recovery ? snapshots.beginApply() : 0;
+    }
+
+    void endApplyCommittedChanges(long stamp) {
+        if (stamp != 0) {
+            snapshots.endApply(stamp);
+        }
+    }
+
     public Transaction getTransaction(long transactionId) {
         if (transactionId <= 0) {
             return null;
@@ -2865,9 +2955,28 @@ public class TableSpaceManager {
         return new ArrayList<>(this.transactions.values());
     }
 
-    private class ApplyEntryOnRecovery implements BiConsumer<LogSequenceNumber, LogEntry> {
+    /**
+     * Applies the entries read from the log during recovery. Changes to
+     * records done outside of transactions are applied in parallel by
+     * {@link RecoveryApplyWorkers}, all the other entries are applied by the
+     * thread which reads the log, after the changes already dispatched have
+     * been applied. Entries of a transaction must be registered in log order,
+     * see {@link Transaction}.
+     */
+    private class ApplyEntryOnRecovery implements BiConsumer<LogSequenceNumber, LogEntry>, AutoCloseable {
+
+        private final RecoveryApplyWorkers workers;
 
         public ApplyEntryOnRecovery() {
+            int parallelism = dbmanager.getServerConfiguration().getInt(
+                    ServerConfiguration.PROPERTY_RECOVERY_PARALLELISM,
+                    ServerConfiguration.PROPERTY_RECOVERY_PARALLELISM_DEFAULT);
+            if (parallelism <= 0) {
+                parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            }
+            this.workers = parallelism > 1
+                    ? new RecoveryApplyWorkers(tableSpaceName, parallelism, RECOVERY_QUEUE_CAPACITY)
+                    : null;
         }
 
         @Override
@@ -2875,12 +2984,51 @@ public class TableSpaceManager {
             if (dbmanager.isStopped()) {
                 throw new RuntimeException("System was requested to stop, aborting recovery at " + t);
             }
+            CommitLogResult position = new CommitLogResult(t, false, true);
+            if (workers != null) {
+                if (u.transactionId <= 0 && isRecordChange(u)) {
+                    AbstractTableManager tableManager = tables.get(u.tableName);
+                    if (tableManager != null) {
+                        actualLogSequenceNumber = t;
+                        workers.submit(u.tableName, u.key, () -> tableManager.apply(position, u, true));
+                        return;
+                    }
+                }
+                if (u.type != LogEntryType.BEGINTRANSACTION && u.type != LogEntryType.NOOP) {
+                    workers.drain();
+                }
+            }
             try {
-                apply(new CommitLogResult(t, false, true), u, true);
+                apply(position, u, true);
             } catch (DDLException | DataStorageManagerException err) {
                 throw new RuntimeException(err);
             }
         }
+
+        void finish() {
+            if (workers != null) {
+                workers.drain();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (workers != null) {
+                workers.close();
+            }
+        }
+    }
+
+    private static boolean isRecordChange(LogEntry entry) {
+        switch (entry.type) {
+            case LogEntryType.INSERT:
+            case LogEntryType.UPDATE:
+            case LogEntryType.UPDATE_DELTA:
+            case LogEntryType.DELETE:
+                return true;
+            default:
+                return false;
+        }
     }
 
     public DBManager getDbmanager() {
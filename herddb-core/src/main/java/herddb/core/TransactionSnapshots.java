@@ -0,0 +1,114 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Snapshots of the data of a tablespace read by transactions without
+ * acquiring read locks.
+ * <p>
+ * Snapshots are identified by an increasing id. Taking a snapshot and applying
+ * committed changes to the tables (a non transactional DML statement or the
+ * commit of a transaction) are mutually exclusive: every change has been
+ * applied either before or after the snapshot, as a whole. Tables save the
+ * previous version of a record before applying a change while there are active
+ * snapshots, tagged with the id of the last snapshot, see
+ * {@link RecordVersions}.
+ * <p>
+ * Snapshots are ordered by the moment in which they are taken and not by the
+ * LogSequenceNumber of the log: changes are applied to memory after the write
+ * to the log completes, not in log order.
+ *
+ * @author enrico.olivelli
+ */
+final class TransactionSnapshots {
+
+    private final StampedLock lock = new StampedLock();
+    private final ConcurrentSkipListSet<Long> activeSnapshots = new ConcurrentSkipListSet<>();
+    // written holding the write lock
+    private volatile long lastSnapshotId;
+
+    /**
+     * Takes a new snapshot.
+     *
+     * @return the id of the snapshot
+     */
+    long acquireSnapshot() {
+        long stamp = lock.writeLock();
+        try {
+            long snapshotId = ++lastSnapshotId;
+            activeSnapshots.add(snapshotId);
+            return snapshotId;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Releases a snapshot.
+     *
+     * @return versions saved for snapshots older than this id are no more
+     * needed, see {@link RecordVersions#prune(long)}
+     */
+    long releaseSnapshot(long snapshotId) {
+        activeSnapshots.remove(snapshotId);
+        // snapshots taken from now on have a greater id
+        long next = lastSnapshotId + 1;
+        try {
+            return Math.min(next, activeSnapshots.first());
+        } catch (NoSuchElementException empty) {
+            return next;
+        }
+    }
+
+    boolean hasActiveSnapshots() {
+        return !activeSnapshots.isEmpty();
+    }
+
+    /**
+     * Id of the last snapshot, the caller must be applying changes, see
+     * {@link #beginApply()}
+     */
+    long getLastSnapshotId() {
+        return lastSnapshotId;
+    }
+
+    /**
+     * Starts to apply committed changes, no snapshot can be taken until
+     * {@link #endApply(long)}.
+     *
+     * @return the stamp to pass to {@link #endApply(long)}
+     */
+    long beginApply() {
+        return lock.readLock();
+    }
+
+    void endApply(long stamp) {
+        lock.unlockRead(stamp);
+    }
+
+    int getActiveSnapshotsCount() {
+        return activeSnapshots.size();
+    }
+}
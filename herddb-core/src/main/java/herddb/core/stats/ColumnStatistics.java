@@ -0,0 +1,270 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core.stats;
+
+import herddb.codec.RecordSerializer;
+import herddb.model.ColumnTypes;
+import herddb.utils.ExtendedDataInputStream;
+import herddb.utils.ExtendedDataOutputStream;
+import herddb.utils.SQLRecordPredicateFunctions;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Statistics about the values of a column, computed by ANALYZE TABLE.
+ * <p>
+ * The histogram is equi-depth: it is made of the bounds of buckets which
+ * contain the same number of (non null) values, the first bound is the
+ * minimum value and the last bound is the maximum value. Histograms are built
+ * only for columns of types which can be sorted.
+ *
+ * @author enrico.olivelli
+ */
+public final class ColumnStatistics {
+
+    /**
+     * Selectivity of a comparison when it is not possible to estimate it
+     */
+    public static final double DEFAULT_RANGE_SELECTIVITY = 1.0 / 3;
+
+    private static final Object[] NO_HISTOGRAM = new Object[0];
+
+    private final String name;
+    private final int type;
+    private final long rowCount;
+    private final long nullCount;
+    private final long distinctValues;
+    private final Object[] histogram;
+
+    public ColumnStatistics(String name, int type, long rowCount, long nullCount, long distinctValues, Object[] histogram) {
+        this.name = name;
+        this.type = type;
+        this.rowCount = rowCount;
+        this.nullCount = nullCount;
+        this.distinctValues = distinctValues;
+        this.histogram = histogram != null && histogram.length > 0 ? histogram : NO_HISTOGRAM;
+    }
+
+    static boolean isSortableType(int type) {
+        switch (type) {
+            case ColumnTypes.STRING:
+            case ColumnTypes.NOTNULL_STRING:
+            case ColumnTypes.INTEGER:
+            case ColumnTypes.NOTNULL_INTEGER:
+            case ColumnTypes.LONG:
+            case ColumnTypes.NOTNULL_LONG:
+            case ColumnTypes.DOUBLE:
+            case ColumnTypes.NOTNULL_DOUBLE:
+            case ColumnTypes.TIMESTAMP:
+            case ColumnTypes.NOTNULL_TIMESTAMP:
+            case ColumnTypes.BOOLEAN:
+            case ColumnTypes.NOTNULL_BOOLEAN:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public long getNullCount() {
+        return nullCount;
+    }
+
+    public long getDistinctValues() {
+        return distinctValues;
+    }
+
+    /**
+     * @return the minimum value, null if the column contains only nulls or
+     * if the type cannot be sorted
+     */
+    public Object getMinValue() {
+        return histogram.length > 0 ? histogram[0] : null;
+    }
+
+    /**
+     * @return the maximum value, null if the column contains only nulls or
+     * if the type cannot be sorted
+     */
+    public Object getMaxValue() {
+        return histogram.length > 0 ? histogram[histogram.length - 1] : null;
+    }
+
+    public Object[] getHistogram() {
+        return histogram.clone();
+    }
+
+    public double getNullFraction() {
+        if (rowCount <= 0) {
+            return 0;
+        }
+        return Math.min(1, (double) nullCount / rowCount);
+    }
+
+    /**
+     * Estimates the fraction of the rows for which column = ? is true
+     */
+    public double estimateEquals() {
+        return (1 - getNullFraction()) / Math.max(1, distinctValues);
+    }
+
+    /**
+     * Estimates the fraction of the rows for which column = value is true
+     */
+    public double estimateEquals(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (histogram.length > 0
+                && (compare(value, histogram[0]) < 0 || compare(value, histogram[histogram.length - 1]) > 0)) {
+            return 0;
+        }
+        return estimateEquals();
+    }
+
+    /**
+     * Estimates the fraction of the rows which contain a value in the given
+     * range.
+     *
+     * @param lower          the lower bound, null if the range is not
+     *                       bounded below
+     * @param lowerInclusive true if the lower bound is included in the range
+     * @param upper          the upper bound, null if the range is not bounded
+     *                       above
+     * @param upperInclusive true if the upper bound is included in the range
+     */
+    public double estimateRange(Object lower, boolean lowerInclusive, Object upper, boolean upperInclusive) {
+        double nonNulls = 1 - getNullFraction();
+        if (histogram.length == 0) {
+            if (lower == null && upper == null) {
+                return nonNulls;
+            }
+            return nonNulls * (lower != null && upper != null
+                    ? DEFAULT_RANGE_SELECTIVITY * DEFAULT_RANGE_SELECTIVITY : DEFAULT_RANGE_SELECTIVITY);
+        }
+        double from = lower == null ? 0 : cumulativeFraction(lower, !lowerInclusive);
+        double to = upper == null ? 1 : cumulativeFraction(upper, upperInclusive);
+        return nonNulls * Math.max(0, Math.min(1, to - from));
+    }
+
+    /**
+     * Fraction of the non null values which are lower than (or equal to) the
+     * given value.
+     */
+    private double cumulativeFraction(Object value, boolean inclusive) {
+        int buckets = histogram.length - 1;
+        if (compare(value, histogram[0]) < 0) {
+            return 0;
+        }
+        int last = histogram.length - 1;
+        if (compare(value, histogram[last]) > 0) {
+            return 1;
+        }
+        if (buckets == 0) {
+            // a single distinct value
+            return inclusive ? 1 : 0;
+        }
+        // bounds lower than value are [0, lo), bounds equal to value are [lo, hi)
+        int lo = 0;
+        while (lo <= last && compare(histogram[lo], value) < 0) {
+            lo++;
+        }
+        int hi = lo;
+        while (hi <= last && compare(histogram[hi], value) == 0) {
+            hi++;
+        }
+        double result;
+        if (lo == hi) {
+            // value falls inside the bucket (lo - 1, lo)
+            int bucket = lo - 1;
+            result = (bucket + interpolate(histogram[bucket], histogram[bucket + 1], value)) / buckets;
+            if (inclusive) {
+                result += 1.0 / Math.max(1, distinctValues);
+            }
+        } else if (inclusive) {
+            result = hi > last ? 1 : (hi - 0.5) / buckets;
+        } else {
+            result = lo == 0 ? 0 : (lo - 0.5) / buckets;
+        }
+        return Math.max(0, Math.min(1, result));
+    }
+
+    private static double interpolate(Object from, Object to, Object value) {
+        double start = toDouble(from);
+        double end = toDouble(to);
+        double point = toDouble(value);
+        if (Double.isNaN(start) || Double.isNaN(end) || Double.isNaN(point) || end <= start) {
+            return 0.5;
+        }
+        return Math.max(0, Math.min(1, (point - start) / (end - start)));
+    }
+
+    private static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof java.util.Date) {
+            return ((java.util.Date) value).getTime();
+        }
+        return Double.NaN;
+    }
+
+    private static int compare(Object a, Object b) {
+        return SQLRecordPredicateFunctions.compare(a, b);
+    }
+
+    void serialize(ExtendedDataOutputStream output) throws IOException {
+        output.writeUTF(name);
+        output.writeVInt(type);
+        output.writeVLong(nullCount);
+        output.writeVLong(distinctValues);
+        output.writeVInt(histogram.length);
+        for (Object value : histogram) {
+            output.writeArray(RecordSerializer.serialize(value, type));
+        }
+    }
+
+    static ColumnStatistics deserialize(ExtendedDataInputStream input, long rowCount) throws IOException {
+        String name = input.readUTF();
+        int type = input.readVInt();
+        long nullCount = input.readVLong();
+        long distinctValues = input.readVLong();
+        int size = input.readVInt();
+        Object[] histogram = new Object[size];
+        for (int i = 0; i < size; i++) {
+            histogram[i] = RecordSerializer.deserialize(input.readArray(), type);
+        }
+        return new ColumnStatistics(name, type, rowCount, nullCount, distinctValues, histogram);
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnStatistics{" + "name=" + name + ", nullCount=" + nullCount + ", distinctValues=" + distinctValues
+                + ", histogram=" + Arrays.toString(histogram) + '}';
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core.stats;
+
+/**
+ * HyperLogLog sketch, it estimates the number of distinct values of a stream
+ * of 64 bit hashes using a fixed amount of memory.
+ * <p>
+ * With {@link #DEFAULT_PRECISION} the sketch uses 16K registers and the
+ * standard error of the estimate is about 0.8%.
+ *
+ * @author enrico.olivelli
+ */
+final class HyperLogLog {
+
+    static final int DEFAULT_PRECISION = 14;
+
+    private final int precision;
+    private final byte[] registers;
+
+    HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("invalid precision " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // the remaining bits, with a sentinel bit in order to bound the rank
+        long bits = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(bits) + 1);
+        if (registers[index] < rank) {
+            registers[index] = rank;
+        }
+    }
+
+    long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // small cardinalities, linear counting is more accurate
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+}
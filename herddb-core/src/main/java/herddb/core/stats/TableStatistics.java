@@ -0,0 +1,101 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core.stats;
+
+import herddb.utils.ExtendedDataInputStream;
+import herddb.utils.ExtendedDataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Statistics about the contents of a table, computed by ANALYZE TABLE and
+ * persisted together with the status of the table at checkpoint.
+ *
+ * @author enrico.olivelli
+ */
+public final class TableStatistics {
+
+    private final long rowCount;
+    private final long analyzeTimestamp;
+    private final Map<String, ColumnStatistics> columns;
+
+    public TableStatistics(long rowCount, long analyzeTimestamp, Collection<ColumnStatistics> columns) {
+        this.rowCount = rowCount;
+        this.analyzeTimestamp = analyzeTimestamp;
+        Map<String, ColumnStatistics> byName = new LinkedHashMap<>();
+        for (ColumnStatistics column : columns) {
+            byName.put(column.getName(), column);
+        }
+        this.columns = Collections.unmodifiableMap(byName);
+    }
+
+    /**
+     * Number of rows of the table when it has been analyzed
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getAnalyzeTimestamp() {
+        return analyzeTimestamp;
+    }
+
+    /**
+     * @return the statistics about a column, null if the column has not been
+     * analyzed
+     */
+    public ColumnStatistics getColumn(String name) {
+        return columns.get(name);
+    }
+
+    public Collection<ColumnStatistics> getColumns() {
+        return columns.values();
+    }
+
+    public void serialize(ExtendedDataOutputStream output) throws IOException {
+        output.writeVLong(rowCount);
+        output.writeLong(analyzeTimestamp);
+        output.writeVInt(columns.size());
+        for (ColumnStatistics column : columns.values()) {
+            column.serialize(output);
+        }
+    }
+
+    public static TableStatistics deserialize(ExtendedDataInputStream input) throws IOException {
+        long rowCount = input.readVLong();
+        long analyzeTimestamp = input.readLong();
+        int size = input.readVInt();
+        ColumnStatistics[] columns = new ColumnStatistics[size];
+        for (int i = 0; i < size; i++) {
+            columns[i] = ColumnStatistics.deserialize(input, rowCount);
+        }
+        return new TableStatistics(rowCount, analyzeTimestamp, Arrays.asList(columns));
+    }
+
+    @Override
+    public String toString() {
+        return "TableStatistics{" + "rowCount=" + rowCount + ", columns=" + columns.values() + '}';
+    }
+}
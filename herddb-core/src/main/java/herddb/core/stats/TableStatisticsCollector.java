@@ -0,0 +1,165 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core.stats;
+
+import herddb.codec.RecordSerializer;
+import herddb.model.Column;
+import herddb.model.Record;
+import herddb.model.Table;
+import herddb.utils.DataAccessor;
+import herddb.utils.SQLRecordPredicateFunctions;
+import herddb.utils.XXHash64Utils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Computes the {@link TableStatistics} of a table while its records are
+ * scanned.
+ * <p>
+ * The number of distinct values is estimated with a {@link HyperLogLog}
+ * sketch for each column, minimum and maximum values are exact, histograms
+ * are built over a uniform sample of the rows (reservoir sampling), so that
+ * the memory needed does not depend on the size of the table.
+ *
+ * @author enrico.olivelli
+ */
+public final class TableStatisticsCollector {
+
+    public static final int DEFAULT_SAMPLE_SIZE = 10_000;
+    public static final int DEFAULT_HISTOGRAM_BUCKETS = 64;
+
+    private final Table table;
+    private final int sampleSize;
+    private final int buckets;
+    private final boolean[] sortable;
+    private final HyperLogLog[] sketches;
+    private final long[] nullCounts;
+    private final Object[] minValues;
+    private final Object[] maxValues;
+    private final List<Object[]> sample = new ArrayList<>();
+    private long rowCount;
+
+    public TableStatisticsCollector(Table table) {
+        this(table, DEFAULT_SAMPLE_SIZE, DEFAULT_HISTOGRAM_BUCKETS);
+    }
+
+    public TableStatisticsCollector(Table table, int sampleSize, int buckets) {
+        this.table = table;
+        this.sampleSize = sampleSize;
+        this.buckets = buckets;
+        Column[] columns = table.getColumns();
+        this.sortable = new boolean[columns.length];
+        this.sketches = new HyperLogLog[columns.length];
+        this.nullCounts = new long[columns.length];
+        this.minValues = new Object[columns.length];
+        this.maxValues = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            sortable[i] = ColumnStatistics.isSortableType(columns[i].type);
+            sketches[i] = new HyperLogLog();
+        }
+    }
+
+    public void accept(Record record) {
+        DataAccessor data = record.getDataAccessor(table);
+        Column[] columns = table.getColumns();
+        Object[] sortableValues = null;
+        for (int i = 0; i < columns.length; i++) {
+            Object value = data.get(i);
+            if (value == null) {
+                nullCounts[i]++;
+                continue;
+            }
+            byte[] serialized = RecordSerializer.serialize(value, columns[i].type);
+            sketches[i].add(XXHash64Utils.hash(serialized, 0, serialized.length));
+            if (sortable[i]) {
+                if (minValues[i] == null || compare(value, minValues[i]) < 0) {
+                    minValues[i] = value;
+                }
+                if (maxValues[i] == null || compare(value, maxValues[i]) > 0) {
+                    maxValues[i] = value;
+                }
+                if (sortableValues == null) {
+                    sortableValues = new Object[columns.length];
+                }
+                sortableValues[i] = value;
+            }
+        }
+        rowCount++;
+        if (sortableValues == null) {
+            return;
+        }
+        if (sample.size() < sampleSize) {
+            sample.add(sortableValues);
+        } else {
+            long position = ThreadLocalRandom.current().nextLong(rowCount);
+            if (position < sampleSize) {
+                sample.set((int) position, sortableValues);
+            }
+        }
+    }
+
+    public TableStatistics build(long analyzeTimestamp) {
+        Column[] columns = table.getColumns();
+        List<ColumnStatistics> result = new ArrayList<>(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            long nonNulls = rowCount - nullCounts[i];
+            long distinctValues = Math.min(nonNulls, sketches[i].estimate());
+            if (nonNulls > 0 && distinctValues == 0) {
+                distinctValues = 1;
+            }
+            Object[] histogram = sortable[i] ? buildHistogram(i) : null;
+            result.add(new ColumnStatistics(columns[i].name, columns[i].type, rowCount, nullCounts[i], distinctValues, histogram));
+        }
+        return new TableStatistics(rowCount, analyzeTimestamp, result);
+    }
+
+    private Object[] buildHistogram(int column) {
+        if (minValues[column] == null) {
+            return null;
+        }
+        List<Object> values = new ArrayList<>(sample.size());
+        for (Object[] row : sample) {
+            if (row[column] != null) {
+                values.add(row[column]);
+            }
+        }
+        values.sort(TableStatisticsCollector::compare);
+        int count = Math.min(buckets, values.size() - 1);
+        if (count <= 0 || compare(minValues[column], maxValues[column]) == 0) {
+            return compare(minValues[column], maxValues[column]) == 0
+                    ? new Object[]{minValues[column]}
+                    : new Object[]{minValues[column], maxValues[column]};
+        }
+        Object[] bounds = new Object[count + 1];
+        for (int i = 0; i <= count; i++) {
+            bounds[i] = values.get((int) ((long) i * (values.size() - 1) / count));
+        }
+        // the sample may miss the extreme values
+        bounds[0] = minValues[column];
+        bounds[count] = maxValues[column];
+        return bounds;
+    }
+
+    private static int compare(Object a, Object b) {
+        return SQLRecordPredicateFunctions.compare(a, b);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core.system;
+
+import herddb.codec.RecordSerializer;
+import herddb.core.AbstractTableManager;
+import herddb.core.TableSpaceManager;
+import herddb.core.stats.ColumnStatistics;
+import herddb.core.stats.TableStatistics;
+import herddb.model.ColumnTypes;
+import herddb.model.Record;
+import herddb.model.Table;
+import herddb.model.Transaction;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Table Manager for the SYSCOLUMNSTATS virtual table, it reports the
+ * statistics computed by ANALYZE TABLE
+ *
+ * @author enrico.olivelli
+ */
+public class SyscolumnstatsTableManager extends AbstractSystemTableManager {
+
+    private static final Table TABLE = Table
+            .builder()
+            .name("syscolumnstats")
+            .column("tablespace", ColumnTypes.STRING)
+            .column("table_name", ColumnTypes.STRING)
+            .column("column_name", ColumnTypes.STRING)
+            .column("analyzed_rows", ColumnTypes.LONG)
+            .column("null_count", ColumnTypes.LONG)
+            .column("distinct_values", ColumnTypes.LONG)
+            .column("min_value", ColumnTypes.STRING)
+            .column("max_value", ColumnTypes.STRING)
+            .column("histogram_buckets", ColumnTypes.INTEGER)
+            .column("histogram", ColumnTypes.STRING)
+            .column("analyze_ts", ColumnTypes.TIMESTAMP)
+            .primaryKey("tablespace", false)
+            .primaryKey("table_name", false)
+            .primaryKey("column_name", false)
+            .build();
+
+    public SyscolumnstatsTableManager(TableSpaceManager parent) {
+        super(parent, TABLE);
+    }
+
+    @Override
+    protected Iterable<Record> buildVirtualRecordList(Transaction transaction) {
+        List<Table> tables = tableSpaceManager.getAllVisibleTables(transaction);
+        List<Record> result = new ArrayList<>();
+        for (Table r : tables) {
+            AbstractTableManager tableManager = tableSpaceManager.getTableManager(r.name);
+            if (tableManager == null || tableManager.isSystemTable()) {
+                continue;
+            }
+            TableStatistics statistics = tableManager.getStatistics();
+            if (statistics == null) {
+                continue;
+            }
+            for (ColumnStatistics column : statistics.getColumns()) {
+                Object[] histogram = column.getHistogram();
+                result.add(RecordSerializer.makeRecord(
+                        table,
+                        "tablespace", r.tablespace,
+                        "table_name", r.name,
+                        "column_name", column.getName(),
+                        "analyzed_rows", statistics.getRowCount(),
+                        "null_count", column.getNullCount(),
+                        "distinct_values", column.getDistinctValues(),
+                        "min_value", toString(column.getMinValue()),
+                        "max_value", toString(column.getMaxValue()),
+                        "histogram_buckets", Math.max(0, histogram.length - 1),
+                        "histogram", histogram.length > 0 ? histogramToString(histogram) : null,
+                        "analyze_ts", new Timestamp(statistics.getAnalyzeTimestamp())
+                ));
+            }
+        }
+        return result;
+    }
+
+    private static String toString(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    private static String histogramToString(Object[] histogram) {
+        StringBuilder result = new StringBuilder();
+        for (Object bound : histogram) {
+            if (result.length() > 0) {
+                result.append(',');
+            }
+            result.append(bound);
+        }
+        return result.toString();
+    }
+
+}
@@ -22,6 +22,7 @@ package herddb.file;
 
 import herddb.log.CommitLog;
 import herddb.log.CommitLogResult;
+import herddb.log.LogCompression;
 import herddb.log.LogEntry;
 import herddb.log.LogNotAvailableException;
 import herddb.log.LogSequenceNumber;
@@ -31,17 +32,21 @@ import herddb.utils.FileUtils;
 import herddb.utils.ODirectFileOutputStream;
 import herddb.utils.OpenFileUtils;
 import herddb.utils.SimpleBufferedOutputStream;
+import herddb.utils.SimpleByteArrayInputStream;
 import herddb.utils.SystemProperties;
 import herddb.utils.TailableFileInputStream;
+import herddb.utils.VisibleByteArrayOutputStream;
 import java.io.BufferedInputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -90,6 +95,8 @@ public class FileCommitLog extends CommitLog {
     private final OpStatsLogger statsEntrySyncLatency;
     private final OpStatsLogger syncSize;
     private final OpStatsLogger syncBytes;
+    private final OpStatsLogger groupCommitWindow;
+    private final OpStatsLogger groupCommitWait;
     private final Counter deferredSyncs;
     private final Counter newfiles;
     private final ExecutorService fsyncThreadPool;
@@ -104,12 +111,53 @@ public class FileCommitLog extends CommitLog {
     private final int maxUnsyncedBatchBytes;
     private final long maxSyncTime;
     private final boolean requireSync;
+    private final GroupCommitPolicy groupCommitPolicy;
+
+    /**
+     * Number of running fsyncs, new synchronous batches wait for their
+     * completion and so they coalesce all the entries written in the meantime
+     */
+    private final AtomicInteger syncsInProgress = new AtomicInteger();
+
+    /**
+     * Wakes up the spool thread when an fsync completes
+     */
+    private final LogEntryHolderFuture syncCompletedMarker = new LogEntryHolderFuture(null, false);
     // CHECKSTYLE.OFF: MemberName
     private final boolean enableO_DIRECT;
     // CHECKSTYLE.ON: MemberName
 
     public static final String LOGFILEEXTENSION = ".txlog";
 
+    /**
+     * Zero filled segments ready to be reused as new txlog files
+     */
+    static final String FREESEGMENTEXTENSION = ".txlogfree";
+
+    /**
+     * Segments that are being zero filled, they are not usable until renamed
+     * to {@link #FREESEGMENTEXTENSION}
+     */
+    static final String RECYCLINGSEGMENTEXTENSION = ".txlogrecycling";
+
+    /**
+     * Max number of free segments kept for reuse, other dropped txlog files
+     * are deleted
+     */
+    private static final int MAX_FREE_SEGMENTS = SystemProperties.getIntSystemProperty(
+            "herddb.file.maxfreetxlogsegments", 2);
+
+    /**
+     * A run of zeros longer than any padding added by O_DIRECT writes means
+     * that we reached the unwritten part of a preallocated file
+     */
+    static final int MAX_ZERO_PADDING = 1024 * 1024;
+
+    private final boolean preallocateSegments;
+    private final Counter recycledSegments;
+    private final boolean compressBatches;
+    private final OpStatsLogger compressedBatchBytes;
+
     private volatile boolean closed = false;
     private volatile boolean failed = false;
     private volatile boolean needsSync = false;
@@ -117,6 +165,11 @@ public class FileCommitLog extends CommitLog {
     static final byte ZERO_PADDING = 0;
     static final byte ENTRY_START = 13;
     static final byte ENTRY_END = 25;
+    /**
+     * Start of a compressed batch of entries, the uncompressed data is a
+     * sequence of entries with the usual format
+     */
+    static final byte BATCH_START = 14;
 
     void backgroundSync() {
         if (needsSync) {
@@ -140,6 +193,12 @@ public class FileCommitLog extends CommitLog {
         final ExtendedDataOutputStream out;
         volatile boolean writerClosed;
 
+        /**
+         * Entries not yet flushed, when compression is enabled
+         */
+        final VisibleByteArrayOutputStream batch;
+        final ExtendedDataOutputStream batchOut;
+
         private CommitFileWriter(long ledgerId, long sequenceNumber) throws IOException {
             this.ledgerId = ledgerId;
             this.sequenceNumber = sequenceNumber;
@@ -159,6 +218,9 @@ public class FileCommitLog extends CommitLog {
                 ODirectFileOutputStream oo = new ODirectFileOutputStream(filename);
                 this.channel = oo.getFc();
                 this.out = new ExtendedDataOutputStream(oo);
+            } else if (preallocateSegments) {
+                this.channel = openPreallocatedSegment(filename);
+                this.out = new ExtendedDataOutputStream(new SimpleBufferedOutputStream(Channels.newOutputStream(this.channel)));
             } else {
                 LOGGER.log(Level.FINE, "opening (no O_DIRECT) new file {0} for tablespace {1}", new Object[]{filename, tableSpaceName});
                 this.channel = FileChannel.open(filename,
@@ -166,16 +228,26 @@ public class FileCommitLog extends CommitLog {
 
                 this.out = new ExtendedDataOutputStream(new SimpleBufferedOutputStream(Channels.newOutputStream(this.channel)));
             }
+            if (compressBatches) {
+                this.batch = new VisibleByteArrayOutputStream(64 * 1024);
+                this.batchOut = new ExtendedDataOutputStream(batch);
+            } else {
+                this.batch = null;
+                this.batchOut = null;
+            }
             writtenBytes = 0;
         }
 
         private int writeEntry(long seqnumber, LogEntry entry) throws IOException {
-            this.out.writeByte(ENTRY_START);
-            this.out.writeLong(seqnumber);
-            int written = entry.serialize(out);
-            this.out.writeByte(ENTRY_END);
+            ExtendedDataOutputStream target = batchOut != null ? batchOut : out;
+            target.writeByte(ENTRY_START);
+            target.writeLong(seqnumber);
+            int written = entry.serialize(target);
+            target.writeByte(ENTRY_END);
             int entrySize = (1 + 8 + written + 1);
-            writtenBytes += entrySize;
+            if (batchOut == null) {
+                writtenBytes += entrySize;
+            }
 
             if (!requireSync) {
                 needsSync = true;
@@ -185,9 +257,31 @@ public class FileCommitLog extends CommitLog {
         }
 
         public void flush() throws IOException {
+            if (batch != null && batch.size() > 0) {
+                writeBatch();
+            }
             this.out.flush();
         }
 
+        private void writeBatch() throws IOException {
+            int size = batch.size();
+            byte[] compressed = LogCompression.compress(batch.getBuffer(), 0, size);
+            if (compressed == null) {
+                // not worth, write the plain entries
+                out.write(batch.getBuffer(), 0, size);
+                writtenBytes += size;
+            } else {
+                out.writeByte(BATCH_START);
+                out.writeInt(size);
+                out.writeInt(compressed.length);
+                out.write(compressed);
+                out.writeByte(ENTRY_END);
+                writtenBytes += 1 + 4 + 4 + compressed.length + 1;
+                compressedBatchBytes.registerSuccessfulValue(compressed.length);
+            }
+            batch.reset();
+        }
+
         public void sync() throws IOException {
             sync(false);
         }
@@ -214,7 +308,7 @@ public class FileCommitLog extends CommitLog {
         public void close() throws LogNotAvailableException {
             try {
                 try {
-                    out.flush();
+                    flush();
                     sync();
                 } catch (IOException err) {
                     throw new LogNotAvailableException(err);
@@ -259,6 +353,11 @@ public class FileCommitLog extends CommitLog {
         final ExtendedDataInputStream in;
         final long ledgerId;
 
+        /**
+         * Remaining entries of the last compressed batch
+         */
+        private ExtendedDataInputStream batch;
+
         private CommitFileReader(ExtendedDataInputStream in, long ledgerId) {
             this.in = in;
             this.ledgerId = ledgerId;
@@ -304,6 +403,13 @@ public class FileCommitLog extends CommitLog {
         }
 
         public LogEntryWithSequenceNumber nextEntry() throws IOException {
+            if (batch != null) {
+                LogEntryWithSequenceNumber entry = nextBatchEntry();
+                if (entry != null) {
+                    return entry;
+                }
+                batch = null;
+            }
             byte entryStart;
             // Mark position before reading so we can rewind if we hit a partial entry.
             // This is critical for tailable readers: the writer may not have finished
@@ -318,35 +424,141 @@ public class FileCommitLog extends CommitLog {
                     return null;
                 }
                 // skip zeros due to padding if using pre-allocation or O_DIRECT
+                int zeros = 0;
                 while (entryStart == ZERO_PADDING) {
+                    if (++zeros > MAX_ZERO_PADDING) {
+                        // we reached the unwritten part of a preallocated file,
+                        // a tailing reader must read again this part later
+                        rewind();
+                        return null;
+                    }
                     try {
                         entryStart = in.readByte();
                     } catch (EOFException completeFileFinished) {
+                        rewind();
                         return null;
                     }
                 }
+                if (entryStart == BATCH_START) {
+                    if (!readBatch()) {
+                        return unfinishedEntry(null);
+                    }
+                    return nextEntry();
+                }
                 if (entryStart != ENTRY_START) {
                     throw new IOException("corrupted txlog file");
                 }
                 long seqNumber = this.in.readLong();
-                LogEntry edit = LogEntry.deserialize(this.in);
-                int entryEnd = this.in.readByte();
+                LogEntry edit;
+                int entryEnd;
+                try {
+                    edit = LogEntry.deserialize(this.in);
+                    entryEnd = this.in.readByte();
+                } catch (IllegalArgumentException corrupted) {
+                    if (isFollowedByUnwrittenSpace()) {
+                        return unfinishedEntry(corrupted);
+                    }
+                    throw corrupted;
+                }
                 if (entryEnd != ENTRY_END) {
+                    if (entryEnd == ZERO_PADDING && isFollowedByUnwrittenSpace()) {
+                        // the tail of the entry is still in the preallocated space
+                        return unfinishedEntry(null);
+                    }
                     throw new IOException("corrupted txlog file, found a " + entryEnd + " instead of magic '" + ENTRY_END + "'");
                 }
                 return new LogEntryWithSequenceNumber(new LogSequenceNumber(ledgerId, seqNumber), edit);
             } catch (EOFException truncatedLog) {
                 // if we hit EOF the entry has not been written, and so not acked, we can ignore it and say that the file is finished
                 // it is important that this is the last file in the set
-                if (in.markSupported()) {
-                    // Rewind so the next call retries this partial entry once more data is available
-                    LOGGER.log(Level.FINE, "found partial entry in file " + this.ledgerId + ", rewinding to retry later");
-                    in.reset();
-                } else {
-                    LOGGER.log(Level.SEVERE, "found unfinished entry in file " + this.ledgerId + ". entry was not acked. ignoring " + truncatedLog);
+                return unfinishedEntry(truncatedLog);
+            }
+        }
+
+        /**
+         * Reads and decompresses a batch of entries
+         *
+         * @return false if the batch has not been completely written yet
+         */
+        private boolean readBatch() throws IOException {
+            int uncompressedLength = in.readInt();
+            int compressedLength = in.readInt();
+            if (uncompressedLength <= 0 || compressedLength <= 0) {
+                if (isFollowedByUnwrittenSpace()) {
+                    return false;
                 }
+                throw new IOException("corrupted txlog file, bad batch size " + compressedLength + "/" + uncompressedLength);
+            }
+            byte[] compressed = new byte[compressedLength];
+            in.readFully(compressed);
+            int entryEnd = in.readByte();
+            if (entryEnd != ENTRY_END) {
+                if (entryEnd == ZERO_PADDING && isFollowedByUnwrittenSpace()) {
+                    return false;
+                }
+                throw new IOException("corrupted txlog file, found a " + entryEnd + " instead of magic '" + ENTRY_END + "'");
+            }
+            byte[] data = LogCompression.decompress(compressed, 0, uncompressedLength);
+            batch = new ExtendedDataInputStream(new SimpleByteArrayInputStream(data));
+            return true;
+        }
+
+        private LogEntryWithSequenceNumber nextBatchEntry() throws IOException {
+            int entryStart = batch.read();
+            if (entryStart < 0) {
                 return null;
             }
+            try {
+                if (entryStart != ENTRY_START) {
+                    throw new IOException("corrupted txlog batch in file " + ledgerId);
+                }
+                long seqNumber = batch.readLong();
+                LogEntry edit = LogEntry.deserialize(batch);
+                int entryEnd = batch.readByte();
+                if (entryEnd != ENTRY_END) {
+                    throw new IOException("corrupted txlog batch in file " + ledgerId + ", found a " + entryEnd + " instead of magic '" + ENTRY_END + "'");
+                }
+                return new LogEntryWithSequenceNumber(new LogSequenceNumber(ledgerId, seqNumber), edit);
+            } catch (EOFException truncated) {
+                // the batch has been written as a whole, it cannot be truncated
+                throw new IOException("corrupted txlog batch in file " + ledgerId, truncated);
+            }
+        }
+
+        private LogEntryWithSequenceNumber unfinishedEntry(Exception error) throws IOException {
+            if (in.markSupported()) {
+                // Rewind so the next call retries this partial entry once more data is available
+                LOGGER.log(Level.FINE, "found partial entry in file " + this.ledgerId + ", rewinding to retry later");
+                in.reset();
+            } else {
+                LOGGER.log(Level.SEVERE, "found unfinished entry in file " + this.ledgerId + ". entry was not acked. ignoring " + error);
+            }
+            return null;
+        }
+
+        private void rewind() throws IOException {
+            if (in.markSupported()) {
+                in.reset();
+            }
+        }
+
+        /**
+         * Checks that only zeros follow the current position, up to the end
+         * of the file or for {@link #MAX_ZERO_PADDING} bytes. This happens
+         * when an entry has been only partially written to a preallocated
+         * file.
+         */
+        private boolean isFollowedByUnwrittenSpace() throws IOException {
+            for (int i = 0; i < MAX_ZERO_PADDING; i++) {
+                int b = in.read();
+                if (b < 0) {
+                    return true;
+                }
+                if (b != ZERO_PADDING) {
+                    return false;
+                }
+            }
+            return true;
         }
 
         @Override
@@ -371,6 +583,85 @@ public class FileCommitLog extends CommitLog {
         }
     }
 
+    /**
+     * Opens a new txlog file, reusing a free segment if possible. The file is
+     * already zero filled up to maxLogFileSize, so appending entries does not
+     * change the size of the file and an fdatasync does not need to flush
+     * file metadata.
+     */
+    private FileChannel openPreallocatedSegment(Path filename) throws IOException {
+        Path freeSegment = findFreeSegment();
+        if (freeSegment != null) {
+            LOGGER.log(Level.FINE, "opening (recycled {2}) new file {0} for tablespace {1}",
+                    new Object[]{filename, tableSpaceName, freeSegment.getFileName()});
+            Files.move(freeSegment, filename, StandardCopyOption.ATOMIC_MOVE);
+            recycledSegments.inc();
+            return FileChannel.open(filename, StandardOpenOption.WRITE);
+        }
+        LOGGER.log(Level.FINE, "opening (preallocated) new file {0} for tablespace {1}", new Object[]{filename, tableSpaceName});
+        FileChannel channel = FileChannel.open(filename, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+        try {
+            zeroFill(channel, maxLogFileSize);
+            // this is the only time we need to flush metadata
+            channel.force(true);
+        } catch (IOException err) {
+            channel.close();
+            throw err;
+        }
+        return channel;
+    }
+
+    private Path findFreeSegment() throws IOException {
+        List<Path> freeSegments = listFiles(FREESEGMENTEXTENSION);
+        return freeSegments.isEmpty() ? null : freeSegments.get(0);
+    }
+
+    private List<Path> listFiles(String extension) throws IOException {
+        List<Path> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(logDirectory)) {
+            for (Path path : stream) {
+                if (Files.isRegularFile(path)
+                        && (path.getFileName() + "").endsWith(extension)) {
+                    names.add(path);
+                }
+            }
+        }
+        names.sort(Comparator.comparing(Path::toString));
+        return names;
+    }
+
+    /**
+     * Writes zeros from the beginning of the file up to the given size, the
+     * file is not truncated. The position of the channel does not change.
+     */
+    private static void zeroFill(FileChannel channel, long size) throws IOException {
+        byte[] zeros = new byte[64 * 1024];
+        long position = 0;
+        while (position < size) {
+            int len = (int) Math.min(zeros.length, size - position);
+            position += channel.write(ByteBuffer.wrap(zeros, 0, len), position);
+        }
+    }
+
+    /**
+     * Transforms a dropped txlog file into a free segment. The file is renamed
+     * before zero filling it, so that in case of crash it is neither read
+     * during recovery nor reused with stale contents.
+     */
+    private void recycleSegment(Path path, String name) throws IOException {
+        Path recycling = logDirectory.resolve(name + RECYCLINGSEGMENTEXTENSION);
+        Files.move(path, recycling, StandardCopyOption.ATOMIC_MOVE);
+        prepareFreeSegment(recycling, name, StandardOpenOption.WRITE);
+    }
+
+    private void prepareFreeSegment(Path recycling, String name, StandardOpenOption... options) throws IOException {
+        try (FileChannel channel = FileChannel.open(recycling, options)) {
+            zeroFill(channel, Math.max(channel.size(), maxLogFileSize));
+            channel.force(true);
+        }
+        Files.move(recycling, logDirectory.resolve(name + FREESEGMENTEXTENSION), StandardCopyOption.ATOMIC_MOVE);
+    }
+
     public FileCommitLog(
             Path logDirectory, String tableSpaceName,
             long maxLogFileSize, ExecutorService fsyncThreadPool, StatsLogger statslogger,
@@ -381,11 +672,54 @@ public class FileCommitLog extends CommitLog {
             boolean requireSync,
             boolean enableO_DIRECT
     ) {
+        this(logDirectory, tableSpaceName, maxLogFileSize, fsyncThreadPool, statslogger, onClose,
+                maxUnsynchedBatchSize, maxUnsynchedBatchBytes, maxSyncTime, requireSync, enableO_DIRECT,
+                // legacy behaviour: wait for maxSyncTime
+                Math.min(Long.MAX_VALUE / 1000, TimeUnit.MILLISECONDS.toMicros(maxSyncTime)), false);
+    }
+
+    public FileCommitLog(
+            Path logDirectory, String tableSpaceName,
+            long maxLogFileSize, ExecutorService fsyncThreadPool, StatsLogger statslogger,
+            Consumer<FileCommitLog> onClose,
+            int maxUnsynchedBatchSize,
+            int maxUnsynchedBatchBytes,
+            int maxSyncTime,
+            boolean requireSync,
+            boolean enableO_DIRECT,
+            long groupCommitMaxWaitMicros,
+            boolean groupCommitAdaptive
+    ) {
+        this(logDirectory, tableSpaceName, maxLogFileSize, fsyncThreadPool, statslogger, onClose,
+                maxUnsynchedBatchSize, maxUnsynchedBatchBytes, maxSyncTime, requireSync, enableO_DIRECT,
+                groupCommitMaxWaitMicros, groupCommitAdaptive, false, false);
+    }
+
+    public FileCommitLog(
+            Path logDirectory, String tableSpaceName,
+            long maxLogFileSize, ExecutorService fsyncThreadPool, StatsLogger statslogger,
+            Consumer<FileCommitLog> onClose,
+            int maxUnsynchedBatchSize,
+            int maxUnsynchedBatchBytes,
+            int maxSyncTime,
+            boolean requireSync,
+            boolean enableO_DIRECT,
+            long groupCommitMaxWaitMicros,
+            boolean groupCommitAdaptive,
+            boolean preallocateSegments,
+            boolean compressBatches
+    ) {
+        this.groupCommitPolicy = new GroupCommitPolicy(TimeUnit.MICROSECONDS.toNanos(groupCommitMaxWaitMicros), groupCommitAdaptive);
         this.maxUnsyncedBatchSize = maxUnsynchedBatchSize;
         this.maxUnsyncedBatchBytes = maxUnsynchedBatchBytes;
         this.maxSyncTime = TimeUnit.MILLISECONDS.toNanos(maxSyncTime);
         this.requireSync = requireSync;
         this.enableO_DIRECT = enableO_DIRECT && OpenFileUtils.isO_DIRECT_Supported();
+        // O_DIRECT writes whole blocks, so the file is extended less frequently,
+        // and we cannot reuse files with the O_DIRECT output stream
+        this.preallocateSegments = preallocateSegments && !this.enableO_DIRECT
+                && maxLogFileSize > 0 && maxLogFileSize <= Integer.MAX_VALUE;
+        this.compressBatches = compressBatches;
         this.onClose = onClose;
         this.maxLogFileSize = maxLogFileSize;
         this.tableSpaceName = tableSpaceName;
@@ -397,8 +731,12 @@ public class FileCommitLog extends CommitLog {
         this.statsEntrySyncLatency = statslogger.getOpStatsLogger("entrySyncLatency");
         this.syncSize = statslogger.getOpStatsLogger("syncBatchSize");
         this.syncBytes = statslogger.getOpStatsLogger("syncBatchBytes");
+        this.groupCommitWindow = statslogger.getOpStatsLogger("groupCommitWindow");
+        this.groupCommitWait = statslogger.getOpStatsLogger("groupCommitWait");
         this.deferredSyncs = statslogger.getCounter("deferredSyncs");
         this.newfiles = statslogger.getCounter("newfiles");
+        this.recycledSegments = statslogger.getCounter("recycledfiles");
+        this.compressedBatchBytes = statslogger.getOpStatsLogger("compressedBatchBytes");
         statslogger.registerGauge("queuesize", new Gauge<Integer>() {
             @Override
             public Integer getDefaultValue() {
@@ -425,7 +763,8 @@ public class FileCommitLog extends CommitLog {
         });
 
         this.fsyncThreadPool = fsyncThreadPool;
-        LOGGER.log(Level.FINE, "tablespace {2}, logdirectory: {0}, maxLogFileSize {1} bytes", new Object[]{logDirectory, maxLogFileSize, tableSpaceName});
+        LOGGER.log(Level.FINE, "tablespace {2}, logdirectory: {0}, maxLogFileSize {1} bytes, {3}, preallocateSegments {4}, compressBatches {5}",
+                new Object[]{logDirectory, maxLogFileSize, tableSpaceName, groupCommitPolicy, this.preallocateSegments, compressBatches});
     }
 
     private class SyncTask implements Runnable {
@@ -446,7 +785,9 @@ public class FileCommitLog extends CommitLog {
         public void run() {
             long now = System.currentTimeMillis();
             try {
+                long startSync = System.nanoTime();
                 synch();
+                groupCommitPolicy.batchSynced(syncNeeded.size(), System.nanoTime() - startSync);
 
                 syncSize.registerSuccessfulValue(unsyncedCount);
                 syncBytes.registerSuccessfulValue(unsyncedBytes);
@@ -463,6 +804,10 @@ public class FileCommitLog extends CommitLog {
                 for (LogEntryHolderFuture e : syncNeeded) {
                     statsEntrySyncLatency.registerFailedEvent(now - e.timestamp, TimeUnit.MILLISECONDS);
                 }
+            } finally {
+                syncsInProgress.decrementAndGet();
+                // wake up the spool thread, that may be waiting to start the next fsync
+                writeQueue.offer(syncCompletedMarker);
             }
         }
 
@@ -477,10 +822,21 @@ public class FileCommitLog extends CommitLog {
                 List<LogEntryHolderFuture> syncNeeded = new ArrayList<>();
                 long unsyncedBytes = 0;
                 int unsyncedCount = 0;
+                // group commit: the batch of synchronous entries is open from batchStart to batchDeadline
+                long batchStart = 0;
+                long batchDeadline = 0;
                 while (!closed || !writeQueue.isEmpty()) {
-                    LogEntryHolderFuture entry = writeQueue.poll(maxSyncTime, TimeUnit.NANOSECONDS);
-                    boolean timedOut = false;
-                    if (entry != null) {
+                    long timeout;
+                    if (syncNeeded.isEmpty() || syncsInProgress.get() > 0) {
+                        timeout = maxSyncTime;
+                    } else {
+                        timeout = Math.max(0, batchDeadline - System.nanoTime());
+                    }
+                    LogEntryHolderFuture entry = timeout > 0
+                            ? writeQueue.poll(timeout, TimeUnit.NANOSECONDS)
+                            : writeQueue.poll();
+                    boolean queueDrained = entry == null || entry == syncCompletedMarker;
+                    if (entry != null && entry != syncCompletedMarker) {
                         if (entry.entry == null) {
                             // force close placeholder
                             break;
@@ -493,13 +849,34 @@ public class FileCommitLog extends CommitLog {
                         unsyncedBytes += size;
 
                         if (entry.sync) {
+                            if (syncNeeded.isEmpty()) {
+                                long window = groupCommitPolicy.getWindowNanos();
+                                groupCommitWindow.registerSuccessfulEvent(window, TimeUnit.NANOSECONDS);
+                                batchStart = System.nanoTime();
+                                batchDeadline = batchStart + window;
+                            }
                             syncNeeded.add(entry);
                         }
 
+                    }
+
+                    boolean batchFull = unsyncedCount >= maxUnsyncedBatchSize || unsyncedBytes >= maxUnsyncedBatchBytes;
+                    boolean closeBatch;
+                    if (syncNeeded.isEmpty()) {
+                        closeBatch = entry == null || batchFull;
+                    } else if (batchFull) {
+                        closeBatch = true;
+                    } else if (syncsInProgress.get() > 0) {
+                        // keep on coalescing entries until the running fsync completes
+                        closeBatch = false;
                     } else {
-                        timedOut = true;
+                        long now = System.nanoTime();
+                        // close the batch when the window is expired and there are no more queued entries,
+                        // but do not let a continuous stream of writes delay the fsync indefinitely
+                        closeBatch = now >= batchDeadline
+                                && (queueDrained || now - batchStart >= groupCommitPolicy.getMaxWaitNanos());
                     }
-                    if (timedOut || unsyncedCount >= maxUnsyncedBatchSize || unsyncedBytes >= maxUnsyncedBatchBytes) {
+                    if (closeBatch) {
 
                         /* Don't flush if there is nothing */
                         if (unsyncedCount > 0) {
@@ -507,8 +884,10 @@ public class FileCommitLog extends CommitLog {
                             flush();
 
                             if (!syncNeeded.isEmpty()) {
+                                groupCommitWait.registerSuccessfulEvent(System.nanoTime() - batchStart, TimeUnit.NANOSECONDS);
                                 SyncTask syncTask = new SyncTask(syncNeeded, unsyncedCount, unsyncedBytes);
                                 syncNeeded = new ArrayList<>();
+                                syncsInProgress.incrementAndGet();
                                 fsyncThreadPool.submit(syncTask);
                             }
 
@@ -529,6 +908,7 @@ public class FileCommitLog extends CommitLog {
                     if (!syncNeeded.isEmpty()) {
                         LOGGER.log(Level.INFO, "synching last {0} entries", unsyncedCount);
                         SyncTask syncTask = new SyncTask(syncNeeded, unsyncedCount, unsyncedBytes);
+                        syncsInProgress.incrementAndGet();
                         syncTask.run();
                     }
 
@@ -743,6 +1123,8 @@ public class FileCommitLog extends CommitLog {
             final Path last = names.isEmpty() ? null : names.get(names.size() - 1);
 
             int count = 0;
+            // when not preallocating files we do not keep free segments
+            int freeSegments = preallocateSegments ? listFiles(FREESEGMENTEXTENSION).size() : MAX_FREE_SEGMENTS;
 
             long ledgerLimit = Math.min(lastCheckPointSequenceNumber.ledgerId, currentLedgerId);
             // Tailer floor: don't delete files any external tailer still needs.
@@ -763,12 +1145,23 @@ public class FileCommitLog extends CommitLog {
                     long ledgerId = Long.parseLong(name, 16);
 
                     if (!lastFile && ledgerId < ledgerLimit) {
-                        LOGGER.log(Level.SEVERE, "deleting logfile {0} for ledger {1}", new Object[]{path.toAbsolutePath(), ledgerId});
-                        try {
-                            Files.delete(path);
-                        } catch (IOException errorDelete) {
-                            LOGGER.log(Level.SEVERE, "fatal error while deleting file " + path, errorDelete);
-                            throw new LogNotAvailableException(errorDelete);
+                        if (freeSegments < MAX_FREE_SEGMENTS) {
+                            LOGGER.log(Level.SEVERE, "recycling logfile {0} for ledger {1}", new Object[]{path.toAbsolutePath(), ledgerId});
+                            try {
+                                recycleSegment(path, name);
+                            } catch (IOException errorRecycle) {
+                                LOGGER.log(Level.SEVERE, "fatal error while recycling file " + path, errorRecycle);
+                                throw new LogNotAvailableException(errorRecycle);
+                            }
+                            ++freeSegments;
+                        } else {
+                            LOGGER.log(Level.SEVERE, "deleting logfile {0} for ledger {1}", new Object[]{path.toAbsolutePath(), ledgerId});
+                            try {
+                                Files.delete(path);
+                            } catch (IOException errorDelete) {
+                                LOGGER.log(Level.SEVERE, "fatal error while deleting file " + path, errorDelete);
+                                throw new LogNotAvailableException(errorDelete);
+                            }
                         }
                         ++count;
                     }
@@ -776,6 +1169,14 @@ public class FileCommitLog extends CommitLog {
                 }
             }
 
+            if (preallocateSegments && freeSegments == 0) {
+                // prepare the next file here, not in the write path
+                LOGGER.log(Level.INFO, "tablespace {0}, preallocating a new free segment", tableSpaceName);
+                String name = String.format("%016x", currentLedgerId) + "-" + System.nanoTime();
+                prepareFreeSegment(logDirectory.resolve(name + RECYCLINGSEGMENTEXTENSION), name,
+                        StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+            }
+
             LOGGER.log(Level.SEVERE, "Deleted logfiles: {0}", count);
         } catch (IOException err) {
             failed = true;
@@ -786,6 +1187,7 @@ public class FileCommitLog extends CommitLog {
     @Override
     public void startWriting(int expectedReplicaCount) throws LogNotAvailableException {
         ensureDirectories();
+        deleteUnusableSegments();
         this.spool.start();
     }
 
@@ -801,6 +1203,26 @@ public class FileCommitLog extends CommitLog {
         }
     }
 
+    /**
+     * Deletes segments which were not completely zero filled, and every free
+     * segment if preallocation has been disabled.
+     */
+    private void deleteUnusableSegments() throws LogNotAvailableException {
+        try {
+            List<Path> unusable = listFiles(RECYCLINGSEGMENTEXTENSION);
+            if (!preallocateSegments) {
+                unusable.addAll(listFiles(FREESEGMENTEXTENSION));
+            }
+            for (Path path : unusable) {
+                LOGGER.log(Level.INFO, "tablespace {0}, deleting unused segment {1}", new Object[]{tableSpaceName, path});
+                Files.delete(path);
+            }
+        } catch (IOException err) {
+            failed = true;
+            throw new LogNotAvailableException(err);
+        }
+    }
+
     @Override
     public void close() throws LogNotAvailableException {
         closed = true;
@@ -21,6 +21,7 @@
 package herddb.file;
 
 import herddb.log.CommitLogManager;
+import herddb.log.LogCompression;
 import herddb.log.LogNotAvailableException;
 import herddb.server.ServerConfiguration;
 import herddb.utils.OpenFileUtils;
@@ -61,6 +62,10 @@ public class FileCommitLogManager extends CommitLogManager {
     private final int maxUnsynchedBatchSize;
     private final int maxUnsynchedBatchBytes;
     private final int maxSyncTime;
+    private final long groupCommitMaxWaitMicros;
+    private final boolean groupCommitAdaptive;
+    private final boolean preallocateSegments;
+    private final boolean compressBatches;
     private final boolean requireSync;
     // CHECKSTYLE.OFF: MemberName
     private final boolean enableO_DIRECT;
@@ -77,6 +82,10 @@ public class FileCommitLogManager extends CommitLogManager {
                 ServerConfiguration.PROPERTY_REQUIRE_FSYNC_DEFAULT,
                 ServerConfiguration.PROPERTY_TXLOG_USE_ODIRECT_DEFAULT,
                 ServerConfiguration.PROPERTY_DEFERRED_SYNC_PERIOD_DEFAULT,
+                ServerConfiguration.PROPERTY_TXLOG_GROUP_COMMIT_MAX_WAIT_MICROS_DEFAULT,
+                ServerConfiguration.PROPERTY_TXLOG_GROUP_COMMIT_ADAPTIVE_DEFAULT,
+                ServerConfiguration.PROPERTY_TXLOG_PREALLOCATE_SEGMENTS_DEFAULT,
+                LogCompression.isCompressionEnabled(ServerConfiguration.PROPERTY_TXLOG_COMPRESSION_DEFAULT),
                 NullStatsLogger.INSTANCE);
     }
 
@@ -88,6 +97,59 @@ public class FileCommitLogManager extends CommitLogManager {
             boolean enableO_DIRECT,
             int deferredSyncPeriod,
             StatsLogger statsLogger
+    ) {
+        // fixed group commit window, equal to maxSyncTime
+        this(baseDirectory, maxLogFileSize, maxUnsynchedBatchSize, maxUnsynchedBatchBytes, maxSyncTime,
+                requireSync, enableO_DIRECT, deferredSyncPeriod,
+                Math.min(Long.MAX_VALUE / 1000, TimeUnit.MILLISECONDS.toMicros(maxSyncTime)), false,
+                statsLogger);
+    }
+
+    public FileCommitLogManager(
+            Path baseDirectory, long maxLogFileSize, int maxUnsynchedBatchSize,
+            int maxUnsynchedBatchBytes,
+            int maxSyncTime,
+            boolean requireSync,
+            boolean enableO_DIRECT,
+            int deferredSyncPeriod,
+            long groupCommitMaxWaitMicros,
+            boolean groupCommitAdaptive,
+            StatsLogger statsLogger
+    ) {
+        this(baseDirectory, maxLogFileSize, maxUnsynchedBatchSize, maxUnsynchedBatchBytes, maxSyncTime,
+                requireSync, enableO_DIRECT, deferredSyncPeriod, groupCommitMaxWaitMicros, groupCommitAdaptive,
+                false, statsLogger);
+    }
+
+    public FileCommitLogManager(
+            Path baseDirectory, long maxLogFileSize, int maxUnsynchedBatchSize,
+            int maxUnsynchedBatchBytes,
+            int maxSyncTime,
+            boolean requireSync,
+            boolean enableO_DIRECT,
+            int deferredSyncPeriod,
+            long groupCommitMaxWaitMicros,
+            boolean groupCommitAdaptive,
+            boolean preallocateSegments,
+            StatsLogger statsLogger
+    ) {
+        this(baseDirectory, maxLogFileSize, maxUnsynchedBatchSize, maxUnsynchedBatchBytes, maxSyncTime,
+                requireSync, enableO_DIRECT, deferredSyncPeriod, groupCommitMaxWaitMicros, groupCommitAdaptive,
+                preallocateSegments, false, statsLogger);
+    }
+
+    public FileCommitLogManager(
+            Path baseDirectory, long maxLogFileSize, int maxUnsynchedBatchSize,
+            int maxUnsynchedBatchBytes,
+            int maxSyncTime,
+            boolean requireSync,
+            boolean enableO_DIRECT,
+            int deferredSyncPeriod,
+            long groupCommitMaxWaitMicros,
+            boolean groupCommitAdaptive,
+            boolean preallocateSegments,
+            boolean compressBatches,
+            StatsLogger statsLogger
     ) {
         this.baseDirectory = baseDirectory;
         this.maxLogFileSize = maxLogFileSize;
@@ -96,9 +158,15 @@ public class FileCommitLogManager extends CommitLogManager {
         this.maxUnsynchedBatchSize = maxUnsynchedBatchSize;
         this.maxUnsynchedBatchBytes = maxUnsynchedBatchBytes;
         this.maxSyncTime = maxSyncTime;
+        this.groupCommitMaxWaitMicros = groupCommitMaxWaitMicros;
+        this.groupCommitAdaptive = groupCommitAdaptive;
+        this.preallocateSegments = preallocateSegments;
+        this.compressBatches = compressBatches;
         this.requireSync = requireSync;
         this.enableO_DIRECT = enableO_DIRECT && OpenFileUtils.isO_DIRECT_Supported();
-        LOG.log(Level.INFO, "Txlog settings: fsync: " + requireSync + ", O_DIRECT: " + enableO_DIRECT + ", deferredSyncPeriod:" + deferredSyncPeriod);
+        LOG.log(Level.INFO, "Txlog settings: fsync: " + requireSync + ", O_DIRECT: " + enableO_DIRECT + ", deferredSyncPeriod:" + deferredSyncPeriod
+                + ", groupCommitMaxWaitMicros: " + groupCommitMaxWaitMicros + ", groupCommitAdaptive: " + groupCommitAdaptive
+                + ", preallocateSegments: " + preallocateSegments + ", compressBatches: " + compressBatches);
     }
 
     @Override
@@ -116,7 +184,11 @@ public class FileCommitLogManager extends CommitLogManager {
                     maxUnsynchedBatchBytes,
                     maxSyncTime,
                     requireSync,
-                    enableO_DIRECT
+                    enableO_DIRECT,
+                    groupCommitMaxWaitMicros,
+                    groupCommitAdaptive,
+                    preallocateSegments,
+                    compressBatches
             );
             activeLogs.add(res);
             return res;
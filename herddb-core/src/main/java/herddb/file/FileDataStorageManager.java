@@ -62,6 +62,7 @@ import java.io.IOError;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
@@ -78,6 +79,7 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.logging.Level;
@@ -107,6 +109,11 @@ public class FileDataStorageManager extends DataStorageManager {
     private final OpStatsLogger dataPageWrites;
     private final OpStatsLogger indexPageReads;
     private final OpStatsLogger indexPageWrites;
+    private final boolean pageSegments;
+    private final long pageSegmentSize;
+    private final int pageSegmentMaxPages;
+    private final double pageSegmentCompactionThreshold;
+    private final ConcurrentHashMap<Path, PageSegmentStore> segmentStores = new ConcurrentHashMap<>();
 
     public static final String FILEEXTENSION_PAGE = ".page";
 
@@ -140,6 +147,22 @@ public class FileDataStorageManager extends DataStorageManager {
             Path baseDirectory, Path tmpDirectory, int swapThreshold,
             boolean requirefsync, boolean pageodirect, boolean indexodirect,
             boolean hashChecksEnabled, boolean hashWritesEnabled, StatsLogger logger
+    ) {
+        this(baseDirectory, tmpDirectory, swapThreshold, requirefsync, pageodirect, indexodirect,
+                hashChecksEnabled, hashWritesEnabled,
+                ServerConfiguration.PROPERTY_PAGE_SEGMENTS_ENABLED_DEFAULT,
+                ServerConfiguration.PROPERTY_PAGE_SEGMENT_SIZE_DEFAULT,
+                ServerConfiguration.PROPERTY_PAGE_SEGMENT_MAX_PAGES_DEFAULT,
+                ServerConfiguration.PROPERTY_PAGE_SEGMENT_COMPACTION_THRESHOLD_DEFAULT,
+                logger);
+    }
+
+    public FileDataStorageManager(
+            Path baseDirectory, Path tmpDirectory, int swapThreshold,
+            boolean requirefsync, boolean pageodirect, boolean indexodirect,
+            boolean hashChecksEnabled, boolean hashWritesEnabled,
+            boolean pageSegments, long pageSegmentSize, int pageSegmentMaxPages,
+            double pageSegmentCompactionThreshold, StatsLogger logger
     ) {
         this.baseDirectory = baseDirectory;
         this.tmpDirectory = tmpDirectory;
@@ -150,6 +173,10 @@ public class FileDataStorageManager extends DataStorageManager {
         this.indexodirect = indexodirect && OpenFileUtils.isO_DIRECT_Supported();
         this.hashChecksEnabled = hashChecksEnabled;
         this.hashWritesEnabled = hashWritesEnabled;
+        this.pageSegments = pageSegments;
+        this.pageSegmentSize = pageSegmentSize;
+        this.pageSegmentMaxPages = pageSegmentMaxPages;
+        this.pageSegmentCompactionThreshold = pageSegmentCompactionThreshold;
         StatsLogger scope = logger.scope("filedatastore");
         this.dataPageReads = scope.getOpStatsLogger("data_pagereads");
         this.dataPageWrites = scope.getOpStatsLogger("data_pagewrites");
@@ -172,6 +199,7 @@ public class FileDataStorageManager extends DataStorageManager {
 
     @Override
     public void close() throws DataStorageManagerException {
+        closeSegmentStores(baseDirectory);
         LOGGER.log(Level.FINE, "cleaning tmp directory {0}", tmpDirectory.toAbsolutePath().toString());
         try {
             FileUtils.cleanDirectory(tmpDirectory);
@@ -185,6 +213,7 @@ public class FileDataStorageManager extends DataStorageManager {
         SystemInstrumentation.instrumentationPoint("eraseTablespaceData", tableSpace);
         Path tablespaceDirectory = getTablespaceDirectory(tableSpace);
         LOGGER.log(Level.INFO, "erasing tablespace " + tableSpace + " directory {0}", tablespaceDirectory.toAbsolutePath().toString());
+        closeSegmentStores(tablespaceDirectory);
         try {
             FileUtils.cleanDirectory(tablespaceDirectory);
         } catch (IOException err) {
@@ -257,6 +286,35 @@ public class FileDataStorageManager extends DataStorageManager {
         return tableDirectory.resolve(pageId + FILEEXTENSION_PAGE);
     }
 
+    private PageSegmentStore getSegmentStore(Path tableDirectory) throws IOException {
+        try {
+            return segmentStores.computeIfAbsent(tableDirectory, dir -> {
+                try {
+                    return PageSegmentStore.open(dir, pageSegmentSize, pageSegmentMaxPages, requirefsync);
+                } catch (IOException err) {
+                    throw new UncheckedIOException(err);
+                }
+            });
+        } catch (UncheckedIOException err) {
+            throw err.getCause();
+        }
+    }
+
+    /**
+     * Closes every segment store opened for tables under the given directory
+     *
+     * @param directory
+     */
+    private void closeSegmentStores(Path directory) {
+        segmentStores.entrySet().removeIf(entry -> {
+            if (entry.getKey().startsWith(directory)) {
+                entry.getValue().close();
+                return true;
+            }
+            return false;
+        });
+    }
+
     private static Path getTableCheckPointsFile(Path tableDirectory, LogSequenceNumber sequenceNumber) {
         return tableDirectory.resolve(sequenceNumber.ledgerId + "." + sequenceNumber.offset + EXTENSION_TABLEORINDExCHECKPOINTINFOFILE);
     }
@@ -307,7 +365,10 @@ public class FileDataStorageManager extends DataStorageManager {
         Path pageFile = getPageFile(tableDir, pageId);
         List<Record> result;
         try {
-            if (pageodirect) {
+            byte[] fromSegment = pageSegments ? getSegmentStore(tableDir).readPage(pageId) : null;
+            if (fromSegment != null) {
+                result = rawReadDataPage(pageFile, fromSegment);
+            } else if (pageodirect) {
                 try (ODirectFileInputStream odirect = new ODirectFileInputStream(pageFile, O_DIRECT_BLOCK_BATCH)) {
                     result = rawReadDataPage(pageFile, odirect);
                 }
@@ -336,6 +397,10 @@ public class FileDataStorageManager extends DataStorageManager {
         if (read != size) {
             throw new IOException("short read, read " + read + " instead of " + size + " bytes from " + pageFile);
         }
+        return rawReadDataPage(pageFile, dataPage);
+    }
+
+    private List<Record> rawReadDataPage(Path pageFile, byte[] dataPage) throws IOException, DataStorageManagerException {
         try (ByteArrayCursor dataIn = ByteArrayCursor.wrap(dataPage)) {
             long version = dataIn.readVLong(); // version
             long flags = dataIn.readVLong(); // flags for future implementations
@@ -665,6 +730,25 @@ public class FileDataStorageManager extends DataStorageManager {
                 result.add(new DeleteFileAction(tableSpace, tableName, "delete page " + pageId + " file " + p.toAbsolutePath(), p));
             }
         }
+        if (pageSegments) {
+            try {
+                PageSegmentStore store = getSegmentStore(dir);
+                List<Long> pagesToFree = new ArrayList<>();
+                for (long pageId : store.getPageIds()) {
+                    if (!pins.containsKey(pageId)
+                            && !tableStatus.activePages.containsKey(pageId)
+                            && pageId < maxPageId) {
+                        pagesToFree.add(pageId);
+                    }
+                }
+                if (!pagesToFree.isEmpty()) {
+                    result.add(new FreeSegmentPagesAction(tableSpace, tableName,
+                            "free " + pagesToFree.size() + " pages from segments of " + dir.toAbsolutePath(), store, pagesToFree));
+                }
+            } catch (IOException err) {
+                throw new DataStorageManagerException(err);
+            }
+        }
 
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
             for (Path p : stream) {
@@ -861,6 +945,21 @@ public class FileDataStorageManager extends DataStorageManager {
                 }
             }
         }
+        if (pageSegments) {
+            try {
+                PageSegmentStore store = getSegmentStore(getTableDirectory(tableSpace, tableName));
+                for (long pageId : new ArrayList<>(store.getPageIds())) {
+                    if (!activePagesAtBoot.contains(pageId)) {
+                        LOGGER.log(Level.FINE, "cleanupAfterBoot segment page {0}.{1} pageId {2}. will be freed",
+                                new Object[]{tableSpace, tableName, pageId});
+                        store.freePage(pageId);
+                    }
+                }
+                store.compact(pageSegmentCompactionThreshold);
+            } catch (IOException err) {
+                throw new DataStorageManagerException(err);
+            }
+        }
     }
 
     /**
@@ -875,20 +974,8 @@ public class FileDataStorageManager extends DataStorageManager {
      */
     private long writePage(Collection<Record> newPage, ManagedFile file, OutputStream stream) throws IOException {
 
-        try (RecyclableByteArrayOutputStream oo = getWriteBuffer();
-             ExtendedDataOutputStream dataOutput = new ExtendedDataOutputStream(oo)) {
-
-            dataOutput.writeVLong(1); // version
-            dataOutput.writeVLong(0); // flags for future implementations
-            dataOutput.writeInt(newPage.size());
-            for (Record record : newPage) {
-                dataOutput.writeArray(record.key);
-                dataOutput.writeArray(record.value);
-            }
-            dataOutput.flush();
-            long hash = hashWritesEnabled ? XXHash64Utils.hash(oo.getBuffer(), 0, oo.size()) : NO_HASH_PRESENT;
-            dataOutput.writeLong(hash);
-            dataOutput.flush();
+        try (RecyclableByteArrayOutputStream oo = getWriteBuffer()) {
+            serializePage(newPage, oo);
             stream.write(oo.getBuffer(), 0, oo.size());
             if (file != null) { // O_DIRECT does not need fsync
                 file.sync();
@@ -898,6 +985,38 @@ public class FileDataStorageManager extends DataStorageManager {
 
     }
 
+    /**
+     * Write a record page inside the segment files of the table
+     *
+     * @param newPage data to write
+     * @param pageId  id of the page
+     * @param store   segments of the table
+     * @return
+     * @throws IOException
+     */
+    private long writePage(Collection<Record> newPage, long pageId, PageSegmentStore store) throws IOException {
+        try (RecyclableByteArrayOutputStream oo = getWriteBuffer()) {
+            serializePage(newPage, oo);
+            store.writePage(pageId, oo.getBuffer(), 0, oo.size());
+            return oo.size();
+        }
+    }
+
+    private void serializePage(Collection<Record> newPage, RecyclableByteArrayOutputStream oo) throws IOException {
+        ExtendedDataOutputStream dataOutput = new ExtendedDataOutputStream(oo);
+        dataOutput.writeVLong(1); // version
+        dataOutput.writeVLong(0); // flags for future implementations
+        dataOutput.writeInt(newPage.size());
+        for (Record record : newPage) {
+            dataOutput.writeArray(record.key);
+            dataOutput.writeArray(record.value);
+        }
+        dataOutput.flush();
+        long hash = hashWritesEnabled ? XXHash64Utils.hash(oo.getBuffer(), 0, oo.size()) : NO_HASH_PRESENT;
+        dataOutput.writeLong(hash);
+        dataOutput.flush();
+    }
+
     @Override
     public void writePage(String tableSpace, String tableName, long pageId, Collection<Record> newPage) throws DataStorageManagerException {
         // synch on table is done by the TableManager
@@ -907,7 +1026,9 @@ public class FileDataStorageManager extends DataStorageManager {
         long size;
 
         try {
-            if (pageodirect) {
+            if (pageSegments) {
+                size = writePage(newPage, pageId, getSegmentStore(tableDir));
+            } else if (pageodirect) {
                 try (ODirectFileOutputStream odirect = new ODirectFileOutputStream(pageFile, O_DIRECT_BLOCK_BATCH,
                         StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
                     size = writePage(newPage, null, odirect);
@@ -1648,6 +1769,7 @@ public class FileDataStorageManager extends DataStorageManager {
     public void dropTable(String tablespace, String tableName) throws DataStorageManagerException {
         Path tableDir = getTableDirectory(tablespace, tableName);
         LOGGER.log(Level.INFO, "dropTable {0}.{1} in {2}", new Object[]{tablespace, tableName, tableDir});
+        closeSegmentStores(tableDir);
         try {
             deleteDirectory(tableDir);
         } catch (IOException ex) {
@@ -1904,6 +2026,32 @@ public class FileDataStorageManager extends DataStorageManager {
         }
     }
 
+    private class FreeSegmentPagesAction extends PostCheckpointAction {
+
+        private final PageSegmentStore store;
+        private final List<Long> pageIds;
+
+        public FreeSegmentPagesAction(String tableSpace, String tableName, String description, PageSegmentStore store, List<Long> pageIds) {
+            super(tableSpace, tableName, description);
+            this.store = store;
+            this.pageIds = pageIds;
+        }
+
+        @Override
+        public void run() {
+            try {
+                LOGGER.log(Level.FINE, description);
+                for (long pageId : pageIds) {
+                    store.freePage(pageId);
+                }
+                int dropped = store.compact(pageSegmentCompactionThreshold);
+                LOGGER.log(Level.FINE, "{0}.{1}: compacted {2} segments", new Object[]{tableSpace, tableName, dropped});
+            } catch (IOException err) {
+                LOGGER.log(Level.SEVERE, "Could not free pages " + pageIds + " of " + tableSpace + "." + tableName + ":" + err, err);
+            }
+        }
+    }
+
     private static final Recycler<RecyclableByteArrayOutputStream> WRITE_BUFFERS_RECYCLER = new Recycler<RecyclableByteArrayOutputStream>() {
 
         @Override
@@ -0,0 +1,119 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.file;
+
+/**
+ * Decides how long {@link FileCommitLog} waits for other synchronous writes
+ * before issuing an fsync, in order to coalesce many concurrent writes into a
+ * single write+force.
+ * <p>
+ * With a fixed policy the window is always the configured maximum. With the
+ * adaptive policy the window follows the observed fsync latency (waiting for
+ * a fraction of an fsync is cheap compared to issuing another fsync) and it
+ * drops to zero when batches contain only one synchronous entry, because in
+ * that case there are no other writers to wait for.
+ * <p>
+ * This class is not thread safe, it is only accessed by the spool thread of
+ * the log and by the fsync task, which never run concurrently on the same
+ * batch; statistics are only hints so a lost update is harmless.
+ *
+ * @author enrico.olivelli
+ */
+final class GroupCommitPolicy {
+
+    /**
+     * Weight of the last observation in the moving averages
+     */
+    private static final double ALPHA = 0.2;
+
+    /**
+     * Average number of synchronous entries per batch above which we consider
+     * that there are concurrent writers
+     */
+    private static final double CONCURRENT_WRITERS_THRESHOLD = 1.5;
+
+    private final long maxWaitNanos;
+    private final boolean adaptive;
+
+    private volatile double averageFsyncNanos;
+    private volatile double averageSyncEntries = 1;
+
+    GroupCommitPolicy(long maxWaitNanos, boolean adaptive) {
+        if (maxWaitNanos < 0) {
+            throw new IllegalArgumentException("invalid maxWaitNanos " + maxWaitNanos);
+        }
+        this.maxWaitNanos = maxWaitNanos;
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Time to wait, after the first synchronous entry of a batch has been
+     * written, before closing the batch.
+     *
+     * @return the window in nanoseconds
+     */
+    long getWindowNanos() {
+        if (!adaptive) {
+            return maxWaitNanos;
+        }
+        if (averageSyncEntries < CONCURRENT_WRITERS_THRESHOLD) {
+            return 0;
+        }
+        return Math.min(maxWaitNanos, (long) (averageFsyncNanos / 2));
+    }
+
+    long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Records the outcome of a batch
+     *
+     * @param syncEntries number of synchronous entries acknowledged by the
+     *                    fsync
+     * @param fsyncNanos  duration of the fsync
+     */
+    void batchSynced(int syncEntries, long fsyncNanos) {
+        averageFsyncNanos = averageFsyncNanos == 0
+                ? fsyncNanos
+                : averageFsyncNanos + ALPHA * (fsyncNanos - averageFsyncNanos);
+        averageSyncEntries = averageSyncEntries + ALPHA * (syncEntries - averageSyncEntries);
+    }
+
+    double getAverageFsyncNanos() {
+        return averageFsyncNanos;
+    }
+
+    double getAverageSyncEntries() {
+        return averageSyncEntries;
+    }
+
+    @Override
+    public String toString() {
+        return "GroupCommitPolicy{" + "maxWaitNanos=" + maxWaitNanos + ", adaptive=" + adaptive
+                + ", averageFsyncNanos=" + averageFsyncNanos + ", averageSyncEntries=" + averageSyncEntries + '}';
+    }
+
+}
@@ -0,0 +1,513 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stores many data pages of a table inside a few large, preallocated segment
+ * files instead of using one file per page.
+ * <p>
+ * Every segment starts with a fixed size directory of slots (pageId, offset,
+ * length), followed by the data area where pages are appended. The directory
+ * is read with a single read when the store is opened, so locating a page
+ * never touches file system metadata, and a page is read with a single
+ * positional read.
+ * <p>
+ * Pages are never overwritten in place: a page which is no more referenced
+ * by any checkpoint is freed, and segments whose live data falls below a
+ * threshold are compacted by moving the surviving pages to the current
+ * segment and deleting the old file.
+ *
+ * @author enrico.olivelli
+ */
+final class PageSegmentStore implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(PageSegmentStore.class.getName());
+
+    public static final String FILEEXTENSION_SEGMENT = ".segment";
+
+    static final long MAGIC = 0x4844425345474d31L; // HDBSEGM1
+    static final int SLOT_SIZE = 8 + 8 + 4;
+    static final int HEADER_FIXED_SIZE = 8 + 4 + 4;
+    static final int ALIGNMENT = 4096;
+    private static final long EMPTY_SLOT = 0;
+    private static final long FREE_SLOT = -1;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final int slotsPerSegment;
+    private final boolean requirefsync;
+    private final Map<Long, Segment> segments = new TreeMap<>();
+    private final ConcurrentHashMap<Long, PageLocation> pages = new ConcurrentHashMap<>();
+    /**
+     * Guards segment files against being closed/deleted while a read is in
+     * progress
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Segment current;
+    /**
+     * Segments being compacted, guarded by this.
+     */
+    private Set<Segment> compacting = Collections.emptySet();
+    private long nextSegmentId = 1;
+    private boolean closed;
+
+    private static final class Segment {
+
+        private final long id;
+        private final Path file;
+        private final FileChannel channel;
+        private final long capacity;
+        private final long dataStart;
+        private long writePosition;
+        private int nextSlot;
+        private long liveBytes;
+
+        private Segment(long id, Path file, FileChannel channel, long capacity, long dataStart) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.capacity = capacity;
+            this.dataStart = dataStart;
+            this.writePosition = dataStart;
+        }
+
+        private long usedBytes() {
+            return writePosition - dataStart;
+        }
+
+        @Override
+        public String toString() {
+            return "Segment{" + "id=" + id + ", file=" + file + ", capacity=" + capacity
+                    + ", used=" + usedBytes() + ", live=" + liveBytes + ", slots=" + nextSlot + '}';
+        }
+    }
+
+    private static final class PageLocation {
+
+        private final Segment segment;
+        private final int slot;
+        private final long offset;
+        private final int length;
+
+        private PageLocation(Segment segment, int slot, long offset, int length) {
+            this.segment = segment;
+            this.slot = slot;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private PageSegmentStore(Path directory, long segmentSize, int slotsPerSegment, boolean requirefsync) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.slotsPerSegment = slotsPerSegment;
+        this.requirefsync = requirefsync;
+    }
+
+    /**
+     * Opens the store in the given directory, loading the directory of every
+     * existing segment.
+     *
+     * @param directory       table directory
+     * @param segmentSize     size of new segments
+     * @param slotsPerSegment max number of pages in a segment
+     * @param requirefsync    fsync data after each page write
+     * @return the store
+     * @throws IOException
+     */
+    static PageSegmentStore open(Path directory, long segmentSize, int slotsPerSegment, boolean requirefsync) throws IOException {
+        PageSegmentStore store = new PageSegmentStore(directory, segmentSize, slotsPerSegment, requirefsync);
+        store.load();
+        return store;
+    }
+
+    static boolean isSegmentFile(Path path) {
+        return getSegmentId(path) > 0;
+    }
+
+    private static long getSegmentId(Path p) {
+        String filename = p.getFileName() + "";
+        if (filename.endsWith(FILEEXTENSION_SEGMENT)) {
+            try {
+                return Long.parseLong(filename.substring(0, filename.length() - FILEEXTENSION_SEGMENT.length()));
+            } catch (NumberFormatException no) {
+                return -1;
+            }
+        } else {
+            return -1;
+        }
+    }
+
+    private static long headerSize(int slots) {
+        long size = HEADER_FIXED_SIZE + (long) slots * SLOT_SIZE;
+        return ((size + ALIGNMENT - 1) / ALIGNMENT) * ALIGNMENT;
+    }
+
+    private void load() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PageSegmentStore::isSegmentFile)) {
+            stream.forEach(files::add);
+        }
+        for (Path file : files) {
+            long id = getSegmentId(file);
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                ByteBuffer fixed = ByteBuffer.allocate(HEADER_FIXED_SIZE);
+                readFully(channel, fixed, 0);
+                fixed.flip();
+                long magic = fixed.getLong();
+                int slots = fixed.getInt();
+                if (magic == 0) {
+                    // segment creation interrupted by a crash, it cannot contain pages
+                    LOGGER.log(Level.INFO, "dropping empty segment file {0}", file.toAbsolutePath());
+                    channel.close();
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                if (magic != MAGIC || slots <= 0) {
+                    throw new IOException("corrupted segment file " + file.toAbsolutePath());
+                }
+                ByteBuffer directoryBuffer = ByteBuffer.allocate(slots * SLOT_SIZE);
+                readFully(channel, directoryBuffer, HEADER_FIXED_SIZE);
+                directoryBuffer.flip();
+                Segment segment = new Segment(id, file, channel, channel.size(), headerSize(slots));
+                for (int slot = 0; slot < slots; slot++) {
+                    long pageId = directoryBuffer.getLong();
+                    long offset = directoryBuffer.getLong();
+                    int length = directoryBuffer.getInt();
+                    if (pageId == EMPTY_SLOT) {
+                        break;
+                    }
+                    segment.nextSlot = slot + 1;
+                    segment.writePosition = Math.max(segment.writePosition, offset + length);
+                    if (pageId != FREE_SLOT) {
+                        PageLocation location = new PageLocation(segment, slot, offset, length);
+                        PageLocation prev = pages.put(pageId, location);
+                        segment.liveBytes += length;
+                        if (prev != null) {
+                            // a page moved by a compaction interrupted before dropping the old segment
+                            if (prev.segment.id > segment.id) {
+                                pages.put(pageId, prev);
+                                segment.liveBytes -= length;
+                            } else {
+                                prev.segment.liveBytes -= prev.length;
+                            }
+                        }
+                    }
+                }
+                segments.put(id, segment);
+                nextSegmentId = Math.max(nextSegmentId, id + 1);
+            } catch (IOException err) {
+                channel.close();
+                throw err;
+            }
+        }
+        LOGGER.log(Level.FINE, "opened segments store at {0}: {1} segments, {2} pages",
+                new Object[]{directory, segments.size(), pages.size()});
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, pos);
+            if (read < 0) {
+                throw new IOException("short read at position " + pos);
+            }
+            pos += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            pos += channel.write(buffer, pos);
+        }
+    }
+
+    private Segment createSegment(long minDataSize) throws IOException {
+        long id = nextSegmentId++;
+        Path file = directory.resolve(id + FILEEXTENSION_SEGMENT);
+        long dataStart = headerSize(slotsPerSegment);
+        long capacity = Math.max(segmentSize, dataStart + minDataSize);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE_NEW);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_FIXED_SIZE);
+            header.putLong(MAGIC);
+            header.putInt(slotsPerSegment);
+            header.putInt(0); // flags for future implementations
+            header.flip();
+            writeFully(channel, header, 0);
+            // preallocate the whole file with zeroes, this way following writes
+            // will not change the size of the file
+            ByteBuffer zeroes = ByteBuffer.allocateDirect(FileDataStorageManager.COPY_BUFFERS_SIZE);
+            long pos = HEADER_FIXED_SIZE;
+            while (pos < capacity) {
+                zeroes.clear();
+                zeroes.limit((int) Math.min(zeroes.capacity(), capacity - pos));
+                pos += channel.write(zeroes, pos);
+            }
+            channel.force(true);
+        } catch (IOException err) {
+            channel.close();
+            Files.deleteIfExists(file);
+            throw err;
+        }
+        Segment segment = new Segment(id, file, channel, capacity, dataStart);
+        segments.put(id, segment);
+        LOGGER.log(Level.FINE, "created {0}", segment);
+        return segment;
+    }
+
+    /**
+     * Appends a page to the current segment.
+     *
+     * @param pageId id of the page
+     * @param data   serialized page
+     * @param offset offset in data
+     * @param length length of the page
+     * @throws IOException
+     */
+    void writePage(long pageId, byte[] data, int offset, int length) throws IOException {
+        synchronized (this) {
+            appendPage(pageId, ByteBuffer.wrap(data, offset, length));
+            if (requirefsync) {
+                current.channel.force(false);
+            }
+        }
+    }
+
+    private void appendPage(long pageId, ByteBuffer data) throws IOException {
+        if (closed) {
+            throw new IOException("segment store " + directory + " is closed");
+        }
+        int length = data.remaining();
+        if (current == null
+                || current.nextSlot >= slotsPerSegment
+                || current.writePosition + length > current.capacity) {
+            if (current != null && requirefsync) {
+                current.channel.force(false);
+            }
+            current = createSegment(length);
+        }
+        Segment segment = current;
+        long position = segment.writePosition;
+        writeFully(segment.channel, data, position);
+        int slot = segment.nextSlot;
+        writeSlot(segment, slot, pageId, position, length);
+        segment.nextSlot++;
+        segment.writePosition = position + length;
+        segment.liveBytes += length;
+        PageLocation prev = pages.put(pageId, new PageLocation(segment, slot, position, length));
+        if (prev != null) {
+            releaseLocation(prev);
+        }
+    }
+
+    private static void writeSlot(Segment segment, int slot, long pageId, long offset, int length) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(SLOT_SIZE);
+        entry.putLong(pageId);
+        entry.putLong(offset);
+        entry.putInt(length);
+        entry.flip();
+        writeFully(segment.channel, entry, HEADER_FIXED_SIZE + (long) slot * SLOT_SIZE);
+    }
+
+    private void releaseLocation(PageLocation location) throws IOException {
+        location.segment.liveBytes -= location.length;
+        // the slot of a moved page must stay valid until the new copy is durable,
+        // load() prefers the copy in the segment with the higher id
+        if (location.segment.channel.isOpen() && !compacting.contains(location.segment)) {
+            ByteBuffer entry = ByteBuffer.allocate(8);
+            entry.putLong(FREE_SLOT);
+            entry.flip();
+            writeFully(location.segment.channel, entry, HEADER_FIXED_SIZE + (long) location.slot * SLOT_SIZE);
+        }
+    }
+
+    /**
+     * Reads a page with a single positional read.
+     *
+     * @param pageId id of the page
+     * @return the content of the page or null if the page is not stored in
+     * this store
+     * @throws IOException
+     */
+    byte[] readPage(long pageId) throws IOException {
+        lock.readLock().lock();
+        try {
+            PageLocation location = pages.get(pageId);
+            if (location == null) {
+                return null;
+            }
+            byte[] result = new byte[location.length];
+            readFully(location.segment.channel, ByteBuffer.wrap(result), location.offset);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean containsPage(long pageId) {
+        return pages.containsKey(pageId);
+    }
+
+    Set<Long> getPageIds() {
+        return pages.keySet();
+    }
+
+    int getNumSegments() {
+        synchronized (this) {
+            return segments.size();
+        }
+    }
+
+    /**
+     * Marks a page as no more used, the space will be reclaimed by
+     * {@link #compact(double)}
+     *
+     * @param pageId id of the page
+     * @throws IOException
+     */
+    void freePage(long pageId) throws IOException {
+        synchronized (this) {
+            PageLocation location = pages.remove(pageId);
+            if (location != null) {
+                releaseLocation(location);
+            }
+        }
+    }
+
+    /**
+     * Reclaims the space of segments which contain less than
+     * <code>minLiveRatio</code> live data. Surviving pages are copied to the
+     * current segment before dropping the old file.
+     *
+     * @param minLiveRatio ratio of live data under which a segment is compacted
+     * @return the number of dropped segments
+     * @throws IOException
+     */
+    int compact(double minLiveRatio) throws IOException {
+        synchronized (this) {
+            List<Segment> candidates = new ArrayList<>();
+            for (Segment segment : segments.values()) {
+                if (segment == current && segment.liveBytes > 0) {
+                    continue;
+                }
+                if (segment.liveBytes <= 0
+                        || segment.liveBytes < segment.usedBytes() * minLiveRatio) {
+                    candidates.add(segment);
+                }
+            }
+            if (candidates.isEmpty()) {
+                return 0;
+            }
+            Map<Segment, List<Long>> toMove = new HashMap<>();
+            for (Map.Entry<Long, PageLocation> entry : pages.entrySet()) {
+                Segment segment = entry.getValue().segment;
+                if (candidates.contains(segment)) {
+                    toMove.computeIfAbsent(segment, s -> new ArrayList<>()).add(entry.getKey());
+                }
+            }
+            Set<Segment> destinations = new LinkedHashSet<>();
+            compacting = new HashSet<>(candidates);
+            try {
+                for (Segment segment : candidates) {
+                    if (segment == current) {
+                        current = null;
+                    }
+                    Collection<Long> live = toMove.getOrDefault(segment, new ArrayList<>());
+                    for (Long pageId : live) {
+                        PageLocation location = pages.get(pageId);
+                        ByteBuffer buffer = ByteBuffer.allocate(location.length);
+                        readFully(segment.channel, buffer, location.offset);
+                        buffer.flip();
+                        appendPage(pageId, buffer);
+                        destinations.add(current);
+                    }
+                }
+                // the old segments are deleted only when every moved page is durable
+                for (Segment destination : destinations) {
+                    destination.channel.force(false);
+                }
+            } finally {
+                compacting = Collections.emptySet();
+            }
+            lock.writeLock().lock();
+            try {
+                for (Segment segment : candidates) {
+                    segments.remove(segment.id);
+                    segment.channel.close();
+                    Files.deleteIfExists(segment.file);
+                    LOGGER.log(Level.FINE, "dropped {0}", segment);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return candidates.size();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            lock.writeLock().lock();
+            try {
+                closed = true;
+                for (Segment segment : segments.values()) {
+                    try {
+                        segment.channel.close();
+                    } catch (IOException err) {
+                        LOGGER.log(Level.SEVERE, "Cannot close segment " + segment.file, err);
+                    }
+                }
+                segments.clear();
+                pages.clear();
+                current = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+}
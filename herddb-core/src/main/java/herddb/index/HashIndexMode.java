@@ -0,0 +1,85 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index;
+
+import herddb.utils.SystemProperties;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Selects the implementation of secondary indexes of type
+ * {@link herddb.model.Index#TYPE_HASH}.
+ */
+public final class HashIndexMode {
+
+    private static final Logger LOGGER = Logger.getLogger(HashIndexMode.class.getName());
+
+    /**
+     * System property name used to configure the HASH index implementation.
+     */
+    public static final String PROPERTY_NAME = "herddb.index.hash.mode";
+
+    /**
+     * Available HASH index implementations.
+     */
+    public enum Mode {
+        /**
+         * Paged BLink tree, only dirty pages are written at checkpoint and
+         * pages can be evicted from memory. Opt-in, with
+         * {@code herddb.index.hash.mode=paged}.
+         */
+        PAGED,
+        /**
+         * Legacy {@code MemoryHashIndexManager}, the whole index lives in
+         * memory and it is fully rewritten at every checkpoint. Default.
+         */
+        MEMORY
+    }
+
+    private static final Mode RESOLVED = resolve();
+
+    private HashIndexMode() {
+    }
+
+    /**
+     * Returns the mode configured for this JVM.
+     */
+    public static Mode getResolved() {
+        return RESOLVED;
+    }
+
+    private static Mode resolve() {
+        String raw = SystemProperties.getStringSystemProperty(PROPERTY_NAME, "memory");
+        String normalized = raw.trim().toLowerCase(Locale.ROOT);
+        switch (normalized) {
+            case "paged":
+                return Mode.PAGED;
+            case "memory":
+                return Mode.MEMORY;
+            default:
+                LOGGER.log(Level.WARNING,
+                        "unrecognised value {0}={1}; falling back to 'memory'",
+                        new Object[]{PROPERTY_NAME, raw});
+                return Mode.MEMORY;
+        }
+    }
+}
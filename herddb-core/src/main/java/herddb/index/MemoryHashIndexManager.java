@@ -95,6 +95,12 @@ public class MemoryHashIndexManager extends AbstractIndexManager {
                 return false;
             }
 
+            if (status.indexData != null && status.indexData.length > 0) {
+                /* Checkpoint written by the paged HASH index */
+                LOGGER.log(Level.INFO, "index {0} has been written by the paged HASH index, it will be rebuilt", new Object[]{index.name});
+                return false;
+            }
+
             for (long pageId : status.activePages) {
                 LOGGER.log(Level.INFO, "recovery index {0}, load {1}", new Object[]{index.name, pageId});
 
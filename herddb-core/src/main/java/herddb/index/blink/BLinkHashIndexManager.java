@@ -0,0 +1,482 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+*/
+
+package herddb.index.blink;
+
+import herddb.codec.RecordSerializer;
+import herddb.core.AbstractIndexManager;
+import herddb.core.AbstractTableManager;
+import herddb.core.HerdDBInternalException;
+import herddb.core.MemoryManager;
+import herddb.core.PostCheckpointAction;
+import herddb.core.TableSpaceManager;
+import herddb.index.IndexOperation;
+import herddb.index.SecondaryIndexPrefixScan;
+import herddb.index.SecondaryIndexRangeScan;
+import herddb.index.SecondaryIndexSeek;
+import herddb.log.CommitLog;
+import herddb.log.LogSequenceNumber;
+import herddb.model.Index;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.StatementExecutionException;
+import herddb.model.Table;
+import herddb.model.TableContext;
+import herddb.sql.SQLRecordKeyFunction;
+import herddb.storage.DataStorageManager;
+import herddb.storage.DataStorageManagerException;
+import herddb.storage.IndexStatus;
+import herddb.utils.Bytes;
+import herddb.utils.DataAccessor;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * HASH index backed by a paged {@link BLink} tree. Pages are evicted through
+ * the index page replacement policy of the {@link MemoryManager} and only the
+ * pages modified since the previous checkpoint are written at checkpoint.
+ * <p>
+ * Every entry of the tree is a composite key built from the index key and
+ * the primary key, the index key is escaped so that the composite keys keep
+ * the order of the index keys and equality, prefix and range scans are plain
+ * range scans on the tree. The value is the position of the primary key
+ * inside the composite key.
+ *
+ * @author enrico.olivelli
+ */
+public class BLinkHashIndexManager extends AbstractIndexManager {
+
+    private static final Logger LOGGER = Logger.getLogger(BLinkHashIndexManager.class.getName());
+
+    private static final byte ESCAPE = 0x00;
+    private static final byte ESCAPED_ZERO = (byte) 0xFF;
+    private static final byte TERMINATOR = 0x01;
+
+    private final MemoryManager memoryManager;
+    private final AtomicLong newPageId = new AtomicLong(1);
+    private final BLinkIndexDataStorage<Bytes, Long> indexDataStorage = new BLinkIndexDataStorageImpl();
+
+    /**
+     * BLink checkpoint requires that no thread modifies the tree, modifications
+     * share the read lock and checkpoint takes the write lock. Reads do not
+     * need the lock.
+     */
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+    private volatile BLink<Bytes, Long> tree;
+
+    public BLinkHashIndexManager(Index index, MemoryManager memoryManager, AbstractTableManager tableManager, CommitLog log,
+                                 DataStorageManager dataStorageManager, TableSpaceManager tableSpaceManager, String tableSpaceUUID,
+                                 long transaction,
+                                 int writeLockTimeout, int readLockTimeout) {
+        super(index, tableManager, dataStorageManager, tableSpaceManager.getTableSpaceUUID(), log, transaction,
+                writeLockTimeout, readLockTimeout);
+        this.memoryManager = memoryManager;
+    }
+
+    @Override
+    protected boolean doStart(LogSequenceNumber sequenceNumber) throws DataStorageManagerException {
+        LOGGER.log(Level.FINE, " start HASH index {0} uuid {1}", new Object[]{index.name, index.uuid});
+
+        dataStorageManager.initIndex(tableSpaceUUID, index.uuid);
+
+        final long pageSize = memoryManager.getMaxLogicalPageSize();
+
+        if (LogSequenceNumber.START_OF_TIME.equals(sequenceNumber)) {
+            /* Empty index (booting from the start) */
+            tree = newEmptyTree(pageSize);
+            LOGGER.log(Level.FINE, "loaded empty index {0}", new Object[]{index.name});
+            return true;
+        }
+
+        IndexStatus status;
+        try {
+            status = dataStorageManager.getIndexStatus(tableSpaceUUID, index.uuid, sequenceNumber);
+        } catch (DataStorageManagerException e) {
+            LOGGER.log(Level.SEVERE, "cannot load index {0} due to {1}, it will be rebuilt", new Object[]{index.name, e});
+            tree = newEmptyTree(pageSize);
+            return false;
+        }
+
+        if (status.indexData.length == 0) {
+            /* Checkpoint written by MemoryHashIndexManager, which has no metadata */
+            LOGGER.log(Level.INFO, "index {0} has been written by the in-memory HASH index, it will be rebuilt", new Object[]{index.name});
+            tree = newEmptyTree(pageSize);
+            return false;
+        }
+
+        try {
+            BLinkMetadata<Bytes> metadata = BLinkKeyToPageIndex.MetadataSerializer.INSTANCE.read(status.indexData);
+            tree = new BLink<>(pageSize, BytesLongSizeEvaluator.INSTANCE,
+                    memoryManager.getIndexPageReplacementPolicy(), indexDataStorage, metadata);
+        } catch (IOException e) {
+            throw new DataStorageManagerException(e);
+        }
+
+        newPageId.set(status.newPageId);
+        LOGGER.log(Level.INFO, "loaded index {0}: {1} entries", new Object[]{index.name, tree.size()});
+        return true;
+    }
+
+    private BLink<Bytes, Long> newEmptyTree(long pageSize) {
+        return new BLink<>(pageSize, BytesLongSizeEvaluator.INSTANCE,
+                memoryManager.getIndexPageReplacementPolicy(), indexDataStorage);
+    }
+
+    @Override
+    public void rebuild() throws DataStorageManagerException {
+        long _start = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "building index {0}", index.name);
+        dataStorageManager.initIndex(tableSpaceUUID, index.uuid);
+        getTree().truncate();
+        Table table = tableManager.getTable();
+        AtomicLong count = new AtomicLong();
+        tableManager.scanForIndexRebuild(r -> {
+            DataAccessor values = r.getDataAccessor(table);
+            Bytes key = RecordSerializer.serializeIndexKey(values, table, table.primaryKey);
+            Bytes indexKey = RecordSerializer.serializeIndexKey(values, index, index.columnNames);
+            recordInserted(key, indexKey);
+            count.incrementAndGet();
+        });
+        long _stop = System.currentTimeMillis();
+        if (count.intValue() > 0) {
+            LOGGER.log(Level.INFO, "building index {0} took {1}, scanned {2} records", new Object[]{index.name, (_stop - _start) + " ms", count});
+        }
+    }
+
+    @Override
+    public List<PostCheckpointAction> checkpoint(LogSequenceNumber sequenceNumber, boolean pin) throws DataStorageManagerException {
+        if (createdInTransaction > 0) {
+            LOGGER.log(Level.INFO, "checkpoint for index " + index.name + " skipped, this index is created on transaction " + createdInTransaction + " which is not committed");
+            return Collections.emptyList();
+        }
+        try {
+            BLinkMetadata<Bytes> metadata;
+            checkpointLock.writeLock().lock();
+            try {
+                metadata = getTree().checkpoint();
+            } finally {
+                checkpointLock.writeLock().unlock();
+            }
+
+            byte[] metaPage = BLinkKeyToPageIndex.MetadataSerializer.INSTANCE.write(metadata);
+
+            Set<Long> activePages = new HashSet<>();
+            metadata.nodes.forEach(node -> activePages.add(node.storeId));
+
+            IndexStatus indexStatus = new IndexStatus(index.name, sequenceNumber, newPageId.get(), activePages, metaPage);
+            List<PostCheckpointAction> result = new ArrayList<>();
+            result.addAll(dataStorageManager.indexCheckpoint(tableSpaceUUID, index.uuid, indexStatus, pin));
+
+            LOGGER.log(Level.INFO, "checkpoint index {0} finished: logpos {1}, {2} entries, {3} pages",
+                    new Object[]{index.name, sequenceNumber, Long.toString(metadata.values), Integer.toString(metadata.nodes.size())});
+            LOGGER.log(Level.FINE, "checkpoint index {0} finished: logpos {1}, pages {2}",
+                    new Object[]{index.name, sequenceNumber, activePages});
+
+            return result;
+        } catch (IOException err) {
+            throw new DataStorageManagerException(err);
+        }
+    }
+
+    @Override
+    public void unpinCheckpoint(LogSequenceNumber sequenceNumber) throws DataStorageManagerException {
+        dataStorageManager.unPinIndexCheckpoint(tableSpaceUUID, index.uuid, sequenceNumber);
+    }
+
+    @Override
+    protected Stream<Bytes> scanner(IndexOperation operation, StatementEvaluationContext context, TableContext tableContext) throws StatementExecutionException {
+        Bytes from;
+        Bytes to;
+        if (operation instanceof SecondaryIndexSeek) {
+            SecondaryIndexSeek sis = (SecondaryIndexSeek) operation;
+            SQLRecordKeyFunction value = sis.value;
+            byte[] refvalue = value.computeNewValue(null, context, tableContext);
+            from = encodeSeekStart(Bytes.from_array(refvalue));
+            to = successor(from);
+        } else if (operation instanceof SecondaryIndexPrefixScan) {
+            SecondaryIndexPrefixScan sis = (SecondaryIndexPrefixScan) operation;
+            SQLRecordKeyFunction value = sis.value;
+            byte[] refvalue = value.computeNewValue(null, context, tableContext);
+            from = encodeIndexKey(Bytes.from_array(refvalue), 0);
+            to = successor(from);
+        } else if (operation instanceof SecondaryIndexRangeScan) {
+            SecondaryIndexRangeScan sis = (SecondaryIndexRangeScan) operation;
+            SQLRecordKeyFunction minKey = sis.minValue;
+            from = null;
+            if (minKey != null) {
+                byte[] refminvalue = minKey.computeNewValue(null, context, tableContext);
+                if (refminvalue != null) {
+                    from = encodeIndexKey(Bytes.from_array(refminvalue), 0);
+                }
+            }
+            SQLRecordKeyFunction maxKey = sis.maxValue;
+            to = null;
+            if (maxKey != null) {
+                byte[] refmaxvalue = maxKey.computeNewValue(null, context, tableContext);
+                if (refmaxvalue != null) {
+                    /* the max value is inclusive */
+                    to = successor(encodeSeekStart(Bytes.from_array(refmaxvalue)));
+                }
+            }
+            LOGGER.log(Level.FINE, "range scan on {0}.{1}, from {2} to {1}", new Object[]{index.table, index.name, from, to});
+        } else {
+            throw new UnsupportedOperationException("unsuppported index access type " + operation);
+        }
+        try {
+            return getTree().scan(from, to).map(BLinkHashIndexManager::primaryKey);
+        } catch (UncheckedIOException err) {
+            throw new HerdDBInternalException(err);
+        }
+    }
+
+    @Override
+    public void recordDeleted(Bytes key, Bytes indexKey) {
+        if (indexKey == null) {
+            return;
+        }
+        checkpointLock.readLock().lock();
+        try {
+            getTree().delete(encodeEntry(indexKey, key));
+        } catch (UncheckedIOException err) {
+            throw new HerdDBInternalException(err);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void recordInserted(Bytes key, Bytes indexKey) {
+        if (indexKey == null) {
+            return;
+        }
+        Bytes entry = encodeEntry(indexKey, key);
+        checkpointLock.readLock().lock();
+        try {
+            getTree().insert(entry, (long) (entry.getLength() - key.getLength()));
+        } catch (UncheckedIOException err) {
+            throw new HerdDBInternalException(err);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void recordUpdated(Bytes key, Bytes indexKeyRemoved, Bytes indexKeyAdded) {
+        if (Objects.equals(indexKeyRemoved, indexKeyAdded)) {
+            return;
+        }
+        // BEWARE that this operation is not atomic
+        if (indexKeyAdded != null) {
+            recordInserted(key, indexKeyAdded);
+        }
+        if (indexKeyRemoved != null) {
+            recordDeleted(key, indexKeyRemoved);
+        }
+    }
+
+    @Override
+    public void close() {
+        BLink<Bytes, Long> current = tree;
+        tree = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    @Override
+    public void truncate() throws DataStorageManagerException {
+        getTree().truncate();
+        truncateIndexData();
+    }
+
+    @Override
+    public boolean valueAlreadyMapped(Bytes key, Bytes primaryKey) throws DataStorageManagerException {
+        Bytes from = encodeSeekStart(key);
+        try (Stream<Map.Entry<Bytes, Long>> entries = getTree().scan(from, successor(from))) {
+            if (primaryKey == null) {
+                // new record, error if there is any mapping
+                return entries.findAny().isPresent();
+            } else {
+                // updating a record, error if there is a mapping to another record
+                return entries.anyMatch(entry -> !primaryKey.equals(primaryKey(entry)));
+            }
+        } catch (UncheckedIOException err) {
+            throw new HerdDBInternalException(err);
+        }
+    }
+
+    @Override
+    public long estimateLiveMemoryBytes() {
+        BLink<Bytes, Long> current = tree;
+        return current != null ? current.getUsedMemory() : 0L;
+    }
+
+    public long size() {
+        return getTree().size();
+    }
+
+    private BLink<Bytes, Long> getTree() {
+        BLink<Bytes, Long> current = tree;
+        if (current == null) {
+            throw new DataStorageManagerException("Index " + index.name + " is not started or already closed");
+        }
+        return current;
+    }
+
+    /**
+     * Escapes the index key, every 0x00 becomes 0x00 0xFF, and leaves room
+     * for {@code extra} bytes. The escaping preserves the order of the keys
+     * and their prefixes.
+     */
+    private static Bytes encodeIndexKey(Bytes indexKey, int extra) {
+        byte[] buffer = indexKey.getBuffer();
+        int offset = indexKey.getOffset();
+        int length = indexKey.getLength();
+        int zeros = 0;
+        for (int i = 0; i < length; i++) {
+            if (buffer[offset + i] == ESCAPE) {
+                zeros++;
+            }
+        }
+        byte[] result = new byte[length + zeros + extra];
+        int pos = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = buffer[offset + i];
+            result[pos++] = b;
+            if (b == ESCAPE) {
+                result[pos++] = ESCAPED_ZERO;
+            }
+        }
+        return Bytes.from_array(result);
+    }
+
+    /**
+     * The escaped index key followed by the terminator 0x00 0x01, which is
+     * lower than any escaped byte: it is the lowest composite key with the
+     * given index key.
+     */
+    static Bytes encodeSeekStart(Bytes indexKey) {
+        Bytes result = encodeIndexKey(indexKey, 2);
+        byte[] buffer = result.getBuffer();
+        buffer[buffer.length - 2] = ESCAPE;
+        buffer[buffer.length - 1] = TERMINATOR;
+        return result;
+    }
+
+    static Bytes encodeEntry(Bytes indexKey, Bytes primaryKey) {
+        Bytes result = encodeIndexKey(indexKey, 2 + primaryKey.getLength());
+        byte[] buffer = result.getBuffer();
+        int pkOffset = buffer.length - primaryKey.getLength();
+        buffer[pkOffset - 2] = ESCAPE;
+        buffer[pkOffset - 1] = TERMINATOR;
+        System.arraycopy(primaryKey.getBuffer(), primaryKey.getOffset(), buffer, pkOffset, primaryKey.getLength());
+        return result;
+    }
+
+    static Bytes primaryKey(Map.Entry<Bytes, Long> entry) {
+        Bytes composite = entry.getKey();
+        int pkOffset = entry.getValue().intValue();
+        return Bytes.from_array(composite.getBuffer(), composite.getOffset() + pkOffset, composite.getLength() - pkOffset);
+    }
+
+    /**
+     * The lowest key greater than every key starting with the given prefix,
+     * null if there is no such key.
+     */
+    private static Bytes successor(Bytes prefix) {
+        byte[] buffer = prefix.getBuffer();
+        for (int i = prefix.getOffset() + prefix.getLength() - 1; i >= prefix.getOffset(); i--) {
+            if (buffer[i] != (byte) 0xFF) {
+                return prefix.next();
+            }
+        }
+        return null;
+    }
+
+    private final class BLinkIndexDataStorageImpl implements BLinkIndexDataStorage<Bytes, Long> {
+
+        @Override
+        public void loadNodePage(long pageId, Map<Bytes, Long> data) throws IOException {
+            loadPage(pageId, BLinkKeyToPageIndex.INNER_NODE_PAGE, data);
+        }
+
+        @Override
+        public void loadLeafPage(long pageId, Map<Bytes, Long> data) throws IOException {
+            loadPage(pageId, BLinkKeyToPageIndex.LEAF_NODE_PAGE, data);
+        }
+
+        private void loadPage(long pageId, byte type, Map<Bytes, Long> map) throws IOException {
+            try {
+                dataStorageManager.readIndexPage(tableSpaceUUID, index.uuid, pageId, in -> {
+                    BLinkNodePageCodec.readNodePage(in, pageId, type, map);
+                    return map;
+                });
+            } catch (DataStorageManagerException err) {
+                throw new IOException(err);
+            }
+        }
+
+        @Override
+        public long createNodePage(Map<Bytes, Long> data) throws IOException {
+            return createPage(NEW_PAGE, data, BLinkKeyToPageIndex.INNER_NODE_PAGE);
+        }
+
+        @Override
+        public long createLeafPage(Map<Bytes, Long> data) throws IOException {
+            return createPage(NEW_PAGE, data, BLinkKeyToPageIndex.LEAF_NODE_PAGE);
+        }
+
+        @Override
+        public void overwriteNodePage(long pageId, Map<Bytes, Long> data) throws IOException {
+            createPage(pageId, data, BLinkKeyToPageIndex.INNER_NODE_PAGE);
+        }
+
+        @Override
+        public void overwriteLeafPage(long pageId, Map<Bytes, Long> data) throws IOException {
+            createPage(pageId, data, BLinkKeyToPageIndex.LEAF_NODE_PAGE);
+        }
+
+        private long createPage(long pageId, Map<Bytes, Long> data, byte type) throws IOException {
+            /* Write/overwrite switch */
+            if (pageId == NEW_PAGE) {
+                pageId = newPageId.getAndIncrement();
+            }
+            try {
+                dataStorageManager.writeIndexPage(tableSpaceUUID, index.uuid, pageId, out -> {
+                    BLinkNodePageCodec.writeNodePage(out, type, data);
+                });
+            } catch (DataStorageManagerException err) {
+                throw new IOException(err);
+            }
+            return pageId;
+        }
+    }
+}
@@ -76,10 +76,6 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
     public static final byte INNER_NODE_PAGE = 1;
     public static final byte LEAF_NODE_PAGE = 2;
 
-    private static final byte NODE_PAGE_END_BLOCK = 0;
-    private static final byte NODE_PAGE_KEY_VALUE_BLOCK = 1;
-    private static final byte NODE_PAGE_INF_BLOCK = 2;
-
     private static final int METADATA_PAGE_END_BLOCK = 0;
     private static final int METADATA_PAGE_NODE_BLOCK = 1;
 
@@ -309,7 +305,8 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
         if (LogSequenceNumber.START_OF_TIME.equals(sequenceNumber)) {
             /* Empty index (booting from the start) */
             tree = new BLink<>(pageSize, BytesLongSizeEvaluator.INSTANCE,
-                    memoryManager.getPKPageReplacementPolicy(), indexDataStorage);
+                    memoryManager.getPKPageReplacementPolicy(), indexDataStorage,
+                    BytesLongOffHeapLeafCodec.forPrimaryKeyIndex());
             if (!created) {
                 LOGGER.log(Level.INFO, "loaded empty index {0}", new Object[]{indexName});
             }
@@ -320,7 +317,7 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
 
                 tree = new BLink<>(pageSize, BytesLongSizeEvaluator.INSTANCE,
                         memoryManager.getPKPageReplacementPolicy(), indexDataStorage,
-                        metadata);
+                        metadata, BytesLongOffHeapLeafCodec.forPrimaryKeyIndex());
             } catch (IOException e) {
                 throw new DataStorageManagerException(e);
             }
@@ -634,44 +631,8 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
         private void loadPage(long pageId, byte type, Map<Bytes, Long> map) throws IOException {
 
             dataStorageManager.readIndexPage(tableSpace, indexName, pageId, in -> {
-
-                long version = in.readVLong();
-
-                /* flags for future implementations, actually unused */
-                long flags = in.readVLong();
-
-                if (version != 1 || flags != 0) {
-                    throw new IOException("Corrupted index page " + pageId);
-                }
-
-                byte rtype = in.readByte();
-
-                if (rtype != type) {
-                    throw new IOException("Wrong page type " + rtype + " expected " + type);
-                }
-
-                byte block;
-                while ((block = in.readByte()) != NODE_PAGE_END_BLOCK) {
-
-                    switch (block) {
-
-                        case NODE_PAGE_KEY_VALUE_BLOCK:
-                            map.put(in.readBytes(),
-                                    in.readVLong());
-                            break;
-
-                        case NODE_PAGE_INF_BLOCK:
-                            map.put(Bytes.POSITIVE_INFINITY, in.readVLong());
-                            break;
-
-                        default:
-                            throw new IOException("Wrong node block type " + block);
-
-                    }
-                }
-
+                BLinkNodePageCodec.readNodePage(in, pageId, type, map);
                 return map;
-
             });
 
         }
@@ -707,33 +668,7 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
             }
 
             dataStorageManager.writeIndexPage(tableSpace, indexName, pageId, out -> {
-
-                /* Data version */
-                out.writeVLong(1);
-
-                /* flags for future implementations, actually unused */
-                out.writeVLong(0);
-
-                out.writeByte(type);
-
-                data.forEach((x, y) -> {
-                    try {
-                        if (x == Bytes.POSITIVE_INFINITY) {
-                            // Handle special case for +inf key
-                            out.writeByte(NODE_PAGE_INF_BLOCK);
-                            out.writeVLong(y);
-                        } else {
-                            out.writeByte(NODE_PAGE_KEY_VALUE_BLOCK);
-                            out.writeArray(x.to_array());
-                            out.writeVLong(y);
-                        }
-                    } catch (IOException e) {
-                        throw new UncheckedIOException("Unexpected IOException during node page write preparation", e);
-                    }
-                });
-
-                out.writeByte(NODE_PAGE_END_BLOCK);
-
+                BLinkNodePageCodec.writeNodePage(out, type, data);
             });
 
             return pageId;
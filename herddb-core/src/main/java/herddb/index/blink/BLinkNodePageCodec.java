@@ -0,0 +1,180 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+package herddb.index.blink;
+
+import herddb.utils.ByteBufCursor;
+import herddb.utils.Bytes;
+import herddb.utils.ExtendedDataOutputStream;
+import herddb.utils.SystemProperties;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Format of BLink node pages, shared by {@link BLinkKeyToPageIndex},
+ * {@link IncrementalBLinkKeyToPageIndex} and {@link BLinkHashIndexManager}.
+ *
+ * <p>Version {@link #NODE_PAGE_VERSION_1} stores every key in full, version
+ * {@link #NODE_PAGE_VERSION_2} stores the keys in order, each one as the number
+ * of leading bytes in common with the previous key followed by the remaining
+ * bytes. Both versions can be read, version 2 is written only if
+ * {@link #PROP_PREFIX_COMPRESSED_NODE_PAGES} is enabled, so that data written
+ * by default can still be read by older versions.</p>
+ */
+final class BLinkNodePageCodec {
+
+    /**
+     * Write BLink node pages with prefix compressed keys (version 2).
+     */
+    public static final String PROP_PREFIX_COMPRESSED_NODE_PAGES = "herddb.index.blink.prefixcompressednodepages";
+
+    private static final boolean PREFIX_COMPRESSED_NODE_PAGES =
+            SystemProperties.getBooleanSystemProperty(PROP_PREFIX_COMPRESSED_NODE_PAGES, false);
+
+    static final long NODE_PAGE_VERSION_1 = 1L;
+    static final long NODE_PAGE_VERSION_2 = 2L;
+
+    private static final long NODE_PAGE_FLAGS = 0L;
+
+    private static final byte NODE_PAGE_END_BLOCK = 0;
+    /**
+     * Full key and value, version 1
+     */
+    private static final byte NODE_PAGE_KEY_VALUE_BLOCK = 1;
+    private static final byte NODE_PAGE_INF_BLOCK = 2;
+    /**
+     * Key sharing a prefix with the previous key and value, version 2
+     */
+    private static final byte NODE_PAGE_PREFIX_KEY_VALUE_BLOCK = 3;
+
+    private BLinkNodePageCodec() {
+    }
+
+    static void writeNodePage(ExtendedDataOutputStream out, byte type, Map<Bytes, Long> data) throws IOException {
+        writeNodePage(out, type, data, PREFIX_COMPRESSED_NODE_PAGES ? NODE_PAGE_VERSION_2 : NODE_PAGE_VERSION_1);
+    }
+
+    static void writeNodePage(ExtendedDataOutputStream out, byte type, Map<Bytes, Long> data, long version) throws IOException {
+        if (version != NODE_PAGE_VERSION_1 && version != NODE_PAGE_VERSION_2) {
+            throw new IllegalArgumentException("unsupported node page version " + version);
+        }
+        out.writeVLong(version);
+        out.writeVLong(NODE_PAGE_FLAGS);
+        out.writeByte(type);
+
+        if (version == NODE_PAGE_VERSION_1) {
+            data.forEach((x, y) -> {
+                try {
+                    if (x == Bytes.POSITIVE_INFINITY) {
+                        out.writeByte(NODE_PAGE_INF_BLOCK);
+                        out.writeVLong(y);
+                    } else {
+                        out.writeByte(NODE_PAGE_KEY_VALUE_BLOCK);
+                        out.writeArray(x);
+                        out.writeVLong(y);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Unexpected IOException during node page write preparation", e);
+                }
+            });
+            out.writeByte(NODE_PAGE_END_BLOCK);
+            return;
+        }
+
+        /* Inner node pages are not sorted */
+        final SortedMap<Bytes, Long> sorted = data instanceof SortedMap && ((SortedMap<Bytes, Long>) data).comparator() == null
+                ? (SortedMap<Bytes, Long>) data
+                : new TreeMap<>(data);
+        final byte[][] previous = new byte[1][];
+        sorted.forEach((x, y) -> {
+            try {
+                if (x == Bytes.POSITIVE_INFINITY) {
+                    out.writeByte(NODE_PAGE_INF_BLOCK);
+                    out.writeVLong(y);
+                } else {
+                    final byte[] buffer = x.getBuffer();
+                    final int offset = x.getOffset();
+                    final int length = x.getLength();
+                    int shared = 0;
+                    if (previous[0] != null) {
+                        final int max = Math.min(previous[0].length, length);
+                        while (shared < max && previous[0][shared] == buffer[offset + shared]) {
+                            shared++;
+                        }
+                    }
+                    out.writeByte(NODE_PAGE_PREFIX_KEY_VALUE_BLOCK);
+                    out.writeVInt(shared);
+                    out.writeArray(buffer, offset + shared, length - shared);
+                    out.writeVLong(y);
+                    previous[0] = x.to_array();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unexpected IOException during node page write preparation", e);
+            }
+        });
+        out.writeByte(NODE_PAGE_END_BLOCK);
+    }
+
+    static void readNodePage(ByteBufCursor in, long pageId, byte type, Map<Bytes, Long> map) throws IOException {
+        long version = in.readVLong();
+        long flags = in.readVLong();
+        if ((version != NODE_PAGE_VERSION_1 && version != NODE_PAGE_VERSION_2) || flags != NODE_PAGE_FLAGS) {
+            throw new IOException("Corrupted index page " + pageId);
+        }
+        byte rtype = in.readByte();
+        if (rtype != type) {
+            throw new IOException("Wrong page type " + rtype + " expected " + type);
+        }
+        byte[] previous = null;
+        byte block;
+        while ((block = in.readByte()) != NODE_PAGE_END_BLOCK) {
+            switch (block) {
+                case NODE_PAGE_KEY_VALUE_BLOCK:
+                    map.put(in.readBytes(), in.readVLong());
+                    break;
+                case NODE_PAGE_PREFIX_KEY_VALUE_BLOCK: {
+                    if (version < NODE_PAGE_VERSION_2) {
+                        throw new IOException("Wrong node block type " + block + " for version " + version);
+                    }
+                    int shared = in.readVInt();
+                    byte[] suffix = in.readArray();
+                    if (shared > 0 && (previous == null || shared > previous.length)) {
+                        throw new IOException("Corrupted index page " + pageId + ", bad key prefix " + shared);
+                    }
+                    byte[] key = new byte[shared + suffix.length];
+                    if (shared > 0) {
+                        System.arraycopy(previous, 0, key, 0, shared);
+                    }
+                    System.arraycopy(suffix, 0, key, shared, suffix.length);
+                    map.put(Bytes.from_array(key), in.readVLong());
+                    previous = key;
+                    break;
+                }
+                case NODE_PAGE_INF_BLOCK:
+                    map.put(Bytes.POSITIVE_INFINITY, in.readVLong());
+                    break;
+                default:
+                    throw new IOException("Wrong node block type " + block);
+            }
+        }
+    }
+}
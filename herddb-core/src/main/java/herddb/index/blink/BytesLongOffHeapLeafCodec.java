@@ -0,0 +1,83 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+*/
+
+package herddb.index.blink;
+
+import herddb.utils.Bytes;
+import herddb.utils.SystemProperties;
+
+/**
+ * Shared {@link OffHeapLeafCodec} for {@code BLink<Bytes, Long>} trees, the
+ * natural order of {@link Bytes} is the unsigned lexicographic order of the
+ * bytes.
+ */
+public final class BytesLongOffHeapLeafCodec implements OffHeapLeafCodec<Bytes, Long> {
+
+    /**
+     * Keep the leaves of the primary key indexes outside of the java heap,
+     * leaves are moved on heap only while they are being modified.
+     */
+    public static final String PROP_OFF_HEAP_LEAVES = "herddb.index.pk.offheapleaves";
+
+    private static final boolean OFF_HEAP_LEAVES = SystemProperties.getBooleanSystemProperty(PROP_OFF_HEAP_LEAVES, false);
+
+    public static final OffHeapLeafCodec<Bytes, Long> INSTANCE = new BytesLongOffHeapLeafCodec();
+
+    private BytesLongOffHeapLeafCodec() {
+    }
+
+    /**
+     * The codec to use for primary key indexes.
+     *
+     * @return the codec or null if leaves must stay on heap
+     */
+    public static OffHeapLeafCodec<Bytes, Long> forPrimaryKeyIndex() {
+        return OFF_HEAP_LEAVES ? INSTANCE : null;
+    }
+
+    @Override
+    public byte[] keyBuffer(Bytes key) {
+        return key.getBuffer();
+    }
+
+    @Override
+    public int keyOffset(Bytes key) {
+        return key.getOffset();
+    }
+
+    @Override
+    public int keyLength(Bytes key) {
+        return key.getLength();
+    }
+
+    @Override
+    public Bytes readKey(byte[] bytes) {
+        return Bytes.from_array(bytes);
+    }
+
+    @Override
+    public long writeValue(Long value) {
+        return value;
+    }
+
+    @Override
+    public Long readValue(long value) {
+        return value;
+    }
+}
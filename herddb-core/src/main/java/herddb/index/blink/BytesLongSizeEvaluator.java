@@ -70,4 +70,25 @@ public final class BytesLongSizeEvaluator implements SizeEvaluator<Bytes, Long>
     public Bytes getPosiviveInfinityKey() {
         return Bytes.POSITIVE_INFINITY;
     }
+
+    /**
+     * The shortest prefix of the first key of the right leaf which is greater
+     * than the last key of the left leaf.
+     */
+    @Override
+    public Bytes leafSeparator(Bytes lastLeft, Bytes firstRight) {
+        final int max = Math.min(lastLeft.getLength(), firstRight.getLength());
+        int common = 0;
+        while (common < max
+                && lastLeft.getBuffer()[lastLeft.getOffset() + common] == firstRight.getBuffer()[firstRight.getOffset() + common]) {
+            common++;
+        }
+        if (common + 1 >= firstRight.getLength()) {
+            /* No shorter separator, a separator must be lower than the first key on the right */
+            return lastLeft;
+        }
+        final byte[] separator = new byte[common + 1];
+        System.arraycopy(firstRight.getBuffer(), firstRight.getOffset(), separator, 0, common + 1);
+        return Bytes.from_array(separator);
+    }
 }
@@ -362,7 +362,8 @@ public class IncrementalBLinkKeyToPageIndex implements KeyToPageIndex {
 
         if (LogSequenceNumber.START_OF_TIME.equals(sequenceNumber)) {
             tree = new BLink<>(pageSize, BytesLongSizeEvaluator.INSTANCE,
-                    memoryManager.getPKPageReplacementPolicy(), indexDataStorage);
+                    memoryManager.getPKPageReplacementPolicy(), indexDataStorage,
+                    BytesLongOffHeapLeafCodec.forPrimaryKeyIndex());
             currentManifest = null;
             previousByNodeId.clear();
             if (!created) {
@@ -410,7 +411,8 @@ public class IncrementalBLinkKeyToPageIndex implements KeyToPageIndex {
 
         try {
             tree = new BLink<>(pageSize, BytesLongSizeEvaluator.INSTANCE,
-                    memoryManager.getPKPageReplacementPolicy(), indexDataStorage, metadata);
+                    memoryManager.getPKPageReplacementPolicy(), indexDataStorage, metadata,
+                    BytesLongOffHeapLeafCodec.forPrimaryKeyIndex());
         } catch (RuntimeException err) {
             throw new DataStorageManagerException(err);
         }
@@ -679,13 +681,10 @@ public class IncrementalBLinkKeyToPageIndex implements KeyToPageIndex {
         return t;
     }
 
-    // ---------------- node-page storage (same byte layout as legacy) ----------------
+    // ---------------- node-page storage (shared with legacy, see BLinkNodePageCodec) ----------------
 
     private static final byte INNER_NODE_PAGE = BLinkKeyToPageIndex.INNER_NODE_PAGE;
     private static final byte LEAF_NODE_PAGE = BLinkKeyToPageIndex.LEAF_NODE_PAGE;
-    private static final byte NODE_PAGE_END_BLOCK = 0;
-    private static final byte NODE_PAGE_KEY_VALUE_BLOCK = 1;
-    private static final byte NODE_PAGE_INF_BLOCK = 2;
 
     private final class NodePageStorageImpl implements BLinkIndexDataStorage<Bytes, Long> {
 
@@ -701,28 +700,7 @@ public class IncrementalBLinkKeyToPageIndex implements KeyToPageIndex {
 
         private void loadPage(long pageId, byte type, Map<Bytes, Long> map) throws IOException {
             dataStorageManager.readIndexPage(tableSpace, indexName, pageId, in -> {
-                long version = in.readVLong();
-                long flags = in.readVLong();
-                if (version != 1 || flags != 0) {
-                    throw new IOException("Corrupted index page " + pageId);
-                }
-                byte rtype = in.readByte();
-                if (rtype != type) {
-                    throw new IOException("Wrong page type " + rtype + " expected " + type);
-                }
-                byte block;
-                while ((block = in.readByte()) != NODE_PAGE_END_BLOCK) {
-                    switch (block) {
-                        case NODE_PAGE_KEY_VALUE_BLOCK:
-                            map.put(in.readBytes(), in.readVLong());
-                            break;
-                        case NODE_PAGE_INF_BLOCK:
-                            map.put(Bytes.POSITIVE_INFINITY, in.readVLong());
-                            break;
-                        default:
-                            throw new IOException("Wrong node block type " + block);
-                    }
-                }
+                BLinkNodePageCodec.readNodePage(in, pageId, type, map);
                 return map;
             });
         }
@@ -750,25 +728,7 @@ public class IncrementalBLinkKeyToPageIndex implements KeyToPageIndex {
         private long createPage(long pageId, Map<Bytes, Long> data, byte type) throws IOException {
             long pid = (pageId == NEW_PAGE) ? allocatePageId() : pageId;
             dataStorageManager.writeIndexPage(tableSpace, indexName, pid, out -> {
-                out.writeVLong(1);
-                out.writeVLong(0);
-                out.writeByte(type);
-                data.forEach((x, y) -> {
-                    try {
-                        if (x == Bytes.POSITIVE_INFINITY) {
-                            out.writeByte(NODE_PAGE_INF_BLOCK);
-                            out.writeVLong(y);
-                        } else {
-                            out.writeByte(NODE_PAGE_KEY_VALUE_BLOCK);
-                            out.writeArray(x.to_array());
-                            out.writeVLong(y);
-                        }
-                    } catch (IOException e) {
-                        throw new UncheckedIOException(
-                                "Unexpected IOException during node page write preparation", e);
-                    }
-                });
-                out.writeByte(NODE_PAGE_END_BLOCK);
+                BLinkNodePageCodec.writeNodePage(out, type, data);
             });
             return pid;
         }
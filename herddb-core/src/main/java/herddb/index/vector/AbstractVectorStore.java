@@ -21,8 +21,10 @@
 package herddb.index.vector;
 
 import herddb.utils.Bytes;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Predicate;
 
 /**
@@ -49,7 +51,54 @@ public abstract class AbstractVectorStore implements AutoCloseable {
 
     public abstract int size();
 
-    public abstract List<Map.Entry<Bytes, Float>> search(float[] queryVector, int topK);
+    public List<Map.Entry<Bytes, Float>> search(float[] queryVector, int topK) {
+        return search(queryVector, topK, null);
+    }
+
+    /**
+     * Searches the nearest vectors among the ones whose primary key is in
+     * the given allow-list.
+     *
+     * @param queryVector the query embedding
+     * @param topK maximum number of results to return
+     * @param acceptedPrimaryKeys allow-list of primary keys, null means no filter
+     * @return list of (primaryKey, score) pairs ordered best-first
+     */
+    public abstract List<Map.Entry<Bytes, Float>> search(float[] queryVector, int topK, Set<Bytes> acceptedPrimaryKeys);
+
+    /**
+     * Searches the nearest vectors of many query vectors. Implementations can
+     * share the work which does not depend on the query (graph searchers,
+     * views, locks) among the queries of the batch.
+     *
+     * @param queryVectors the query embeddings
+     * @param topK maximum number of results to return for each query
+     * @return for each query, in the same order, the list of (primaryKey,
+     * score) pairs ordered best-first
+     */
+    public List<List<Map.Entry<Bytes, Float>>> searchBatch(List<float[]> queryVectors, int topK) {
+        return searchBatch(queryVectors, topK, null);
+    }
+
+    /**
+     * Searches the nearest vectors of many query vectors among the ones whose
+     * primary key is in the given allow-list, which is shared by all the
+     * queries.
+     *
+     * @param queryVectors the query embeddings
+     * @param topK maximum number of results to return for each query
+     * @param acceptedPrimaryKeys allow-list of primary keys, null means no filter
+     * @return for each query, in the same order, the list of (primaryKey,
+     * score) pairs ordered best-first
+     */
+    public List<List<Map.Entry<Bytes, Float>>> searchBatch(List<float[]> queryVectors, int topK,
+                                                           Set<Bytes> acceptedPrimaryKeys) {
+        List<List<Map.Entry<Bytes, Float>>> results = new ArrayList<>(queryVectors.size());
+        for (float[] queryVector : queryVectors) {
+            results.add(search(queryVector, topK, acceptedPrimaryKeys));
+        }
+        return results;
+    }
 
     public abstract long estimatedMemoryUsageBytes();
 
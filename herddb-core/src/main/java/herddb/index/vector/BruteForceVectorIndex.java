@@ -0,0 +1,343 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index.vector;
+
+import herddb.utils.Bytes;
+import herddb.utils.FloatVectorUtils;
+import herddb.utils.SystemProperties;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Exact nearest neighbours search over vectors stored in a single contiguous
+ * float[], scored with {@link FloatVectorUtils} (SIMD on Java 17+).
+ * <p>
+ * It is used for small indexes that do not deserve a graph and to execute
+ * ORDER BY ann_of() queries on tables without a vector index. Large indexes
+ * are split into chunks which are scored in parallel, each chunk keeps its
+ * own bounded top-K heap and the heaps are merged at the end.
+ * <p>
+ * This class is not thread safe, searches can run concurrently but must
+ * not overlap with modifications.
+ *
+ * @author enrico.olivelli
+ */
+public class BruteForceVectorIndex {
+
+    /**
+     * Number of vectors above which the search is split among the threads
+     * of the common ForkJoinPool.
+     */
+    static final int PARALLEL_THRESHOLD = SystemProperties.getIntSystemProperty(
+            "herddb.vectorindex.bruteforce.parallelthreshold", 32768);
+
+    /**
+     * Number of vectors scored by each task of a parallel search.
+     */
+    static final int CHUNK_SIZE = SystemProperties.getIntSystemProperty(
+            "herddb.vectorindex.bruteforce.chunksize", 8192);
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    public enum Similarity {
+        COSINE, DOT, EUCLIDEAN
+    }
+
+    private final Similarity similarity;
+    private final Map<Bytes, Integer> slots = new HashMap<>();
+    private int dimension = -1;
+    private int size;
+    private Bytes[] keys = new Bytes[0];
+    private float[] vectors = new float[0];
+    private float[] norms = new float[0];
+
+    public BruteForceVectorIndex(Similarity similarity) {
+        this.similarity = similarity;
+    }
+
+    public Similarity getSimilarity() {
+        return similarity;
+    }
+
+    /**
+     * Dimension of the vectors, it is set by the first vector.
+     *
+     * @return the dimension, -1 if no vector has been added yet
+     */
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a vector, replacing the vector previously stored with the same key.
+     *
+     * @param pk the primary key
+     * @param vector the vector
+     */
+    public void add(Bytes pk, float[] vector) {
+        int slot = allocateSlot(pk, vector.length);
+        System.arraycopy(vector, 0, vectors, slot * dimension, dimension);
+        updateNorm(slot);
+    }
+
+    /**
+     * Adds a vector decoding it directly from its serialized form, without
+     * allocating a float[].
+     *
+     * @param pk the primary key
+     * @param buffer the serialized vector, as in {@link Bytes#from_float_array(float[])}
+     * @param offset offset of the vector in the buffer
+     * @param length length of the vector in bytes
+     * @see Bytes#to_float_array(byte[], int, int, float[], int)
+     */
+    public void add(Bytes pk, byte[] buffer, int offset, int length) {
+        int slot = allocateSlot(pk, length / 4);
+        Bytes.to_float_array(buffer, offset, length, vectors, slot * dimension);
+        updateNorm(slot);
+    }
+
+    public boolean remove(Bytes pk) {
+        Integer slot = slots.remove(pk);
+        if (slot == null) {
+            return false;
+        }
+        int last = size - 1;
+        if (slot != last) {
+            // keep the storage dense, move the last vector into the hole
+            System.arraycopy(vectors, last * dimension, vectors, slot * dimension, dimension);
+            norms[slot] = norms[last];
+            keys[slot] = keys[last];
+            slots.put(keys[slot], slot);
+        }
+        keys[last] = null;
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        slots.clear();
+        keys = new Bytes[0];
+        vectors = new float[0];
+        norms = new float[0];
+        size = 0;
+        dimension = -1;
+    }
+
+    /**
+     * Visits the keys, the visitor returns false to stop the traversal.
+     *
+     * @param visitor the visitor
+     */
+    public void forEachPrimaryKey(Predicate<Bytes> visitor) {
+        for (int i = 0; i < size; i++) {
+            if (!visitor.test(keys[i])) {
+                return;
+            }
+        }
+    }
+
+    public long estimatedMemoryUsageBytes() {
+        long total = (long) vectors.length * Float.BYTES + (long) norms.length * Float.BYTES;
+        for (int i = 0; i < size; i++) {
+            total += keys[i].getLength();
+        }
+        return total;
+    }
+
+    /**
+     * Finds the nearest vectors.
+     *
+     * @param queryVector the query vector
+     * @param topK maximum number of results
+     * @param acceptedPrimaryKeys filter on the primary keys, null means no
+     * filter, it must be thread safe
+     * @return list of (primaryKey, score) pairs ordered best-first, the
+     * score is the distance for {@link Similarity#EUCLIDEAN}
+     */
+    public List<Map.Entry<Bytes, Float>> search(float[] queryVector, int topK, Predicate<Bytes> acceptedPrimaryKeys) {
+        if (size == 0 || topK <= 0) {
+            return Collections.emptyList();
+        }
+        if (queryVector.length != dimension) {
+            throw new IllegalArgumentException("query vector dimension " + queryVector.length
+                    + " does not match the dimension of the vectors " + dimension);
+        }
+        int k = Math.min(topK, size);
+        float queryNorm = (float) Math.sqrt(FloatVectorUtils.squareNorm(queryVector, 0, dimension));
+        ScoreHeap heap;
+        if (size < PARALLEL_THRESHOLD) {
+            heap = searchChunk(queryVector, queryNorm, k, acceptedPrimaryKeys, 0, size);
+        } else {
+            int numChunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            List<ScoreHeap> partials = IntStream.range(0, numChunks)
+                    .parallel()
+                    .mapToObj(chunk -> searchChunk(queryVector, queryNorm, k, acceptedPrimaryKeys,
+                            chunk * CHUNK_SIZE, Math.min(size, (chunk + 1) * CHUNK_SIZE)))
+                    .collect(Collectors.toList());
+            heap = new ScoreHeap(k);
+            for (ScoreHeap partial : partials) {
+                for (int i = 0; i < partial.size; i++) {
+                    heap.offer(partial.slots[i], partial.keys[i]);
+                }
+            }
+        }
+        return heap.toResults();
+    }
+
+    private ScoreHeap searchChunk(float[] queryVector, float queryNorm, int k,
+                                  Predicate<Bytes> acceptedPrimaryKeys, int from, int to) {
+        ScoreHeap heap = new ScoreHeap(k);
+        int dim = dimension;
+        float[] data = vectors;
+        for (int slot = from; slot < to; slot++) {
+            if (acceptedPrimaryKeys != null && !acceptedPrimaryKeys.test(keys[slot])) {
+                continue;
+            }
+            float key;
+            switch (similarity) {
+                case EUCLIDEAN:
+                    // the heap keeps the highest keys
+                    key = -FloatVectorUtils.squareDistance(queryVector, 0, data, slot * dim, dim);
+                    break;
+                case DOT:
+                    key = FloatVectorUtils.dotProduct(queryVector, 0, data, slot * dim, dim);
+                    break;
+                case COSINE:
+                default:
+                    float denom = queryNorm * norms[slot];
+                    key = denom == 0 ? 0 : FloatVectorUtils.dotProduct(queryVector, 0, data, slot * dim, dim) / denom;
+                    break;
+            }
+            heap.offer(slot, key);
+        }
+        return heap;
+    }
+
+    private int allocateSlot(Bytes pk, int vectorDimension) {
+        if (dimension < 0) {
+            dimension = vectorDimension;
+        } else if (vectorDimension != dimension) {
+            throw new IllegalArgumentException("vector dimension " + vectorDimension
+                    + " does not match the dimension of the vectors " + dimension);
+        }
+        Integer existing = slots.get(pk);
+        if (existing != null) {
+            return existing;
+        }
+        if (size == keys.length) {
+            int newCapacity = Math.max(INITIAL_CAPACITY, keys.length * 2);
+            keys = Arrays.copyOf(keys, newCapacity);
+            norms = Arrays.copyOf(norms, newCapacity);
+            vectors = Arrays.copyOf(vectors, newCapacity * dimension);
+        }
+        int slot = size++;
+        keys[slot] = pk;
+        slots.put(pk, slot);
+        return slot;
+    }
+
+    private void updateNorm(int slot) {
+        if (similarity == Similarity.COSINE) {
+            norms[slot] = (float) Math.sqrt(FloatVectorUtils.squareNorm(vectors, slot * dimension, dimension));
+        }
+    }
+
+    /**
+     * Bounded min-heap on primitive arrays, the root is the worst of the
+     * best {@code capacity} entries seen so far.
+     */
+    private final class ScoreHeap {
+
+        private final int[] slots;
+        private final float[] keys;
+        private int size;
+
+        ScoreHeap(int capacity) {
+            this.slots = new int[capacity];
+            this.keys = new float[capacity];
+        }
+
+        void offer(int slot, float key) {
+            if (size < keys.length) {
+                int pos = size++;
+                while (pos > 0) {
+                    int parent = (pos - 1) >>> 1;
+                    if (keys[parent] <= key) {
+                        break;
+                    }
+                    keys[pos] = keys[parent];
+                    slots[pos] = slots[parent];
+                    pos = parent;
+                }
+                keys[pos] = key;
+                slots[pos] = slot;
+            } else if (key > keys[0]) {
+                int pos = 0;
+                while (true) {
+                    int child = 2 * pos + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && keys[child + 1] < keys[child]) {
+                        child++;
+                    }
+                    if (keys[child] >= key) {
+                        break;
+                    }
+                    keys[pos] = keys[child];
+                    slots[pos] = slots[child];
+                    pos = child;
+                }
+                keys[pos] = key;
+                slots[pos] = slot;
+            }
+        }
+
+        List<Map.Entry<Bytes, Float>> toResults() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Float.compare(keys[b], keys[a]));
+            List<Map.Entry<Bytes, Float>> results = new ArrayList<>(size);
+            for (int i : order) {
+                float score = similarity == Similarity.EUCLIDEAN
+                        ? (float) Math.sqrt(-keys[i])
+                        : keys[i];
+                results.add(new AbstractMap.SimpleImmutableEntry<>(
+                        BruteForceVectorIndex.this.keys[slots[i]], score));
+            }
+            return results;
+        }
+    }
+}
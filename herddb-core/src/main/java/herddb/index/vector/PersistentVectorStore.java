@@ -43,9 +43,11 @@ import io.github.jbellis.jvector.graph.disk.feature.FeatureId;
 import io.github.jbellis.jvector.graph.disk.feature.FusedPQ;
 import io.github.jbellis.jvector.graph.disk.feature.InlineVectors;
 import io.github.jbellis.jvector.graph.similarity.BuildScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
 import io.github.jbellis.jvector.quantization.PQVectors;
 import io.github.jbellis.jvector.quantization.ProductQuantization;
 import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.util.FixedBitSet;
 import io.github.jbellis.jvector.util.PhysicalCoreExecutor;
 import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
 import io.github.jbellis.jvector.vector.VectorizationProvider;
@@ -1139,15 +1141,40 @@ public class PersistentVectorStore extends AbstractVectorStore {
 
     /**
      * Performs an approximate nearest-neighbor search against the vector store.
+     * The filter on the primary keys is applied while visiting the graphs, so
+     * nodes which are not accepted are traversed but never returned.
      *
-     * @param queryVector the query embedding
-     * @param topK        maximum number of results to return
+     * @param queryVector         the query embedding
+     * @param topK                maximum number of results to return
+     * @param acceptedPrimaryKeys allow-list of primary keys, null means no filter
      * @return list of (primaryKey, score) pairs ordered best-first
      */
     @Override
-    public List<Map.Entry<Bytes, Float>> search(float[] queryVector, int topK) {
-        List<Map.Entry<Bytes, Float>> results = new ArrayList<>();
-        VectorFloat<?> qv = VTS.createFloatVector(queryVector);
+    public List<Map.Entry<Bytes, Float>> search(float[] queryVector, int topK, Set<Bytes> acceptedPrimaryKeys) {
+        return searchAll(Collections.singletonList(queryVector), topK, acceptedPrimaryKeys).get(0);
+    }
+
+    /**
+     * Searches many query vectors at once. Every source (segment, live,
+     * frozen and deferred shard) is visited only once for the whole batch:
+     * the graph searcher and the view of the source are reused by all the
+     * queries and the state lock is acquired once.
+     */
+    @Override
+    public List<List<Map.Entry<Bytes, Float>>> searchBatch(List<float[]> queryVectors, int topK,
+                                                           Set<Bytes> acceptedPrimaryKeys) {
+        return searchAll(queryVectors, topK, acceptedPrimaryKeys);
+    }
+
+    private List<List<Map.Entry<Bytes, Float>>> searchAll(List<float[]> queryVectors, int topK,
+                                                          Set<Bytes> acceptedPrimaryKeys) {
+        int count = queryVectors.size();
+        List<VectorFloat<?>> qvs = new ArrayList<>(count);
+        List<List<Map.Entry<Bytes, Float>>> results = new ArrayList<>(count);
+        for (float[] queryVector : queryVectors) {
+            qvs.add(VTS.createFloatVector(queryVector));
+            results.add(new ArrayList<>());
+        }
 
         // Overquery each source to improve recall when merging across segments.
         // Each source returns more candidates; the final merge picks the true topK.
@@ -1156,23 +1183,12 @@ public class PersistentVectorStore extends AbstractVectorStore {
         // Search all on-disk segments
         List<VectorSegment> currentSegments = this.segments;
         for (VectorSegment seg : currentSegments) {
-            seg.search(qv, perSourceK, similarityFunction, results);
+            seg.searchBatch(qvs, perSourceK, similarityFunction, acceptedPrimaryKeys, results);
         }
 
         // Search all live in-memory shards
         for (LiveGraphShard shard : liveShards) {
-            if (shard.builder != null && !shard.nodeToPk.isEmpty()) {
-                int k = Math.min(perSourceK, shard.nodeToPk.size());
-                ImmutableGraphIndex graph = shard.builder.getGraph();
-                SearchResult result = GraphSearcher.search(
-                        qv, k, shard.mravv, similarityFunction, graph, Bits.ALL);
-                for (SearchResult.NodeScore ns : result.getNodes()) {
-                    Bytes pk = shard.nodeToPk.get(ns.node + shard.startNodeId);
-                    if (pk != null) {
-                        results.add(new AbstractMap.SimpleImmutableEntry<>(pk, ns.score));
-                    }
-                }
-            }
+            searchShard(shard, qvs, perSourceK, acceptedPrimaryKeys, null, results);
         }
 
         // Search frozen shards (during Phase B of checkpoint) and deferred shards.
@@ -1187,18 +1203,7 @@ public class PersistentVectorStore extends AbstractVectorStore {
             if (frozen != null) {
                 Set<Bytes> pending = pendingCheckpointDeletes;
                 for (LiveGraphShard shard : frozen) {
-                    if (shard.builder != null && !shard.nodeToPk.isEmpty()) {
-                        int k = Math.min(perSourceK, shard.nodeToPk.size());
-                        ImmutableGraphIndex graph = shard.builder.getGraph();
-                        SearchResult result = GraphSearcher.search(
-                                qv, k, shard.mravv, similarityFunction, graph, Bits.ALL);
-                        for (SearchResult.NodeScore ns : result.getNodes()) {
-                            Bytes pk = shard.nodeToPk.get(ns.node + shard.startNodeId);
-                            if (pk != null && (pending == null || !pending.contains(pk))) {
-                                results.add(new AbstractMap.SimpleImmutableEntry<>(pk, ns.score));
-                            }
-                        }
-                    }
+                    searchShard(shard, qvs, perSourceK, acceptedPrimaryKeys, pending, results);
                 }
             }
 
@@ -1206,18 +1211,7 @@ public class PersistentVectorStore extends AbstractVectorStore {
             if (deferred != null) {
                 Set<Bytes> pending = pendingCheckpointDeletes;
                 for (LiveGraphShard shard : deferred) {
-                    if (shard.builder != null && !shard.nodeToPk.isEmpty()) {
-                        int k = Math.min(perSourceK, shard.nodeToPk.size());
-                        ImmutableGraphIndex graph = shard.builder.getGraph();
-                        SearchResult result = GraphSearcher.search(
-                                qv, k, shard.mravv, similarityFunction, graph, Bits.ALL);
-                        for (SearchResult.NodeScore ns : result.getNodes()) {
-                            Bytes pk = shard.nodeToPk.get(ns.node + shard.startNodeId);
-                            if (pk != null && (pending == null || !pending.contains(pk))) {
-                                results.add(new AbstractMap.SimpleImmutableEntry<>(pk, ns.score));
-                            }
-                        }
-                    }
+                    searchShard(shard, qvs, perSourceK, acceptedPrimaryKeys, pending, results);
                 }
             }
         } finally {
@@ -1225,8 +1219,74 @@ public class PersistentVectorStore extends AbstractVectorStore {
         }
 
         // Merge and sort by score descending, take top-K
-        results.sort((a, b) -> Float.compare(b.getValue(), a.getValue()));
-        return results.size() <= topK ? results : results.subList(0, topK);
+        for (int i = 0; i < count; i++) {
+            List<Map.Entry<Bytes, Float>> queryResults = results.get(i);
+            queryResults.sort((a, b) -> Float.compare(b.getValue(), a.getValue()));
+            if (queryResults.size() > topK) {
+                results.set(i, queryResults.subList(0, topK));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Searches an in-memory shard with every query vector, using a single
+     * {@link GraphSearcher}. Nodes whose primary key is in {@code pending}
+     * (deleted during a checkpoint) are skipped.
+     */
+    private void searchShard(LiveGraphShard shard, List<VectorFloat<?>> qvs, int perSourceK,
+                             Set<Bytes> acceptedPrimaryKeys, Set<Bytes> pending,
+                             List<List<Map.Entry<Bytes, Float>>> results) {
+        if (shard.builder == null || shard.nodeToPk.isEmpty()) {
+            return;
+        }
+        int k = Math.min(perSourceK, shard.nodeToPk.size());
+        ImmutableGraphIndex graph = shard.builder.getGraph();
+        Bits accepted = acceptedNodes(shard, graph, acceptedPrimaryKeys);
+        try (GraphSearcher searcher = new GraphSearcher(graph)) {
+            for (int i = 0; i < qvs.size(); i++) {
+                SearchResult result = searcher.search(
+                        DefaultSearchScoreProvider.exact(qvs.get(i), similarityFunction, shard.mravv), k, accepted);
+                List<Map.Entry<Bytes, Float>> queryResults = results.get(i);
+                for (SearchResult.NodeScore ns : result.getNodes()) {
+                    Bytes pk = shard.nodeToPk.get(ns.node + shard.startNodeId);
+                    if (pk != null && (pending == null || !pending.contains(pk))) {
+                        queryResults.add(new AbstractMap.SimpleImmutableEntry<>(pk, ns.score));
+                    }
+                }
+            }
+        } catch (IOException err) {
+            throw new java.io.UncheckedIOException(err);
+        }
+    }
+
+    /**
+     * Builds the accept bits of an in-memory shard. A small allow-list is
+     * resolved to the nodes of the shard once, larger ones are checked on each
+     * visited node.
+     */
+    private static Bits acceptedNodes(LiveGraphShard shard, ImmutableGraphIndex graph, Set<Bytes> acceptedPrimaryKeys) {
+        if (acceptedPrimaryKeys == null) {
+            return Bits.ALL;
+        }
+        if ((long) acceptedPrimaryKeys.size() * VectorSegment.RESOLVE_ALLOW_LIST_RATIO <= shard.nodeToPk.size()) {
+            int bound = graph.getIdUpperBound();
+            FixedBitSet bits = new FixedBitSet(Math.max(bound, 1));
+            for (Bytes pk : acceptedPrimaryKeys) {
+                Integer node = shard.pkToNode.get(pk);
+                if (node != null) {
+                    int local = node - shard.startNodeId;
+                    if (local >= 0 && local < bound) {
+                        bits.set(local);
+                    }
+                }
+            }
+            return bits;
+        }
+        return node -> {
+            Bytes pk = shard.nodeToPk.get(node + shard.startNodeId);
+            return pk != null && acceptedPrimaryKeys.contains(pk);
+        };
     }
 
     // -------------------------------------------------------------------------
@@ -22,9 +22,11 @@ package herddb.index.vector;
 
 import herddb.log.LogSequenceNumber;
 import herddb.utils.Bytes;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * SPI interface for remote vector index search.
@@ -52,6 +54,90 @@ public interface RemoteVectorIndexService extends AutoCloseable {
     List<Map.Entry<Bytes, Float>> search(String tablespace, String table, String index,
                                           float[] vector, int topK);
 
+    /**
+     * Searches the remote IndexingService for the nearest vectors, considering
+     * only the given primary keys. The filter is applied by the service while
+     * it traverses the graph, so the result contains up to {@code topK}
+     * entries even if the filter is very selective.
+     * <p>
+     * The default implementation filters the results of an unbounded search,
+     * implementations are expected to push the filter down.
+     *
+     * @param tablespace the tablespace name
+     * @param table the table name
+     * @param index the index name
+     * @param vector the query vector
+     * @param topK maximum number of results
+     * @param allowedPrimaryKeys the primary keys which can be returned, null
+     * means no filter
+     * @return list of (primaryKey, score) pairs sorted by score descending
+     */
+    default List<Map.Entry<Bytes, Float>> search(String tablespace, String table, String index,
+                                                  float[] vector, int topK, Set<Bytes> allowedPrimaryKeys) {
+        if (allowedPrimaryKeys == null) {
+            return search(tablespace, table, index, vector, topK);
+        }
+        List<Map.Entry<Bytes, Float>> results = new ArrayList<>();
+        for (Map.Entry<Bytes, Float> entry : search(tablespace, table, index, vector, Integer.MAX_VALUE)) {
+            if (allowedPrimaryKeys.contains(entry.getKey())) {
+                results.add(entry);
+                if (results.size() >= topK) {
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Searches the remote IndexingService for the nearest vectors of many
+     * query vectors with a single request, the service visits each shard
+     * of the index only once for the whole batch.
+     * <p>
+     * The default implementation issues a search for each query vector,
+     * implementations are expected to send the batch in a single call.
+     *
+     * @param tablespace the tablespace name
+     * @param table the table name
+     * @param index the index name
+     * @param vectors the query vectors
+     * @param topK maximum number of results for each query vector
+     * @return for each query vector, in the same order, the list of
+     * (primaryKey, score) pairs sorted by score descending
+     */
+    default List<List<Map.Entry<Bytes, Float>>> searchBatch(String tablespace, String table, String index,
+                                                            List<float[]> vectors, int topK) {
+        List<List<Map.Entry<Bytes, Float>>> results = new ArrayList<>(vectors.size());
+        for (float[] vector : vectors) {
+            results.add(search(tablespace, table, index, vector, topK));
+        }
+        return results;
+    }
+
+    /**
+     * Same as {@link #searchBatch(String, String, String, List, int)}, but
+     * only the given primary keys can be returned. The allow-list is shared
+     * by all the query vectors of the batch.
+     * <p>
+     * The default implementation issues a filtered search for each query
+     * vector, implementations are expected to send the batch in a single call.
+     *
+     * @param allowedPrimaryKeys the primary keys which can be returned, null
+     * means no filter
+     */
+    default List<List<Map.Entry<Bytes, Float>>> searchBatch(String tablespace, String table, String index,
+                                                            List<float[]> vectors, int topK,
+                                                            Set<Bytes> allowedPrimaryKeys) {
+        if (allowedPrimaryKeys == null) {
+            return searchBatch(tablespace, table, index, vectors, topK);
+        }
+        List<List<Map.Entry<Bytes, Float>>> results = new ArrayList<>(vectors.size());
+        for (float[] vector : vectors) {
+            results.add(search(tablespace, table, index, vector, topK, allowedPrimaryKeys));
+        }
+        return results;
+    }
+
     /**
      * Returns status information for a vector index on the remote service.
      *
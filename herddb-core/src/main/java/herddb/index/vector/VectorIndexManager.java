@@ -212,13 +212,31 @@ public class VectorIndexManager extends AbstractIndexManager {
      */
     public List<Map.Entry<Bytes, Float>> search(float[] queryVector, int topK)
             throws StatementExecutionException {
-        LOGGER.log(Level.INFO, "search index {0} on table {1} tablespace {2}, topK={3}, vectorDim={4}",
-                new Object[]{index.name, index.table, tableSpaceUUID, topK, queryVector.length});
+        return search(queryVector, topK, null);
+    }
+
+    /**
+     * Performs an approximate nearest-neighbor search against the remote
+     * IndexingService, considering only the given primary keys. The filter is
+     * applied by the IndexingService during the traversal of the graph.
+     *
+     * @param queryVector        the query embedding
+     * @param topK               maximum number of results to return
+     * @param allowedPrimaryKeys primary keys which can be returned, null means
+     *                           no filter
+     * @return list of (primaryKey, score) pairs ordered best-first
+     */
+    public List<Map.Entry<Bytes, Float>> search(float[] queryVector, int topK, Set<Bytes> allowedPrimaryKeys)
+            throws StatementExecutionException {
+        LOGGER.log(Level.INFO, "search index {0} on table {1} tablespace {2}, topK={3}, vectorDim={4}, filter={5}",
+                new Object[]{index.name, index.table, tableSpaceUUID, topK, queryVector.length,
+                        allowedPrimaryKeys != null ? allowedPrimaryKeys.size() + " keys" : "none"});
         long start = System.nanoTime();
         queryRequests.inc();
         try {
             List<Map.Entry<Bytes, Float>> results =
-                    remoteService().search(tableSpaceUUID, index.table, index.name, queryVector, topK);
+                    remoteService().search(tableSpaceUUID, index.table, index.name, queryVector, topK,
+                            allowedPrimaryKeys);
             long elapsedNanos = System.nanoTime() - start;
             queryLatency.registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
             long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
@@ -236,6 +254,61 @@ public class VectorIndexManager extends AbstractIndexManager {
         }
     }
 
+    /**
+     * Performs an approximate nearest-neighbor search of many query vectors
+     * with a single request to the remote IndexingService.
+     *
+     * @param queryVectors the query embeddings
+     * @param topK         maximum number of results for each query
+     * @return for each query, in the same order, the list of (primaryKey,
+     * score) pairs ordered best-first
+     */
+    public List<List<Map.Entry<Bytes, Float>>> searchBatch(List<float[]> queryVectors, int topK)
+            throws StatementExecutionException {
+        return searchBatch(queryVectors, topK, null);
+    }
+
+    /**
+     * Performs an approximate nearest-neighbor search of many query vectors
+     * with a single request to the remote IndexingService, considering only
+     * the given primary keys for all the queries.
+     *
+     * @param queryVectors       the query embeddings
+     * @param topK               maximum number of results for each query
+     * @param allowedPrimaryKeys primary keys which can be returned, null means
+     *                           no filter
+     * @return for each query, in the same order, the list of (primaryKey,
+     * score) pairs ordered best-first
+     */
+    public List<List<Map.Entry<Bytes, Float>>> searchBatch(List<float[]> queryVectors, int topK,
+                                                           Set<Bytes> allowedPrimaryKeys)
+            throws StatementExecutionException {
+        LOGGER.log(Level.INFO, "batch search index {0} on table {1} tablespace {2}, topK={3}, queries={4}, filter={5}",
+                new Object[]{index.name, index.table, tableSpaceUUID, topK, queryVectors.size(),
+                        allowedPrimaryKeys != null ? allowedPrimaryKeys.size() + " keys" : "none"});
+        long start = System.nanoTime();
+        queryRequests.inc();
+        try {
+            List<List<Map.Entry<Bytes, Float>>> results =
+                    remoteService().searchBatch(tableSpaceUUID, index.table, index.name, queryVectors, topK,
+                            allowedPrimaryKeys);
+            long elapsedNanos = System.nanoTime() - start;
+            queryLatency.registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+            LOGGER.log(Level.INFO, "batch search index {0} on table {1} completed in {2} ms, {3} queries",
+                    new Object[]{index.name, index.table, elapsedMs, results.size()});
+            return results;
+        } catch (Exception e) {
+            long elapsedNanos = System.nanoTime() - start;
+            queryLatency.registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+            queryErrors.inc();
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+            LOGGER.log(Level.SEVERE, "batch search index {0} on table {1} failed after {2} ms: {3}",
+                    new Object[]{index.name, index.table, elapsedMs, e.getMessage()});
+            throw new StatementExecutionException("remote vector index search failed: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * Opens an expanding iterator over the remote vector index, used by
      * {@code VectorANNScanOp} when a WHERE predicate (or stale-PK skipping)
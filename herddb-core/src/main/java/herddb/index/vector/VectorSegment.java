@@ -28,6 +28,7 @@ import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
 import io.github.jbellis.jvector.graph.disk.feature.FeatureId;
 import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
 import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.util.FixedBitSet;
 import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
 import io.github.jbellis.jvector.vector.types.VectorFloat;
 import java.io.Closeable;
@@ -35,8 +36,12 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -60,6 +65,13 @@ class VectorSegment implements Closeable {
      */
     static final int OVERQUERY_FACTOR = 3;
 
+    /**
+     * An allow-list with at most one key every RESOLVE_ALLOW_LIST_RATIO live
+     * nodes is resolved to the ordinals of the segment before searching,
+     * larger allow-lists are checked on each visited node.
+     */
+    static final int RESOLVE_ALLOW_LIST_RATIO = 4;
+
     static Bytes ordinalToBytes(int ordinal) {
         byte[] b = new byte[4];
         b[0] = (byte) (ordinal >>> 24);
@@ -130,6 +142,37 @@ class VectorSegment implements Closeable {
      */
     void search(VectorFloat<?> qv, int topK, VectorSimilarityFunction similarityFunction,
                 List<Map.Entry<Bytes, Float>> results) {
+        search(qv, topK, similarityFunction, null, results);
+    }
+
+    /**
+     * Searches this segment's on-disk graph and appends results to the given
+     * list, returning only the nodes whose primary key is accepted by the
+     * filter.
+     *
+     * @param acceptedPrimaryKeys allow-list of primary keys, null means no filter
+     */
+    void search(VectorFloat<?> qv, int topK, VectorSimilarityFunction similarityFunction,
+                Set<Bytes> acceptedPrimaryKeys, List<Map.Entry<Bytes, Float>> results) {
+        searchBatch(Collections.singletonList(qv), topK, similarityFunction, acceptedPrimaryKeys,
+                Collections.singletonList(results));
+    }
+
+    /**
+     * Searches this segment's on-disk graph with many query vectors, the
+     * results of the i-th query are appended to the i-th list. The searcher,
+     * its view of the graph and the filter are shared by all the queries; the
+     * score functions (including the PQ lookup tables with FusedPQ) depend on
+     * the query and are built for each of them.
+     * <p>
+     * A small allow-list is resolved to ordinals once: when it holds fewer
+     * nodes than the ones which would be reranked they are scored directly,
+     * otherwise the graph is searched accepting only the resolved ordinals.
+     *
+     * @param acceptedPrimaryKeys allow-list of primary keys, null means no filter
+     */
+    void searchBatch(List<VectorFloat<?>> qvs, int topK, VectorSimilarityFunction similarityFunction,
+                     Set<Bytes> acceptedPrimaryKeys, List<List<Map.Entry<Bytes, Float>>> results) {
         OnDiskGraphIndex odg = this.onDiskGraph;
         if (odg == null) {
             LOGGER.log(Level.FINE, "segment {0}: skipping search, no on-disk graph", segmentId);
@@ -146,10 +189,31 @@ class VectorSegment implements Closeable {
             LOGGER.log(Level.FINE, "segment {0}: skipping search, no active nodes", segmentId);
             return;
         }
-        LOGGER.log(Level.FINE, "segment {0}: searching topK={1}, activeCount={2}, effectiveK={3}",
-                new Object[]{segmentId, topK, activeCount, k});
+        LOGGER.log(Level.FINE, "segment {0}: searching topK={1}, activeCount={2}, effectiveK={3}, queries={4}",
+                new Object[]{segmentId, topK, activeCount, k, qvs.size()});
         long segStart = System.nanoTime();
-        Bits acceptBits = ordinal -> ordinal >= 0 && ordinal < offsets.length && offsets[ordinal] >= 0;
+        int[] allowedOrdinals = null;
+        Bits acceptBits;
+        if (acceptedPrimaryKeys == null) {
+            acceptBits = ordinal -> ordinal >= 0 && ordinal < offsets.length && offsets[ordinal] >= 0;
+        } else if (onDiskPkToNode != null
+                && (long) acceptedPrimaryKeys.size() * RESOLVE_ALLOW_LIST_RATIO <= activeCount) {
+            allowedOrdinals = resolveOrdinals(acceptedPrimaryKeys, offsets);
+            if (allowedOrdinals.length == 0) {
+                LOGGER.log(Level.FINE, "segment {0}: skipping search, no allowed nodes", segmentId);
+                return;
+            }
+            FixedBitSet bits = new FixedBitSet(offsets.length);
+            for (int ordinal : allowedOrdinals) {
+                bits.set(ordinal);
+            }
+            acceptBits = bits;
+        } else {
+            acceptBits = ordinal -> {
+                Bytes pk = getPkForOrdinal(ordinal);
+                return pk != null && acceptedPrimaryKeys.contains(pk);
+            };
+        }
         try {
             GraphSearcher searcher = searcherCache.get();
             if (searcher == null) {
@@ -157,28 +221,37 @@ class VectorSegment implements Closeable {
                 searcherCache.set(searcher);
             }
             OnDiskGraphIndex.View view = (OnDiskGraphIndex.View) searcher.getView();
-            io.github.jbellis.jvector.graph.similarity.ScoreFunction.ExactScoreFunction reranker =
-                    view.rerankerFor(qv, similarityFunction);
-            DefaultSearchScoreProvider ssp;
-            int rerankK;
-            if (odg.getFeatureSet().contains(FeatureId.FUSED_PQ)) {
-                io.github.jbellis.jvector.graph.similarity.ScoreFunction.ApproximateScoreFunction approxSF =
-                        view.approximateScoreFunctionFor(qv, similarityFunction);
-                ssp = new DefaultSearchScoreProvider(approxSF, reranker);
-                rerankK = Math.min(k * OVERQUERY_FACTOR, activeCount);
-            } else {
-                // Segment written without FusedPQ (tail shard < MIN_VECTORS_FOR_FUSED_PQ).
-                // InlineVectors are always present; use exact scoring for the beam search.
-                ssp = new DefaultSearchScoreProvider(reranker);
-                rerankK = k;
-            }
-            SearchResult sr = searcher.search(ssp, k, rerankK, 0.0f, 0.0f, acceptBits);
+            boolean fusedPQ = odg.getFeatureSet().contains(FeatureId.FUSED_PQ);
             int matched = 0;
-            for (SearchResult.NodeScore ns : sr.getNodes()) {
-                Bytes pk = getPkForOrdinal(ns.node);
-                if (pk != null) {
-                    results.add(new AbstractMap.SimpleImmutableEntry<>(pk, ns.score));
-                    matched++;
+            for (int i = 0; i < qvs.size(); i++) {
+                VectorFloat<?> qv = qvs.get(i);
+                io.github.jbellis.jvector.graph.similarity.ScoreFunction.ExactScoreFunction reranker =
+                        view.rerankerFor(qv, similarityFunction);
+                DefaultSearchScoreProvider ssp;
+                int rerankK;
+                if (fusedPQ) {
+                    io.github.jbellis.jvector.graph.similarity.ScoreFunction.ApproximateScoreFunction approxSF =
+                            view.approximateScoreFunctionFor(qv, similarityFunction);
+                    ssp = new DefaultSearchScoreProvider(approxSF, reranker);
+                    rerankK = Math.min(k * OVERQUERY_FACTOR, activeCount);
+                } else {
+                    // Segment written without FusedPQ (tail shard < MIN_VECTORS_FOR_FUSED_PQ).
+                    // InlineVectors are always present; use exact scoring for the beam search.
+                    ssp = new DefaultSearchScoreProvider(reranker);
+                    rerankK = k;
+                }
+                List<Map.Entry<Bytes, Float>> queryResults = results.get(i);
+                if (allowedOrdinals != null && allowedOrdinals.length <= rerankK) {
+                    matched += scoreOrdinals(reranker, allowedOrdinals, k, queryResults);
+                    continue;
+                }
+                SearchResult sr = searcher.search(ssp, k, rerankK, 0.0f, 0.0f, acceptBits);
+                for (SearchResult.NodeScore ns : sr.getNodes()) {
+                    Bytes pk = getPkForOrdinal(ns.node);
+                    if (pk != null) {
+                        queryResults.add(new AbstractMap.SimpleImmutableEntry<>(pk, ns.score));
+                        matched++;
+                    }
                 }
             }
             long segElapsedUs = java.util.concurrent.TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - segStart);
@@ -193,6 +266,47 @@ class VectorSegment implements Closeable {
         }
     }
 
+    /**
+     * Looks up the ordinals of the given primary keys, skipping the ones
+     * which are not in this segment or have been deleted.
+     */
+    private int[] resolveOrdinals(Set<Bytes> primaryKeys, int[] offsets) {
+        BLink<Bytes, Long> p2n = this.onDiskPkToNode;
+        int[] ordinals = new int[primaryKeys.size()];
+        int count = 0;
+        for (Bytes pk : primaryKeys) {
+            Long ordinal = p2n.search(pk);
+            if (ordinal != null) {
+                int ord = ordinal.intValue();
+                if (ord >= 0 && ord < offsets.length && offsets[ord] >= 0) {
+                    ordinals[count++] = ord;
+                }
+            }
+        }
+        return Arrays.copyOf(ordinals, count);
+    }
+
+    /**
+     * Computes the exact score of each of the given ordinals and appends the
+     * best topK ones to the results.
+     *
+     * @return the number of results appended
+     */
+    private int scoreOrdinals(io.github.jbellis.jvector.graph.similarity.ScoreFunction.ExactScoreFunction reranker,
+                              int[] ordinals, int topK, List<Map.Entry<Bytes, Float>> results) {
+        List<Map.Entry<Bytes, Float>> scored = new ArrayList<>(ordinals.length);
+        for (int ordinal : ordinals) {
+            Bytes pk = getPkForOrdinal(ordinal);
+            if (pk != null) {
+                scored.add(new AbstractMap.SimpleImmutableEntry<>(pk, reranker.similarityTo(ordinal)));
+            }
+        }
+        scored.sort((a, b) -> Float.compare(b.getValue(), a.getValue()));
+        List<Map.Entry<Bytes, Float>> best = scored.size() > topK ? scored.subList(0, topK) : scored;
+        results.addAll(best);
+        return best.size();
+    }
+
     /**
      * Attempts to delete the given primary key from this segment.
      *
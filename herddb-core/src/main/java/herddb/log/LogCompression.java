@@ -0,0 +1,102 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.log;
+
+import herddb.utils.SystemProperties;
+import java.io.IOException;
+import java.util.Arrays;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * LZ4 compression of the transaction log.
+ * <p>
+ * The local txlog compresses each batch of entries flushed to disk, on
+ * BookKeeper every entry is a distinct ledger entry and so entries are
+ * compressed one by one. Data which does not shrink is stored uncompressed,
+ * so readers must always be able to read both forms.
+ *
+ * @author enrico.olivelli
+ */
+public final class LogCompression {
+
+    public static final String NONE = "none";
+    public static final String LZ4 = "lz4";
+
+    /**
+     * Data smaller than this is not worth compressing
+     */
+    public static final int MIN_COMPRESSION_SIZE = SystemProperties.getIntSystemProperty(
+            "herddb.log.mincompressionsize", 128);
+
+    private static final LZ4Factory FACTORY = LZ4Factory.fastestInstance();
+    private static final LZ4Compressor COMPRESSOR = FACTORY.fastCompressor();
+    private static final LZ4FastDecompressor DECOMPRESSOR = FACTORY.fastDecompressor();
+
+    private LogCompression() {
+    }
+
+    /**
+     * Parses the configured compression codec
+     *
+     * @param codec the name of the codec, "none" or "lz4"
+     * @return true if the log has to be compressed
+     */
+    public static boolean isCompressionEnabled(String codec) {
+        if (codec == null || codec.isEmpty() || NONE.equalsIgnoreCase(codec)) {
+            return false;
+        }
+        if (LZ4.equalsIgnoreCase(codec)) {
+            return true;
+        }
+        throw new IllegalArgumentException("unsupported txlog compression codec " + codec + ", use " + NONE + " or " + LZ4);
+    }
+
+    /**
+     * Compresses a portion of an array.
+     *
+     * @return the compressed data, or null if it is not worth to compress the
+     * data
+     */
+    public static byte[] compress(byte[] data, int offset, int length) {
+        if (length < MIN_COMPRESSION_SIZE) {
+            return null;
+        }
+        byte[] compressed = new byte[COMPRESSOR.maxCompressedLength(length)];
+        int compressedLength = COMPRESSOR.compress(data, offset, length, compressed, 0, compressed.length);
+        if (compressedLength >= length) {
+            return null;
+        }
+        return Arrays.copyOf(compressed, compressedLength);
+    }
+
+    public static byte[] decompress(byte[] compressed, int offset, int uncompressedLength) throws IOException {
+        byte[] result = new byte[uncompressedLength];
+        try {
+            DECOMPRESSOR.decompress(compressed, offset, result, 0, uncompressedLength);
+        } catch (LZ4Exception err) {
+            throw new IOException("corrupted compressed txlog data", err);
+        }
+        return result;
+    }
+}
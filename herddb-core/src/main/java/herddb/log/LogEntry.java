@@ -27,6 +27,7 @@ import herddb.utils.ExtendedDataOutputStream;
 import herddb.utils.SimpleByteArrayInputStream;
 import herddb.utils.SystemProperties;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.PooledByteBufAllocator;
 import java.io.ByteArrayOutputStream;
@@ -98,6 +99,38 @@ public class LogEntry {
         }
     }
 
+    /**
+     * First byte of a compressed entry. Uncompressed entries start with the
+     * timestamp, which is never negative.
+     */
+    public static final byte COMPRESSED_ENTRY = (byte) 0xC4;
+
+    /**
+     * Serializes the entry as a standalone record, like a BookKeeper entry,
+     * compressing it if it is worth.
+     *
+     * @param compress if compression is enabled
+     * @return the serialized entry, to be read with {@link #deserialize(ByteBuf)}
+     * @see LogCompression
+     */
+    public ByteBuf serializeAsByteBuf(boolean compress) {
+        if (!compress) {
+            return serializeAsByteBuf();
+        }
+        byte[] data = serialize();
+        byte[] compressed = LogCompression.compress(data, 0, data.length);
+        if (compressed == null) {
+            ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer(data.length);
+            buffer.writeBytes(data);
+            return buffer;
+        }
+        ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer(1 + 4 + compressed.length);
+        buffer.writeByte(COMPRESSED_ENTRY);
+        buffer.writeInt(data.length);
+        buffer.writeBytes(compressed);
+        return buffer;
+    }
+
     /**
      * @param doo
      * @return an estimate on the number of written bytes
@@ -111,6 +144,7 @@ public class LogEntry {
         doo.write(EMPTY_STRING_SERIALIZED); // keep compatibility with v 0.2
         switch (type) {
             case LogEntryType.UPDATE:
+            case LogEntryType.UPDATE_DELTA:
                 doo.writeUTF(tableName);
                 doo.writeArray(key);
                 doo.writeArray(value);
@@ -159,7 +193,34 @@ public class LogEntry {
         return doo.size() - startingsize;
     }
 
+    public static LogEntry deserialize(ByteBuf buffer) throws EOFException {
+        if (buffer.readableBytes() > 0 && buffer.getByte(buffer.readerIndex()) == COMPRESSED_ENTRY) {
+            byte[] data = new byte[buffer.readableBytes()];
+            buffer.getBytes(buffer.readerIndex(), data);
+            return deserialize(data);
+        }
+        try (ExtendedDataInputStream dis = new ExtendedDataInputStream(new ByteBufInputStream(buffer, false /* releaseOnClose */))) {
+            return deserialize(dis);
+        } catch (EOFException err) {
+            throw err;
+        } catch (IOException err) {
+            throw new RuntimeException(err);
+        }
+    }
+
     public static LogEntry deserialize(byte[] data) throws EOFException {
+        if (data.length > 0 && data[0] == COMPRESSED_ENTRY) {
+            if (data.length < 5) {
+                throw new EOFException("truncated compressed entry");
+            }
+            int uncompressedLength = ((data[1] & 0xFF) << 24) | ((data[2] & 0xFF) << 16)
+                    | ((data[3] & 0xFF) << 8) | (data[4] & 0xFF);
+            try {
+                data = LogCompression.decompress(data, 5, uncompressedLength);
+            } catch (IOException err) {
+                throw new RuntimeException(err);
+            }
+        }
         SimpleByteArrayInputStream in = new SimpleByteArrayInputStream(data);
         ExtendedDataInputStream dis = new ExtendedDataInputStream(in);
         return deserialize(dis);
@@ -177,6 +238,7 @@ public class LogEntry {
             String tableName = null;
             switch (type) {
                 case LogEntryType.UPDATE:
+                case LogEntryType.UPDATE_DELTA:
                     tableName = dis.readUTF();
                     key = dis.readBytes();
                     value = dis.readBytes();
@@ -74,6 +74,10 @@ public class LogEntryFactory {
         return new LogEntry(System.currentTimeMillis(), LogEntryType.UPDATE, transaction != null ? transaction.transactionId : 0, table.name, key, value);
     }
 
+    public static LogEntry updateDelta(Table table, Bytes key, Bytes delta, Transaction transaction) {
+        return new LogEntry(System.currentTimeMillis(), LogEntryType.UPDATE_DELTA, transaction != null ? transaction.transactionId : 0, table.name, key, delta);
+    }
+
     public static LogEntry delete(Table table, Bytes key, Transaction transaction) {
         return new LogEntry(System.currentTimeMillis(), LogEntryType.DELETE, transaction != null ? transaction.transactionId : 0, table.name, key, null);
     }
@@ -41,5 +41,10 @@ public class LogEntryType {
     public static final short TRUNCATE_TABLE = 12;
     public static final short NOOP = 13;
     public static final short TABLE_CONSISTENCY_CHECK = 14;
+    /**
+     * UPDATE which carries only the changed columns, see
+     * {@link herddb.codec.RecordDelta}
+     */
+    public static final short UPDATE_DELTA = 15;
 
 }
@@ -52,7 +52,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.logging.Level;
@@ -122,6 +124,12 @@ public class MemoryDataStorageManager extends DataStorageManager {
         return page.records;
     }
 
+    @Override
+    public CompletableFuture<List<Record>> readPageAsync(String tableSpace, String uuid, Long pageId, Executor executor) {
+        // pages are already in memory, there is nothing to read ahead
+        return CompletableFuture.completedFuture(null);
+    }
+
     @Override
     public <X> X readIndexPage(String tableSpace, String indexName, Long pageId, DataReader<X> reader)
             throws DataStorageManagerException {
@@ -67,6 +67,12 @@ public class Transaction {
     public final long localCreationTimestamp;
     private final List<CommitLogResult> deferredWrites = new ArrayList<>();
     public volatile long lastActivityTs = System.currentTimeMillis();
+    /**
+     * Snapshot read by the transaction without read locks, 0 if the
+     * transaction did not read anything yet, -1 if the transaction is
+     * terminated
+     */
+    public long snapshotId;
 
     private final AtomicInteger refCount = new AtomicInteger();
 
@@ -30,6 +30,7 @@ import herddb.model.StatementExecutionException;
 import herddb.model.StatementExecutionResult;
 import herddb.model.TransactionContext;
 import herddb.sql.expressions.CompiledSQLExpression;
+import herddb.sql.expressions.ExpressionCodeGenerator;
 import herddb.utils.DataAccessor;
 import herddb.utils.SQLRecordPredicateFunctions;
 import herddb.utils.Wrapper;
@@ -43,10 +44,12 @@ public class FilterOp implements PlannerOp {
 
     private final PlannerOp input;
     private final CompiledSQLExpression condition;
+    private final CompiledSQLExpression evaluatedCondition;
 
     public FilterOp(PlannerOp input, CompiledSQLExpression condition) {
         this.input = input.optimize();
         this.condition = condition;
+        this.evaluatedCondition = ExpressionCodeGenerator.optimize(condition);
     }
 
     @Override
@@ -83,7 +86,7 @@ public class FilterOp implements PlannerOp {
                     transactionContext, context, lockRequired, forWrite);
             ScanResult downstreamScanResult = (ScanResult) input;
             final DataScanner inputScanner = downstreamScanResult.dataScanner;
-            FilteredDataScanner filtered = new FilteredDataScanner(inputScanner, condition, context);
+            FilteredDataScanner filtered = new FilteredDataScanner(inputScanner, evaluatedCondition, context);
             return new ScanResult(downstreamScanResult.transactionId, filtered);
         } catch (DataScannerException ex) {
             throw new StatementExecutionException(ex);
@@ -32,6 +32,7 @@ import herddb.model.StatementExecutionException;
 import herddb.model.StatementExecutionResult;
 import herddb.model.TransactionContext;
 import herddb.sql.expressions.CompiledSQLExpression;
+import herddb.sql.expressions.ExpressionCodeGenerator;
 import herddb.utils.AbstractDataAccessor;
 import herddb.utils.DataAccessor;
 import herddb.utils.SQLRecordPredicateFunctions;
@@ -60,6 +61,7 @@ public class ProjectOp implements PlannerOp {
         private final Column[] columns;
         private final String[] fieldNames;
         private final List<CompiledSQLExpression> fields;
+        private final CompiledSQLExpression[] evaluatedFields;
 
         public BasicProjection(
                 String[] fieldNames, Column[] columns,
@@ -68,6 +70,10 @@ public class ProjectOp implements PlannerOp {
             this.fieldNames = fieldNames;
             this.columns = columns;
             this.fields = fields;
+            this.evaluatedFields = new CompiledSQLExpression[fields.size()];
+            for (int i = 0; i < evaluatedFields.length; i++) {
+                evaluatedFields[i] = ExpressionCodeGenerator.optimize(fields.get(i));
+            }
         }
 
         @Override
@@ -124,7 +130,7 @@ public class ProjectOp implements PlannerOp {
             @Override
             public Object get(int i) {
                 if (!evaluated.get(i)) {
-                    CompiledSQLExpression exp = fields.get(i);
+                    CompiledSQLExpression exp = evaluatedFields[i];
                     this.values[i] = exp.evaluate(wrapper, context);
                     evaluated.set(i);
                 }
@@ -0,0 +1,290 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.model.planner;
+
+import herddb.codec.RecordSerializer;
+import herddb.core.AbstractIndexManager;
+import herddb.core.MaterializedRecordSet;
+import herddb.core.SimpleDataScanner;
+import herddb.core.TableSpaceManager;
+import herddb.index.vector.VectorIndexManager;
+import herddb.model.Column;
+import herddb.model.ColumnTypes;
+import herddb.model.GetResult;
+import herddb.model.Predicate;
+import herddb.model.Projection;
+import herddb.model.Record;
+import herddb.model.ScanResult;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.StatementExecutionException;
+import herddb.model.StatementExecutionResult;
+import herddb.model.Table;
+import herddb.model.Transaction;
+import herddb.model.TransactionContext;
+import herddb.model.Tuple;
+import herddb.model.commands.GetStatement;
+import herddb.sql.expressions.CompiledSQLExpression;
+import herddb.utils.Bytes;
+import herddb.utils.DataAccessor;
+import herddb.utils.Wrapper;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs a nearest-neighbor search for every row of a VALUES list, as in
+ * <pre>
+ * SELECT q.qid, t.id
+ * FROM (VALUES (0, ?), (1, ?)) AS q(qid, qvec),
+ *      LATERAL (SELECT id FROM t1 ORDER BY ann_of(vec, q.qvec) DESC LIMIT 10) AS t
+ * </pre>
+ * All the query vectors are sent to the indexing service with a single
+ * batched request. Every output row contains the columns of the VALUES row
+ * followed by the columns of the inner projection.
+ * <p>
+ * When the WHERE clause of the inner query can be evaluated with an index
+ * and it is selective, the keys of the matching records are sent with the
+ * batch as an allow-list shared by all the queries, as in
+ * {@link VectorANNScanOp}. With other WHERE clauses the batch over-fetches
+ * the candidates, the queries which still do not have enough matching rows
+ * are completed with a streaming search.
+ *
+ * @author enrico.olivelli
+ */
+public class VectorANNBatchScanOp implements PlannerOp {
+
+    private final String tableSpace;
+    private final Table tableDef;
+    private final String columnName;
+    private final String[] valuesFieldNames;
+    private final List<List<CompiledSQLExpression>> valuesTuples;
+    private final int queryVectorIndex;
+    private final Predicate predicate;
+    private final Projection innerProjection;
+    private final CompiledSQLExpression limitExpr;
+    private final String[] fieldNames;
+    private final Column[] columns;
+
+    /**
+     * @param valuesFieldNames names of the columns of the VALUES list
+     * @param valuesTuples     rows of the VALUES list
+     * @param queryVectorIndex position of the query vector in the rows of
+     *                         the VALUES list
+     * @param predicate        WHERE clause of the inner query, can be null
+     * @param innerProjection  projection of the inner query, null means the
+     *                         full table row
+     * @param limitExpr        number of rows for each query vector
+     */
+    public VectorANNBatchScanOp(
+            String tableSpace,
+            Table tableDef,
+            String columnName,
+            String[] valuesFieldNames,
+            List<List<CompiledSQLExpression>> valuesTuples,
+            int queryVectorIndex,
+            Predicate predicate,
+            Projection innerProjection,
+            CompiledSQLExpression limitExpr
+    ) {
+        this.tableSpace = tableSpace;
+        this.tableDef = tableDef;
+        this.columnName = columnName;
+        this.valuesFieldNames = valuesFieldNames;
+        this.valuesTuples = valuesTuples;
+        this.queryVectorIndex = queryVectorIndex;
+        this.predicate = predicate;
+        this.innerProjection = innerProjection;
+        this.limitExpr = limitExpr;
+        String[] innerFieldNames = innerProjection != null ? innerProjection.getFieldNames()
+                : Column.buildFieldNamesList(tableDef.columns);
+        Column[] innerColumns = innerProjection != null ? innerProjection.getColumns() : tableDef.columns;
+        this.fieldNames = new String[valuesFieldNames.length + innerFieldNames.length];
+        this.columns = new Column[fieldNames.length];
+        for (int i = 0; i < valuesFieldNames.length; i++) {
+            fieldNames[i] = valuesFieldNames[i];
+            columns[i] = Column.column(valuesFieldNames[i], ColumnTypes.ANYTYPE);
+        }
+        System.arraycopy(innerFieldNames, 0, fieldNames, valuesFieldNames.length, innerFieldNames.length);
+        System.arraycopy(innerColumns, 0, columns, valuesFieldNames.length, innerColumns.length);
+    }
+
+    @Override
+    public String getTablespace() {
+        return tableSpace;
+    }
+
+    @Override
+    public Column[] getOutputSchema() {
+        return columns;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+        return Wrapper.unwrap(this, clazz);
+    }
+
+    @Override
+    public StatementExecutionResult execute(
+            TableSpaceManager tableSpaceManager,
+            TransactionContext transactionContext,
+            StatementEvaluationContext context,
+            boolean lockRequired,
+            boolean forWrite
+    ) throws StatementExecutionException {
+        VectorIndexManager vim = findVectorIndex(tableSpaceManager);
+        if (vim == null) {
+            throw new StatementExecutionException("No vector index found for column '" + columnName + "' on table " + tableDef.name);
+        }
+        int limit = ((Number) limitExpr.evaluate(DataAccessor.NULL, context)).intValue();
+        if (limit <= 0) {
+            throw new StatementExecutionException("invalid LIMIT " + limit + " for a vector search");
+        }
+
+        List<Object[]> valuesRows = new ArrayList<>(valuesTuples.size());
+        List<float[]> queryVectors = new ArrayList<>(valuesTuples.size());
+        for (List<CompiledSQLExpression> tuple : valuesTuples) {
+            Object[] values = new Object[valuesFieldNames.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = tuple.get(i).evaluate(DataAccessor.NULL, context);
+            }
+            valuesRows.add(values);
+            queryVectors.add((float[]) RecordSerializer.convert(ColumnTypes.FLOATARRAY, values[queryVectorIndex]));
+        }
+
+        Set<Bytes> allowedPrimaryKeys = null;
+        if (predicate != null && !queryVectors.isEmpty()) {
+            allowedPrimaryKeys = VectorANNScanOp.collectAllowedPrimaryKeys(tableSpace, tableDef, predicate,
+                    tableSpaceManager, transactionContext, context);
+        }
+        int batchK = limit;
+        List<List<Map.Entry<Bytes, Float>>> annResults;
+        if (queryVectors.isEmpty() || (allowedPrimaryKeys != null && allowedPrimaryKeys.isEmpty())) {
+            annResults = new ArrayList<>(queryVectors.size());
+            for (int q = 0; q < queryVectors.size(); q++) {
+                annResults.add(Collections.emptyList());
+            }
+        } else if (allowedPrimaryKeys != null) {
+            // Pre-filter path: the indexing service returns only records
+            // which matched the predicate, it is evaluated again below
+            // because the index may lag behind the table
+            batchK = Math.min(limit, allowedPrimaryKeys.size());
+            annResults = vim.searchBatch(queryVectors, batchK, allowedPrimaryKeys);
+        } else {
+            if (predicate != null) {
+                batchK = Math.max(VectorANNScanOp.PREDICATE_MIN_INITIAL,
+                        (int) Math.ceil((double) limit * VectorANNScanOp.PREDICATE_OVER_FETCH_FACTOR));
+            }
+            annResults = vim.searchBatch(queryVectors, batchK);
+        }
+
+        Transaction transaction = tableSpaceManager.getTransaction(transactionContext.transactionId);
+        MaterializedRecordSet recordSet = tableSpaceManager.getDbmanager().getRecordSetFactory()
+                .createRecordSet(fieldNames, columns);
+        for (int q = 0; q < valuesRows.size(); q++) {
+            List<DataAccessor> rows = new ArrayList<>(limit);
+            List<Map.Entry<Bytes, Float>> queryResults = annResults.get(q);
+            for (Map.Entry<Bytes, Float> entry : queryResults) {
+                if (accept(entry.getKey(), tableSpaceManager, transactionContext, context, rows)
+                        && rows.size() >= limit) {
+                    break;
+                }
+            }
+            if (rows.size() < limit && predicate != null && allowedPrimaryKeys == null
+                    && queryResults.size() >= batchK) {
+                // the predicate filtered too many candidates and the index
+                // has more of them, go on with the expanding search
+                rows.clear();
+                VectorIndexManager.SearchIterator it = vim.searchStream(queryVectors.get(q), limit,
+                        VectorANNScanOp.PREDICATE_OVER_FETCH_FACTOR, VectorANNScanOp.PREDICATE_MIN_INITIAL,
+                        VectorANNScanOp.PREDICATE_MAX_EXPANSIONS);
+                try {
+                    while (rows.size() < limit && it.hasNext()) {
+                        accept(it.next().getKey(), tableSpaceManager, transactionContext, context, rows);
+                    }
+                } finally {
+                    it.close();
+                }
+            }
+            Object[] valuesRow = valuesRows.get(q);
+            for (DataAccessor row : rows) {
+                Object[] values = new Object[fieldNames.length];
+                System.arraycopy(valuesRow, 0, values, 0, valuesRow.length);
+                for (int i = 0; i < row.getNumFields(); i++) {
+                    values[valuesRow.length + i] = row.get(i);
+                }
+                recordSet.add(new Tuple(fieldNames, values));
+            }
+        }
+        recordSet.writeFinished();
+        return new ScanResult(transactionContext.transactionId, new SimpleDataScanner(transaction, recordSet));
+    }
+
+    /**
+     * Reads the record with the given key and adds it to the rows if it
+     * still exists and it matches the predicate.
+     */
+    private boolean accept(
+            Bytes pk,
+            TableSpaceManager tableSpaceManager,
+            TransactionContext transactionContext,
+            StatementEvaluationContext context,
+            List<DataAccessor> rows
+    ) throws StatementExecutionException {
+        GetStatement get = new GetStatement(tableSpace, tableDef.name, pk, null, false);
+        GetResult getResult = tableSpaceManager.getDbmanager().get(get, context, transactionContext);
+        if (!getResult.found()) {
+            return false;
+        }
+        Record record = getResult.getRecord();
+        if (predicate != null && !predicate.evaluate(record, context)) {
+            return false;
+        }
+        DataAccessor fullRow = record.getDataAccessor(tableDef);
+        rows.add(innerProjection != null ? innerProjection.map(fullRow, context) : fullRow);
+        return true;
+    }
+
+    private VectorIndexManager findVectorIndex(TableSpaceManager tableSpaceManager) {
+        Map<String, AbstractIndexManager> indexes = tableSpaceManager.getIndexesOnTable(tableDef.name);
+        if (indexes == null) {
+            return null;
+        }
+        for (AbstractIndexManager aim : indexes.values()) {
+            if (aim instanceof VectorIndexManager) {
+                VectorIndexManager v = (VectorIndexManager) aim;
+                for (String col : v.getIndex().columnNames) {
+                    if (col.equalsIgnoreCase(columnName)) {
+                        return v;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "VectorANNBatchScanOp{table=" + tableDef.name + ", column=" + columnName
+                + ", queries=" + valuesTuples.size() + '}';
+    }
+}
@@ -20,14 +20,17 @@
 
 package herddb.model.planner;
 
+import herddb.codec.DataAccessorForFullRecord;
 import herddb.codec.RecordSerializer;
 import herddb.core.AbstractIndexManager;
 import herddb.core.MaterializedRecordSet;
 import herddb.core.SimpleDataScanner;
 import herddb.core.TableSpaceManager;
+import herddb.index.vector.BruteForceVectorIndex;
 import herddb.index.vector.VectorIndexManager;
 import herddb.model.Column;
 import herddb.model.ColumnTypes;
+import herddb.model.DataScanner;
 import herddb.model.DataScannerException;
 import herddb.model.GetResult;
 import herddb.model.LimitedDataScanner;
@@ -42,16 +45,21 @@ import herddb.model.Table;
 import herddb.model.Transaction;
 import herddb.model.TransactionContext;
 import herddb.model.commands.GetStatement;
+import herddb.model.commands.ScanStatement;
 import herddb.sql.expressions.CompiledSQLExpression;
 import herddb.utils.Bytes;
 import herddb.utils.DataAccessor;
 import herddb.utils.Wrapper;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Uses the VectorIndexManager (jvector) for ORDER BY ann_of() queries.
- * Falls back to brute-force execution if no vector index is found.
+ * Falls back to brute-force execution if no vector index is found, with a
+ * SIMD top-K search over the scanned vectors when the LIMIT is known.
  *
  * @author eolivelli
  */
@@ -63,7 +71,7 @@ public class VectorANNScanOp implements PlannerOp {
      * hits up front, expecting some to be filtered out by the predicate or
      * by stale/deleted PK skipping.
      */
-    private static final float PREDICATE_OVER_FETCH_FACTOR = 1.5f;
+    static final float PREDICATE_OVER_FETCH_FACTOR = 1.5f;
 
     /**
      * Minimum size of the initial ANN batch when a predicate is present.
@@ -71,7 +79,7 @@ public class VectorANNScanOp implements PlannerOp {
      * trips in the common case where the predicate hits something within the
      * first handful of candidates.
      */
-    private static final int PREDICATE_MIN_INITIAL = 16;
+    static final int PREDICATE_MIN_INITIAL = 16;
 
     /**
      * Maximum number of times the streaming iterator will double the search
@@ -79,7 +87,18 @@ public class VectorANNScanOp implements PlannerOp {
      * ceiling is {@code B * 2^MAX_EXPANSIONS}. Prevents an unbounded loop
      * when the predicate filters almost every candidate.
      */
-    private static final int PREDICATE_MAX_EXPANSIONS = 6;
+    static final int PREDICATE_MAX_EXPANSIONS = 6;
+
+    /**
+     * Maximum number of primary keys sent to the indexing service as a
+     * pre-filter. When the WHERE predicate can be evaluated with an index
+     * and it matches at most this number of records, the keys of the
+     * matching records are passed to the search, which applies the filter
+     * during the traversal of the graph and needs a single round trip.
+     * Predicates matching more records are not selective and the streaming
+     * over-fetch is cheaper.
+     */
+    static final int PREDICATE_MAX_ALLOWED_KEYS = 10_000;
 
     private final String tableSpace;
     private final Table tableDef;
@@ -170,7 +189,7 @@ public class VectorANNScanOp implements PlannerOp {
             boolean forWrite
     ) throws StatementExecutionException {
         VectorIndexManager vim = findVectorIndex(tableSpaceManager);
-        if (vim == null) {
+        if (vim == null && !canSearchBruteForce()) {
             if (fallback != null) {
                 StatementExecutionResult fallbackResult = fallback.execute(
                         tableSpaceManager, transactionContext, context, lockRequired, forWrite);
@@ -222,18 +241,36 @@ public class VectorANNScanOp implements PlannerOp {
         MaterializedRecordSet recordSet = tableSpaceManager.getDbmanager().getRecordSetFactory()
                 .createRecordSet(fieldNames, cols);
 
-        if (predicate != null && limitExpr != null) {
-            // Streaming path: start with an over-fetch of topK * factor and
-            // keep pulling more from the indexing service until we have
-            // `limit` rows that satisfy the predicate (or the index is
-            // exhausted). Stale/deleted PKs are skipped identically to
-            // predicate-filtered rows.
-            streamFilteredResults(vim, queryVector, topK, limit, offset,
-                    tableSpaceManager, transactionContext, context, recordSet);
+        List<Map.Entry<Bytes, Float>> annResults = null;
+        if (vim == null) {
+            // No vector index: score every matching record, this is
+            // far cheaper than sorting the whole table by ann_of()
+            annResults = searchBruteForce(queryVector, topK, tableSpaceManager, transactionContext, context);
+        } else if (predicate != null && limitExpr != null) {
+            Set<Bytes> allowedPrimaryKeys = collectAllowedPrimaryKeys(tableSpace, tableDef, predicate,
+                    tableSpaceManager, transactionContext, context);
+            if (allowedPrimaryKeys == null) {
+                // Streaming path: start with an over-fetch of topK * factor and
+                // keep pulling more from the indexing service until we have
+                // `limit` rows that satisfy the predicate (or the index is
+                // exhausted). Stale/deleted PKs are skipped identically to
+                // predicate-filtered rows.
+                streamFilteredResults(vim, queryVector, topK, limit, offset,
+                        tableSpaceManager, transactionContext, context, recordSet);
+            } else if (allowedPrimaryKeys.isEmpty()) {
+                annResults = Collections.emptyList();
+            } else {
+                // Pre-filter path: the indexing service returns only records
+                // which matched the predicate, it is evaluated again below
+                // because the index may lag behind the table
+                annResults = vim.search(queryVector, Math.min(topK, allowedPrimaryKeys.size()), allowedPrimaryKeys);
+            }
         } else {
             // Fast path: no predicate, or no limit pushed down. Keep the
             // single-shot behavior for back-compat and lower latency.
-            List<Map.Entry<Bytes, Float>> annResults = vim.search(queryVector, topK);
+            annResults = vim.search(queryVector, topK);
+        }
+        if (annResults != null) {
             int skipped = 0;
             int added = 0;
             for (Map.Entry<Bytes, Float> entry : annResults) {
@@ -312,6 +349,107 @@ public class VectorANNScanOp implements PlannerOp {
         }
     }
 
+    /**
+     * The brute-force search returns the records nearest first, which is the
+     * order of the fallback plan only for ORDER BY ann_of(...) DESC. It is
+     * used only when LIMIT has been pushed down, otherwise the fallback plan
+     * has to sort the whole table anyway.
+     */
+    private boolean canSearchBruteForce() {
+        if (limitExpr == null || !(fallback instanceof SortOp)) {
+            return false;
+        }
+        SortOp sort = (SortOp) fallback;
+        return sort.getDirections().length == 1
+                && !sort.getDirections()[0];
+    }
+
+    /**
+     * Scans the records which match the predicate copying their vectors into
+     * a {@link BruteForceVectorIndex}, the vectors are decoded directly from
+     * the serialized records.
+     */
+    private List<Map.Entry<Bytes, Float>> searchBruteForce(
+            float[] queryVector,
+            int topK,
+            TableSpaceManager tableSpaceManager,
+            TransactionContext transactionContext,
+            StatementEvaluationContext context
+    ) throws StatementExecutionException {
+        Column column = tableDef.getColumn(columnName);
+        if (column == null) {
+            throw new StatementExecutionException("column '" + columnName + "' not found on table " + tableDef.name);
+        }
+        boolean primaryKeyColumn = tableDef.isPrimaryKeyColumn(column.name);
+        BruteForceVectorIndex index = new BruteForceVectorIndex(BruteForceVectorIndex.Similarity.COSINE);
+        ScanStatement scan = new ScanStatement(tableSpace, tableDef, predicate);
+        try (DataScanner scanner = tableSpaceManager.scan(scan, context, transactionContext, false, false)) {
+            while (scanner.hasNext()) {
+                DataAccessor row = scanner.next();
+                Bytes pk = RecordSerializer.serializeIndexKey(row, tableDef, tableDef.primaryKey);
+                if (!primaryKeyColumn && row instanceof DataAccessorForFullRecord) {
+                    Bytes raw = ((DataAccessorForFullRecord) row).getRawFloatArray(column);
+                    if (raw != null && raw.getLength() > 0) {
+                        index.add(pk, raw.getBuffer(), raw.getOffset(), raw.getLength());
+                    }
+                } else {
+                    float[] vector = (float[]) RecordSerializer.convert(ColumnTypes.FLOATARRAY, row.get(column.name));
+                    if (vector != null && vector.length > 0) {
+                        index.add(pk, vector);
+                    }
+                }
+            }
+        } catch (DataScannerException err) {
+            throw new StatementExecutionException(err);
+        } catch (IllegalArgumentException err) {
+            throw new StatementExecutionException("cannot compute ann_of on column '" + columnName
+                    + "' of table " + tableDef.name + ": " + err.getMessage(), err);
+        }
+        if (index.size() == 0) {
+            return Collections.emptyList();
+        }
+        try {
+            return index.search(queryVector, topK, null);
+        } catch (IllegalArgumentException err) {
+            throw new StatementExecutionException("cannot compute ann_of on column '" + columnName
+                    + "' of table " + tableDef.name + ": " + err.getMessage(), err);
+        }
+    }
+
+    /**
+     * Computes the primary keys of the records which match the predicate, in
+     * order to pass them to the vector search as a pre-filter.
+     *
+     * @return the keys, null if the predicate cannot be evaluated using an
+     * index or if it matches too many records
+     */
+    static Set<Bytes> collectAllowedPrimaryKeys(
+            String tableSpace,
+            Table tableDef,
+            Predicate predicate,
+            TableSpaceManager tableSpaceManager,
+            TransactionContext transactionContext,
+            StatementEvaluationContext context
+    ) throws StatementExecutionException {
+        if (predicate.getIndexOperation() == null) {
+            return null;
+        }
+        ScanStatement scan = new ScanStatement(tableSpace, tableDef, predicate);
+        Set<Bytes> result = new HashSet<>();
+        try (DataScanner scanner = tableSpaceManager.scan(scan, context, transactionContext, false, false)) {
+            while (scanner.hasNext()) {
+                DataAccessor row = scanner.next();
+                if (result.size() >= PREDICATE_MAX_ALLOWED_KEYS) {
+                    return null;
+                }
+                result.add(RecordSerializer.serializeIndexKey(row, tableDef, tableDef.primaryKey));
+            }
+        } catch (DataScannerException err) {
+            throw new StatementExecutionException(err);
+        }
+        return result;
+    }
+
     private VectorIndexManager findVectorIndex(TableSpaceManager tableSpaceManager) {
         Map<String, AbstractIndexManager> indexes = tableSpaceManager.getIndexesOnTable(tableDef.name);
         if (indexes == null) {
@@ -37,6 +37,7 @@ import herddb.file.FileCommitLogManager;
 import herddb.file.FileDataStorageManager;
 import herddb.file.FileMetadataStorageManager;
 import herddb.log.CommitLogManager;
+import herddb.log.LogCompression;
 import herddb.mem.MemoryCommitLogManager;
 import herddb.mem.MemoryDataStorageManager;
 import herddb.mem.MemoryLocalNodeIdManager;
@@ -96,6 +97,11 @@ public class Server implements AutoCloseable, ServerSideConnectionAcceptor<Serve
     private UserManager userManager;
     private EmbeddedBookie embeddedBookie;
     private volatile TokenAuthenticator tokenAuthenticator;
+    private final int maxInFlightRequestsPerConnection;
+
+    public int getMaxInFlightRequestsPerConnection() {
+        return maxInFlightRequestsPerConnection;
+    }
 
     public UserManager getUserManager() {
         return userManager;
@@ -160,6 +166,8 @@ public class Server implements AutoCloseable, ServerSideConnectionAcceptor<Serve
         this.statsProvider = statsProvider;
         this.statsLogger = statsProvider == null ? new NullStatsLogger() : statsProvider.getStatsLogger("");
         this.configuration = configuration;
+        this.maxInFlightRequestsPerConnection = configuration.getInt(ServerConfiguration.PROPERTY_NETWORK_MAX_INFLIGHT_REQUESTS,
+                ServerConfiguration.PROPERTY_NETWORK_MAX_INFLIGHT_REQUESTS_DEFAULT);
 
         String nodeId = configuration.getString(ServerConfiguration.PROPERTY_NODEID, "");
 
@@ -411,7 +419,11 @@ public class Server implements AutoCloseable, ServerSideConnectionAcceptor<Serve
                 boolean indexodirect = configuration.getBoolean(ServerConfiguration.PROPERTY_INDEX_USE_ODIRECT, ServerConfiguration.PROPERTY_INDEX_USE_ODIRECT_DEFAULT);
                 boolean hashChecksEnabled = configuration.getBoolean(ServerConfiguration.PROPERTY_HASH_CHECKS_ENABLED, ServerConfiguration.PROPERTY_HASH_CHECKS_ENABLED_DEFAULT);
                 boolean hashWritesEnabled = configuration.getBoolean(ServerConfiguration.PROPERTY_HASH_WRITES_ENABLED, ServerConfiguration.PROPERTY_HASH_WRITES_ENABLED_DEFAULT);
-                return new FileDataStorageManager(dataDirectory, tmpDirectory, diskswapThreshold, requirefsync, pageodirect, indexodirect, hashChecksEnabled, hashWritesEnabled, statsLogger);
+                boolean pageSegments = configuration.getBoolean(ServerConfiguration.PROPERTY_PAGE_SEGMENTS_ENABLED, ServerConfiguration.PROPERTY_PAGE_SEGMENTS_ENABLED_DEFAULT);
+                long pageSegmentSize = configuration.getLong(ServerConfiguration.PROPERTY_PAGE_SEGMENT_SIZE, ServerConfiguration.PROPERTY_PAGE_SEGMENT_SIZE_DEFAULT);
+                int pageSegmentMaxPages = configuration.getInt(ServerConfiguration.PROPERTY_PAGE_SEGMENT_MAX_PAGES, ServerConfiguration.PROPERTY_PAGE_SEGMENT_MAX_PAGES_DEFAULT);
+                double pageSegmentCompactionThreshold = configuration.getDouble(ServerConfiguration.PROPERTY_PAGE_SEGMENT_COMPACTION_THRESHOLD, ServerConfiguration.PROPERTY_PAGE_SEGMENT_COMPACTION_THRESHOLD_DEFAULT);
+                return new FileDataStorageManager(dataDirectory, tmpDirectory, diskswapThreshold, requirefsync, pageodirect, indexodirect, hashChecksEnabled, hashWritesEnabled, pageSegments, pageSegmentSize, pageSegmentMaxPages, pageSegmentCompactionThreshold, statsLogger);
             }
             case ServerConfiguration.PROPERTY_STORAGE_MODE_BOOKKEEPER: {
                 if (!mode.equals(ServerConfiguration.PROPERTY_MODE_DISKLESSCLUSTER)) {
@@ -599,6 +611,10 @@ public class Server implements AutoCloseable, ServerSideConnectionAcceptor<Serve
                         configuration.getBoolean(ServerConfiguration.PROPERTY_REQUIRE_FSYNC, ServerConfiguration.PROPERTY_REQUIRE_FSYNC_DEFAULT),
                         configuration.getBoolean(ServerConfiguration.PROPERTY_TXLOG_USE_ODIRECT, ServerConfiguration.PROPERTY_TXLOG_USE_ODIRECT_DEFAULT),
                         configuration.getInt(ServerConfiguration.PROPERTY_DEFERRED_SYNC_PERIOD, ServerConfiguration.PROPERTY_DEFERRED_SYNC_PERIOD_DEFAULT),
+                        configuration.getLong(ServerConfiguration.PROPERTY_TXLOG_GROUP_COMMIT_MAX_WAIT_MICROS, ServerConfiguration.PROPERTY_TXLOG_GROUP_COMMIT_MAX_WAIT_MICROS_DEFAULT),
+                        configuration.getBoolean(ServerConfiguration.PROPERTY_TXLOG_GROUP_COMMIT_ADAPTIVE, ServerConfiguration.PROPERTY_TXLOG_GROUP_COMMIT_ADAPTIVE_DEFAULT),
+                        configuration.getBoolean(ServerConfiguration.PROPERTY_TXLOG_PREALLOCATE_SEGMENTS, ServerConfiguration.PROPERTY_TXLOG_PREALLOCATE_SEGMENTS_DEFAULT),
+                        LogCompression.isCompressionEnabled(configuration.getString(ServerConfiguration.PROPERTY_TXLOG_COMPRESSION, ServerConfiguration.PROPERTY_TXLOG_COMPRESSION_DEFAULT)),
                         statsLogger.scope("txlog")
                 );
             case ServerConfiguration.PROPERTY_MODE_CLUSTER:
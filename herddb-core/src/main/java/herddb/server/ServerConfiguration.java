@@ -153,6 +153,18 @@ public final class ServerConfiguration {
     public static final String PROPERTY_DEFERRED_SYNC_PERIOD = "txlog.deferredsyncperiod";
     public static final int PROPERTY_DEFERRED_SYNC_PERIOD_DEFAULT = 0;  /* disabled */
 
+    public static final String PROPERTY_TXLOG_GROUP_COMMIT_MAX_WAIT_MICROS = "txlog.groupcommit.maxwaitmicros";
+    public static final long PROPERTY_TXLOG_GROUP_COMMIT_MAX_WAIT_MICROS_DEFAULT = 1000;
+
+    public static final String PROPERTY_TXLOG_GROUP_COMMIT_ADAPTIVE = "txlog.groupcommit.adaptive";
+    public static final boolean PROPERTY_TXLOG_GROUP_COMMIT_ADAPTIVE_DEFAULT = true;
+
+    public static final String PROPERTY_TXLOG_COMPRESSION = "txlog.compression";
+    public static final String PROPERTY_TXLOG_COMPRESSION_DEFAULT = "none";
+
+    public static final String PROPERTY_TXLOG_PREALLOCATE_SEGMENTS = "txlog.preallocatesegments";
+    public static final boolean PROPERTY_TXLOG_PREALLOCATE_SEGMENTS_DEFAULT = false;
+
     public static final boolean USE_O_DIRECT_DEFAULT = SystemProperties.getBooleanSystemProperty(
             "herddb.file.use_o_direct_default", false);
 
@@ -172,6 +184,29 @@ public final class ServerConfiguration {
     public static final String PROPERTY_INDEX_USE_ODIRECT = "index.use_o_direct";
     public static final boolean PROPERTY_INDEX_USE_ODIRECT_DEFAULT = USE_O_DIRECT_DEFAULT;
 
+    /**
+     * Store data pages inside large preallocated segment files instead of one
+     * file per page
+     */
+    public static final String PROPERTY_PAGE_SEGMENTS_ENABLED = "page.segments.enabled";
+    public static final boolean PROPERTY_PAGE_SEGMENTS_ENABLED_DEFAULT = false;
+
+    public static final String PROPERTY_PAGE_SEGMENT_SIZE = "page.segments.size";
+    public static final long PROPERTY_PAGE_SEGMENT_SIZE_DEFAULT = 64L * 1024L * 1024L;
+
+    /**
+     * Maximum number of data pages stored inside a single segment file
+     */
+    public static final String PROPERTY_PAGE_SEGMENT_MAX_PAGES = "page.segments.maxpages";
+    public static final int PROPERTY_PAGE_SEGMENT_MAX_PAGES_DEFAULT = 1024;
+
+    /**
+     * Segments holding less than this ratio of live data are compacted at
+     * checkpoint
+     */
+    public static final String PROPERTY_PAGE_SEGMENT_COMPACTION_THRESHOLD = "page.segments.compactionthreshold";
+    public static final double PROPERTY_PAGE_SEGMENT_COMPACTION_THRESHOLD_DEFAULT = 0.5;
+
     /**
      * In some cases the usage of XXHash64 might to be overkilling
      */
@@ -201,6 +236,15 @@ public final class ServerConfiguration {
     public static final String PROPERTY_NETWORK_WORKER_THREADS = "server.network.thread.workers";
     public static final int PROPERTY_NETWORK_WORKER_THREADS_DEFAULT = 16;
 
+    /**
+     * Maximum number of statements and scanner requests of a single client
+     * connection which are executed concurrently, as many other requests can
+     * wait in a queue, then the server stops reading from the connection. 0
+     * means no limit.
+     */
+    public static final String PROPERTY_NETWORK_MAX_INFLIGHT_REQUESTS = "server.network.connection.maxinflightrequests";
+    public static final int PROPERTY_NETWORK_MAX_INFLIGHT_REQUESTS_DEFAULT = 0;
+
     public static final String PROPERTY_ASYNC_WORKER_THREADS = "server.async.thread.workers";
     public static final int PROPERTY_ASYNC_WORKER_THREADS_DEFAULT = 64;
 
@@ -241,6 +285,48 @@ public final class ServerConfiguration {
     public static final String PROPERTY_BOOT_FORCE_DOWNLOAD_SNAPSHOT = "server.boot.force.download.snapshot";
     public static final boolean PROPERTY_BOOT_FORCE_DOWNLOAD_SNAPSHOT_DEFAULT = false;
 
+    /**
+     * Number of threads which apply changes to records during the recovery of
+     * a tablespace, 0 means half of the available processors, 1 (the default)
+     * disables parallel recovery
+     */
+    public static final String PROPERTY_RECOVERY_PARALLELISM = "server.recovery.parallelism";
+    public static final int PROPERTY_RECOVERY_PARALLELISM_DEFAULT = 1;
+
+    /**
+     * Number of threads which read the pages of a table in parallel during
+     * full table scans which do not need locks and do not use an index, 0
+     * disables the parallel scans
+     */
+    public static final String PROPERTY_TABLE_SCAN_PARALLELISM = "server.table.scan.parallelism";
+    public static final int PROPERTY_TABLE_SCAN_PARALLELISM_DEFAULT = 0;
+
+    /**
+     * Minimum number of pages of a table in order to scan it in parallel
+     */
+    public static final String PROPERTY_TABLE_SCAN_PARALLEL_MIN_PAGES = "server.table.scan.parallel.min.pages";
+    public static final int PROPERTY_TABLE_SCAN_PARALLEL_MIN_PAGES_DEFAULT = 16;
+
+    /**
+     * Maximum number of pages read ahead by each scan, 0 (the default)
+     * disables the read ahead of pages
+     */
+    public static final String PROPERTY_SCAN_PREFETCH_PAGES = "server.scan.prefetch.pages";
+    public static final int PROPERTY_SCAN_PREFETCH_PAGES_DEFAULT = 0;
+
+    /**
+     * Maximum amount of memory held by the pages read ahead by each scan
+     */
+    public static final String PROPERTY_SCAN_PREFETCH_MEMORY = "server.scan.prefetch.memory";
+    public static final long PROPERTY_SCAN_PREFETCH_MEMORY_DEFAULT = 8L * 1024 * 1024;
+
+    /**
+     * Number of threads which read ahead the pages from storages which do not
+     * support asynchronous reads (local disk)
+     */
+    public static final String PROPERTY_SCAN_PREFETCH_THREADS = "server.scan.prefetch.threads";
+    public static final int PROPERTY_SCAN_PREFETCH_THREADS_DEFAULT = 4;
+
     public static final String PROPERTY_CHECKPOINT_PERIOD = "server.checkpoint.period";
     public static final long PROPERTY_CHECKPOINT_PERIOD_DEFAULT = 1000L * 60 * 15;
 
@@ -334,6 +420,20 @@ public final class ServerConfiguration {
     public static final String PROPERTY_TABLEMANAGER_DISABLE_ROWLEVELLOCKS = "server.tablemanager.disablerowlevellocks";
     public static final boolean PROPERTY_TABLEMANAGER_DISABLE_ROWLEVELLOCKS_DEFAULT = false;
 
+    /**
+     * Log UPDATEs as a delta of the changed columns, followers, CDC and the
+     * indexing service must run a version which supports such log entries
+     */
+    public static final String PROPERTY_TABLEMANAGER_DELTA_UPDATES = "server.tablemanager.deltaupdates";
+    public static final boolean PROPERTY_TABLEMANAGER_DELTA_UPDATES_DEFAULT = false;
+
+    /**
+     * Reads inside transactions (not FOR UPDATE) see a snapshot of the data
+     * taken at the first read, without acquiring read locks
+     */
+    public static final String PROPERTY_TABLEMANAGER_SNAPSHOT_READS = "server.tablemanager.snapshotreads";
+    public static final boolean PROPERTY_TABLEMANAGER_SNAPSHOT_READS_DEFAULT = false;
+
     public static final String PROPERTY_WRITELOCK_TIMEOUT = "server.tablemanager.writelocktimeout";
     public static final int PROPERTY_WRITELOCK_TIMEOUT_DEFAULT = 60 * 30;
 
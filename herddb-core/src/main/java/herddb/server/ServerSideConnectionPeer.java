@@ -20,8 +20,10 @@
 
 package herddb.server;
 
+import static herddb.proto.PduCodec.ObjectListReader.getResultSetFormat;
 import static herddb.proto.PduCodec.ObjectListReader.isAllowFollowerReads;
 import static herddb.proto.PduCodec.ObjectListReader.isDontKeepReadLocks;
+import static herddb.proto.PduCodec.ObjectListReader.isStreaming;
 import static herddb.proto.PduCodec.TxCommand.TX_COMMAND_BEGIN_TRANSACTION;
 import static herddb.proto.PduCodec.TxCommand.TX_COMMAND_COMMIT_TRANSACTION;
 import static herddb.proto.PduCodec.TxCommand.TX_COMMAND_ROLLBACK_TRANSACTION;
@@ -123,6 +125,7 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
     public ServerSideConnectionPeer(Channel channel, Server server) {
         this.channel = channel;
         this.channel.setMessagesReceiver(this);
+        this.channel.setMaxInFlightRequests(server.getMaxInFlightRequestsPerConnection());
         this.server = server;
         this.address = channel.getRemoteAddress();
         this.preparedStatements = server.getManager().getPreparedStatementsCache();
@@ -208,6 +211,14 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
                     handleFetchScannerData(message, channel);
                 }
                 break;
+                case Pdu.TYPE_SCANNER_CREDITS: {
+                    if (!authenticated) {
+                        sendAuthRequiredError(channel, message);
+                        break;
+                    }
+                    handleScannerCredits(message, channel);
+                }
+                break;
                 case Pdu.TYPE_CLOSESCANNER: {
                     if (!authenticated) {
                         sendAuthRequiredError(channel, message);
@@ -455,8 +466,10 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
         byte trailer = parametersReader.readTrailer();
         boolean keepReadLocks = !isDontKeepReadLocks(trailer);
         boolean allowFollowerReads = isAllowFollowerReads(trailer);
+        boolean streaming = isStreaming(trailer);
+        byte resultSetFormat = getResultSetFormat(trailer);
         if (LOGGER.isLoggable(Level.FINER)) {
-            LOGGER.log(Level.FINER, "openScanner txId+" + txId + ", fetchSize " + fetchSize + ", maxRows " + maxRows + ", keepReadLocks " + keepReadLocks + ", allowFollowerReads " + allowFollowerReads + ", " + query + " with " + parameters);
+            LOGGER.log(Level.FINER, "openScanner txId+" + txId + ", fetchSize " + fetchSize + ", maxRows " + maxRows + ", keepReadLocks " + keepReadLocks + ", allowFollowerReads " + allowFollowerReads + ", streaming " + streaming + ", resultSetFormat " + resultSetFormat + ", " + query + " with " + parameters);
         }
         RunningStatementsStats runningStatements = server.getManager().getRunningStatements();
         RunningStatementInfo statementInfo = new RunningStatementInfo(query,
@@ -482,7 +495,7 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
                 ScanResult scanResult = (ScanResult) server.getManager().executePlan(translatedQuery.plan, translatedQuery.context, transactionContext);
                 DataScanner dataScanner = scanResult.dataScanner;
 
-                ServerSideScannerPeer scanner = new ServerSideScannerPeer(dataScanner);
+                ServerSideScannerPeer scanner = new ServerSideScannerPeer(dataScanner, fetchSize, streaming, resultSetFormat);
 
                 String[] columns = dataScanner.getFieldNames();
                 List<DataAccessor> records = dataScanner.consume(fetchSize);
@@ -495,7 +508,7 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
                     scanners.put(scannerId, scanner);
                 }
                 try {
-                    ByteBuf result = PduCodec.ResultSetChunk.write(message.messageId, tuplesList, last, dataScanner.getTransactionId());
+                    ByteBuf result = PduCodec.ResultSetChunk.write(message.messageId, tuplesList, last, dataScanner.getTransactionId(), streaming, resultSetFormat);
                     channel.sendReplyMessage(message.messageId, result);
                 } catch (HerdDBInternalException err) {
                     // do not leak an unserializable scanner
@@ -547,7 +560,7 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
                 }
 //                        LOGGER.log(Level.SEVERE, "sending " + converted.size() + " records to scanner " + scannerId);
                 try {
-                    ByteBuf result = PduCodec.ResultSetChunk.write(message.messageId, tuplesList, last, dataScanner.getTransactionId());
+                    ByteBuf result = PduCodec.ResultSetChunk.write(message.messageId, tuplesList, last, dataScanner.getTransactionId(), false, scanner.getResultSetFormat());
                     channel.sendReplyMessage(message.messageId, result);
                 } catch (HerdDBInternalException err) {
                     // do not leak an unserializable scanner
@@ -556,7 +569,7 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
                     throw err;
                 }
                 if (last) {
-                    dataScanner.close();
+                    scanner.close();
                 }
             } catch (DataScannerException | StatementExecutionException err) {
                 ByteBuf error = composeErrorResponse(message.messageId, err);
@@ -568,6 +581,82 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
         }
     }
 
+    /**
+     * In streaming mode the client grants credits (number of rows) and the
+     * server pushes the data as soon as it is available, without waiting for
+     * a TYPE_FETCHSCANNERDATA request for each chunk.
+     */
+    private void handleScannerCredits(Pdu message, Channel channel) {
+        long scannerId = PduCodec.ScannerCredits.readScannerId(message);
+        int credits = PduCodec.ScannerCredits.readCredits(message);
+        ServerSideScannerPeer scanner = scanners.get(scannerId);
+        if (scanner == null || !scanner.isStreaming()) {
+            // the scanner is finished or it has been closed by the client, there is no reply to this message
+            LOGGER.log(Level.FINEST, "ignoring {0} credits for scanner {1}", new Object[]{credits, scannerId});
+            return;
+        }
+        scanner.addCredits(credits);
+        pushScannerData(scannerId, scanner, channel);
+    }
+
+    private void pushScannerData(long scannerId, ServerSideScannerPeer scanner, Channel channel) {
+        while (scanner.startPushing()) {
+            try {
+                int rows = scanner.takeCredits();
+                while (rows > 0) {
+                    // a concurrent CLOSESCANNER only marks the scanner, it is closed by stopPushing
+                    if (scanner.isCloseRequested()
+                            || !pushScannerChunk(scannerId, scanner, rows, channel)) {
+                        return;
+                    }
+                    rows = scanner.takeCredits();
+                }
+            } finally {
+                scanner.stopPushing();
+            }
+            // another thread may have added credits while we were releasing the flag
+            if (scanner.getCredits() <= 0) {
+                return;
+            }
+        }
+    }
+
+    private boolean pushScannerChunk(long scannerId, ServerSideScannerPeer scanner, int rows, Channel channel) {
+        DataScanner dataScanner = scanner.getScanner();
+        try {
+            List<DataAccessor> records = dataScanner.consume(rows);
+            TuplesList tuplesList = new TuplesList(dataScanner.getFieldNames(), records);
+            boolean last = dataScanner.isFinished();
+            if (last) {
+                LOGGER.log(Level.FINEST, "unregistering scanner {0}, resultset is finished", scannerId);
+                scanners.remove(scannerId);
+            }
+            ByteBuf chunk = PduCodec.ResultSetChunk.writePush(scannerId, scanner.nextPushSequence(),
+                    tuplesList, last, dataScanner.getTransactionId(), scanner.getResultSetFormat());
+            channel.sendOneWayMessage(chunk, (Throwable error) -> {
+                if (error != null) {
+                    LOGGER.log(Level.SEVERE, "cannot push data of scanner " + scannerId + " to " + channel, error);
+                }
+            });
+            if (last) {
+                scanner.close();
+            }
+            return !last;
+        } catch (DataScannerException | HerdDBInternalException err) {
+            if (scanners.remove(scannerId, scanner)) {
+                // the client is still waiting for data
+                LOGGER.log(Level.SEVERE, "error on scanner " + scannerId + ": " + err, err);
+                scanner.close();
+                channel.sendOneWayMessage(PduCodec.ErrorResponse.writePush(scannerId, err), (Throwable error) -> {
+                    if (error != null) {
+                        LOGGER.log(Level.SEVERE, "cannot push error of scanner " + scannerId + " to " + channel, error);
+                    }
+                });
+            }
+            return false;
+        }
+    }
+
     private void handleCloseScanner(Pdu message, Channel channel) {
         long scannerId = PduCodec.CloseScanner.readScannerId(message);
         ServerSideScannerPeer removed = scanners.remove(scannerId);
@@ -1145,6 +1234,10 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
         return new ConnectionsInfo.ConnectionInfo(id + "", connectionTs, username, address);
     }
 
+    public Channel getChannel() {
+        return channel;
+    }
+
     public ConcurrentMap<Long, ServerSideScannerPeer> getScanners() {
         return scanners;
     }
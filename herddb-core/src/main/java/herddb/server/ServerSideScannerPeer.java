@@ -22,6 +22,9 @@ package herddb.server;
 
 import herddb.model.DataScanner;
 import herddb.model.DataScannerException;
+import herddb.proto.PduCodec;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,27 +36,136 @@ import java.util.logging.Logger;
 public class ServerSideScannerPeer implements AutoCloseable {
 
     private final DataScanner scanner;
+    private final int fetchSize;
+    private final boolean streaming;
+    private final byte resultSetFormat;
+
+    /**
+     * Number of rows that the client is ready to receive, in streaming mode.
+     */
+    private final AtomicInteger credits = new AtomicInteger();
+    private final AtomicBoolean pushing = new AtomicBoolean();
+    /**
+     * Set when the scanner must be closed, if a thread is pushing data the
+     * scanner is closed by that thread when it stops pushing.
+     */
+    private volatile boolean closeRequested;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private int pushSequence;
 
     public ServerSideScannerPeer(DataScanner scanner) {
+        this(scanner, 0, false);
+    }
+
+    public ServerSideScannerPeer(DataScanner scanner, int fetchSize, boolean streaming) {
+        this(scanner, fetchSize, streaming, PduCodec.ResultSetChunk.FORMAT_ROWS);
+    }
+
+    public ServerSideScannerPeer(DataScanner scanner, int fetchSize, boolean streaming, byte resultSetFormat) {
         this.scanner = scanner;
+        this.fetchSize = fetchSize;
+        this.streaming = streaming;
+        this.resultSetFormat = resultSetFormat;
     }
 
     public DataScanner getScanner() {
         return scanner;
     }
 
-    public void clientClose() {
-        try {
-            scanner.close();
-        } catch (DataScannerException ex) {
-            LOG.log(Level.SEVERE, "error con closing scanner " + ex, ex);
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Encoding of the chunks requested by the client.
+     *
+     * @return the format
+     * @see PduCodec.ResultSetChunk#FORMAT_ROWS
+     */
+    public byte getResultSetFormat() {
+        return resultSetFormat;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public int getCredits() {
+        return credits.get();
+    }
+
+    void addCredits(int rows) {
+        credits.addAndGet(rows);
+    }
+
+    /**
+     * Takes credits for the next pushed chunk.
+     *
+     * @return the number of rows to send, at most fetchSize, 0 if the client
+     * did not grant credits
+     */
+    int takeCredits() {
+        while (true) {
+            int current = credits.get();
+            if (current <= 0) {
+                return 0;
+            }
+            int rows = Math.min(current, fetchSize);
+            if (credits.compareAndSet(current, current - rows)) {
+                return rows;
+            }
         }
     }
 
+    /**
+     * Only one thread at a time pushes data to the client, no thread can push
+     * data after the scanner has been closed.
+     *
+     * @return true if the current thread is now pushing data
+     */
+    boolean startPushing() {
+        return pushing.compareAndSet(false, true);
+    }
+
+    void stopPushing() {
+        pushing.set(false);
+        if (closeRequested) {
+            closeIfNotPushing();
+        }
+    }
+
+    boolean isCloseRequested() {
+        return closeRequested;
+    }
+
+    int nextPushSequence() {
+        return ++pushSequence;
+    }
+
+    public void clientClose() {
+        close();
+    }
+
     private static final Logger LOG = Logger.getLogger(ServerSideScannerPeer.class.getName());
 
+    /**
+     * Closes the scanner. If another thread is pushing data the scanner will be
+     * closed by that thread as soon as it stops pushing.
+     */
     @Override
     public void close() {
+        closeRequested = true;
+        closeIfNotPushing();
+    }
+
+    private void closeIfNotPushing() {
+        // the flag is never released, nobody will push data anymore
+        if (!pushing.compareAndSet(false, true)) {
+            return;
+        }
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
         try {
             scanner.close();
         } catch (DataScannerException ex) {
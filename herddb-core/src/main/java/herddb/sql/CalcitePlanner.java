@@ -276,6 +276,12 @@ public class CalcitePlanner extends AbstractSQLPlanner {
             query = JSQLParserPlanner.rewriteExecuteSyntax(query);
             return fallback.translate(defaultTableSpace, query, parameters, scan, allowCache, returnValues, maxRows);
         }
+        if (JSQLParserPlanner.isAnalyzeTable(query)) {
+            return fallback.translate(defaultTableSpace, query, parameters, scan, allowCache, returnValues, maxRows);
+        }
+        if (JSQLParserPlanner.isLateralVectorSearch(query)) {
+            return fallback.translate(defaultTableSpace, query, parameters, scan, allowCache, returnValues, maxRows);
+        }
         if (!isCachable(query)) {
             allowCache = false;
         }
@@ -494,6 +500,9 @@ public class CalcitePlanner extends AbstractSQLPlanner {
                 }
                 RelDataType originalRowType = logicalPlan.getRowType();
                 RelOptCluster cluster = logicalPlan.getCluster();
+                // estimates based on the statistics of the tables
+                cluster.setMetadataProvider(CalciteStatisticsProvider.PROVIDER);
+                cluster.invalidateMetadataQuery();
                 final RelOptPlanner optPlanner = cluster.getPlanner();
 
                 optPlanner.addRule(CoreRules.FILTER_REDUCE_EXPRESSIONS);
@@ -1185,6 +1194,10 @@ public class CalcitePlanner extends AbstractSQLPlanner {
     ) throws StatementExecutionException {
 
         RelNode scanNode = innerProject.getInput();
+        if (scanNode instanceof EnumerableInterpreter) {
+            // a BindableTableScan with filters is wrapped by the interpreter
+            scanNode = ((EnumerableInterpreter) scanNode).getInput();
+        }
         RexNode colRef = annOfCall.getOperands().get(0);
         // Unwrap CAST if Calcite added an implicit type cast around the column reference
         if (colRef instanceof RexCall) {
@@ -1229,6 +1242,10 @@ public class CalcitePlanner extends AbstractSQLPlanner {
                     where = new CompiledMultiAndExpression(ops);
                 }
                 annPredicate = new SQLRecordPredicate(annTable, null, where);
+                // an index on the filtered columns lets VectorANNScanOp pass
+                // the matching keys to the vector search as a pre-filter
+                IndexUtils.discoverIndexOperations(annTableSpace, where, annTable, annPredicate, bts,
+                        manager.getTableSpaceManager(annTableSpace));
             }
 
             // Scan projection: maps full table row → bts output schema
@@ -1528,6 +1545,9 @@ public class CalcitePlanner extends AbstractSQLPlanner {
             if (aClass == InitializerExpressionFactory.class) {
                 return (C) this;
             }
+            if (aClass == AbstractTableManager.class) {
+                return (C) tableManager;
+            }
             return super.unwrap(aClass);
         }
 
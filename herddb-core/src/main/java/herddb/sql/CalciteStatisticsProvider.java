@@ -0,0 +1,369 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+*/
+
+
+package herddb.sql;
+
+import com.google.common.collect.ImmutableList;
+import herddb.core.AbstractTableManager;
+import herddb.core.stats.ColumnStatistics;
+import herddb.core.stats.TableStatistics;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.List;
+import org.apache.calcite.adapter.enumerable.EnumerableBatchNestedLoopJoin;
+import org.apache.calcite.adapter.enumerable.EnumerableHashJoin;
+import org.apache.calcite.adapter.enumerable.EnumerableMergeJoin;
+import org.apache.calcite.adapter.enumerable.EnumerableNestedLoopJoin;
+import org.apache.calcite.adapter.enumerable.EnumerableTableScan;
+import org.apache.calcite.interpreter.Bindables.BindableTableScan;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.logical.LogicalJoin;
+import org.apache.calcite.rel.logical.LogicalTableScan;
+import org.apache.calcite.rel.metadata.BuiltInMetadata;
+import org.apache.calcite.rel.metadata.ChainedRelMetadataProvider;
+import org.apache.calcite.rel.metadata.DefaultRelMetadataProvider;
+import org.apache.calcite.rel.metadata.MetadataDef;
+import org.apache.calcite.rel.metadata.MetadataHandler;
+import org.apache.calcite.rel.metadata.ReflectiveRelMetadataProvider;
+import org.apache.calcite.rel.metadata.RelMdUtil;
+import org.apache.calcite.rel.metadata.RelMetadataProvider;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexDynamicParam;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.util.mapping.IntPair;
+
+/**
+ * Feeds the statistics computed by ANALYZE TABLE to the cost model of Calcite:
+ * selectivity of the predicates on the tables, number of distinct values of
+ * the columns and selectivity of equi-joins.
+ * <p>
+ * The handlers are registered for the concrete classes of the relational
+ * nodes, so that they take precedence over the default handlers of Calcite,
+ * which are used for tables which have never been analyzed.
+ *
+ * @author enrico.olivelli
+ */
+public final class CalciteStatisticsProvider {
+
+    public static final RelMetadataProvider PROVIDER = ChainedRelMetadataProvider.of(ImmutableList.of(
+            ReflectiveRelMetadataProvider.reflectiveSource(new SelectivityHandler(), BuiltInMetadata.Selectivity.Handler.class),
+            ReflectiveRelMetadataProvider.reflectiveSource(new DistinctRowCountHandler(), BuiltInMetadata.DistinctRowCount.Handler.class),
+            ReflectiveRelMetadataProvider.reflectiveSource(new RowCountHandler(), BuiltInMetadata.RowCount.Handler.class),
+            DefaultRelMetadataProvider.INSTANCE));
+
+    private CalciteStatisticsProvider() {
+    }
+
+    private static TableStatistics getStatistics(RelOptTable table) {
+        AbstractTableManager tableManager = table.unwrap(AbstractTableManager.class);
+        return tableManager != null ? tableManager.getStatistics() : null;
+    }
+
+    /**
+     * Maps the fields of the output of a scan to the columns of the table
+     */
+    private static int toTableColumn(TableScan scan, int field) {
+        if (scan instanceof BindableTableScan) {
+            List<Integer> projects = ((BindableTableScan) scan).projects;
+            if (!projects.isEmpty()) {
+                return projects.get(field);
+            }
+        }
+        return field;
+    }
+
+    private static ColumnStatistics getColumn(TableScan scan, TableStatistics statistics, RexNode node, boolean projected) {
+        while (node.getKind() == SqlKind.CAST) {
+            node = ((RexCall) node).getOperands().get(0);
+        }
+        if (!(node instanceof RexInputRef)) {
+            return null;
+        }
+        int field = ((RexInputRef) node).getIndex();
+        int column = projected ? toTableColumn(scan, field) : field;
+        List<String> names = scan.getTable().getRowType().getFieldNames();
+        if (column < 0 || column >= names.size()) {
+            return null;
+        }
+        return statistics.getColumn(names.get(column));
+    }
+
+    /**
+     * Value of a literal, in a form which can be compared to the values of
+     * the histograms
+     */
+    private static Object literalValue(RexLiteral literal) {
+        if (literal.isNull()) {
+            return null;
+        }
+        switch (literal.getTypeName().getFamily()) {
+            case NUMERIC:
+                BigDecimal value = literal.getValueAs(BigDecimal.class);
+                return value != null ? value.doubleValue() : null;
+            case CHARACTER:
+                return literal.getValueAs(String.class);
+            case BOOLEAN:
+                return literal.getValueAs(Boolean.class);
+            case TIMESTAMP:
+                Long millis = literal.getValueAs(Long.class);
+                return millis != null ? new Timestamp(millis) : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Estimates the selectivity of a predicate over the rows of a table.
+     *
+     * @param projected true if the predicate refers to the output of the
+     *                  scan, false if it refers to the columns of the table
+     */
+    static double estimateSelectivity(TableScan scan, TableStatistics statistics, RexNode predicate, boolean projected) {
+        double result = 1;
+        for (RexNode conjunction : RelOptUtil.conjunctions(predicate)) {
+            double selectivity = estimateConjunction(scan, statistics, conjunction, projected);
+            if (Double.isNaN(selectivity)) {
+                selectivity = RelMdUtil.guessSelectivity(conjunction);
+            }
+            result *= selectivity;
+        }
+        return result;
+    }
+
+    private static double estimateConjunction(TableScan scan, TableStatistics statistics, RexNode node, boolean projected) {
+        if (!(node instanceof RexCall)) {
+            return Double.NaN;
+        }
+        RexCall call = (RexCall) node;
+        SqlKind kind = call.getKind();
+        if (kind == SqlKind.IS_NULL || kind == SqlKind.IS_NOT_NULL) {
+            ColumnStatistics column = getColumn(scan, statistics, call.getOperands().get(0), projected);
+            if (column == null) {
+                return Double.NaN;
+            }
+            return kind == SqlKind.IS_NULL ? column.getNullFraction() : 1 - column.getNullFraction();
+        }
+        if (call.getOperands().size() != 2 || !SqlKind.COMPARISON.contains(kind)) {
+            return Double.NaN;
+        }
+        RexNode left = call.getOperands().get(0);
+        RexNode right = call.getOperands().get(1);
+        ColumnStatistics column = getColumn(scan, statistics, left, projected);
+        if (column == null) {
+            // value OP column
+            column = getColumn(scan, statistics, right, projected);
+            right = left;
+            kind = kind.reverse();
+        }
+        if (column == null) {
+            return Double.NaN;
+        }
+        Object value;
+        if (right instanceof RexLiteral) {
+            value = literalValue((RexLiteral) right);
+        } else if (right instanceof RexDynamicParam) {
+            // the value of the parameters is not known while planning
+            value = null;
+        } else {
+            return Double.NaN;
+        }
+        switch (kind) {
+            case EQUALS:
+                return value != null ? column.estimateEquals(value) : column.estimateEquals();
+            case NOT_EQUALS:
+                return Math.max(0, 1 - column.getNullFraction()
+                        - (value != null ? column.estimateEquals(value) : column.estimateEquals()));
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+                return value != null
+                        ? column.estimateRange(null, false, value, kind == SqlKind.LESS_THAN_OR_EQUAL)
+                        : (1 - column.getNullFraction()) * ColumnStatistics.DEFAULT_RANGE_SELECTIVITY;
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL:
+                return value != null
+                        ? column.estimateRange(value, kind == SqlKind.GREATER_THAN_OR_EQUAL, null, false)
+                        : (1 - column.getNullFraction()) * ColumnStatistics.DEFAULT_RANGE_SELECTIVITY;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * Selectivity of predicates on tables and of equi-joins
+     */
+    public static final class SelectivityHandler implements MetadataHandler<BuiltInMetadata.Selectivity> {
+
+        @Override
+        public MetadataDef<BuiltInMetadata.Selectivity> getDef() {
+            return BuiltInMetadata.Selectivity.DEF;
+        }
+
+        private static Double scan(TableScan rel, RexNode predicate) {
+            if (predicate == null || predicate.isAlwaysTrue()) {
+                return 1.0;
+            }
+            TableStatistics statistics = getStatistics(rel.getTable());
+            if (statistics == null) {
+                return RelMdUtil.guessSelectivity(predicate);
+            }
+            return estimateSelectivity(rel, statistics, predicate, true);
+        }
+
+        public Double getSelectivity(LogicalTableScan rel, RelMetadataQuery mq, RexNode predicate) {
+            return scan(rel, predicate);
+        }
+
+        public Double getSelectivity(EnumerableTableScan rel, RelMetadataQuery mq, RexNode predicate) {
+            return scan(rel, predicate);
+        }
+
+        public Double getSelectivity(BindableTableScan rel, RelMetadataQuery mq, RexNode predicate) {
+            return scan(rel, predicate);
+        }
+
+        private static Double join(Join rel, RelMetadataQuery mq, RexNode predicate) {
+            if (rel.isSemiJoin()) {
+                // same as the default handler of Calcite
+                RexNode semiJoinPredicate = RelMdUtil.makeSemiJoinSelectivityRexNode(mq, rel);
+                if (predicate != null) {
+                    semiJoinPredicate = RexUtil.composeConjunction(rel.getCluster().getRexBuilder(),
+                            ImmutableList.of(semiJoinPredicate, predicate));
+                }
+                return mq.getSelectivity(rel.getLeft(), semiJoinPredicate);
+            }
+            if (predicate == null || predicate.isAlwaysTrue()) {
+                return 1.0;
+            }
+            JoinInfo joinInfo = JoinInfo.of(rel.getLeft(), rel.getRight(), predicate);
+            double result = 1;
+            for (IntPair pair : joinInfo.pairs()) {
+                Double leftDistinct = mq.getDistinctRowCount(rel.getLeft(), ImmutableBitSet.of(pair.source), null);
+                Double rightDistinct = mq.getDistinctRowCount(rel.getRight(), ImmutableBitSet.of(pair.target), null);
+                if (leftDistinct == null || rightDistinct == null) {
+                    result *= RelMdUtil.guessSelectivity(predicate);
+                    return result;
+                }
+                // every value of the side with less distinct values matches some rows of the other side
+                result /= Math.max(1, Math.max(leftDistinct, rightDistinct));
+            }
+            for (RexNode remaining : joinInfo.nonEquiConditions) {
+                result *= RelMdUtil.guessSelectivity(remaining);
+            }
+            return result;
+        }
+
+        public Double getSelectivity(LogicalJoin rel, RelMetadataQuery mq, RexNode predicate) {
+            return join(rel, mq, predicate);
+        }
+
+        public Double getSelectivity(EnumerableHashJoin rel, RelMetadataQuery mq, RexNode predicate) {
+            return join(rel, mq, predicate);
+        }
+
+        public Double getSelectivity(EnumerableMergeJoin rel, RelMetadataQuery mq, RexNode predicate) {
+            return join(rel, mq, predicate);
+        }
+
+        public Double getSelectivity(EnumerableNestedLoopJoin rel, RelMetadataQuery mq, RexNode predicate) {
+            return join(rel, mq, predicate);
+        }
+
+        public Double getSelectivity(EnumerableBatchNestedLoopJoin rel, RelMetadataQuery mq, RexNode predicate) {
+            return join(rel, mq, predicate);
+        }
+    }
+
+    /**
+     * Number of distinct values of the columns of tables
+     */
+    public static final class DistinctRowCountHandler implements MetadataHandler<BuiltInMetadata.DistinctRowCount> {
+
+        @Override
+        public MetadataDef<BuiltInMetadata.DistinctRowCount> getDef() {
+            return BuiltInMetadata.DistinctRowCount.DEF;
+        }
+
+        private static Double scan(TableScan rel, RelMetadataQuery mq, ImmutableBitSet groupKey, RexNode predicate) {
+            TableStatistics statistics = getStatistics(rel.getTable());
+            Double rowCount = mq.getRowCount(rel);
+            if (statistics == null || rowCount == null) {
+                return null;
+            }
+            List<String> names = rel.getTable().getRowType().getFieldNames();
+            double result = 1;
+            for (int field : groupKey) {
+                ColumnStatistics column = statistics.getColumn(names.get(toTableColumn(rel, field)));
+                if (column == null) {
+                    return null;
+                }
+                // NULL is a distinct value as well
+                result *= column.getDistinctValues() + (column.getNullCount() > 0 ? 1 : 0);
+            }
+            if (predicate != null && !predicate.isAlwaysTrue()) {
+                rowCount *= estimateSelectivity(rel, statistics, predicate, true);
+            }
+            return Math.max(1, Math.min(result, rowCount));
+        }
+
+        public Double getDistinctRowCount(LogicalTableScan rel, RelMetadataQuery mq, ImmutableBitSet groupKey, RexNode predicate) {
+            return scan(rel, mq, groupKey, predicate);
+        }
+
+        public Double getDistinctRowCount(EnumerableTableScan rel, RelMetadataQuery mq, ImmutableBitSet groupKey, RexNode predicate) {
+            return scan(rel, mq, groupKey, predicate);
+        }
+
+        public Double getDistinctRowCount(BindableTableScan rel, RelMetadataQuery mq, ImmutableBitSet groupKey, RexNode predicate) {
+            return scan(rel, mq, groupKey, predicate);
+        }
+    }
+
+    /**
+     * Number of rows returned by scans with filters pushed down
+     */
+    public static final class RowCountHandler implements MetadataHandler<BuiltInMetadata.RowCount> {
+
+        @Override
+        public MetadataDef<BuiltInMetadata.RowCount> getDef() {
+            return BuiltInMetadata.RowCount.DEF;
+        }
+
+        public Double getRowCount(BindableTableScan rel, RelMetadataQuery mq) {
+            TableStatistics statistics = getStatistics(rel.getTable());
+            if (statistics == null || rel.filters.isEmpty()) {
+                return rel.estimateRowCount(mq);
+            }
+            double rowCount = rel.getTable().getRowCount();
+            for (RexNode filter : rel.filters) {
+                // filters refer to the columns of the table
+                rowCount *= estimateSelectivity(rel, statistics, filter, false);
+            }
+            return Math.max(1, rowCount);
+        }
+    }
+}
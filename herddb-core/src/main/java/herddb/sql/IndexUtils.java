@@ -18,7 +18,10 @@
 package herddb.sql;
 
 import herddb.core.AbstractIndexManager;
+import herddb.core.AbstractTableManager;
 import herddb.core.TableSpaceManager;
+import herddb.core.stats.ColumnStatistics;
+import herddb.core.stats.TableStatistics;
 import herddb.index.IndexOperation;
 import herddb.index.PrimaryIndexPrefixScan;
 import herddb.index.PrimaryIndexRangeScan;
@@ -50,6 +53,19 @@ public class IndexUtils {
     private static final Logger LOG = Logger.getLogger(IndexUtils.class
             .getName());
 
+    /**
+     * A secondary index is not used if the statistics of the table estimate
+     * that it selects more than this fraction of the rows, a full table scan
+     * costs less than accessing that many records in random order.
+     */
+    static final double MAX_SECONDARY_INDEX_SELECTIVITY = 0.3;
+
+    /**
+     * Selectivity assumed for an index access about columns which have not
+     * been analyzed, it is used only in order to rank indexes.
+     */
+    private static final double UNKNOWN_SELECTIVITY = 0.1;
+
     static void discoverIndexOperations(final String tableSpace,
                                         CompiledSQLExpression where,
                                         Table table,
@@ -110,18 +126,90 @@ public class IndexUtils {
         if (result == null && tableSpaceManager != null) {
             Map<String, AbstractIndexManager> indexes = tableSpaceManager.getIndexesOnTable(table.name);
             if (indexes != null) {
-                // TODO: use some kind of statistics, maybe using an index is more expensive than a full table scan
+                AbstractTableManager tableManager = tableSpaceManager.getTableManager(table.name);
+                TableStatistics statistics = tableManager != null ? tableManager.getStatistics() : null;
+                double bestSelectivity = Double.NaN;
+                double bestRank = Double.MAX_VALUE;
                 for (AbstractIndexManager index : indexes.values()) {
                     if (!index.isAvailable()) {
                         continue;
                     }
                     IndexOperation secondaryIndexOperation = findSecondaryIndexOperation(index, expressionWhere, table);
-                    if (secondaryIndexOperation != null) {
+                    if (secondaryIndexOperation == null) {
+                        continue;
+                    }
+                    if (statistics == null) {
+                        // without statistics use the first index
                         result = secondaryIndexOperation;
                         break;
                     }
+                    double selectivity = estimateSelectivity(secondaryIndexOperation, statistics);
+                    double rank = Double.isNaN(selectivity) ? UNKNOWN_SELECTIVITY : selectivity;
+                    if (rank < bestRank) {
+                        bestRank = rank;
+                        bestSelectivity = selectivity;
+                        result = secondaryIndexOperation;
+                    }
+                }
+                if (result != null && bestSelectivity > MAX_SECONDARY_INDEX_SELECTIVITY) {
+                    if (LOG.isLoggable(Level.FINE)) {
+                        LOG.log(Level.FINE, "not using {0}, estimated selectivity {1}", new Object[]{result, bestSelectivity});
+                    }
+                    result = null;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Estimates the fraction of the rows of the table accessed by a secondary
+     * index operation.
+     *
+     * @return the estimate, NaN if the columns of the index have not been
+     * analyzed
+     */
+    static double estimateSelectivity(IndexOperation operation, TableStatistics statistics) {
+        if (operation instanceof SecondaryIndexSeek) {
+            return estimateEquals(((SecondaryIndexSeek) operation).value, statistics);
+        } else if (operation instanceof SecondaryIndexPrefixScan) {
+            return estimateEquals(((SecondaryIndexPrefixScan) operation).value, statistics);
+        } else if (operation instanceof SecondaryIndexRangeScan) {
+            SecondaryIndexRangeScan range = (SecondaryIndexRangeScan) operation;
+            ColumnStatistics column = statistics.getColumn(range.columnsToMatch[0]);
+            if (column == null) {
+                return Double.NaN;
+            }
+            // bounds which depend on parameters are not known while planning
+            double unknownBounds = 1;
+            Object lower = null;
+            if (range.minValue != null) {
+                lower = range.minValue.getConstantValue(column.getName());
+                if (lower == null) {
+                    unknownBounds *= ColumnStatistics.DEFAULT_RANGE_SELECTIVITY;
+                }
+            }
+            Object upper = null;
+            if (range.maxValue != null) {
+                upper = range.maxValue.getConstantValue(column.getName());
+                if (upper == null) {
+                    unknownBounds *= ColumnStatistics.DEFAULT_RANGE_SELECTIVITY;
                 }
             }
+            return column.estimateRange(lower, true, upper, true) * unknownBounds;
+        }
+        return Double.NaN;
+    }
+
+    private static double estimateEquals(SQLRecordKeyFunction key, TableStatistics statistics) {
+        double result = 1;
+        for (String name : key.getColumnNames()) {
+            ColumnStatistics column = statistics.getColumn(name);
+            if (column == null) {
+                return Double.NaN;
+            }
+            Object value = key.getConstantValue(name);
+            result *= value != null ? column.estimateEquals(value) : column.estimateEquals();
         }
         return result;
     }
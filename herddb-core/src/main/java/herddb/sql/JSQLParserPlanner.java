@@ -50,6 +50,7 @@ import herddb.model.TableSpaceDoesNotExistException;
 import herddb.model.TupleComparator;
 import herddb.model.commands.AlterTableSpaceStatement;
 import herddb.model.commands.AlterTableStatement;
+import herddb.model.commands.AnalyzeTableStatement;
 import herddb.model.commands.BeginTransactionStatement;
 import herddb.model.commands.CheckpointStatement;
 import herddb.model.commands.CommitTransactionStatement;
@@ -84,6 +85,7 @@ import herddb.model.planner.SimpleUpdateOp;
 import herddb.model.planner.SortOp;
 import herddb.model.planner.UnionAllOp;
 import herddb.model.planner.ValuesOp;
+import herddb.model.planner.VectorANNBatchScanOp;
 import herddb.model.planner.VectorANNScanOp;
 import herddb.server.ServerConfiguration;
 import herddb.sql.expressions.AccessCurrentRowExpression;
@@ -146,6 +148,7 @@ import net.sf.jsqlparser.statement.select.AllTableColumns;
 import net.sf.jsqlparser.statement.select.FromItem;
 import net.sf.jsqlparser.statement.select.GroupByElement;
 import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.LateralSubSelect;
 import net.sf.jsqlparser.statement.select.Limit;
 import net.sf.jsqlparser.statement.select.OrderByElement;
 import net.sf.jsqlparser.statement.select.PlainSelect;
@@ -157,6 +160,7 @@ import net.sf.jsqlparser.statement.select.SetOperation;
 import net.sf.jsqlparser.statement.select.SetOperationList;
 import net.sf.jsqlparser.statement.select.Top;
 import net.sf.jsqlparser.statement.select.UnionOp;
+import net.sf.jsqlparser.statement.select.ValuesList;
 import net.sf.jsqlparser.statement.truncate.Truncate;
 import net.sf.jsqlparser.statement.update.Update;
 import net.sf.jsqlparser.statement.upsert.Upsert;
@@ -170,6 +174,7 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
 
     public static final String TABLE_CONSISTENCY_COMMAND = "tableconsistencycheck";
     public static final String TABLESPACE_CONSISTENCY_COMMAND = "tablespaceconsistencycheck";
+    public static final String ANALYZE_TABLE_COMMAND = "ANALYZE TABLE ";
 
     public static String delimit(String name) {
         if (name == null) {
@@ -400,6 +405,10 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
                 ExecutionPlan executionPlan = ExecutionPlan.simple(JSQLParserPlanner.this.queryConsistencyCheckStatement(query));
                 return new TranslatedQuery(executionPlan, new SQLStatementEvaluationContext(query, parameters, false, false));
             }
+            if (isAnalyzeTable(query)) {
+                ExecutionPlan executionPlan = ExecutionPlan.simple(buildAnalyzeTableStatement(defaultTableSpace, query));
+                return new TranslatedQuery(executionPlan, new SQLStatementEvaluationContext(query, parameters, false, false));
+            }
 
             // Pre-process: strip WITH clause from CREATE INDEX ... WITH key=value ...
             // (JSQLParser does not support this syntax; properties are stored in a ThreadLocal
@@ -1359,6 +1368,39 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
 
     }
 
+    static boolean isAnalyzeTable(String query) {
+        return query.regionMatches(true, 0, ANALYZE_TABLE_COMMAND, 0, ANALYZE_TABLE_COMMAND.length());
+    }
+
+    /**
+     * ANALYZE TABLE [tablespace.]tablename
+     */
+    private Statement buildAnalyzeTableStatement(String defaultTableSpace, String query) {
+        String name = query.substring(ANALYZE_TABLE_COMMAND.length()).trim();
+        if (name.endsWith(";")) {
+            name = name.substring(0, name.length() - 1).trim();
+        }
+        String tableSpace = defaultTableSpace;
+        int dot = name.indexOf('.');
+        if (dot >= 0) {
+            tableSpace = fixMySqlBackTicks(name.substring(0, dot).trim());
+            name = name.substring(dot + 1).trim();
+        }
+        if (name.isEmpty() || name.contains(" ")) {
+            throw new StatementExecutionException("Incorrect syntax for ANALYZE TABLE, expected ANALYZE TABLE [tablespace.]tablename");
+        }
+        String tableName = fixMySqlBackTicks(name).toLowerCase();
+        TableSpaceManager tableSpaceManager = manager.getTableSpaceManager(tableSpace);
+        if (tableSpaceManager == null) {
+            throw new TableSpaceDoesNotExistException(String.format("Tablespace %s does not exist.", tableSpace));
+        }
+        AbstractTableManager tableManager = tableSpaceManager.getTableManager(tableName);
+        if (tableManager == null || tableManager.getCreatedInTransaction() > 0 || tableManager.isSystemTable()) {
+            throw new TableDoesNotExistException(String.format("Table %s does not exist.", tableName));
+        }
+        return new AnalyzeTableStatement(tableName, tableSpace);
+    }
+
     public Statement queryConsistencyCheckStatement(String query) {
         if (query.startsWith(TABLESPACE_CONSISTENCY_COMMAND)) {
             String tableSpace = query.substring(query.substring(0, 26).length()).replace("\'", "");
@@ -1653,6 +1695,9 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
 
 
         FromItem fromItem = plainSelect.getFromItem();
+        if (fromItem instanceof ValuesList) {
+            return buildVectorANNBatchSearch(defaultTableSpace, maxRows, plainSelect);
+        }
         checkSupported(fromItem instanceof net.sf.jsqlparser.schema.Table);
 
         OpSchema primaryTableSchema = getTableSchema(defaultTableSpace, (net.sf.jsqlparser.schema.Table) fromItem);
@@ -2171,6 +2216,234 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
         );
     }
 
+    /**
+     * Plans a nearest-neighbor search for each row of a VALUES list:
+     * <pre>
+     * SELECT ... FROM (VALUES (...), (...)) AS q(c1, c2, ...)
+     *     [CROSS] JOIN | , LATERAL (SELECT ... FROM t [WHERE ...] ORDER BY ann_of(vec, q.c2) DESC LIMIT k) AS r
+     * </pre>
+     * The query vectors are searched with a single batched request to the
+     * indexing service.
+     */
+    private PlannerOp buildVectorANNBatchSearch(String defaultTableSpace, int maxRows, PlainSelect plainSelect)
+            throws StatementExecutionException {
+        ValuesList valuesList = (ValuesList) plainSelect.getFromItem();
+        Alias valuesAlias = valuesList.getAlias();
+        checkSupported(valuesAlias != null && valuesAlias.getAliasColumns() != null,
+                "VALUES in FROM clause requires an alias with the list of columns");
+        String valuesName = fixMySqlBackTicks(valuesAlias.getName().toLowerCase());
+        int valuesColumnsCount = valuesAlias.getAliasColumns().size();
+        String[] valuesFieldNames = new String[valuesColumnsCount];
+        ColumnRef[] valuesColumns = new ColumnRef[valuesColumnsCount];
+        for (int i = 0; i < valuesColumnsCount; i++) {
+            valuesFieldNames[i] = fixMySqlBackTicks(valuesAlias.getAliasColumns().get(i).name.toLowerCase());
+            valuesColumns[i] = new ColumnRef(valuesFieldNames[i], valuesName, ColumnTypes.ANYTYPE);
+        }
+        OpSchema valuesSchema = new OpSchema(defaultTableSpace, valuesName, valuesName, valuesFieldNames, valuesColumns);
+        List<List<CompiledSQLExpression>> tuples = new ArrayList<>();
+        for (ExpressionList tuple : valuesList.getMultiExpressionList().getExprList()) {
+            if (tuple.getExpressions().size() != valuesColumnsCount) {
+                throw new StatementExecutionException("VALUES row " + tuple + " has " + tuple.getExpressions().size()
+                        + " values, but " + valuesColumnsCount + " columns are declared in " + valuesName);
+            }
+            List<CompiledSQLExpression> row = new ArrayList<>(valuesColumnsCount);
+            for (Expression value : tuple.getExpressions()) {
+                row.add(SQLParserExpressionCompiler.compileExpression(value, valuesSchema));
+            }
+            tuples.add(row);
+        }
+
+        checkSupported(plainSelect.getJoins() != null && plainSelect.getJoins().size() == 1,
+                "VALUES in FROM clause is supported only with a LATERAL vector search");
+        Join join = plainSelect.getJoins().get(0);
+        checkSupported(!join.isLeft() && !join.isRight() && !join.isFull() && !join.isOuter()
+                && !join.isNatural() && !join.isApply() && !join.isSemi());
+        checkSupported(join.getUsingColumns() == null);
+        Expression onExpression = join.getOnExpression();
+        checkSupported(onExpression == null
+                || (onExpression instanceof net.sf.jsqlparser.schema.Column
+                && isBooleanLiteral((net.sf.jsqlparser.schema.Column) onExpression)
+                && ((net.sf.jsqlparser.schema.Column) onExpression).getColumnName().equalsIgnoreCase("true")));
+        checkSupported(join.getRightItem() instanceof LateralSubSelect,
+                "VALUES in FROM clause is supported only with a LATERAL vector search");
+        LateralSubSelect lateral = (LateralSubSelect) join.getRightItem();
+        checkSupported(lateral.getAlias() != null && lateral.getAlias().getAliasColumns() == null);
+        String lateralName = fixMySqlBackTicks(lateral.getAlias().getName().toLowerCase());
+        SelectBody lateralBody = lateral.getSubSelect().getSelectBody();
+        checkSupported(lateralBody instanceof PlainSelect);
+        PlainSelect inner = (PlainSelect) lateralBody;
+        checkSupported(inner.getFromItem() instanceof net.sf.jsqlparser.schema.Table);
+        checkSupported(inner.getJoins() == null);
+        checkSupported(inner.getDistinct() == null);
+        checkSupported(inner.getGroupBy() == null);
+        checkSupported(inner.getHaving() == null);
+        checkSupported(inner.getTop() == null);
+        checkSupported(inner.getOffset() == null);
+        checkSupported(inner.getFetch() == null);
+
+        OpSchema tableSchema = getTableSchema(defaultTableSpace, (net.sf.jsqlparser.schema.Table) inner.getFromItem());
+        TableSpaceManager tableSpaceManager = this.manager.getTableSpaceManager(tableSchema.tableSpace);
+        Table tableImpl = tableSpaceManager.getTableManager(tableSchema.name).getTable();
+
+        // ORDER BY ann_of(column, values.column)
+        List<OrderByElement> orderByElements = inner.getOrderByElements();
+        checkSupported(orderByElements != null && orderByElements.size() == 1,
+                "LATERAL vector search requires ORDER BY ann_of(column, query vector)");
+        Expression orderBy = orderByElements.get(0).getExpression();
+        checkSupported(orderBy instanceof net.sf.jsqlparser.expression.Function
+                && BuiltinFunctions.NAME_ANN_OF.equalsIgnoreCase(((net.sf.jsqlparser.expression.Function) orderBy).getName()),
+                "LATERAL vector search requires ORDER BY ann_of(column, query vector)");
+        // the indexing service returns the most similar vectors first
+        if (orderByElements.get(0).isAsc()) {
+            throw new StatementExecutionException(
+                    "LATERAL vector search requires ORDER BY ann_of(column, query vector) DESC");
+        }
+        net.sf.jsqlparser.expression.Function annOf = (net.sf.jsqlparser.expression.Function) orderBy;
+        checkSupported(annOf.getParameters() != null && annOf.getParameters().getExpressions().size() == 2);
+        Expression vectorColumn = annOf.getParameters().getExpressions().get(0);
+        Expression queryVector = annOf.getParameters().getExpressions().get(1);
+        checkSupported(vectorColumn instanceof net.sf.jsqlparser.schema.Column);
+        checkSupported(queryVector instanceof net.sf.jsqlparser.schema.Column,
+                "the query vector of a LATERAL vector search must be a column of the VALUES list");
+        String columnName = fixMySqlBackTicks(
+                ((net.sf.jsqlparser.schema.Column) vectorColumn).getColumnName().toLowerCase());
+        net.sf.jsqlparser.schema.Column queryVectorColumn = (net.sf.jsqlparser.schema.Column) queryVector;
+        IntHolder queryVectorIndex = new IntHolder(-1);
+        findColumnInSchema(extractTableName(queryVectorColumn), queryVectorColumn.getColumnName(), valuesSchema, queryVectorIndex);
+        checkSupported(queryVectorIndex.value >= 0,
+                "the query vector of a LATERAL vector search must be a column of the VALUES list");
+
+        Limit limit = inner.getLimit();
+        if (limit == null || limit.getRowCount() == null) {
+            throw new StatementExecutionException(
+                    "ORDER BY ann_of(column, ?) requires a LIMIT clause — "
+                            + "unbounded vector-search queries are not supported");
+        }
+        checkSupported(limit.getOffset() == null);
+        CompiledSQLExpression limitExpression = SQLParserExpressionCompiler.compileExpression(limit.getRowCount(), tableSchema);
+
+        Predicate predicate = null;
+        if (inner.getWhere() != null) {
+            CompiledSQLExpression whereExpression = SQLParserExpressionCompiler.compileExpression(inner.getWhere(), tableSchema);
+            SQLRecordPredicate sqlWhere = new SQLRecordPredicate(tableImpl, null, whereExpression);
+            IndexUtils.discoverIndexOperations(tableSchema.tableSpace, whereExpression, tableImpl, sqlWhere, inner, tableSpaceManager);
+            predicate = sqlWhere;
+        }
+
+        Projection innerProjection = null;
+        List<SelectItem> innerItems = inner.getSelectItems();
+        if (!(innerItems.size() == 1 && innerItems.get(0) instanceof AllColumns)) {
+            List<SelectExpressionItem> innerFields = new ArrayList<>(innerItems.size());
+            for (SelectItem item : innerItems) {
+                checkSupported(item instanceof SelectExpressionItem);
+                innerFields.add((SelectExpressionItem) item);
+            }
+            innerProjection = buildProjection(innerFields, false, tableSchema);
+        }
+
+        PlannerOp op = new VectorANNBatchScanOp(tableSchema.tableSpace, tableImpl, columnName,
+                valuesFieldNames, tuples, queryVectorIndex.value, predicate, innerProjection, limitExpression);
+
+        // the output of the search is the row of the VALUES list followed by the row of the LATERAL query
+        Column[] outputColumns = op.getOutputSchema();
+        ColumnRef[] refs = new ColumnRef[outputColumns.length];
+        String[] outputNames = new String[outputColumns.length];
+        for (int i = 0; i < outputColumns.length; i++) {
+            refs[i] = new ColumnRef(i < valuesColumnsCount ? valuesName : lateralName, outputColumns[i]);
+            outputNames[i] = outputColumns[i].name;
+        }
+        OpSchema outputSchema = new OpSchema(tableSchema.tableSpace, null, null, outputNames, refs);
+
+        checkSupported(plainSelect.getWhere() == null);
+        checkSupported(plainSelect.getGroupBy() == null);
+        checkSupported(plainSelect.getLimit() == null);
+        checkSupported(plainSelect.getTop() == null);
+        if (plainSelect.getOrderByElements() != null) {
+            op = planSort(op, outputSchema, plainSelect.getOrderByElements());
+        }
+
+        List<SelectItem> selectItems = plainSelect.getSelectItems();
+        if (!(selectItems.size() == 1 && selectItems.get(0) instanceof AllColumns)) {
+            List<SelectExpressionItem> selectedFields = new ArrayList<>(selectItems.size());
+            for (SelectItem item : selectItems) {
+                if (item instanceof SelectExpressionItem) {
+                    selectedFields.add((SelectExpressionItem) item);
+                } else if (item instanceof AllTableColumns) {
+                    net.sf.jsqlparser.schema.Table table = ((AllTableColumns) item).getTable();
+                    String tableName = fixMySqlBackTicks(table.getName());
+                    boolean found = false;
+                    for (ColumnRef col : refs) {
+                        if (col.tableName.equalsIgnoreCase(tableName)) {
+                            selectedFields.add(new SelectExpressionItem(new net.sf.jsqlparser.schema.Column(table, col.name)));
+                            found = true;
+                        }
+                    }
+                    if (!found) {
+                        checkSupported(false, "Bad table ref " + tableName + ".*");
+                    }
+                } else {
+                    checkSupported(false);
+                }
+            }
+            op = new ProjectOp(buildProjection(selectedFields, true, outputSchema), op);
+        }
+
+        // additional maxrows from JDBC PreparedStatement
+        if (maxRows > 0) {
+            op = new LimitOp(op,
+                    new ConstantExpression(maxRows, ColumnTypes.NOTNULL_LONG), new ConstantExpression(0, ColumnTypes.NOTNULL_LONG))
+                    .optimize();
+        }
+        return op;
+    }
+
+    /**
+     * Tells if the query is a vector search for each row of a VALUES list
+     * (see {@link #buildVectorANNBatchSearch}), these queries are not
+     * supported by Calcite.
+     */
+    static boolean isLateralVectorSearch(String query) {
+        // only the queries with a LATERAL keyword are parsed
+        if (!query.toLowerCase().contains("lateral")) {
+            return false;
+        }
+        net.sf.jsqlparser.statement.Statement stmt;
+        try {
+            stmt = new CCJSqlParser(new StringProvider(query)).Statement();
+        } catch (ParseException | RuntimeException err) {
+            return false;
+        }
+        if (!(stmt instanceof Select) || !(((Select) stmt).getSelectBody() instanceof PlainSelect)) {
+            return false;
+        }
+        PlainSelect plainSelect = (PlainSelect) ((Select) stmt).getSelectBody();
+        if (!(plainSelect.getFromItem() instanceof ValuesList) || plainSelect.getJoins() == null) {
+            return false;
+        }
+        for (Join join : plainSelect.getJoins()) {
+            if (!(join.getRightItem() instanceof LateralSubSelect)) {
+                continue;
+            }
+            SelectBody lateralBody = ((LateralSubSelect) join.getRightItem()).getSubSelect().getSelectBody();
+            if (!(lateralBody instanceof PlainSelect)) {
+                continue;
+            }
+            List<OrderByElement> orderByElements = ((PlainSelect) lateralBody).getOrderByElements();
+            if (orderByElements == null) {
+                continue;
+            }
+            for (OrderByElement orderByElement : orderByElements) {
+                Expression orderBy = orderByElement.getExpression();
+                if (orderBy instanceof net.sf.jsqlparser.expression.Function
+                        && BuiltinFunctions.NAME_ANN_OF.equalsIgnoreCase(
+                                ((net.sf.jsqlparser.expression.Function) orderBy).getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private PlannerOp planSort(PlannerOp input, OpSchema columns, List<OrderByElement> fieldCollations) {
         boolean[] directions = new boolean[fieldCollations.size()];
         boolean[] nullLastdirections = new boolean[fieldCollations.size()];
@@ -32,6 +32,7 @@ import herddb.model.StatementEvaluationContext;
 import herddb.model.StatementExecutionException;
 import herddb.model.TableContext;
 import herddb.sql.expressions.CompiledSQLExpression;
+import herddb.sql.expressions.ConstantExpression;
 import herddb.utils.DataAccessor;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -88,6 +89,35 @@ public class SQLRecordKeyFunction extends RecordFunction {
         return fullPrimaryKey;
     }
 
+    /**
+     * @return the names of the columns of the key which are assigned by this
+     * function
+     */
+    public List<String> getColumnNames() {
+        List<String> result = new ArrayList<>(columns.length);
+        for (Column column : columns) {
+            result.add(column.name);
+        }
+        return result;
+    }
+
+    /**
+     * Value of a column of the key, only if it is a constant of the query
+     * (the value of the parameters is not known while planning).
+     *
+     * @return the value, null if it is not constant
+     */
+    public Object getConstantValue(String column) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].name.equals(column)) {
+                CompiledSQLExpression expression = expressions.get(i);
+                return expression instanceof ConstantExpression
+                        ? expression.evaluate(DataAccessor.NULL, null) : null;
+            }
+        }
+        return null;
+    }
+
     @Override
     @SuppressFBWarnings("BC_UNCONFIRMED_CAST")
     public byte[] computeNewValue(Record previous, StatementEvaluationContext context, TableContext tableContext) throws StatementExecutionException {
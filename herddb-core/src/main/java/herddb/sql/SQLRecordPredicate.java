@@ -28,6 +28,7 @@ import herddb.model.StatementExecutionException;
 import herddb.model.Table;
 import herddb.sql.expressions.CompiledSQLExpression;
 import herddb.sql.expressions.ConstantExpression;
+import herddb.sql.expressions.ExpressionCodeGenerator;
 import herddb.utils.Bytes;
 import herddb.utils.DataAccessor;
 import herddb.utils.RawString;
@@ -65,12 +66,15 @@ public class SQLRecordPredicate extends Predicate {
     private final Table table;
     private final String validatedTableAlias;
     private final CompiledSQLExpression where;
+    private final CompiledSQLExpression evaluatedWhere;
     private CompiledSQLExpression primaryKeyFilter;
+    private CompiledSQLExpression evaluatedPrimaryKeyFilter;
 
     public SQLRecordPredicate(Table table, String tableAlias, CompiledSQLExpression where) {
         this.table = table;
         this.validatedTableAlias = tableAlias;
         this.where = where;
+        this.evaluatedWhere = ExpressionCodeGenerator.optimize(where);
     }
 
     @Override
@@ -80,7 +84,7 @@ public class SQLRecordPredicate extends Predicate {
         }
         DataAccessor bean = RecordSerializer.buildRawDataAccessorForPrimaryKey(key, table);
 
-        boolean result = SQLRecordPredicateFunctions.toBoolean(primaryKeyFilter.evaluate(bean, context));
+        boolean result = SQLRecordPredicateFunctions.toBoolean(evaluatedPrimaryKeyFilter.evaluate(bean, context));
 
         if (!result) {
             return PrimaryKeyMatchOutcome.FAILED;
@@ -94,7 +98,7 @@ public class SQLRecordPredicate extends Predicate {
     @Override
     public boolean evaluate(Record record, StatementEvaluationContext context) throws StatementExecutionException {
         DataAccessor bean = record.getDataAccessor(table);
-        return SQLRecordPredicateFunctions.toBoolean(where.evaluate(bean, context));
+        return SQLRecordPredicateFunctions.toBoolean(evaluatedWhere.evaluate(bean, context));
     }
 
     @Override
@@ -117,6 +121,7 @@ public class SQLRecordPredicate extends Predicate {
 
     public void setPrimaryKeyFilter(CompiledSQLExpression primaryKeyFilter) {
         this.primaryKeyFilter = primaryKeyFilter;
+        this.evaluatedPrimaryKeyFilter = primaryKeyFilter == where ? evaluatedWhere : ExpressionCodeGenerator.optimize(primaryKeyFilter);
     }
 
     public CompiledSQLExpression getWhere() {
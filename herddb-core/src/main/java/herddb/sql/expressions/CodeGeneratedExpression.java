@@ -0,0 +1,159 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.sql.expressions;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.StatementExecutionException;
+import herddb.utils.DataAccessor;
+import herddb.utils.ObjectSizeUtils;
+import herddb.utils.SQLRecordPredicateFunctions;
+import herddb.utils.SQLRecordPredicateFunctions.CompareResult;
+import java.util.List;
+
+/**
+ * Base class of the classes generated by {@link ExpressionCodeGenerator}.
+ * The generated class evaluates a whole boolean expression tree in a single
+ * method, with primitive booleans, the analysis methods are delegated to the
+ * original tree.
+ *
+ * @author enrico.olivelli
+ */
+@SuppressFBWarnings({"EI_EXPOSE_REP2", "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD"})
+public abstract class CodeGeneratedExpression implements CompiledSQLExpression {
+
+    private CompiledSQLExpression original;
+
+    /**
+     * Subtrees which are evaluated by the interpreter.
+     */
+    protected CompiledSQLExpression[] operands;
+
+    /**
+     * Values of the constants.
+     */
+    protected Object[] constants;
+
+    final void init(CompiledSQLExpression original, CompiledSQLExpression[] operands, Object[] constants) {
+        this.original = original;
+        this.operands = operands;
+        this.constants = constants;
+        bind();
+    }
+
+    /**
+     * Copies operands and constants to the fields of the generated class.
+     */
+    protected abstract void bind();
+
+    /**
+     * Evaluates the expression.
+     *
+     * @param bean    the current row
+     * @param context the context
+     * @return the result, NULL is reported as false like in
+     * {@link SQLRecordPredicateFunctions#toBoolean(java.lang.Object)}
+     * @throws StatementExecutionException
+     */
+    public abstract boolean test(DataAccessor bean, StatementEvaluationContext context) throws StatementExecutionException;
+
+    @Override
+    public final Object evaluate(DataAccessor bean, StatementEvaluationContext context) throws StatementExecutionException {
+        return test(bean, context) ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    public CompiledSQLExpression getOriginal() {
+        return original;
+    }
+
+    @Override
+    public void validate(StatementEvaluationContext context) throws StatementExecutionException {
+        original.validate(context);
+    }
+
+    @Override
+    public List<CompiledSQLExpression> scanForConstraintedValueOnColumnWithOperator(
+            String column, String operator, BindableTableScanColumnNameResolver columnNameResolver
+    ) {
+        return original.scanForConstraintedValueOnColumnWithOperator(column, operator, columnNameResolver);
+    }
+
+    @Override
+    public List<CompiledSQLExpression> scanForConstraintsOnColumn(
+            String column, BindableTableScanColumnNameResolver columnNameResolver
+    ) {
+        return original.scanForConstraintsOnColumn(column, columnNameResolver);
+    }
+
+    @Override
+    public CompiledSQLExpression remapPositionalAccessToToPrimaryKeyAccessor(int[] projection) {
+        return original.remapPositionalAccessToToPrimaryKeyAccessor(projection);
+    }
+
+    @Override
+    public int estimateObjectSizeForCache() {
+        return ObjectSizeUtils.DEFAULT_OBJECT_SIZE_OVERHEAD + original.estimateObjectSizeForCache();
+    }
+
+    @Override
+    public String toString() {
+        return "CodeGenerated{" + original + '}';
+    }
+
+    // helpers used by the generated code, they follow the semantics of AccessCurrentRowExpression
+
+    public static boolean fieldEquals(DataAccessor bean, int index, Object value) {
+        // NULL is never equal to any other value, even NULL is not equal to NULL
+        return value != null && bean.fieldEqualsTo(index, value);
+    }
+
+    public static boolean fieldNotEquals(DataAccessor bean, int index, Object value) {
+        // NULL is never not-equal to any other value, even NULL is not non-equal to NULL
+        return value != null && bean.fieldNotEqualsTo(index, value);
+    }
+
+    public static CompareResult fieldCompare(DataAccessor bean, int index, Object value) {
+        if (value == null) {
+            return CompareResult.NULL;
+        }
+        return bean.fieldCompareTo(index, value);
+    }
+
+    public static boolean greater(CompareResult res) {
+        return res == CompareResult.GREATER;
+    }
+
+    public static boolean greaterOrEquals(CompareResult res) {
+        return res == CompareResult.GREATER || res == CompareResult.EQUALS;
+    }
+
+    public static boolean minor(CompareResult res) {
+        return res == CompareResult.MINOR;
+    }
+
+    public static boolean minorOrEquals(CompareResult res) {
+        return res == CompareResult.MINOR || res == CompareResult.EQUALS;
+    }
+
+    public static boolean toBoolean(Object value) {
+        return SQLRecordPredicateFunctions.toBoolean(value);
+    }
+}
@@ -26,6 +26,7 @@ import herddb.model.StatementEvaluationContext;
 import herddb.model.StatementExecutionException;
 import herddb.sql.functions.BuiltinFunctions;
 import herddb.utils.DataAccessor;
+import herddb.utils.FloatVectorUtils;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoField;
 import java.util.List;
@@ -187,35 +188,18 @@ public class CompiledFunction implements CompiledSQLExpression {
         if (arr1.length != arr2.length) {
             throw new IllegalArgumentException("Arrays must have the same length");
         }
-
-        float result = 0.0f;
-        for (int i = 0; i < arr1.length; i++) {
-            result += arr1[i] * arr2[i];
-        }
-
-        return result;
+        return FloatVectorUtils.dotProduct(arr1, 0, arr2, 0, arr1.length);
     }
 
     private static float euclideanDistance(float[] arr1, float[] arr2) {
         if (arr1.length != arr2.length) {
             throw new IllegalArgumentException("Arrays must have the same length");
         }
-
-        float sumOfSquares = 0.0f;
-        for (int i = 0; i < arr1.length; i++) {
-            float diff = arr1[i] - arr2[i];
-            sumOfSquares += diff * diff;
-        }
-
-        return (float) Math.sqrt(sumOfSquares);
+        return (float) Math.sqrt(FloatVectorUtils.squareDistance(arr1, 0, arr2, 0, arr1.length));
     }
 
     private static float euclideanNorm(float[] arr) {
-        float sumOfSquares = 0.0f;
-        for (float value : arr) {
-            sumOfSquares += value * value;
-        }
-        return (float) Math.sqrt(sumOfSquares);
+        return (float) Math.sqrt(FloatVectorUtils.squareNorm(arr, 0, arr.length));
     }
 
     public static float cosineSimilarity(float[] arr1, float[] arr2) {
@@ -0,0 +1,257 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.sql.expressions;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import herddb.utils.SystemProperties;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.codehaus.janino.ClassBodyEvaluator;
+
+/**
+ * Compiles a boolean {@link CompiledSQLExpression} tree (AND, OR, NOT,
+ * comparisons, IS NULL) to a single Java class, using Janino.
+ * <p>
+ * The generated code evaluates the logical operators with primitive booleans
+ * and compares the columns of the row with {@link herddb.utils.DataAccessor#fieldCompareTo(int, java.lang.Object)}
+ * and {@link herddb.utils.DataAccessor#fieldEqualsTo(int, java.lang.Object)},
+ * which work on the serialized record, without walking the tree and boxing
+ * every intermediate result. The other expressions (functions, arithmetic,
+ * CASE...) are evaluated by the interpreter, as a leaf of the generated code.
+ * <p>
+ * Constants and JDBC parameters are not part of the generated source, so
+ * expressions with the same shape share the same class. The generated
+ * expressions are held by the execution plans, which are cached in the
+ * {@link herddb.sql.PlansCache}.
+ *
+ * @author enrico.olivelli
+ */
+public final class ExpressionCodeGenerator {
+
+    private static final Logger LOG = Logger.getLogger(ExpressionCodeGenerator.class.getName());
+
+    /**
+     * Enables code generation for filters and projections, it is disabled by
+     * default.
+     */
+    public static final boolean ENABLED = SystemProperties.getBooleanSystemProperty("herddb.sql.codegen.enabled", false);
+
+    private static final int CLASS_CACHE_SIZE = SystemProperties.getIntSystemProperty("herddb.sql.codegen.classcachesize", 1000);
+
+    private static final Cache<String, Class<? extends CodeGeneratedExpression>> CLASSES = CacheBuilder
+            .newBuilder()
+            .maximumSize(CLASS_CACHE_SIZE)
+            .build();
+
+    private static final AtomicLong CLASS_ID = new AtomicLong();
+
+    private static final String BASE = "CodeGeneratedExpression";
+
+    private final List<CompiledSQLExpression> operands = new ArrayList<>();
+    private final List<Object> constants = new ArrayList<>();
+
+    private ExpressionCodeGenerator() {
+    }
+
+    /**
+     * Applies code generation if it is enabled.
+     *
+     * @param expression the expression
+     * @return the generated expression or the expression itself
+     * @see #ENABLED
+     */
+    public static CompiledSQLExpression optimize(CompiledSQLExpression expression) {
+        if (!ENABLED || expression == null) {
+            return expression;
+        }
+        return generate(expression);
+    }
+
+    /**
+     * Compiles an expression.
+     *
+     * @param expression the expression
+     * @return the generated expression, or the expression itself if it is not
+     * a boolean expression or the compilation failed
+     */
+    public static CompiledSQLExpression generate(CompiledSQLExpression expression) {
+        if (expression instanceof CodeGeneratedExpression) {
+            return expression;
+        }
+        ExpressionCodeGenerator generator = new ExpressionCodeGenerator();
+        String code = generator.bool(expression);
+        if (code == null) {
+            return expression;
+        }
+        String source = generator.classBody(code);
+        try {
+            Class<? extends CodeGeneratedExpression> clazz = CLASSES.get(source, () -> compile(source));
+            CodeGeneratedExpression result = clazz.getDeclaredConstructor().newInstance();
+            result.init(expression,
+                    generator.operands.toArray(new CompiledSQLExpression[0]),
+                    generator.constants.toArray());
+            return result;
+        } catch (ExecutionException | ReflectiveOperationException | RuntimeException err) {
+            LOG.log(Level.WARNING, "Cannot generate code for " + expression + ", source:\n" + source, err);
+            return expression;
+        }
+    }
+
+    private static Class<? extends CodeGeneratedExpression> compile(String source) throws Exception {
+        ClassBodyEvaluator evaluator = new ClassBodyEvaluator();
+        evaluator.setParentClassLoader(CodeGeneratedExpression.class.getClassLoader());
+        evaluator.setClassName("herddb.sql.expressions.GeneratedExpression" + CLASS_ID.incrementAndGet());
+        evaluator.setExtendedClass(CodeGeneratedExpression.class);
+        evaluator.setDefaultImports(CodeGeneratedExpression.class.getName());
+        evaluator.cook(source);
+        return evaluator.getClazz().asSubclass(CodeGeneratedExpression.class);
+    }
+
+    private String classBody(String code) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < operands.size(); i++) {
+            source.append("private herddb.sql.expressions.CompiledSQLExpression e").append(i).append(";\n");
+        }
+        for (int i = 0; i < constants.size(); i++) {
+            source.append("private Object c").append(i).append(";\n");
+        }
+        source.append("protected void bind() {\n");
+        for (int i = 0; i < operands.size(); i++) {
+            source.append("  e").append(i).append(" = operands[").append(i).append("];\n");
+        }
+        for (int i = 0; i < constants.size(); i++) {
+            source.append("  c").append(i).append(" = constants[").append(i).append("];\n");
+        }
+        source.append("}\n");
+        source.append("public boolean test(herddb.utils.DataAccessor bean, herddb.model.StatementEvaluationContext context) {\n");
+        source.append("  return ").append(code).append(";\n");
+        source.append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * Code of a boolean expression.
+     *
+     * @return the code, null if the expression may evaluate to something
+     * different from a boolean
+     */
+    private String bool(CompiledSQLExpression e) {
+        if (e instanceof CompiledAndExpression) {
+            CompiledAndExpression and = (CompiledAndExpression) e;
+            return "(" + asBool(and.left) + " && " + asBool(and.right) + ")";
+        } else if (e instanceof CompiledOrExpression) {
+            CompiledOrExpression or = (CompiledOrExpression) e;
+            return "(" + asBool(or.left) + " || " + asBool(or.right) + ")";
+        } else if (e instanceof CompiledMultiAndExpression) {
+            return join(((CompiledMultiAndExpression) e).getOperands(), " && ");
+        } else if (e instanceof CompiledMultiOrExpression) {
+            return join(((CompiledMultiOrExpression) e).getOperands(), " || ");
+        } else if (e instanceof CompiledEqualsExpression) {
+            CompiledEqualsExpression eq = (CompiledEqualsExpression) e;
+            if (eq.left instanceof AccessCurrentRowExpression) {
+                return BASE + ".fieldEquals(bean, " + ((AccessCurrentRowExpression) eq.left).getIndex() + ", " + value(eq.right) + ")";
+            }
+            return operand(eq.left) + ".opEqualsTo(bean, context, " + operand(eq.right) + ")";
+        } else if (e instanceof CompiledNotEqualsExpression) {
+            CompiledNotEqualsExpression neq = (CompiledNotEqualsExpression) e;
+            if (neq.left instanceof AccessCurrentRowExpression) {
+                return BASE + ".fieldNotEquals(bean, " + ((AccessCurrentRowExpression) neq.left).getIndex() + ", " + value(neq.right) + ")";
+            }
+            return operand(neq.left) + ".opNotEqualsTo(bean, context, " + operand(neq.right) + ")";
+        } else if (e instanceof CompiledGreaterThanExpression) {
+            return compare("greater", (CompiledBinarySQLExpression) e);
+        } else if (e instanceof CompiledGreaterThanEqualsExpression) {
+            return compare("greaterOrEquals", (CompiledBinarySQLExpression) e);
+        } else if (e instanceof CompiledMinorThanExpression) {
+            return compare("minor", (CompiledBinarySQLExpression) e);
+        } else if (e instanceof CompiledMinorThanEqualsExpression) {
+            return compare("minorOrEquals", (CompiledBinarySQLExpression) e);
+        } else if (e instanceof CompiledIsNullExpression) {
+            CompiledIsNullExpression isNull = (CompiledIsNullExpression) e;
+            return "(" + value(isNull.getLeft()) + (isNull.isNot() ? " != null)" : " == null)");
+        } else if (e instanceof CompiledNotExpression) {
+            // NOT NULL is NULL, we can only deal with operands which are never NULL
+            String inner = bool(((CompiledNotExpression) e).getLeft());
+            return inner != null ? "!" + inner : null;
+        } else if (e instanceof CompiledParenthesisExpression) {
+            CompiledParenthesisExpression parenthesis = (CompiledParenthesisExpression) e;
+            if (parenthesis.isNot()) {
+                return "!" + asBool(parenthesis.getInner());
+            }
+            return bool(parenthesis.getInner());
+        }
+        return null;
+    }
+
+    private String compare(String function, CompiledBinarySQLExpression e) {
+        String compareResult;
+        if (e.left instanceof AccessCurrentRowExpression) {
+            compareResult = BASE + ".fieldCompare(bean, " + ((AccessCurrentRowExpression) e.left).getIndex() + ", " + value(e.right) + ")";
+        } else {
+            compareResult = operand(e.left) + ".opCompareTo(bean, context, " + operand(e.right) + ")";
+        }
+        return BASE + "." + function + "(" + compareResult + ")";
+    }
+
+    private String join(CompiledSQLExpression[] expressions, String operator) {
+        StringBuilder result = new StringBuilder("(");
+        for (int i = 0; i < expressions.length; i++) {
+            if (i > 0) {
+                result.append(operator);
+            }
+            result.append(asBool(expressions[i]));
+        }
+        return result.append(')').toString();
+    }
+
+    private String asBool(CompiledSQLExpression e) {
+        String code = bool(e);
+        if (code != null) {
+            return code;
+        }
+        return BASE + ".toBoolean(" + value(e) + ")";
+    }
+
+    /**
+     * Code of an expression which evaluates to an Object.
+     */
+    private String value(CompiledSQLExpression e) {
+        if (e instanceof AccessCurrentRowExpression) {
+            return "bean.get(" + ((AccessCurrentRowExpression) e).getIndex() + ")";
+        } else if (e instanceof ConstantExpression) {
+            constants.add(((ConstantExpression) e).getValue());
+            return "c" + (constants.size() - 1);
+        } else if (e instanceof JdbcParameterExpression) {
+            return "context.getJdbcParameter(" + ((JdbcParameterExpression) e).getIndex() + ")";
+        }
+        return operand(e) + ".evaluate(bean, context)";
+    }
+
+    private String operand(CompiledSQLExpression e) {
+        operands.add(e);
+        return "e" + (operands.size() - 1);
+    }
+}
@@ -38,7 +38,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 import java.util.function.LongConsumer;
 import java.util.logging.Level;
@@ -65,6 +67,25 @@ public abstract class DataStorageManager implements AutoCloseable {
     public abstract List<Record> readPage(String tableSpace, String uuid, Long pageId)
             throws DataStorageManagerException;
 
+    /**
+     * Starts loading a data page in memory, without waiting for the result.
+     * This is used to read ahead the pages needed by scans.
+     * <p>
+     * The default implementation runs {@link #readPage(java.lang.String, java.lang.String, java.lang.Long)}
+     * on the given executor, storages which can perform asynchronous reads
+     * natively should override it.
+     *
+     * @param tableSpace
+     * @param uuid
+     * @param pageId
+     * @param executor executor for blocking reads
+     * @return the records of the page, the future may be completed with null
+     * if the storage does not read pages ahead
+     */
+    public CompletableFuture<List<Record>> readPageAsync(String tableSpace, String uuid, Long pageId, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> readPage(tableSpace, uuid, pageId), executor);
+    }
+
     public abstract void initIndex(String tableSpace, String uuid) throws DataStorageManagerException;
 
     public abstract void initTable(String tableSpace, String uuid) throws DataStorageManagerException;
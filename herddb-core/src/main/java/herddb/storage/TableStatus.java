@@ -22,6 +22,7 @@ package herddb.storage;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import herddb.core.PageSet.DataPageMetaData;
+import herddb.core.stats.TableStatistics;
 import herddb.log.LogSequenceNumber;
 import herddb.utils.Bytes;
 import herddb.utils.ExtendedDataInputStream;
@@ -50,6 +51,11 @@ public class TableStatus {
     public final byte[] nextPrimaryKeyValue;
     public final Map<Long, DataPageMetaData> activePages;
     public final long nextPageId;
+    /**
+     * Statistics computed by the last ANALYZE TABLE, null if the table has
+     * never been analyzed
+     */
+    public final TableStatistics statistics;
 
     public static TableStatus buildTableStatusForNewCreatedTable(String tableUuid) {
         return new TableStatus(tableUuid, LogSequenceNumber.START_OF_TIME,
@@ -59,12 +65,20 @@ public class TableStatus {
     public TableStatus(
             String tableName, LogSequenceNumber sequenceNumber, byte[] nextPrimaryKeyValue, long nextPageId,
             Map<Long, DataPageMetaData> activePages
+    ) {
+        this(tableName, sequenceNumber, nextPrimaryKeyValue, nextPageId, activePages, null);
+    }
+
+    public TableStatus(
+            String tableName, LogSequenceNumber sequenceNumber, byte[] nextPrimaryKeyValue, long nextPageId,
+            Map<Long, DataPageMetaData> activePages, TableStatistics statistics
     ) {
         this.tableName = tableName;
         this.sequenceNumber = sequenceNumber;
         this.nextPrimaryKeyValue = nextPrimaryKeyValue;
         this.activePages = activePages;
         this.nextPageId = nextPageId;
+        this.statistics = statistics;
     }
 
     /**
@@ -75,13 +89,22 @@ public class TableStatus {
      */
     static final long FLAG_COMPRESSED = 0x1L;
 
+    /**
+     * {@code flags} bit 1: the payload ends with the {@link #statistics} of
+     * the table.
+     */
+    static final long FLAG_STATISTICS = 0x2L;
+
     public void serialize(ExtendedDataOutputStream output) throws IOException {
         output.writeVLong(1); // version
-        output.writeVLong(FLAG_COMPRESSED); // flags
+        output.writeVLong(statistics != null ? FLAG_COMPRESSED | FLAG_STATISTICS : FLAG_COMPRESSED); // flags
 
         VisibleByteArrayOutputStream payload = new VisibleByteArrayOutputStream();
         try (ExtendedDataOutputStream inner = new ExtendedDataOutputStream(payload)) {
             writePayload(inner);
+            if (statistics != null) {
+                statistics.serialize(inner);
+            }
         }
         output.writeArray(MetadataCompression.compressGzip(payload.toByteArray()));
     }
@@ -108,21 +131,22 @@ public class TableStatus {
         if (version != 1) {
             throw new DataStorageManagerException("corrupted table status (version " + version + ")");
         }
-        if ((flags & ~FLAG_COMPRESSED) != 0) {
+        if ((flags & ~(FLAG_COMPRESSED | FLAG_STATISTICS)) != 0) {
             throw new DataStorageManagerException("corrupted table status (unknown flags " + flags + ")");
         }
+        boolean withStatistics = (flags & FLAG_STATISTICS) != 0;
         if ((flags & FLAG_COMPRESSED) != 0) {
             byte[] compressed = in.readArray();
             byte[] raw = MetadataCompression.decompressGzip(compressed);
             try (ExtendedDataInputStream inner = new ExtendedDataInputStream(new SimpleByteArrayInputStream(raw))) {
-                return readPayload(inner);
+                return readPayload(inner, withStatistics);
             }
         }
         // Legacy path: plain payload follows the flags field directly.
-        return readPayload(in);
+        return readPayload(in, withStatistics);
     }
 
-    private static TableStatus readPayload(ExtendedDataInputStream in) throws IOException {
+    private static TableStatus readPayload(ExtendedDataInputStream in, boolean withStatistics) throws IOException {
         String tableName = in.readUTF();
         long ledgerId = in.readLong();
         long offset = in.readLong();
@@ -134,7 +158,9 @@ public class TableStatus {
         for (int i = 0; i < numActivePages; i++) {
             activePages.put(in.readVLong(), DataPageMetaData.deserialize(in));
         }
-        return new TableStatus(tableName, new LogSequenceNumber(ledgerId, offset), nextPrimaryKeyValue, nextPageId, activePages);
+        TableStatistics statistics = withStatistics ? TableStatistics.deserialize(in) : null;
+        return new TableStatus(tableName, new LogSequenceNumber(ledgerId, offset), nextPrimaryKeyValue, nextPageId, activePages,
+                statistics);
     }
 
     @Override
@@ -22,7 +22,9 @@ package herddb.cdc;
 
 import static herddb.core.TestUtils.newServerConfigurationWithAutoPort;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import herddb.client.ClientConfiguration;
 import herddb.codec.RecordSerializer;
@@ -353,6 +355,58 @@ public class SimpleCDCTest {
         }
     }
 
+    @Test
+    public void testCaptureDeltaUpdates() throws Exception {
+        ServerConfiguration serverconfig_1 = newServerConfigurationWithAutoPort(folder.newFolder().toPath());
+        serverconfig_1.set(ServerConfiguration.PROPERTY_NODEID, "server1");
+        serverconfig_1.set(ServerConfiguration.PROPERTY_MODE, ServerConfiguration.PROPERTY_MODE_CLUSTER);
+        serverconfig_1.set(ServerConfiguration.PROPERTY_ZOOKEEPER_ADDRESS, testEnv.getAddress());
+        serverconfig_1.set(ServerConfiguration.PROPERTY_ZOOKEEPER_PATH, testEnv.getPath());
+        serverconfig_1.set(ServerConfiguration.PROPERTY_ZOOKEEPER_SESSIONTIMEOUT, testEnv.getTimeout());
+        serverconfig_1.set(ServerConfiguration.PROPERTY_TABLEMANAGER_DELTA_UPDATES, true);
+
+        ClientConfiguration client_configuration = new ClientConfiguration(folder.newFolder().toPath());
+        client_configuration.set(ClientConfiguration.PROPERTY_MODE, ServerConfiguration.PROPERTY_MODE_CLUSTER);
+        client_configuration.set(ClientConfiguration.PROPERTY_ZOOKEEPER_ADDRESS, testEnv.getAddress());
+        client_configuration.set(ClientConfiguration.PROPERTY_ZOOKEEPER_PATH, testEnv.getPath());
+        client_configuration.set(ClientConfiguration.PROPERTY_ZOOKEEPER_SESSIONTIMEOUT, testEnv.getTimeout());
+
+        List<ChangeDataCapture.Mutation> mutations = new ArrayList<>();
+        try (Server server_1 = new Server(serverconfig_1)) {
+            server_1.start();
+            server_1.waitForStandaloneBoot();
+            Table table = Table.builder()
+                    .name("t1")
+                    .column("c", ColumnTypes.INTEGER)
+                    .column("d", ColumnTypes.INTEGER)
+                    .column("s", ColumnTypes.STRING)
+                    .primaryKey("c")
+                    .build();
+            String text = "a long text which is not going to be updated";
+            server_1.getManager().executeStatement(new CreateTableStatement(table), StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            server_1.getManager().executeUpdate(new InsertStatement(TableSpace.DEFAULT, "t1", RecordSerializer.makeRecord(table, "c", 1, "d", 2, "s", text)), StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            server_1.getManager().executeUpdate(new UpdateStatement(TableSpace.DEFAULT, "t1", RecordSerializer.makeRecord(table, "c", 1, "d", 3, "s", text), null), StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            String tableSpaceUUID = server_1.getManager().getTableSpaceManager(TableSpace.DEFAULT).getTableSpaceUUID();
+            server_1.close();
+
+            try (final ChangeDataCapture cdc = new ChangeDataCapture(tableSpaceUUID, client_configuration,
+                    mutations::add, LogSequenceNumber.START_OF_TIME, new InMemoryTableHistoryStorage())) {
+                cdc.start();
+                cdc.run();
+            }
+        }
+        assertEquals(3, mutations.size());
+        ChangeDataCapture.Mutation insert = mutations.get(1);
+        assertFalse(insert.isPartialUpdate());
+        ChangeDataCapture.Mutation update = mutations.get(2);
+        assertEquals(ChangeDataCapture.MutationType.UPDATE, update.getMutationType());
+        assertTrue(update.isPartialUpdate());
+        assertEquals(Collections.singleton("d"), update.getChangedColumns());
+        assertEquals(1, update.getRecord().get("c"));
+        assertEquals(3, update.getRecord().get("d"));
+        assertNull(update.getRecord().get("s"));
+    }
+
     private LogSequenceNumber performOneCDCStep(ClientConfiguration client_configuration, Server server_1, InMemoryTableHistoryStorage tableHistoryStorage, LogSequenceNumber currentPosition, List<ChangeDataCapture.Mutation> mutations) throws Exception {
         try (final ChangeDataCapture cdc = new ChangeDataCapture(
                 server_1.getManager().getTableSpaceManager(TableSpace.DEFAULT).getTableSpaceUUID(),
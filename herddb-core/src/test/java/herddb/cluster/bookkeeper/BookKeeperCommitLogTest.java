@@ -31,6 +31,7 @@ import herddb.cluster.LedgersInfo;
 import herddb.cluster.ZookeeperMetadataStorageManager;
 import herddb.core.ClusterTest;
 import herddb.log.CommitLogResult;
+import herddb.log.LogCompression;
 import herddb.log.LogEntry;
 import herddb.log.LogEntryFactory;
 import herddb.log.LogEntryType;
@@ -38,6 +39,7 @@ import herddb.log.LogNotAvailableException;
 import herddb.log.LogSequenceNumber;
 import herddb.model.TableSpace;
 import herddb.server.ServerConfiguration;
+import herddb.utils.Bytes;
 import herddb.utils.TestUtils;
 import herddb.utils.ZKTestEnv;
 import java.nio.charset.StandardCharsets;
@@ -123,6 +125,52 @@ public class BookKeeperCommitLogTest {
         }
     }
 
+    @Test
+    public void testCompressedEntries() throws Exception {
+        final String tableSpaceUUID = UUID.randomUUID().toString();
+        final String name = TableSpace.DEFAULT;
+        final String nodeid = "nodeid";
+        ServerConfiguration serverConfiguration = newServerConfigurationWithAutoPort();
+        serverConfiguration.set(ServerConfiguration.PROPERTY_TXLOG_COMPRESSION, LogCompression.LZ4);
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            row.append("{\"id\":").append(i).append(",\"name\":\"customer name\",\"status\":\"active\"}");
+        }
+        LogEntry big = new LogEntry(System.currentTimeMillis(), LogEntryType.INSERT, 1, "mytable",
+                Bytes.from_int(1), Bytes.from_string(row.toString()));
+        try (ZookeeperMetadataStorageManager man = new ZookeeperMetadataStorageManager(testEnv.getAddress(),
+                testEnv.getTimeout(), testEnv.getPath());
+                BookkeeperCommitLogManager logManager = new BookkeeperCommitLogManager(man, serverConfiguration, NullStatsLogger.INSTANCE)) {
+            man.start();
+            logManager.start();
+            assertTrue(logManager.isCompressEntries());
+
+            LogSequenceNumber lsn1;
+            LogSequenceNumber lsn2;
+            try (BookkeeperCommitLog writer = logManager.createCommitLog(tableSpaceUUID, name, nodeid);) {
+                writer.startWriting(1);
+                lsn1 = writer.log(big, true).getLogSequenceNumber();
+                // too small to be compressed
+                lsn2 = writer.log(LogEntryFactory.beginTransaction(2), true).getLogSequenceNumber();
+            }
+
+            try (BookkeeperCommitLog reader = logManager.createCommitLog(tableSpaceUUID, name, nodeid);) {
+                List<Map.Entry<LogSequenceNumber, LogEntry>> list = new ArrayList<>();
+                reader.recovery(LogSequenceNumber.START_OF_TIME, (a, b) -> {
+                    if (b.type != LogEntryType.NOOP) {
+                        list.add(new AbstractMap.SimpleImmutableEntry<>(a, b));
+                    }
+                }, false);
+                assertEquals(2, list.size());
+                assertEquals(lsn1, list.get(0).getKey());
+                assertEquals(big.value, list.get(0).getValue().value);
+                assertEquals("mytable", list.get(0).getValue().tableName);
+                assertEquals(lsn2, list.get(1).getKey());
+                assertEquals(LogEntryType.BEGINTRANSACTION, list.get(1).getValue().type);
+            }
+        }
+    }
+
     @Test
     public void testSimpleFence() throws Exception {
         final String tableSpaceUUID = UUID.randomUUID().toString();
@@ -0,0 +1,150 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import herddb.model.ColumnTypes;
+import herddb.model.Record;
+import herddb.model.Table;
+import herddb.utils.Bytes;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests about column level deltas of records
+ */
+public class RecordDeltaTest {
+
+    private static final String LONG_TEXT = "a very long text which is not going to change very often";
+
+    private static final Table TABLE = Table.builder()
+            .name("t1")
+            .column("pk", ColumnTypes.STRING)
+            .column("counter", ColumnTypes.INTEGER)
+            .column("s1", ColumnTypes.STRING)
+            .column("s2", ColumnTypes.STRING)
+            .column("n", ColumnTypes.LONG)
+            .primaryKey("pk")
+            .build();
+
+    @BeforeClass
+    public static void enableColumnOffsetTable() {
+        // read once per JVM, every test class runs in a new fork
+        System.setProperty("herddb.serializer.columnoffsettable", "true");
+    }
+
+    @Test
+    public void testChangedColumn() {
+        Record before = RecordSerializer.makeRecord(TABLE, "pk", "a", "counter", 1, "s1", LONG_TEXT, "s2", LONG_TEXT);
+        Record after = RecordSerializer.makeRecord(TABLE, "pk", "a", "counter", 2, "s1", LONG_TEXT, "s2", LONG_TEXT);
+        byte[] newValue = after.value.to_array();
+
+        byte[] delta = RecordDelta.computeDelta(before.value, newValue, TABLE);
+        assertNotNull(delta);
+        assertTrue(delta.length * 10 < newValue.length);
+        assertArrayEquals(newValue, RecordDelta.applyDelta(before.value, Bytes.from_array(delta), TABLE));
+        assertEquals(new HashSet<>(Arrays.asList("counter")), RecordDelta.changedColumns(Bytes.from_array(delta), TABLE));
+
+        Map<String, Object> changed = RecordSerializer.toBean(new Record(before.key,
+                RecordDelta.changedValues(Bytes.from_array(delta))), TABLE);
+        assertEquals(2, changed.get("counter"));
+        assertNull(changed.get("s1"));
+    }
+
+    @Test
+    public void testAddAndRemoveColumns() {
+        Record before = RecordSerializer.makeRecord(TABLE, "pk", "a", "counter", 1, "s1", LONG_TEXT, "s2", LONG_TEXT);
+        Record after = RecordSerializer.makeRecord(TABLE, "pk", "a", "s1", LONG_TEXT, "s2", LONG_TEXT, "n", 5L);
+        byte[] newValue = after.value.to_array();
+
+        byte[] delta = RecordDelta.computeDelta(before.value, newValue, TABLE);
+        assertNotNull(delta);
+        assertArrayEquals(newValue, RecordDelta.applyDelta(before.value, Bytes.from_array(delta), TABLE));
+        assertEquals(new HashSet<>(Arrays.asList("counter", "n")), RecordDelta.changedColumns(Bytes.from_array(delta), TABLE));
+    }
+
+    @Test
+    public void testNotWorthWhenAllColumnsChange() {
+        Record before = RecordSerializer.makeRecord(TABLE, "pk", "a", "counter", 1, "s1", "x");
+        Record after = RecordSerializer.makeRecord(TABLE, "pk", "a", "counter", 2, "s1", "y");
+        assertNull(RecordDelta.computeDelta(before.value, after.value.to_array(), TABLE));
+    }
+
+    @Test
+    public void testDroppedColumnsAreDiscarded() {
+        // values written with a column which is no more in the table
+        Table withExtraColumn = Table.builder()
+                .name("t1")
+                .column("pk", ColumnTypes.STRING)
+                .column("counter", ColumnTypes.INTEGER)
+                .column("s1", ColumnTypes.STRING)
+                .column("s2", ColumnTypes.STRING)
+                .column("n", ColumnTypes.LONG)
+                .column("dropped", ColumnTypes.STRING)
+                .primaryKey("pk")
+                .build();
+        Record before = RecordSerializer.makeRecord(withExtraColumn, "pk", "a", "counter", 1, "s1", LONG_TEXT, "dropped", LONG_TEXT);
+        Record after = RecordSerializer.makeRecord(TABLE, "pk", "a", "counter", 2, "s1", LONG_TEXT);
+        byte[] newValue = after.value.to_array();
+
+        byte[] delta = RecordDelta.computeDelta(before.value, newValue, TABLE);
+        assertNotNull(delta);
+        assertArrayEquals(newValue, RecordDelta.applyDelta(before.value, Bytes.from_array(delta), TABLE));
+    }
+
+    @Test
+    public void testColumnOffsetTable() {
+        Table.Builder builder = Table.builder()
+                .name("t1")
+                .column("pk", ColumnTypes.STRING);
+        for (int i = 0; i < 20; i++) {
+            builder.column("s" + i, ColumnTypes.STRING);
+        }
+        Table wide = builder.primaryKey("pk").build();
+        assertTrue(ColumnOffsetTable.isEnabled(wide));
+
+        Record before = RecordSerializer.makeRecord(wide, "pk", "a", "s1", LONG_TEXT, "s2", LONG_TEXT, "s10", "x");
+        Record after = RecordSerializer.makeRecord(wide, "pk", "a", "s1", LONG_TEXT, "s2", LONG_TEXT, "s10", "y", "s19", "z");
+        assertTrue(RecordSerializer.isColumnOffsetTable(before.value));
+        byte[] newValue = after.value.to_array();
+        byte[] delta = RecordDelta.computeDelta(before.value, newValue, wide);
+        assertNotNull(delta);
+        assertArrayEquals(newValue, RecordDelta.applyDelta(before.value, Bytes.from_array(delta), wide));
+        assertEquals(new HashSet<>(Arrays.asList("s10", "s19")), RecordDelta.changedColumns(Bytes.from_array(delta), wide));
+
+        // previous value written without offset table, before the table had been altered
+        Record old = RecordSerializer.makeRecord(TABLE, "pk", "a", "counter", 1, "s1", LONG_TEXT, "s2", LONG_TEXT);
+        assertFalse(RecordSerializer.isColumnOffsetTable(old.value));
+        Record updated = RecordSerializer.makeRecord(wide, "pk", "a", "s1", LONG_TEXT, "s2", LONG_TEXT, "s3", "changed");
+        newValue = updated.value.to_array();
+        delta = RecordDelta.computeDelta(old.value, newValue, wide);
+        assertNotNull(delta);
+        assertArrayEquals(newValue, RecordDelta.applyDelta(old.value, Bytes.from_array(delta), wide));
+    }
+}
@@ -21,7 +21,9 @@ package herddb.codec;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import herddb.model.Column;
 import herddb.model.ColumnTypes;
 import herddb.model.ColumnsList;
@@ -33,6 +35,7 @@ import herddb.utils.DataAccessor;
 import herddb.utils.ExtendedDataOutputStream;
 import herddb.utils.MapDataAccessor;
 import herddb.utils.RawString;
+import herddb.utils.SQLRecordPredicateFunctions;
 import herddb.utils.VisibleByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
@@ -40,6 +43,7 @@ import java.text.SimpleDateFormat;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TimeZone;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
 /**
@@ -50,6 +54,12 @@ public class RecordSerializerTest {
     public RecordSerializerTest() {
     }
 
+    @BeforeClass
+    public static void enableColumnOffsetTable() {
+        // read once per JVM, every test class runs in a new fork
+        System.setProperty("herddb.serializer.columnoffsettable", "true");
+    }
+
     @Test
     public void testToBean() {
         Table table = Table.builder()
@@ -234,6 +244,128 @@ public class RecordSerializerTest {
         assertEquals(expectedResult, result);
     }
 
+    private static Table wideTable(int numColumns) {
+        Table.Builder builder = Table.builder()
+                .name("t1")
+                .column("pk", ColumnTypes.STRING);
+        for (int i = 0; i < numColumns; i++) {
+            switch (i % 4) {
+                case 0:
+                    builder.column("c" + i, ColumnTypes.INTEGER);
+                    break;
+                case 1:
+                    builder.column("c" + i, ColumnTypes.STRING);
+                    break;
+                case 2:
+                    builder.column("c" + i, ColumnTypes.LONG);
+                    break;
+                default:
+                    builder.column("c" + i, ColumnTypes.FLOATARRAY);
+                    break;
+            }
+        }
+        return builder.primaryKey("pk").build();
+    }
+
+    private static Object wideValue(int i) {
+        switch (i % 4) {
+            case 0:
+                return i;
+            case 1:
+                return "value" + i;
+            case 2:
+                return (long) i * 1000;
+            default:
+                return new float[]{i, i + 1};
+        }
+    }
+
+    @Test
+    public void testColumnOffsetTable() throws Exception {
+        Table table = wideTable(40);
+        assertTrue(ColumnOffsetTable.isEnabled(table));
+        Map<String, Object> values = new HashMap<>();
+        values.put("pk", "key");
+        for (int i = 0; i < 40; i++) {
+            // every fifth column is NULL
+            if (i % 5 != 0) {
+                values.put("c" + i, wideValue(i));
+            }
+        }
+        Record record = RecordSerializer.toRecord(values, table);
+        assertTrue(RecordSerializer.isColumnOffsetTable(record.value));
+
+        DataAccessorForFullRecord accessor = new DataAccessorForFullRecord(table, record);
+        for (int i = 0; i < 40; i++) {
+            String name = "c" + i;
+            int index = i + 1;
+            Object expected = i % 5 != 0 ? wideValue(i) : null;
+            if (expected instanceof float[]) {
+                assertArrayEquals((float[]) expected, (float[]) accessor.get(name), 0f);
+                assertArrayEquals((float[]) expected, (float[]) accessor.get(index), 0f);
+                Bytes raw = accessor.getRawFloatArray(table.getColumn(name));
+                assertArrayEquals((float[]) expected, raw.to_float_array(), 0f);
+            } else if (expected == null) {
+                assertNull(accessor.get(name));
+                assertNull(accessor.get(index));
+                assertEquals(SQLRecordPredicateFunctions.CompareResult.NULL, accessor.fieldCompareTo(index, 1));
+            } else {
+                assertEquals(expected, accessor.get(name) instanceof RawString ? accessor.get(name).toString() : accessor.get(name));
+                assertTrue(accessor.fieldEqualsTo(index, expected));
+            }
+        }
+
+        Map<String, Object> bean = RecordSerializer.toBean(record, table);
+        assertEquals("key", bean.get("pk").toString());
+        assertEquals(values.size(), bean.size());
+        assertArrayEquals(new float[]{7, 8}, (float[]) bean.get("c7"), 0f);
+        assertEquals("value9", bean.get("c9").toString());
+
+        Map<String, Object> visited = new HashMap<>();
+        accessor.forEach(visited::put);
+        assertEquals(values.keySet(), visited.keySet());
+    }
+
+    @Test
+    public void testColumnOffsetTableCompatibility() throws Exception {
+        Table narrowTable = wideTable(4);
+        Table table = wideTable(40);
+        assertFalse(ColumnOffsetTable.isEnabled(narrowTable));
+
+        // a value written before the table was altered, without offset table
+        Record old = RecordSerializer.makeRecord(narrowTable, "pk", "key", "c1", "value1", "c2", 2000L);
+        assertFalse(RecordSerializer.isColumnOffsetTable(old.value));
+        DataAccessorForFullRecord accessor = new DataAccessorForFullRecord(table, old);
+        assertEquals("value1", accessor.get("c1").toString());
+        assertEquals(2000L, accessor.get("c2"));
+        assertNull(accessor.get("c30"));
+
+        // a value with an offset table read with a table with a new column
+        Record record = RecordSerializer.makeRecord(table, "pk", "key", "c1", "value1", "c39", new float[]{1f});
+        assertTrue(RecordSerializer.isColumnOffsetTable(record.value));
+        Table altered = wideTable(41);
+        accessor = new DataAccessorForFullRecord(altered, record);
+        assertNull(accessor.get("c40"));
+        assertArrayEquals(new float[]{1f}, (float[]) accessor.get("c39"), 0f);
+        assertEquals("value1", accessor.get("c1").toString());
+    }
+
+    @Test
+    public void testColumnOffsetTableLargeValue() throws Exception {
+        Table table = wideTable(40);
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            large.append('x');
+        }
+        Record record = RecordSerializer.makeRecord(table, "pk", "key", "c1", large.toString(), "c5", "after", "c38", 38L);
+        assertTrue(record.value.getLength() > 0xFFFF);
+        DataAccessorForFullRecord accessor = new DataAccessorForFullRecord(table, record);
+        assertEquals(large.toString(), accessor.get("c1").toString());
+        assertEquals("after", accessor.get("c5").toString());
+        assertEquals(38L, accessor.get("c38"));
+        assertNull(accessor.get("c37"));
+    }
+
     private class ColumnsListImpl implements ColumnsList {
 
         private final Column[] indexedColumns;
@@ -0,0 +1,158 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import static herddb.core.TestUtils.beginTransaction;
+import static herddb.core.TestUtils.commitTransaction;
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import herddb.codec.RecordSerializer;
+import herddb.index.PrimaryIndexSeek;
+import herddb.mem.MemoryCommitLogManager;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.mem.MemoryMetadataStorageManager;
+import herddb.model.ConstValueRecordFunction;
+import herddb.model.DMLStatementExecutionResult;
+import herddb.model.DataScanner;
+import herddb.model.DuplicatePrimaryKeyException;
+import herddb.model.Predicate;
+import herddb.model.Record;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.StatementExecutionException;
+import herddb.model.StatementExecutionResult;
+import herddb.model.Table;
+import herddb.model.TableSpace;
+import herddb.model.TransactionContext;
+import herddb.model.commands.UpdateStatement;
+import herddb.sql.TranslatedQuery;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Statements waiting for a lock on a record do not hold the thread
+ *
+ * @author enrico.olivelli
+ */
+public class AsyncRowLockTest {
+
+    private static CompletableFuture<StatementExecutionResult> executeAsync(DBManager manager, String query, List<Object> parameters) {
+        TranslatedQuery translated = manager.getPlanner().translate(TableSpace.DEFAULT, query, parameters, true, true, false, -1);
+        return manager.executePlanAsync(translated.plan, translated.context, TransactionContext.NO_TRANSACTION);
+    }
+
+    @Test
+    public void testStatementsWaitingOnHotRecord() throws Exception {
+        try (DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(),
+                new MemoryCommitLogManager(), null, null)) {
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+            execute(manager, "CREATE TABLE t1 (id int primary key, n int)", Collections.emptyList());
+            executeUpdate(manager, "INSERT INTO t1(id,n) values(1,0)", Collections.emptyList());
+
+            // the transaction holds the locks on the records
+            long tx = beginTransaction(manager, TableSpace.DEFAULT);
+            TransactionContext transactionContext = new TransactionContext(tx);
+            executeUpdate(manager, "UPDATE t1 set n=n+1 WHERE id=?", Arrays.asList(1), transactionContext);
+            executeUpdate(manager, "INSERT INTO t1(id,n) values(2,0)", Collections.emptyList(), transactionContext);
+
+            // the current thread is never blocked
+            List<CompletableFuture<StatementExecutionResult>> updates = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                updates.add(executeAsync(manager, "UPDATE t1 set n=n+1 WHERE id=?", Arrays.asList(1)));
+            }
+            CompletableFuture<StatementExecutionResult> delete = executeAsync(manager, "DELETE FROM t1 WHERE id=?", Arrays.asList(2));
+            CompletableFuture<StatementExecutionResult> insert = executeAsync(manager, "INSERT INTO t1(id,n) values(2,0)", Collections.emptyList());
+            for (CompletableFuture<StatementExecutionResult> update : updates) {
+                assertFalse(update.isDone());
+            }
+            assertFalse(insert.isDone());
+
+            commitTransaction(manager, TableSpace.DEFAULT, tx);
+
+            for (CompletableFuture<StatementExecutionResult> update : updates) {
+                assertEquals(1, ((DMLStatementExecutionResult) update.get(10, TimeUnit.SECONDS)).getUpdateCount());
+            }
+            // the record has been inserted by the transaction, the DELETE can run
+            // before or after the INSERT
+            int deleted = ((DMLStatementExecutionResult) delete.get(10, TimeUnit.SECONDS)).getUpdateCount();
+            try {
+                insert.get(10, TimeUnit.SECONDS);
+                assertEquals(1, deleted);
+            } catch (ExecutionException err) {
+                assertTrue(err.getCause() instanceof DuplicatePrimaryKeyException);
+            }
+
+            try (DataScanner scan = scan(manager, "SELECT n FROM t1 WHERE id=1", Collections.emptyList())) {
+                assertEquals(51, scan.consume().get(0).get("n"));
+            }
+        }
+    }
+
+    @Test
+    public void testLockReleasedOnScanError() throws Exception {
+        try (DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(),
+                new MemoryCommitLogManager(), null, null)) {
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+            execute(manager, "CREATE TABLE t1 (id int primary key, n int)", Collections.emptyList());
+            executeUpdate(manager, "INSERT INTO t1(id,n) values(1,0)", Collections.emptyList());
+
+            // the lock is taken before the scan, then the scan fails
+            Table table = manager.getTableSpaceManager(TableSpace.DEFAULT).getTableManager("t1").getTable();
+            Record record = RecordSerializer.makeRecord(table, "id", 1, "n", 5);
+            Predicate predicate = new Predicate() {
+                @Override
+                public void validateContext(StatementEvaluationContext context) throws StatementExecutionException {
+                    throw new StatementExecutionException("invalid context");
+                }
+
+                @Override
+                public boolean evaluate(Record record, StatementEvaluationContext context) throws StatementExecutionException {
+                    return true;
+                }
+            };
+            predicate.setIndexOperation(new PrimaryIndexSeek(new ConstValueRecordFunction(record.key)));
+            UpdateStatement update = new UpdateStatement(TableSpace.DEFAULT, "t1", record, predicate);
+            try {
+                manager.executeStatementAsync(update, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(),
+                        TransactionContext.NO_TRANSACTION).get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException err) {
+                assertTrue(err.getCause() instanceof StatementExecutionException);
+            }
+
+            // nobody holds the lock
+            CompletableFuture<StatementExecutionResult> next = executeAsync(manager, "UPDATE t1 set n=n+1 WHERE id=?", Arrays.asList(1));
+            assertEquals(1, ((DMLStatementExecutionResult) next.get(10, TimeUnit.SECONDS)).getUpdateCount());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import static herddb.core.TestUtils.beginTransaction;
+import static herddb.core.TestUtils.commitTransaction;
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import herddb.file.FileCommitLog;
+import herddb.file.FileCommitLogManager;
+import herddb.file.FileDataStorageManager;
+import herddb.file.FileMetadataStorageManager;
+import herddb.log.LogEntryType;
+import herddb.log.LogSequenceNumber;
+import herddb.model.DataScanner;
+import herddb.model.TableSpace;
+import herddb.model.TransactionContext;
+import herddb.server.ServerConfiguration;
+import herddb.utils.DataAccessor;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests about UPDATEs logged as a delta of the changed columns
+ *
+ * @author enrico.olivelli
+ */
+public class DeltaUpdateTest {
+
+    private static final String LONG_TEXT = "a very long text which is not going to change very often";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DBManager buildManager(Path baseDir) {
+        ServerConfiguration configuration = new ServerConfiguration();
+        configuration.set(ServerConfiguration.PROPERTY_TABLEMANAGER_DELTA_UPDATES, true);
+        return new DBManager("localhost",
+                new FileMetadataStorageManager(baseDir.resolve("metadata")),
+                new FileDataStorageManager(baseDir.resolve("data")),
+                new FileCommitLogManager(baseDir.resolve("logs")),
+                baseDir.resolve("tmp"), null, configuration, NullStatsLogger.INSTANCE);
+    }
+
+    @Test
+    public void testRecoveryFromDeltaUpdates() throws Exception {
+        Path baseDir = folder.newFolder().toPath();
+        String tableSpaceUUID;
+        try (DBManager manager = buildManager(baseDir)) {
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+            tableSpaceUUID = manager.getTableSpaceManager(TableSpace.DEFAULT).getTableSpaceUUID();
+
+            execute(manager, "CREATE TABLE t1 (id string primary key, counter int, s1 string, s2 string, n long)",
+                    Collections.emptyList());
+            for (int i = 0; i < 10; i++) {
+                executeUpdate(manager, "INSERT INTO t1(id,counter,s1,s2,n) values(?,?,?,?,?)",
+                        Arrays.asList("k" + i, 0, LONG_TEXT, LONG_TEXT, 1L));
+            }
+            // checkpoint, so that recovery has to read the previous versions from the data pages
+            manager.checkpoint();
+            for (int i = 0; i < 5; i++) {
+                assertEquals(10, executeUpdate(manager, "UPDATE t1 set counter=counter+1", Collections.emptyList()).getUpdateCount());
+            }
+            executeUpdate(manager, "UPDATE t1 set n=null WHERE id='k1'", Collections.emptyList());
+
+            long tx = beginTransaction(manager, TableSpace.DEFAULT);
+            executeUpdate(manager, "UPDATE t1 set counter=counter+1 WHERE id='k2'", Collections.emptyList(), new TransactionContext(tx));
+            executeUpdate(manager, "UPDATE t1 set counter=counter+1 WHERE id='k2'", Collections.emptyList(), new TransactionContext(tx));
+            executeUpdate(manager, "INSERT INTO t1(id,counter,s1,s2,n) values(?,?,?,?,?)",
+                    Arrays.asList("k10", 0, LONG_TEXT, LONG_TEXT, 1L), new TransactionContext(tx));
+            executeUpdate(manager, "UPDATE t1 set counter=counter+1 WHERE id='k10'", Collections.emptyList(), new TransactionContext(tx));
+            commitTransaction(manager, TableSpace.DEFAULT, tx);
+
+            checkData(manager);
+        }
+
+        try (DBManager manager = buildManager(baseDir)) {
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+            checkData(manager);
+        }
+
+        AtomicInteger deltaUpdates = new AtomicInteger();
+        try (FileCommitLogManager commitLogManager = new FileCommitLogManager(baseDir.resolve("logs"))) {
+            commitLogManager.start();
+            try (FileCommitLog log = commitLogManager.createCommitLog(tableSpaceUUID, TableSpace.DEFAULT, "localhost")) {
+                log.recovery(LogSequenceNumber.START_OF_TIME, (lsn, entry) -> {
+                    assertTrue(entry.type != LogEntryType.UPDATE);
+                    if (entry.type == LogEntryType.UPDATE_DELTA) {
+                        deltaUpdates.incrementAndGet();
+                        assertTrue(entry.value.getLength() < LONG_TEXT.length());
+                    }
+                }, false);
+            }
+        }
+        assertEquals(5 * 10 + 1 + 3, deltaUpdates.get());
+    }
+
+    private static void checkData(DBManager manager) throws Exception {
+        try (DataScanner scan = scan(manager, "SELECT id, counter, s1, s2, n FROM t1 ORDER BY id", Collections.emptyList())) {
+            List<DataAccessor> records = scan.consume();
+            assertEquals(11, records.size());
+            for (DataAccessor record : records) {
+                String id = record.get("id").toString();
+                int expectedCounter;
+                switch (id) {
+                    case "k2":
+                        expectedCounter = 7;
+                        break;
+                    case "k10":
+                        expectedCounter = 1;
+                        break;
+                    default:
+                        expectedCounter = 5;
+                        break;
+                }
+                assertEquals(id, expectedCounter, record.get("counter"));
+                assertEquals(LONG_TEXT, record.get("s1").toString());
+                assertEquals(LONG_TEXT, record.get("s2").toString());
+                if (id.equals("k1")) {
+                    assertNull(record.get("n"));
+                } else {
+                    assertEquals(1L, record.get("n"));
+                }
+            }
+        }
+    }
+}
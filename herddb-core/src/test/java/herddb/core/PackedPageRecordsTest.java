@@ -0,0 +1,118 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import herddb.model.Record;
+import herddb.utils.Bytes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Tests about the packed representation of immutable data pages
+ */
+public class PackedPageRecordsTest {
+
+    @Test
+    public void testLookupAndIteration() {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            records.add(new Record(Bytes.from_int(i), Bytes.from_string("value" + i)));
+        }
+        records.add(new Record(Bytes.from_string("empty"), Bytes.from_array(new byte[0])));
+        Collections.shuffle(records);
+
+        PackedPageRecords packed = PackedPageRecords.pack(records);
+        assertEquals(records.size(), packed.size());
+        for (Record r : records) {
+            Record read = packed.get(r.key);
+            assertEquals(r.key, read.key);
+            assertEquals(r.value, read.value);
+            assertTrue(packed.containsKey(r.key));
+            // keys are looked up even if they are slices of another buffer
+            byte[] sliced = new byte[r.key.getLength() + 2];
+            System.arraycopy(r.key.getBuffer(), r.key.getOffset(), sliced, 1, r.key.getLength());
+            assertEquals(r.value, packed.get(Bytes.from_array(sliced, 1, r.key.getLength())).value);
+        }
+        assertNull(packed.get(Bytes.from_int(-1)));
+        assertFalse(packed.containsKey(Bytes.from_string("missing")));
+
+        Bytes previous = null;
+        int count = 0;
+        for (Record r : packed.values()) {
+            if (previous != null) {
+                assertTrue(previous.compareTo(r.key) < 0);
+            }
+            previous = r.key;
+            count++;
+        }
+        assertEquals(records.size(), count);
+
+        Map<Bytes, Record> copy = new HashMap<>(packed);
+        assertEquals(records.size(), copy.size());
+    }
+
+    @Test
+    public void testRetainedRecordsDoNotShareThePage() {
+        PackedPageRecords packed = PackedPageRecords.pack(Collections.singletonList(
+                new Record(Bytes.from_string("key"), Bytes.from_string("value"))));
+        Record record = packed.get(Bytes.from_string("key"));
+        assertTrue(record.key.isShared());
+        Record unshared = record.nonShared();
+        assertFalse(unshared.key.isShared());
+        assertFalse(unshared.value.isShared());
+        assertEquals(record.value, unshared.value);
+    }
+
+    @Test
+    public void testSmallerThanHashMapPage() {
+        List<Record> records = new ArrayList<>();
+        long hashMapSize = 0;
+        for (int i = 0; i < 1000; i++) {
+            Record r = new Record(Bytes.from_int(i), Bytes.from_int(i));
+            records.add(r);
+            hashMapSize += DataPage.estimateEntrySize(r);
+        }
+        assertTrue(PackedPageRecords.pack(records).getEstimatedSize() < hashMapSize / 4);
+    }
+
+    @Test
+    public void testEmptyPage() {
+        PackedPageRecords packed = PackedPageRecords.pack(Collections.emptyList());
+        assertTrue(packed.isEmpty());
+        assertNull(packed.get(Bytes.from_int(1)));
+        assertFalse(packed.values().iterator().hasNext());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() {
+        PackedPageRecords packed = PackedPageRecords.pack(Collections.singletonList(
+                new Record(Bytes.from_string("key"), Bytes.from_string("value"))));
+        packed.remove(Bytes.from_string("key"));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import herddb.mem.MemoryCommitLogManager;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.mem.MemoryMetadataStorageManager;
+import herddb.model.DataScanner;
+import herddb.model.TableSpace;
+import herddb.server.ServerConfiguration;
+import herddb.utils.DataAccessor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+/**
+ * Tests about full table scans which read the pages of the table in parallel
+ *
+ * @author enrico.olivelli
+ */
+public class PageOrderScanTest {
+
+    private static DBManager buildManager() {
+        ServerConfiguration configuration = new ServerConfiguration();
+        configuration.set(ServerConfiguration.PROPERTY_MAX_LOGICAL_PAGE_SIZE, 2048);
+        configuration.set(ServerConfiguration.PROPERTY_TABLE_SCAN_PARALLELISM, 4);
+        configuration.set(ServerConfiguration.PROPERTY_TABLE_SCAN_PARALLEL_MIN_PAGES, 1);
+        return new DBManager("localhost",
+                new MemoryMetadataStorageManager(),
+                new MemoryDataStorageManager(),
+                new MemoryCommitLogManager(),
+                null, null, configuration, null);
+    }
+
+    private static Map<Integer, Integer> readTable(DBManager manager, String query, List<Object> parameters) throws Exception {
+        Map<Integer, Integer> result = new HashMap<>();
+        try (DataScanner scan = scan(manager, query, parameters)) {
+            for (DataAccessor record : scan.consume()) {
+                Integer previous = result.put((Integer) record.get("id"), (Integer) record.get("n"));
+                assertNull("duplicate record " + record.toMap(), previous);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        try (DBManager manager = buildManager()) {
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+            execute(manager, "CREATE TABLE t1 (id int primary key, n int, s string)", Collections.emptyList());
+            Map<Integer, Integer> expected = new HashMap<>();
+            for (int i = 0; i < 2000; i++) {
+                executeUpdate(manager, "INSERT INTO t1(id,n,s) values(?,?,?)", Arrays.asList(i, i, "value" + i));
+                expected.put(i, i);
+            }
+            assertEquals(expected, readTable(manager, "SELECT id, n FROM t1", Collections.emptyList()));
+
+            manager.checkpoint();
+            TableManager table = (TableManager) manager.getTableSpaceManager(TableSpace.DEFAULT).getTableManager("t1");
+            assertTrue(table.getStats().getLoadedpages() + " pages", table.getStats().getLoadedpages() > 10);
+
+            // dirty pages, new pages
+            for (int i = 0; i < 2000; i += 3) {
+                executeUpdate(manager, "UPDATE t1 set n=? WHERE id=?", Arrays.asList(i + 10000, i));
+                expected.put(i, i + 10000);
+            }
+            for (int i = 0; i < 2000; i += 7) {
+                executeUpdate(manager, "DELETE FROM t1 WHERE id=?", Arrays.asList(i));
+                expected.remove(i);
+            }
+            for (int i = 2000; i < 2100; i++) {
+                executeUpdate(manager, "INSERT INTO t1(id,n,s) values(?,?,?)", Arrays.asList(i, i, "value" + i));
+                expected.put(i, i);
+            }
+            assertEquals(expected, readTable(manager, "SELECT id, n FROM t1", Collections.emptyList()));
+
+            // filter on a column without indexes
+            Map<Integer, Integer> filtered = new HashMap<>();
+            expected.forEach((id, n) -> {
+                if (n >= 10000) {
+                    filtered.put(id, n);
+                }
+            });
+            assertEquals(filtered, readTable(manager, "SELECT id, n FROM t1 WHERE n>=?", Arrays.asList(10000)));
+
+            // early exit
+            try (DataScanner scan = scan(manager, "SELECT id FROM t1 LIMIT 10", Collections.emptyList())) {
+                assertEquals(10, scan.consume().size());
+            }
+
+            manager.checkpoint();
+            assertEquals(expected, readTable(manager, "SELECT id, n FROM t1", Collections.emptyList()));
+        }
+    }
+
+    @Test
+    public void testScanDuringUpdatesAndCheckpoints() throws Exception {
+        try (DBManager manager = buildManager()) {
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+            execute(manager, "CREATE TABLE t1 (id int primary key, n int, s string)", Collections.emptyList());
+            final int size = 2000;
+            for (int i = 0; i < size; i++) {
+                executeUpdate(manager, "INSERT INTO t1(id,n,s) values(?,?,?)", Arrays.asList(i, i, "value" + i));
+            }
+            manager.checkpoint();
+
+            AtomicBoolean stop = new AtomicBoolean();
+            ExecutorService threads = Executors.newFixedThreadPool(4);
+            try {
+                Future<?>[] writers = new Future<?>[4];
+                for (int t = 0; t < 3; t++) {
+                    writers[t] = threads.submit(() -> {
+                        while (!stop.get()) {
+                            int id = ThreadLocalRandom.current().nextInt(size);
+                            executeUpdate(manager, "UPDATE t1 set n=n+1 WHERE id=?", Arrays.asList(id));
+                        }
+                        return null;
+                    });
+                }
+                writers[3] = threads.submit(() -> {
+                    while (!stop.get()) {
+                        manager.checkpoint();
+                        Thread.sleep(10);
+                    }
+                    return null;
+                });
+
+                for (int i = 0; i < 30; i++) {
+                    // every record is always present, only once
+                    Map<Integer, Integer> data = readTable(manager, "SELECT id, n FROM t1", Collections.emptyList());
+                    assertEquals(size, data.size());
+                }
+
+                stop.set(true);
+                for (Future<?> writer : writers) {
+                    writer.get();
+                }
+            } finally {
+                stop.set(true);
+                threads.shutdown();
+                assertTrue(threads.awaitTermination(1, TimeUnit.MINUTES));
+            }
+        }
+    }
+}
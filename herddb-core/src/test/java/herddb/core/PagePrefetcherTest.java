@@ -0,0 +1,230 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import herddb.file.FileCommitLogManager;
+import herddb.file.FileDataStorageManager;
+import herddb.file.FileMetadataStorageManager;
+import herddb.model.DataScanner;
+import herddb.model.Record;
+import herddb.model.TableSpace;
+import herddb.server.ServerConfiguration;
+import herddb.utils.Bytes;
+import herddb.utils.DataAccessor;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests about the read ahead of pages during scans
+ *
+ * @author enrico.olivelli
+ */
+public class PagePrefetcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final class CountingDataStorageManager extends FileDataStorageManager {
+
+        private final AtomicInteger asyncReads = new AtomicInteger();
+
+        CountingDataStorageManager(Path baseDirectory) {
+            super(baseDirectory);
+        }
+
+        @Override
+        public CompletableFuture<List<Record>> readPageAsync(String tableSpace, String uuid, Long pageId, Executor executor) {
+            asyncReads.incrementAndGet();
+            return super.readPageAsync(tableSpace, uuid, pageId, executor);
+        }
+    }
+
+    private static List<Map.Entry<Bytes, Long>> entries(long... pages) {
+        List<Map.Entry<Bytes, Long>> result = new ArrayList<>();
+        for (int i = 0; i < pages.length; i++) {
+            result.add(new AbstractMap.SimpleImmutableEntry<>(Bytes.from_int(i), pages[i]));
+        }
+        return result;
+    }
+
+    @Test
+    public void testLookAhead() throws Exception {
+        List<Long> reads = new ArrayList<>();
+        Set<Long> loaded = new HashSet<>(Arrays.asList(3L));
+        PagePrefetcher prefetcher = new PagePrefetcher(4, Long.MAX_VALUE, 1024, loaded::contains, pageId -> {
+            reads.add(pageId);
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        });
+        List<Map.Entry<Bytes, Long>> source = entries(1, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        Iterator<Map.Entry<Bytes, Long>> it = prefetcher.lookAhead(source.iterator(), 100);
+        List<Map.Entry<Bytes, Long>> result = new ArrayList<>();
+        while (it.hasNext()) {
+            Map.Entry<Bytes, Long> entry = it.next();
+            result.add(entry);
+            prefetcher.take(entry.getValue());
+        }
+        // same entries, same order
+        assertEquals(source, result);
+        // every page has been read once, but the page which was already loaded
+        assertEquals(Arrays.asList(1L, 2L, 4L, 5L, 6L, 7L, 8L, 9L), reads);
+        assertEquals(8, prefetcher.getUsedPages());
+        assertEquals(4, prefetcher.getDepth());
+    }
+
+    @Test
+    public void testReadAheadIsBounded() throws Exception {
+        List<Long> reads = new ArrayList<>();
+        PagePrefetcher prefetcher = new PagePrefetcher(4, Long.MAX_VALUE, 1024, pageId -> false, pageId -> {
+            reads.add(pageId);
+            return new CompletableFuture<>();
+        });
+        Iterator<Map.Entry<Bytes, Long>> it = prefetcher.lookAhead(entries(1, 2, 3, 4, 5, 6, 7, 8, 9).iterator(), 100);
+        // the scan exits after the first entry (LIMIT 1), only one page has been read ahead
+        assertEquals(Long.valueOf(1), it.next().getValue());
+        assertEquals(Arrays.asList(1L, 2L), reads);
+
+        // reads which are not used are dropped, failed reads are ignored
+        prefetcher = new PagePrefetcher(4, Long.MAX_VALUE, 1024, pageId -> false, pageId -> {
+            CompletableFuture<List<Record>> read = new CompletableFuture<>();
+            read.completeExceptionally(new IllegalStateException());
+            return read;
+        });
+        it = prefetcher.lookAhead(entries(1, 2).iterator(), 100);
+        assertEquals(Long.valueOf(1), it.next().getValue());
+        assertNull(prefetcher.take(1L));
+        assertNull(prefetcher.take(1L));
+        assertEquals(2, prefetcher.getPrefetchedPages());
+        assertEquals(0, prefetcher.getUsedPages());
+    }
+
+    @Test
+    public void testUnusedReadsAreCancelled() throws Exception {
+        List<CompletableFuture<List<Record>>> reads = new ArrayList<>();
+        PagePrefetcher prefetcher = new PagePrefetcher(4, Long.MAX_VALUE, 1024, pageId -> false, pageId -> {
+            CompletableFuture<List<Record>> read = new CompletableFuture<>();
+            reads.add(read);
+            return read;
+        });
+        // the scan does not need the pages read ahead (they were already in memory)
+        Iterator<Map.Entry<Bytes, Long>> it = prefetcher.lookAhead(entries(1, 2).iterator(), 100);
+        while (it.hasNext()) {
+            it.next();
+        }
+        assertEquals(2, reads.size());
+        assertTrue(reads.get(0).isCancelled());
+        assertTrue(reads.get(1).isCancelled());
+        assertEquals(0, prefetcher.getPendingMemory());
+    }
+
+    @Test
+    public void testReadAheadMemoryIsBounded() throws Exception {
+        List<Long> pages = new ArrayList<>();
+        List<CompletableFuture<List<Record>>> reads = new ArrayList<>();
+        PagePrefetcher prefetcher = new PagePrefetcher(4, 1024, 1024, pageId -> false, pageId -> {
+            pages.add(pageId);
+            CompletableFuture<List<Record>> read = new CompletableFuture<>();
+            reads.add(read);
+            return read;
+        });
+        Iterator<Map.Entry<Bytes, Long>> it = prefetcher.lookAhead(entries(1, 2, 3).iterator(), 100);
+        assertEquals(Long.valueOf(1), it.next().getValue());
+        // a pending read counts as a full page, there is no room for the next page
+        assertEquals(Arrays.asList(1L), pages);
+        assertEquals(1024, prefetcher.getPendingMemory());
+
+        // once read the page counts as the size of its records
+        reads.get(0).complete(Collections.singletonList(new Record(Bytes.from_int(1), Bytes.from_int(1))));
+        assertTrue(prefetcher.getPendingMemory() < 1024);
+        assertNotNull(prefetcher.take(1L));
+
+        // page 2 is read synchronously
+        assertEquals(Long.valueOf(2), it.next().getValue());
+        assertEquals(Arrays.asList(1L, 3L), pages);
+    }
+
+    @Test
+    public void testScanReadsPagesAhead() throws Exception {
+        ServerConfiguration configuration = new ServerConfiguration();
+        configuration.set(ServerConfiguration.PROPERTY_MAX_LOGICAL_PAGE_SIZE, 2048);
+        configuration.set(ServerConfiguration.PROPERTY_SCAN_PREFETCH_PAGES, 8);
+        Path baseDir = folder.newFolder().toPath();
+        CountingDataStorageManager dataStorageManager = new CountingDataStorageManager(baseDir.resolve("data"));
+        try (DBManager manager = new DBManager("localhost", new FileMetadataStorageManager(baseDir.resolve("metadata")),
+                dataStorageManager, new FileCommitLogManager(baseDir.resolve("logs")), baseDir.resolve("tmp"), null,
+                configuration, null)) {
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+            execute(manager, "CREATE TABLE t1 (id int primary key, n int, s string)", Collections.emptyList());
+            for (int i = 0; i < 2000; i++) {
+                executeUpdate(manager, "INSERT INTO t1(id,n,s) values(?,?,?)", Arrays.asList(i, i, "value" + i));
+            }
+            manager.checkpoint();
+        }
+
+        // pages are not in memory after the restart
+        dataStorageManager = new CountingDataStorageManager(baseDir.resolve("data"));
+        try (DBManager manager = new DBManager("localhost", new FileMetadataStorageManager(baseDir.resolve("metadata")),
+                dataStorageManager, new FileCommitLogManager(baseDir.resolve("logs")), baseDir.resolve("tmp"), null,
+                configuration, null)) {
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+
+            Set<Integer> ids = new HashSet<>();
+            try (DataScanner scan = scan(manager, "SELECT id FROM t1", Collections.emptyList())) {
+                for (DataAccessor record : scan.consume()) {
+                    assertTrue(ids.add((Integer) record.get("id")));
+                }
+            }
+            assertEquals(2000, ids.size());
+            assertTrue("async reads " + dataStorageManager.asyncReads, dataStorageManager.asyncReads.get() > 10);
+
+            // filter on a column without indexes, sorted
+            try (DataScanner scan = scan(manager, "SELECT id FROM t1 WHERE n>=? ORDER BY n", Arrays.asList(1000))) {
+                List<DataAccessor> records = scan.consume();
+                assertEquals(1000, records.size());
+                for (int i = 0; i < 1000; i++) {
+                    assertEquals(1000 + i, records.get(i).get("id"));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import static herddb.core.TestUtils.beginTransaction;
+import static herddb.core.TestUtils.commitTransaction;
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.roolbackTransaction;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import herddb.file.FileCommitLogManager;
+import herddb.file.FileDataStorageManager;
+import herddb.file.FileMetadataStorageManager;
+import herddb.model.DataScanner;
+import herddb.model.TableSpace;
+import herddb.model.TransactionContext;
+import herddb.server.ServerConfiguration;
+import herddb.utils.Bytes;
+import herddb.utils.DataAccessor;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests about the parallel replay of the log during recovery
+ *
+ * @author enrico.olivelli
+ */
+public class ParallelRecoveryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DBManager buildManager(Path baseDir, int parallelism) {
+        ServerConfiguration configuration = new ServerConfiguration();
+        configuration.set(ServerConfiguration.PROPERTY_RECOVERY_PARALLELISM, parallelism);
+        return new DBManager("localhost",
+                new FileMetadataStorageManager(baseDir.resolve("metadata")),
+                new FileDataStorageManager(baseDir.resolve("data")),
+                new FileCommitLogManager(baseDir.resolve("logs")),
+                baseDir.resolve("tmp"), null, configuration, NullStatsLogger.INSTANCE);
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        Path baseDir = folder.newFolder().toPath();
+        Map<String, Map<Integer, Integer>> expected = new TreeMap<>();
+        try (DBManager manager = buildManager(baseDir, 4)) {
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+            for (String table : Arrays.asList("t1", "t2")) {
+                execute(manager, "CREATE TABLE " + table + " (id int primary key, n int)", Collections.emptyList());
+                execute(manager, "CREATE INDEX " + table + "_n ON " + table + "(n)", Collections.emptyList());
+                Map<Integer, Integer> data = new TreeMap<>();
+                expected.put(table, data);
+                for (int i = 0; i < 500; i++) {
+                    executeUpdate(manager, "INSERT INTO " + table + "(id,n) values(?,?)", Arrays.asList(i, i));
+                    data.put(i, i);
+                }
+                for (int i = 0; i < 500; i += 3) {
+                    executeUpdate(manager, "UPDATE " + table + " set n=n+1 WHERE id=?", Arrays.asList(i));
+                    data.put(i, data.get(i) + 1);
+                }
+                for (int i = 0; i < 500; i += 7) {
+                    executeUpdate(manager, "DELETE FROM " + table + " WHERE id=?", Arrays.asList(i));
+                    data.remove(i);
+                }
+                // the same record is changed many times, inside and outside transactions
+                for (int i = 0; i < 10; i++) {
+                    long tx = beginTransaction(manager, TableSpace.DEFAULT);
+                    executeUpdate(manager, "UPDATE " + table + " set n=n+1 WHERE id=1", Collections.emptyList(), new TransactionContext(tx));
+                    executeUpdate(manager, "INSERT INTO " + table + "(id,n) values(?,?)", Arrays.asList(1000 + i, i), new TransactionContext(tx));
+                    executeUpdate(manager, "DELETE FROM " + table + " WHERE id=?", Arrays.asList(2 + i), new TransactionContext(tx));
+                    if (i % 2 == 0) {
+                        commitTransaction(manager, TableSpace.DEFAULT, tx);
+                        data.put(1, data.get(1) + 1);
+                        data.put(1000 + i, i);
+                        data.remove(2 + i);
+                    } else {
+                        roolbackTransaction(manager, TableSpace.DEFAULT, tx);
+                    }
+                    executeUpdate(manager, "UPDATE " + table + " set n=n+1 WHERE id=1", Collections.emptyList());
+                    data.put(1, data.get(1) + 1);
+                }
+            }
+            // a transaction which is still running at shutdown
+            long tx = beginTransaction(manager, TableSpace.DEFAULT);
+            executeUpdate(manager, "UPDATE t1 set n=n+1 WHERE id=1", Collections.emptyList(), new TransactionContext(tx));
+            checkData(manager, expected);
+        }
+
+        try (DBManager manager = buildManager(baseDir, 4)) {
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+            checkData(manager, expected);
+            // secondary indexes have been recovered as well
+            Integer n = expected.get("t2").get(1);
+            long count = expected.get("t2").values().stream().filter(n::equals).count();
+            try (DataScanner scan = scan(manager, "SELECT id FROM t2 WHERE n=?", Arrays.asList(n))) {
+                assertEquals(count, scan.consume().size());
+            }
+        }
+    }
+
+    private static void checkData(DBManager manager, Map<String, Map<Integer, Integer>> expected) throws Exception {
+        for (Map.Entry<String, Map<Integer, Integer>> table : expected.entrySet()) {
+            Map<Integer, Integer> actual = new TreeMap<>();
+            try (DataScanner scan = scan(manager, "SELECT id, n FROM " + table.getKey(), Collections.emptyList())) {
+                for (DataAccessor record : scan.consume()) {
+                    actual.put((Integer) record.get("id"), (Integer) record.get("n"));
+                }
+            }
+            assertEquals(table.getValue(), actual);
+        }
+    }
+
+    @Test
+    public void testWorkersKeepOrderOfRecords() throws Exception {
+        Map<Bytes, List<Integer>> applied = new ConcurrentHashMap<>();
+        try (RecoveryApplyWorkers workers = new RecoveryApplyWorkers("test", 4, 10)) {
+            for (int i = 0; i < 10000; i++) {
+                Bytes key = Bytes.from_int(i % 17);
+                int sequence = i;
+                workers.submit("t1", key, () -> {
+                    applied.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>())).add(sequence);
+                });
+            }
+            workers.drain();
+        }
+        assertEquals(17, applied.size());
+        int total = 0;
+        for (List<Integer> sequences : applied.values()) {
+            for (int i = 1; i < sequences.size(); i++) {
+                assertTrue(sequences.get(i - 1) < sequences.get(i));
+            }
+            total += sequences.size();
+        }
+        assertEquals(10000, total);
+    }
+
+    @Test
+    public void testErrorIsReported() throws Exception {
+        AtomicInteger executed = new AtomicInteger();
+        try (RecoveryApplyWorkers workers = new RecoveryApplyWorkers("test", 2, 10)) {
+            workers.submit("t1", Bytes.from_int(1), () -> {
+                throw new IllegalStateException("corrupted");
+            });
+            try {
+                workers.drain();
+                fail();
+            } catch (RuntimeException err) {
+                assertTrue(err.getCause() instanceof IllegalStateException);
+            }
+            try {
+                workers.submit("t1", Bytes.from_int(2), executed::incrementAndGet);
+                fail();
+            } catch (RuntimeException err) {
+                assertTrue(err.getCause() instanceof IllegalStateException);
+            }
+        }
+        assertEquals(0, executed.get());
+    }
+}
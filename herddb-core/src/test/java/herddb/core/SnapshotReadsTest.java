@@ -0,0 +1,119 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import static herddb.core.TestUtils.beginTransaction;
+import static herddb.core.TestUtils.commitTransaction;
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertEquals;
+import herddb.mem.MemoryCommitLogManager;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.mem.MemoryMetadataStorageManager;
+import herddb.model.DataScanner;
+import herddb.model.TableSpace;
+import herddb.model.TransactionContext;
+import herddb.server.ServerConfiguration;
+import herddb.utils.DataAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests about reads from a snapshot inside transactions
+ *
+ * @author enrico.olivelli
+ */
+public class SnapshotReadsTest {
+
+    private static List<String> select(DBManager manager, String query, List<Object> parameters, TransactionContext transactionContext) throws Exception {
+        List<String> result = new ArrayList<>();
+        try (DataScanner scan = scan(manager, query, parameters, transactionContext)) {
+            for (DataAccessor record : scan.consume()) {
+                result.add(record.get("id") + "=" + record.get("n"));
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testReadFromSnapshot() throws Exception {
+        ServerConfiguration configuration = new ServerConfiguration();
+        configuration.set(ServerConfiguration.PROPERTY_TABLEMANAGER_SNAPSHOT_READS, true);
+        try (DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(),
+                new MemoryCommitLogManager(), null, null, configuration, null)) {
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+            execute(manager, "CREATE TABLE t1 (id int primary key, n int)", Collections.emptyList());
+            execute(manager, "CREATE INDEX t1_n ON t1(n)", Collections.emptyList());
+            for (int i = 1; i <= 5; i++) {
+                executeUpdate(manager, "INSERT INTO t1(id,n) values(?,?)", Arrays.asList(i, i));
+            }
+            TableManager tableManager = (TableManager) manager.getTableSpaceManager(TableSpace.DEFAULT).getTableManager("t1");
+
+            long tx = beginTransaction(manager, TableSpace.DEFAULT);
+            TransactionContext reader = new TransactionContext(tx);
+            List<String> snapshot = Arrays.asList("1=1", "2=2", "3=3", "4=4", "5=5");
+            assertEquals(snapshot, select(manager, "SELECT id,n FROM t1 ORDER BY id", Collections.emptyList(), reader));
+
+            // the reader does not hold locks, writers do not wait
+            executeUpdate(manager, "UPDATE t1 set n=100 WHERE id=1", Collections.emptyList());
+            executeUpdate(manager, "DELETE FROM t1 WHERE id=2", Collections.emptyList());
+            executeUpdate(manager, "INSERT INTO t1(id,n) values(6,6)", Collections.emptyList());
+            long writer = beginTransaction(manager, TableSpace.DEFAULT);
+            executeUpdate(manager, "UPDATE t1 set n=300 WHERE id=3", Collections.emptyList(), new TransactionContext(writer));
+            executeUpdate(manager, "UPDATE t1 set n=301 WHERE id=3", Collections.emptyList(), new TransactionContext(writer));
+            commitTransaction(manager, TableSpace.DEFAULT, writer);
+            assertEquals(Arrays.asList("1=100", "3=301", "4=4", "5=5", "6=6"),
+                    select(manager, "SELECT id,n FROM t1 ORDER BY id", Collections.emptyList(), TransactionContext.NO_TRANSACTION));
+
+            // the reader still sees the snapshot
+            assertEquals(snapshot, select(manager, "SELECT id,n FROM t1 ORDER BY id", Collections.emptyList(), reader));
+            assertEquals(Arrays.asList("2=2", "3=3"), select(manager, "SELECT id,n FROM t1 WHERE n>=2 and n<=3 ORDER BY id", Collections.emptyList(), reader));
+            assertEquals(Arrays.asList("1=1"), select(manager, "SELECT id,n FROM t1 WHERE id=1", Collections.emptyList(), reader));
+            assertEquals(Arrays.asList("2=2"), select(manager, "SELECT id,n FROM t1 WHERE id=2", Collections.emptyList(), reader));
+            assertEquals(Collections.emptyList(), select(manager, "SELECT id,n FROM t1 WHERE id=6", Collections.emptyList(), reader));
+            // the secondary index does not point to the old value
+            assertEquals(Arrays.asList("1=1"), select(manager, "SELECT id,n FROM t1 WHERE n=1", Collections.emptyList(), reader));
+            assertEquals(Arrays.asList("3=3"), select(manager, "SELECT id,n FROM t1 WHERE n=3", Collections.emptyList(), reader));
+
+            // the transaction sees its own changes
+            executeUpdate(manager, "UPDATE t1 set n=40 WHERE id=4", Collections.emptyList(), reader);
+            executeUpdate(manager, "INSERT INTO t1(id,n) values(7,7)", Collections.emptyList(), reader);
+            assertEquals(Arrays.asList("1=1", "2=2", "3=3", "4=40", "5=5", "7=7"),
+                    select(manager, "SELECT id,n FROM t1 ORDER BY id", Collections.emptyList(), reader));
+            // versions of 1, 2, 3 and 6
+            assertEquals(4, tableManager.getRecordVersionsCount());
+
+            commitTransaction(manager, TableSpace.DEFAULT, tx);
+            assertEquals(0, tableManager.getRecordVersionsCount());
+            assertEquals(Arrays.asList("1=100", "3=301", "4=40", "5=5", "6=6", "7=7"),
+                    select(manager, "SELECT id,n FROM t1 ORDER BY id", Collections.emptyList(), TransactionContext.NO_TRANSACTION));
+
+            // versions are not saved without active snapshots
+            executeUpdate(manager, "UPDATE t1 set n=n+1", Collections.emptyList());
+            assertEquals(0, tableManager.getRecordVersionsCount());
+        }
+    }
+}
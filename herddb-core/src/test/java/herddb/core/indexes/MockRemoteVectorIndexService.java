@@ -28,6 +28,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -40,9 +41,11 @@ public class MockRemoteVectorIndexService implements RemoteVectorIndexService {
 
     private final ConcurrentHashMap<String, List<VectorEntry>> indexes = new ConcurrentHashMap<>();
     private final AtomicInteger searchCallCount = new AtomicInteger();
+    private final AtomicInteger searchBatchCallCount = new AtomicInteger();
     private final java.util.List<Integer> requestedLimits =
             java.util.Collections.synchronizedList(new ArrayList<>());
     private volatile RuntimeException nextSearchThrows;
+    private volatile Set<Bytes> lastAllowedPrimaryKeys;
 
     /**
      * Returns the number of times {@link #search} has been invoked since this
@@ -71,8 +74,25 @@ public class MockRemoteVectorIndexService implements RemoteVectorIndexService {
         this.nextSearchThrows = e;
     }
 
+    /**
+     * Returns the pre-filter passed to the last {@link #search} or
+     * {@link #searchBatch} call, null if the call had no filter.
+     */
+    public Set<Bytes> getLastAllowedPrimaryKeys() {
+        return lastAllowedPrimaryKeys;
+    }
+
+    /**
+     * Returns the number of times {@link #searchBatch} has been invoked, the
+     * queries of a batch are not counted by {@link #getSearchCallCount()}.
+     */
+    public int getSearchBatchCallCount() {
+        return searchBatchCallCount.get();
+    }
+
     public void resetSearchCallCount() {
         searchCallCount.set(0);
+        searchBatchCallCount.set(0);
         synchronized (requestedLimits) {
             requestedLimits.clear();
         }
@@ -99,6 +119,13 @@ public class MockRemoteVectorIndexService implements RemoteVectorIndexService {
     @Override
     public List<Map.Entry<Bytes, Float>> search(String tablespace, String table, String index,
                                                   float[] vector, int topK) {
+        return search(tablespace, table, index, vector, topK, null);
+    }
+
+    @Override
+    public List<Map.Entry<Bytes, Float>> search(String tablespace, String table, String index,
+                                                  float[] vector, int topK, Set<Bytes> allowedPrimaryKeys) {
+        lastAllowedPrimaryKeys = allowedPrimaryKeys;
         searchCallCount.incrementAndGet();
         requestedLimits.add(topK);
         RuntimeException toThrow = this.nextSearchThrows;
@@ -106,10 +133,38 @@ public class MockRemoteVectorIndexService implements RemoteVectorIndexService {
             this.nextSearchThrows = null;
             throw toThrow;
         }
+        return bruteForceSearch(table, index, vector, topK, allowedPrimaryKeys);
+    }
+
+    @Override
+    public List<List<Map.Entry<Bytes, Float>>> searchBatch(String tablespace, String table, String index,
+                                                            List<float[]> vectors, int topK) {
+        return searchBatch(tablespace, table, index, vectors, topK, null);
+    }
+
+    @Override
+    public List<List<Map.Entry<Bytes, Float>>> searchBatch(String tablespace, String table, String index,
+                                                            List<float[]> vectors, int topK,
+                                                            Set<Bytes> allowedPrimaryKeys) {
+        lastAllowedPrimaryKeys = allowedPrimaryKeys;
+        searchBatchCallCount.incrementAndGet();
+        requestedLimits.add(topK);
+        List<List<Map.Entry<Bytes, Float>>> results = new ArrayList<>(vectors.size());
+        for (float[] vector : vectors) {
+            results.add(bruteForceSearch(table, index, vector, topK, allowedPrimaryKeys));
+        }
+        return results;
+    }
+
+    private List<Map.Entry<Bytes, Float>> bruteForceSearch(String table, String index,
+                                                            float[] vector, int topK, Set<Bytes> allowedPrimaryKeys) {
         String key = indexKey(table, index);
         List<VectorEntry> entries = indexes.getOrDefault(key, Collections.emptyList());
         List<Map.Entry<Bytes, Float>> results = new ArrayList<>();
         for (VectorEntry entry : entries) {
+            if (allowedPrimaryKeys != null && !allowedPrimaryKeys.contains(entry.pk)) {
+                continue;
+            }
             float score = cosineSimilarity(vector, entry.vector);
             results.add(new AbstractMap.SimpleEntry<>(entry.pk, score));
         }
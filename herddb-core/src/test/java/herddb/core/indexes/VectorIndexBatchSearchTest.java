@@ -0,0 +1,204 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+*/
+
+
+package herddb.core.indexes;
+
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import herddb.core.DBManager;
+import herddb.mem.MemoryCommitLogManager;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.mem.MemoryMetadataStorageManager;
+import herddb.model.DataScanner;
+import herddb.model.StatementExecutionException;
+import herddb.model.TableSpace;
+import herddb.server.ServerConfiguration;
+import herddb.utils.Bytes;
+import herddb.utils.DataAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests about the vector search of every row of a VALUES list (LATERAL join
+ * with an ann_of() query), which is executed with a single batched search.
+ *
+ * @author enrico.olivelli
+ */
+public class VectorIndexBatchSearchTest {
+
+    private static final int ROWS = 200;
+
+    @Test
+    public void testBatchSearchCalcite() throws Exception {
+        testBatchSearch(ServerConfiguration.PLANNER_TYPE_CALCITE);
+    }
+
+    @Test
+    public void testBatchSearchJSQLParser() throws Exception {
+        testBatchSearch(ServerConfiguration.PLANNER_TYPE_JSQLPARSER);
+    }
+
+    private void testBatchSearch(String plannerType) throws Exception {
+        ServerConfiguration config = new ServerConfiguration();
+        config.set(ServerConfiguration.PROPERTY_PLANNER_TYPE, plannerType);
+        MockRemoteVectorIndexService mockService = new MockRemoteVectorIndexService();
+        Random random = new Random(1234);
+        float[][] vectors = new float[ROWS][];
+        try (DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(),
+                new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null, config, null)) {
+            manager.setRemoteVectorIndexService(mockService);
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+
+            execute(manager, "CREATE TABLE t1 (id int primary key, cat int, vec floata not null)",
+                    Collections.emptyList());
+            execute(manager, "CREATE VECTOR INDEX vidx ON t1(vec)", Collections.emptyList());
+            for (int i = 0; i < ROWS; i++) {
+                vectors[i] = new float[]{random.nextFloat(), random.nextFloat(), random.nextFloat()};
+                executeUpdate(manager, "INSERT INTO t1(id, cat, vec) VALUES(?, ?, ?)",
+                        Arrays.asList(i, i % 2, vectors[i]));
+                mockService.addVector("t1", "vidx", Bytes.from_int(i), vectors[i]);
+            }
+            float[][] queries = {{0.3f, 0.5f, 0.2f}, {0.9f, 0.1f, 0.1f}, {0.1f, 0.1f, 0.8f}};
+
+            // one batched request for all the query vectors
+            mockService.resetSearchCallCount();
+            try (DataScanner scan = scan(manager,
+                    "SELECT q.qid, t.id FROM (VALUES (0, ?), (1, ?), (2, ?)) AS q(qid, qvec), "
+                            + "LATERAL (SELECT id FROM t1 ORDER BY ann_of(vec, q.qvec) DESC LIMIT 3) AS t",
+                    Arrays.asList(queries[0], queries[1], queries[2]))) {
+                List<DataAccessor> records = scan.consume();
+                assertEquals(9, records.size());
+                for (int q = 0; q < queries.length; q++) {
+                    List<Integer> ids = new ArrayList<>();
+                    for (DataAccessor record : records) {
+                        if (((Number) record.get("qid")).intValue() == q) {
+                            ids.add((Integer) record.get("id"));
+                        }
+                    }
+                    assertEquals(expected(vectors, queries[q], -1, 3), ids);
+                }
+            }
+            assertEquals(1, mockService.getSearchBatchCallCount());
+            assertEquals(0, mockService.getSearchCallCount());
+
+            // WHERE clause in the inner query, sort on the columns of both sides
+            mockService.resetSearchCallCount();
+            try (DataScanner scan = scan(manager,
+                    "SELECT t.id, q.qid FROM (VALUES (0, ?), (1, ?)) AS q(qid, qvec) "
+                            + "CROSS JOIN LATERAL (SELECT id FROM t1 WHERE cat=? ORDER BY ann_of(vec, q.qvec) DESC LIMIT 2) AS t "
+                            + "ORDER BY q.qid DESC, t.id",
+                    Arrays.asList(queries[0], queries[1], 1))) {
+                List<DataAccessor> records = scan.consume();
+                assertEquals(4, records.size());
+                List<Integer> ids0 = new ArrayList<>(expected(vectors, queries[0], 1, 2));
+                List<Integer> ids1 = new ArrayList<>(expected(vectors, queries[1], 1, 2));
+                Collections.sort(ids0);
+                Collections.sort(ids1);
+                List<Integer> expected = new ArrayList<>(ids1);
+                expected.addAll(ids0);
+                List<Integer> ids = new ArrayList<>();
+                for (DataAccessor record : records) {
+                    ids.add((Integer) record.get("id"));
+                }
+                assertEquals(expected, ids);
+                assertEquals(1, ((Number) records.get(0).get("qid")).intValue());
+                assertEquals(0, ((Number) records.get(3).get("qid")).intValue());
+            }
+            assertEquals(1, mockService.getSearchBatchCallCount());
+
+            // with an index on the WHERE clause the keys of the matching
+            // records are sent with the batch
+            execute(manager, "CREATE INDEX tcat ON t1(cat)", Collections.emptyList());
+            mockService.resetSearchCallCount();
+            try (DataScanner scan = scan(manager,
+                    "SELECT q.qid, t.id FROM (VALUES (0, ?), (1, ?)) AS q(qid, qvec), "
+                            + "LATERAL (SELECT id FROM t1 WHERE cat=? ORDER BY ann_of(vec, q.qvec) DESC LIMIT 2) AS t",
+                    Arrays.asList(queries[0], queries[1], 0))) {
+                List<DataAccessor> records = scan.consume();
+                assertEquals(4, records.size());
+                for (int q = 0; q < 2; q++) {
+                    List<Integer> ids = new ArrayList<>();
+                    for (DataAccessor record : records) {
+                        if (((Number) record.get("qid")).intValue() == q) {
+                            ids.add((Integer) record.get("id"));
+                        }
+                    }
+                    assertEquals(expected(vectors, queries[q], 0, 2), ids);
+                }
+            }
+            assertEquals(1, mockService.getSearchBatchCallCount());
+            assertEquals(0, mockService.getSearchCallCount());
+            assertEquals(ROWS / 2, mockService.getLastAllowedPrimaryKeys().size());
+
+            // the search returns the most similar vectors first
+            try {
+                scan(manager,
+                        "SELECT q.qid, t.id FROM (VALUES (0, ?)) AS q(qid, qvec), "
+                                + "LATERAL (SELECT id FROM t1 ORDER BY ann_of(vec, q.qvec) ASC LIMIT 3) AS t",
+                        Arrays.asList(queries[0])).close();
+                fail();
+            } catch (StatementExecutionException err) {
+                assertTrue(err.getMessage(), err.getMessage().contains("DESC"));
+            }
+
+            // the inner query must have a LIMIT
+            try {
+                scan(manager,
+                        "SELECT q.qid, t.id FROM (VALUES (0, ?)) AS q(qid, qvec), "
+                                + "LATERAL (SELECT id FROM t1 ORDER BY ann_of(vec, q.qvec) DESC) AS t",
+                        Arrays.asList(queries[0])).close();
+                fail();
+            } catch (StatementExecutionException err) {
+                assertTrue(err.getMessage(), err.getMessage().contains("LIMIT"));
+            }
+        }
+    }
+
+    private static List<Integer> expected(float[][] vectors, float[] query, int cat, int limit) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < vectors.length; i++) {
+            if (cat < 0 || i % 2 == cat) {
+                ids.add(i);
+            }
+        }
+        ids.sort(Comparator.comparingDouble((Integer id) -> cosineSimilarity(query, vectors[id])).reversed());
+        return ids.subList(0, limit);
+    }
+
+    private static double cosineSimilarity(float[] a, float[] b) {
+        float dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+}
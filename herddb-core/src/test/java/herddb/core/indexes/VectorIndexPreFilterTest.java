@@ -0,0 +1,163 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+*/
+
+
+package herddb.core.indexes;
+
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import herddb.core.DBManager;
+import herddb.mem.MemoryCommitLogManager;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.mem.MemoryMetadataStorageManager;
+import herddb.model.DataScanner;
+import herddb.model.TableSpace;
+import herddb.server.ServerConfiguration;
+import herddb.utils.Bytes;
+import herddb.utils.DataAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+/**
+ * Tests about the pre-filter passed to the vector search when the WHERE
+ * clause of an ann_of() query can be evaluated using an index.
+ *
+ * @author enrico.olivelli
+ */
+public class VectorIndexPreFilterTest {
+
+    private static final int ROWS = 500;
+    private static final int TENANTS = 50;
+
+    @Test
+    public void testPreFilterCalcite() throws Exception {
+        testPreFilter(ServerConfiguration.PLANNER_TYPE_CALCITE);
+    }
+
+    @Test
+    public void testPreFilterJSQLParser() throws Exception {
+        testPreFilter(ServerConfiguration.PLANNER_TYPE_JSQLPARSER);
+    }
+
+    private void testPreFilter(String plannerType) throws Exception {
+        ServerConfiguration config = new ServerConfiguration();
+        config.set(ServerConfiguration.PROPERTY_PLANNER_TYPE, plannerType);
+        MockRemoteVectorIndexService mockService = new MockRemoteVectorIndexService();
+        Random random = new Random(1234);
+        float[][] vectors = new float[ROWS][];
+        try (DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(),
+                new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null, config, null)) {
+            manager.setRemoteVectorIndexService(mockService);
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+
+            execute(manager, "CREATE TABLE t1 (id int primary key, tenant int, cat int, vec floata not null)",
+                    Collections.emptyList());
+            execute(manager, "CREATE INDEX tenantidx ON t1(tenant)", Collections.emptyList());
+            execute(manager, "CREATE VECTOR INDEX vidx ON t1(vec)", Collections.emptyList());
+            for (int i = 0; i < ROWS; i++) {
+                vectors[i] = new float[]{random.nextFloat(), random.nextFloat(), random.nextFloat()};
+                executeUpdate(manager, "INSERT INTO t1(id, tenant, cat, vec) VALUES(?, ?, ?, ?)",
+                        Arrays.asList(i, i % TENANTS, i % 2, vectors[i]));
+                mockService.addVector("t1", "vidx", Bytes.from_int(i), vectors[i]);
+            }
+            float[] query = {0.3f, 0.5f, 0.2f};
+            String annOf = ServerConfiguration.PLANNER_TYPE_CALCITE.equals(plannerType)
+                    ? "ann_of(vec, CAST(? AS FLOAT ARRAY))" : "ann_of(vec, ?)";
+
+            // selective filter on an indexed column: a single search, restricted to the tenant
+            mockService.resetSearchCallCount();
+            try (DataScanner scan = scan(manager,
+                    "SELECT id FROM t1 WHERE tenant=? ORDER BY " + annOf + " DESC LIMIT 3",
+                    Arrays.asList(7, query))) {
+                List<Integer> ids = scan.consume().stream()
+                        .map(r -> (Integer) r.get("id"))
+                        .collect(Collectors.toList());
+                assertEquals(expected(vectors, query, 7, 3), ids);
+            }
+            assertEquals(1, mockService.getSearchCallCount());
+            assertEquals(Arrays.asList(3), mockService.getRequestedLimits());
+            HashSet<Bytes> tenantKeys = new HashSet<>();
+            for (int i = 7; i < ROWS; i += TENANTS) {
+                tenantKeys.add(Bytes.from_int(i));
+            }
+            assertEquals(tenantKeys, mockService.getLastAllowedPrimaryKeys());
+
+            // LIMIT larger than the number of matching records
+            mockService.resetSearchCallCount();
+            try (DataScanner scan = scan(manager,
+                    "SELECT id FROM t1 WHERE tenant=? ORDER BY " + annOf + " DESC LIMIT 100",
+                    Arrays.asList(7, query))) {
+                assertEquals(ROWS / TENANTS, scan.consume().size());
+            }
+            assertEquals(Arrays.asList(ROWS / TENANTS), mockService.getRequestedLimits());
+
+            // no record matches, the indexing service is not called at all
+            mockService.resetSearchCallCount();
+            try (DataScanner scan = scan(manager,
+                    "SELECT id FROM t1 WHERE tenant=? ORDER BY " + annOf + " DESC LIMIT 3",
+                    Arrays.asList(TENANTS + 1, query))) {
+                assertEquals(0, scan.consume().size());
+            }
+            assertEquals(0, mockService.getSearchCallCount());
+
+            // no index on the filtered column: over-fetch and filter the results
+            mockService.resetSearchCallCount();
+            try (DataScanner scan = scan(manager,
+                    "SELECT id FROM t1 WHERE cat=? ORDER BY " + annOf + " DESC LIMIT 3",
+                    Arrays.asList(1, query))) {
+                List<DataAccessor> records = scan.consume();
+                assertEquals(3, records.size());
+                for (DataAccessor record : records) {
+                    assertEquals(1, ((Integer) record.get("id")) % 2);
+                }
+            }
+            assertNull(mockService.getLastAllowedPrimaryKeys());
+        }
+    }
+
+    private static List<Integer> expected(float[][] vectors, float[] query, int tenant, int limit) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = tenant; i < vectors.length; i += TENANTS) {
+            ids.add(i);
+        }
+        ids.sort(Comparator.comparingDouble((Integer id) -> cosineSimilarity(query, vectors[id])).reversed());
+        return ids.subList(0, limit);
+    }
+
+    private static double cosineSimilarity(float[] a, float[] b) {
+        float dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+}
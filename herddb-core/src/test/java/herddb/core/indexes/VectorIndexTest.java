@@ -311,6 +311,85 @@ public class VectorIndexTest {
         }
     }
 
+    /**
+     * Brute-force ann_of() with LIMIT is executed by VectorANNScanOp with a
+     * top-K search, WHERE, OFFSET and NULL vectors must be honoured.
+     */
+    @Test
+    public void testAnnOfBruteForceTopK() throws Exception {
+        Path dataPath = folder.newFolder("data").toPath();
+        Path logsPath = folder.newFolder("logs").toPath();
+        Path metadataPath = folder.newFolder("metadata").toPath();
+        Path tmoDir = folder.newFolder("tmo").toPath();
+
+        try (DBManager manager = new DBManager("localhost",
+                new FileMetadataStorageManager(metadataPath),
+                new FileDataStorageManager(dataPath),
+                new FileCommitLogManager(logsPath),
+                tmoDir, null)) {
+
+            manager.start();
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement(
+                    "tblspace1", Collections.singleton("localhost"), "localhost", 1, 0, 0);
+            manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(),
+                    TransactionContext.NO_TRANSACTION);
+            manager.waitForTablespace("tblspace1", 10000);
+
+            execute(manager, "CREATE TABLE tblspace1.t1 (id int primary key, vec floata, category string)",
+                    Collections.emptyList());
+
+            // vectors at increasing angles from the query (1, 0)
+            for (int i = 0; i < 20; i++) {
+                double angle = Math.toRadians(i * 4);
+                float[] vec = {(float) Math.cos(angle), (float) Math.sin(angle)};
+                executeUpdate(manager, "INSERT INTO tblspace1.t1(id, vec, category) VALUES(?, ?, ?)",
+                        Arrays.asList(i, vec, i % 2 == 0 ? "even" : "odd"));
+            }
+            executeUpdate(manager, "INSERT INTO tblspace1.t1(id, category) VALUES(?, ?)",
+                    Arrays.asList(100, "even"));
+            float[] query = {1.0f, 0.0f};
+
+            TranslatedQuery translated = manager.getPlanner().translate(TableSpace.DEFAULT,
+                    "SELECT id FROM tblspace1.t1 ORDER BY ann_of(vec, cast(? as FLOAT ARRAY)) DESC LIMIT 3",
+                    Arrays.asList((Object) query), true, true, true, -1);
+            VectorANNScanOp vecOp = findVectorANNScanOp(translated.plan.originalRoot);
+            assertNotNull(vecOp);
+            assertTrue(vecOp.hasLimit());
+
+            try (DataScanner scan = scan(manager,
+                    "SELECT id FROM tblspace1.t1 ORDER BY ann_of(vec, cast(? as FLOAT ARRAY)) DESC LIMIT 3",
+                    Arrays.asList((Object) query))) {
+                List<DataAccessor> results = scan.consume();
+                assertEquals(3, results.size());
+                assertEquals(0, results.get(0).get("id"));
+                assertEquals(1, results.get(1).get("id"));
+                assertEquals(2, results.get(2).get("id"));
+            }
+
+            try (DataScanner scan = scan(manager,
+                    "SELECT id FROM tblspace1.t1 WHERE category='odd' "
+                    + "ORDER BY ann_of(vec, cast(? as FLOAT ARRAY)) DESC LIMIT 2 OFFSET 1",
+                    Arrays.asList((Object) query))) {
+                List<DataAccessor> results = scan.consume();
+                assertEquals(2, results.size());
+                assertEquals(3, results.get(0).get("id"));
+                assertEquals(5, results.get(1).get("id"));
+            }
+
+            // updated records are seen by the scan
+            executeUpdate(manager, "UPDATE tblspace1.t1 SET vec=? WHERE id=?",
+                    Arrays.asList(new float[]{1.0f, 0.0f}, 19));
+            try (DataScanner scan = scan(manager,
+                    "SELECT id FROM tblspace1.t1 ORDER BY ann_of(vec, cast(? as FLOAT ARRAY)) DESC LIMIT 1",
+                    Arrays.asList((Object) query))) {
+                List<DataAccessor> results = scan.consume();
+                assertEquals(1, results.size());
+                int first = (Integer) results.get(0).get("id");
+                assertTrue(first == 0 || first == 19);
+            }
+        }
+    }
+
     /**
      * Verifies that Index.serialize()/deserialize() round-trips the properties map correctly.
      */
@@ -0,0 +1,161 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import herddb.codec.RecordSerializer;
+import herddb.model.ColumnTypes;
+import herddb.model.Table;
+import herddb.utils.ExtendedDataInputStream;
+import herddb.utils.ExtendedDataOutputStream;
+import herddb.utils.RawString;
+import herddb.utils.SimpleByteArrayInputStream;
+import herddb.utils.VisibleByteArrayOutputStream;
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * Tests about {@link TableStatisticsCollector} and {@link ColumnStatistics}
+ *
+ * @author enrico.olivelli
+ */
+public class TableStatisticsTest {
+
+    private static final Table TABLE = Table
+            .builder()
+            .name("t1")
+            .column("id", ColumnTypes.INTEGER)
+            .column("n", ColumnTypes.INTEGER)
+            .column("s", ColumnTypes.STRING)
+            .column("b", ColumnTypes.BYTEARRAY)
+            .primaryKey("id")
+            .build();
+
+    private static TableStatistics analyze(int rows) {
+        TableStatisticsCollector collector = new TableStatisticsCollector(TABLE, 1000, 10);
+        for (int i = 0; i < rows; i++) {
+            collector.accept(RecordSerializer.makeRecord(TABLE,
+                    "id", i,
+                    "n", i % 3 == 0 ? null : i % 100,
+                    "s", "value" + (i % 1000),
+                    "b", new byte[]{(byte) (i % 5)}));
+        }
+        return collector.build(1234);
+    }
+
+    @Test
+    public void testDistinctValues() {
+        for (int cardinality : new int[]{1, 10, 1000, 100_000}) {
+            HyperLogLog sketch = new HyperLogLog();
+            for (int i = 0; i < cardinality * 3; i++) {
+                byte[] value = RecordSerializer.serialize(i % cardinality, ColumnTypes.INTEGER);
+                sketch.add(herddb.utils.XXHash64Utils.hash(value, 0, value.length));
+            }
+            long estimate = sketch.estimate();
+            assertTrue(cardinality + " -> " + estimate, Math.abs(estimate - cardinality) <= Math.max(1, cardinality * 0.03));
+        }
+    }
+
+    @Test
+    public void testCollect() {
+        TableStatistics statistics = analyze(30000);
+        assertEquals(30000, statistics.getRowCount());
+        assertEquals(1234, statistics.getAnalyzeTimestamp());
+
+        ColumnStatistics id = statistics.getColumn("id");
+        assertEquals(0, id.getNullCount());
+        assertEquals(0, id.getMinValue());
+        assertEquals(29999, id.getMaxValue());
+        assertEquals(11, id.getHistogram().length);
+        assertTrue(Math.abs(id.getDistinctValues() - 30000) < 600);
+
+        ColumnStatistics n = statistics.getColumn("n");
+        assertEquals(10000, n.getNullCount());
+        assertEquals(1.0 / 3, n.getNullFraction(), 0.001);
+        assertEquals(100, n.getDistinctValues(), 2);
+        assertEquals(0, n.getMinValue());
+        assertEquals(99, n.getMaxValue());
+
+        ColumnStatistics s = statistics.getColumn("s");
+        assertEquals(1000, s.getDistinctValues(), 20);
+        assertEquals(RawString.of("value0"), s.getMinValue());
+        assertEquals(RawString.of("value999"), s.getMaxValue());
+
+        // no histogram for arrays
+        ColumnStatistics b = statistics.getColumn("b");
+        assertEquals(5, b.getDistinctValues(), 0);
+        assertEquals(0, b.getHistogram().length);
+        assertEquals(ColumnStatistics.DEFAULT_RANGE_SELECTIVITY, b.estimateRange(null, false, new byte[]{1}, true), 0.001);
+    }
+
+    @Test
+    public void testEstimates() {
+        TableStatistics statistics = analyze(30000);
+        ColumnStatistics id = statistics.getColumn("id");
+        assertEquals(1.0 / 30000, id.estimateEquals(), 0.00001);
+        assertEquals(0, id.estimateEquals(-1), 0);
+        assertEquals(0, id.estimateEquals(30000), 0);
+        assertEquals(0.5, id.estimateRange(null, false, 15000, false), 0.05);
+        assertEquals(0.1, id.estimateRange(3000, true, 6000, false), 0.05);
+        assertEquals(0.9, id.estimateRange(3000, true, null, false), 0.05);
+        assertEquals(0, id.estimateRange(null, false, -5, true), 0);
+        assertEquals(1, id.estimateRange(-5, true, null, false), 0);
+        // different numeric types
+        assertEquals(0.5, id.estimateRange(null, false, 15000.0d, false), 0.05);
+        assertEquals(0.5, id.estimateRange(null, false, 15000L, false), 0.05);
+
+        ColumnStatistics n = statistics.getColumn("n");
+        assertEquals(2.0 / 3 / 100, n.estimateEquals(50), 0.001);
+        assertEquals(2.0 / 3 * 0.5, n.estimateRange(null, false, 50, false), 0.05);
+
+        ColumnStatistics s = statistics.getColumn("s");
+        assertEquals(0.001, s.estimateEquals("value5"), 0.0001);
+        assertEquals(0, s.estimateEquals("zzz"), 0);
+        assertTrue(s.estimateRange("value5", true, null, false) > 0.3);
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        TableStatistics statistics = analyze(5000);
+        VisibleByteArrayOutputStream out = new VisibleByteArrayOutputStream();
+        try (ExtendedDataOutputStream output = new ExtendedDataOutputStream(out)) {
+            statistics.serialize(output);
+        }
+        TableStatistics read;
+        try (ExtendedDataInputStream input = new ExtendedDataInputStream(new SimpleByteArrayInputStream(out.toByteArray()))) {
+            read = TableStatistics.deserialize(input);
+        }
+        assertEquals(statistics.getRowCount(), read.getRowCount());
+        assertEquals(statistics.getAnalyzeTimestamp(), read.getAnalyzeTimestamp());
+        assertEquals(4, read.getColumns().size());
+        assertEquals(statistics.getColumn("id").estimateRange(null, false, 100, false),
+                read.getColumn("id").estimateRange(null, false, 100, false), 0);
+        for (ColumnStatistics column : statistics.getColumns()) {
+            ColumnStatistics other = read.getColumn(column.getName());
+            assertEquals(column.getType(), other.getType());
+            assertEquals(column.getNullCount(), other.getNullCount());
+            assertEquals(column.getDistinctValues(), other.getDistinctValues());
+            assertEquals(Arrays.asList(column.getHistogram()), Arrays.asList(other.getHistogram()));
+            assertEquals(column.estimateEquals(), other.estimateEquals(), 0);
+        }
+    }
+}
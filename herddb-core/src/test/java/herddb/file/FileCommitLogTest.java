@@ -32,16 +32,29 @@ import herddb.file.FileCommitLog.CommitFileReader;
 import herddb.file.FileCommitLog.LogEntryWithSequenceNumber;
 import herddb.log.CommitLog;
 import herddb.log.CommitLogResult;
+import herddb.log.LogCompression;
 import herddb.log.LogEntry;
 import herddb.log.LogEntryFactory;
+import herddb.log.LogEntryType;
 import herddb.log.LogSequenceNumber;
 import herddb.server.ServerConfiguration;
+import herddb.utils.Bytes;
+import herddb.utils.ExtendedDataOutputStream;
 import herddb.utils.TestUtils;
+import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
@@ -612,6 +625,314 @@ public class FileCommitLogTest {
         }
     }
 
+    @Test
+    public void testGroupCommitConcurrentWriters() throws Exception {
+        TestStatsProvider testStatsProvider = new TestStatsProvider();
+        TestStatsProvider.TestStatsLogger statsLogger = testStatsProvider.getStatsLogger("test");
+
+        int numThreads = 16;
+        int writesPerThread = 100;
+        try (FileCommitLogManager manager = new FileCommitLogManager(
+                folder.newFolder().toPath(),
+                ServerConfiguration.PROPERTY_MAX_LOG_FILE_SIZE_DEFAULT,
+                ServerConfiguration.PROPERTY_MAX_UNSYNCHED_BATCH_DEFAULT,
+                ServerConfiguration.PROPERTY_MAX_UNSYNCHED_BATCH_BYTES_DEFAULT,
+                ServerConfiguration.PROPERTY_MAX_SYNC_TIME_DEFAULT,
+                true /* require fsync */,
+                false, /* O_DIRECT */
+                ServerConfiguration.PROPERTY_DEFERRED_SYNC_PERIOD_DEFAULT,
+                ServerConfiguration.PROPERTY_TXLOG_GROUP_COMMIT_MAX_WAIT_MICROS_DEFAULT,
+                true /* adaptive */,
+                statsLogger)) {
+            manager.start();
+
+            try (FileCommitLog log = manager.createCommitLog("tt", "aa", "nodeid")) {
+                log.startWriting(1);
+                ExecutorService writers = Executors.newFixedThreadPool(numThreads);
+                try {
+                    List<Future<?>> results = new ArrayList<>();
+                    for (int t = 0; t < numThreads; t++) {
+                        results.add(writers.submit(() -> {
+                            for (int i = 0; i < writesPerThread; i++) {
+                                log.log(LogEntryFactory.beginTransaction(0), true).getLogSequenceNumber();
+                            }
+                            return null;
+                        }));
+                    }
+                    for (Future<?> f : results) {
+                        f.get(1, TimeUnit.MINUTES);
+                    }
+                } finally {
+                    writers.shutdown();
+                }
+            }
+            TestStatsProvider.TestOpStatsLogger syncBatchSize =
+                    (TestStatsProvider.TestOpStatsLogger) statsLogger.scope("aa").getOpStatsLogger("syncBatchSize");
+            TestStatsProvider.TestOpStatsLogger groupCommitWait =
+                    (TestStatsProvider.TestOpStatsLogger) statsLogger.scope("aa").getOpStatsLogger("groupCommitWait");
+            System.out.println("fsyncs: " + syncBatchSize.getSuccessCount() + ", avg batch " + syncBatchSize.getSuccessAverage());
+            // concurrent writers share fsyncs
+            assertTrue(syncBatchSize.getSuccessCount() < numThreads * writesPerThread);
+            assertEquals(syncBatchSize.getSuccessCount(), groupCommitWait.getSuccessCount());
+
+            AtomicInteger readCount = new AtomicInteger();
+            try (CommitLog log = manager.createCommitLog("tt", "aa", "nodeid")) {
+                log.recovery(LogSequenceNumber.START_OF_TIME, (lsn, entry) -> readCount.incrementAndGet(), true);
+            }
+            assertEquals(numThreads * writesPerThread, readCount.get());
+        }
+    }
+
+    @Test
+    public void testPreallocatedSegments() throws Exception {
+        TestStatsProvider testStatsProvider = new TestStatsProvider();
+        TestStatsProvider.TestStatsLogger statsLogger = testStatsProvider.getStatsLogger("test");
+        Path baseDir = folder.newFolder().toPath();
+        int maxLogFileSize = 2 * 1024;
+        try (FileCommitLogManager manager = new FileCommitLogManager(
+                baseDir,
+                maxLogFileSize,
+                ServerConfiguration.PROPERTY_MAX_UNSYNCHED_BATCH_DEFAULT,
+                ServerConfiguration.PROPERTY_MAX_UNSYNCHED_BATCH_BYTES_DEFAULT,
+                ServerConfiguration.PROPERTY_MAX_SYNC_TIME_DEFAULT,
+                true,
+                false, /* O_DIRECT */
+                ServerConfiguration.PROPERTY_DEFERRED_SYNC_PERIOD_DEFAULT,
+                ServerConfiguration.PROPERTY_TXLOG_GROUP_COMMIT_MAX_WAIT_MICROS_DEFAULT,
+                true,
+                true /* preallocate */,
+                statsLogger)) {
+            manager.start();
+            Path logDirectory = baseDir.resolve("tt.txlog");
+
+            try (FileCommitLog log = manager.createCommitLog("tt", "aa", "nodeid")) {
+                log.startWriting(1);
+                for (int i = 0; i < 500; i++) {
+                    log.log(LogEntryFactory.beginTransaction(i), i % 10 == 0);
+                }
+                log.log(LogEntryFactory.beginTransaction(0), true).getLogSequenceNumber();
+            }
+            List<Path> txlogs = listFiles(logDirectory, FileCommitLog.LOGFILEEXTENSION);
+            assertTrue(txlogs.size() > 3);
+            for (Path p : txlogs) {
+                // files are preallocated, the last entry of a file may go beyond the limit
+                assertTrue(Files.size(p) >= maxLogFileSize);
+            }
+
+            LogSequenceNumber checkpoint;
+            try (FileCommitLog log = manager.createCommitLog("tt", "aa", "nodeid")) {
+                AtomicInteger readCount = new AtomicInteger();
+                log.recovery(LogSequenceNumber.START_OF_TIME, (lsn, entry) -> readCount.incrementAndGet(), true);
+                assertEquals(501, readCount.get());
+                checkpoint = log.getLastSequenceNumber();
+
+                // dropped files become free segments, up to the limit
+                log.dropOldLedgers(checkpoint, LogSequenceNumber.START_OF_TIME);
+                List<Path> freeSegments = listFiles(logDirectory, FileCommitLog.FREESEGMENTEXTENSION);
+                assertEquals(2, freeSegments.size());
+                assertEquals(1, listFiles(logDirectory, FileCommitLog.LOGFILEEXTENSION).size());
+                for (Path p : freeSegments) {
+                    assertTrue(Files.size(p) >= maxLogFileSize);
+                    for (byte b : Files.readAllBytes(p)) {
+                        assertEquals(0, b);
+                    }
+                }
+
+                log.startWriting(1);
+                for (int i = 0; i < 300; i++) {
+                    log.log(LogEntryFactory.beginTransaction(i), true).getLogSequenceNumber();
+                }
+            }
+            assertEquals(2L, statsLogger.scope("aa").getCounter("recycledfiles").get().longValue());
+            assertTrue(listFiles(logDirectory, FileCommitLog.FREESEGMENTEXTENSION).isEmpty());
+
+            try (FileCommitLog log = manager.createCommitLog("tt", "aa", "nodeid")) {
+                AtomicInteger readCount = new AtomicInteger();
+                log.recovery(checkpoint, (lsn, entry) -> readCount.incrementAndGet(), true);
+                assertEquals(300, readCount.get());
+
+                // with no file to recycle a spare segment is prepared outside of the write path
+                log.dropOldLedgers(checkpoint, LogSequenceNumber.START_OF_TIME);
+                assertEquals(1, listFiles(logDirectory, FileCommitLog.FREESEGMENTEXTENSION).size());
+            }
+        }
+    }
+
+    @Test
+    public void testDisablePreallocationDropsFreeSegments() throws Exception {
+        Path baseDir = folder.newFolder().toPath();
+        Path logDirectory = baseDir.resolve("tt.txlog");
+        Files.createDirectories(logDirectory);
+        Files.write(logDirectory.resolve("0000000000000001" + FileCommitLog.FREESEGMENTEXTENSION), new byte[1024]);
+        Files.write(logDirectory.resolve("0000000000000002" + FileCommitLog.RECYCLINGSEGMENTEXTENSION), new byte[1024]);
+        try (FileCommitLogManager manager = new FileCommitLogManager(baseDir)) {
+            manager.start();
+            try (FileCommitLog log = manager.createCommitLog("tt", "aa", "nodeid")) {
+                log.recovery(LogSequenceNumber.START_OF_TIME, (lsn, entry) -> {
+                }, true);
+                log.startWriting(1);
+                log.log(LogEntryFactory.beginTransaction(0), true).getLogSequenceNumber();
+            }
+        }
+        assertTrue(listFiles(logDirectory, FileCommitLog.FREESEGMENTEXTENSION).isEmpty());
+        assertTrue(listFiles(logDirectory, FileCommitLog.RECYCLINGSEGMENTEXTENSION).isEmpty());
+        assertEquals(1, listFiles(logDirectory, FileCommitLog.LOGFILEEXTENSION).size());
+    }
+
+    /**
+     * Tailing a preallocated file, entries are written over the zero filled
+     * space and the reader must not skip it.
+     */
+    @Test
+    public void testTailableReaderOnPreallocatedFile() throws Exception {
+        Path txlogFile = folder.newFile("0000000000000004.txlog").toPath();
+        Files.write(txlogFile, new byte[FileCommitLog.MAX_ZERO_PADDING * 2]);
+
+        ByteArrayOutputStream entry1 = new ByteArrayOutputStream();
+        writeCompleteEntry(entry1, 1, LogEntryFactory.beginTransaction(0));
+        ByteArrayOutputStream entry2 = new ByteArrayOutputStream();
+        writeCompleteEntry(entry2, 2, LogEntryFactory.beginTransaction(1));
+        byte[] entry2Bytes = entry2.toByteArray();
+
+        try (FileChannel channel = FileChannel.open(txlogFile, StandardOpenOption.WRITE);
+             CommitFileReader reader = CommitFileReader.openForTailing(txlogFile)) {
+            channel.write(ByteBuffer.wrap(entry1.toByteArray()));
+            assertEquals(1, reader.nextEntry().logSequenceNumber.offset);
+            assertNull(reader.nextEntry());
+
+            // partial entry, followed by the preallocated zeros
+            channel.write(ByteBuffer.wrap(entry2Bytes, 0, entry2Bytes.length / 2));
+            assertNull(reader.nextEntry());
+
+            channel.write(ByteBuffer.wrap(entry2Bytes, entry2Bytes.length / 2, entry2Bytes.length - entry2Bytes.length / 2));
+            assertEquals(2, reader.nextEntry().logSequenceNumber.offset);
+            assertNull(reader.nextEntry());
+        }
+
+        // recovery does not read the whole zero filled space
+        try (CommitFileReader reader = CommitFileReader.openForDescribeRawfile(txlogFile)) {
+            assertEquals(1, reader.nextEntry().logSequenceNumber.offset);
+            assertEquals(2, reader.nextEntry().logSequenceNumber.offset);
+            assertNull(reader.nextEntry());
+        }
+    }
+
+    @Test
+    public void testCompressedBatches() throws Exception {
+        long plainSize = writeJsonRows(false);
+        long compressedSize = writeJsonRows(true);
+        System.out.println("plain " + plainSize + " bytes, compressed " + compressedSize + " bytes");
+        assertTrue(compressedSize < plainSize / 4);
+    }
+
+    private long writeJsonRows(boolean compress) throws Exception {
+        Path baseDir = folder.newFolder().toPath();
+        int numEntries = 1000;
+        List<LogSequenceNumber> written = new ArrayList<>();
+        try (FileCommitLogManager manager = new FileCommitLogManager(
+                baseDir,
+                8 * 1024,
+                ServerConfiguration.PROPERTY_MAX_UNSYNCHED_BATCH_DEFAULT,
+                ServerConfiguration.PROPERTY_MAX_UNSYNCHED_BATCH_BYTES_DEFAULT,
+                ServerConfiguration.PROPERTY_MAX_SYNC_TIME_DEFAULT,
+                true,
+                false, /* O_DIRECT */
+                ServerConfiguration.PROPERTY_DEFERRED_SYNC_PERIOD_DEFAULT,
+                ServerConfiguration.PROPERTY_TXLOG_GROUP_COMMIT_MAX_WAIT_MICROS_DEFAULT,
+                true,
+                false,
+                compress,
+                NullStatsLogger.INSTANCE)) {
+            manager.start();
+            try (FileCommitLog log = manager.createCommitLog("tt", "aa", "nodeid")) {
+                log.startWriting(1);
+                List<CommitLogResult> results = new ArrayList<>();
+                for (int i = 0; i < numEntries; i++) {
+                    results.add(log.log(jsonRow(i), i % 100 == 0));
+                }
+                for (CommitLogResult result : results) {
+                    written.add(result.getLogSequenceNumber());
+                }
+            }
+
+            List<LogSequenceNumber> read = new ArrayList<>();
+            try (CommitLog log = manager.createCommitLog("tt", "aa", "nodeid")) {
+                log.recovery(LogSequenceNumber.START_OF_TIME, (lsn, entry) -> {
+                    assertEquals(jsonRow(read.size()).value, entry.value);
+                    read.add(lsn);
+                }, true);
+            }
+            assertEquals(written, read);
+        }
+        long size = 0;
+        for (Path p : listFiles(baseDir.resolve("tt.txlog"), FileCommitLog.LOGFILEEXTENSION)) {
+            size += Files.size(p);
+        }
+        return size;
+    }
+
+    private static LogEntry jsonRow(int i) {
+        StringBuilder value = new StringBuilder();
+        for (int j = 0; j < 5; j++) {
+            value.append("{\"id\":").append(i).append(",\"name\":\"customer name\",\"status\":\"active\",\"field").append(j).append("\":true}");
+        }
+        return new LogEntry(System.currentTimeMillis(), LogEntryType.INSERT, 0, "mytable",
+                Bytes.from_int(i), Bytes.from_string(value.toString()));
+    }
+
+    /**
+     * A tailing reader must wait for a compressed batch to be completely
+     * written.
+     */
+    @Test
+    public void testTailableReaderOnCompressedBatch() throws Exception {
+        Path txlogFile = folder.newFile("0000000000000005.txlog").toPath();
+
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        for (int i = 1; i <= 10; i++) {
+            writeCompleteEntry(entries, i, jsonRow(i));
+        }
+        byte[] uncompressed = entries.toByteArray();
+        byte[] compressed = LogCompression.compress(uncompressed, 0, uncompressed.length);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        try (ExtendedDataOutputStream out = new ExtendedDataOutputStream(frame)) {
+            out.writeByte(FileCommitLog.BATCH_START);
+            out.writeInt(uncompressed.length);
+            out.writeInt(compressed.length);
+            out.write(compressed);
+            out.writeByte(ENTRY_END);
+        }
+        byte[] frameBytes = frame.toByteArray();
+
+        try (OutputStream out = Files.newOutputStream(txlogFile, StandardOpenOption.APPEND);
+             CommitFileReader reader = CommitFileReader.openForTailing(txlogFile)) {
+            writeCompleteEntry(out, 0, LogEntryFactory.beginTransaction(0));
+            out.write(frameBytes, 0, frameBytes.length / 2);
+            out.flush();
+            assertEquals(0, reader.nextEntry().logSequenceNumber.offset);
+            assertNull(reader.nextEntry());
+
+            out.write(frameBytes, frameBytes.length / 2, frameBytes.length - frameBytes.length / 2);
+            writeCompleteEntry(out, 11, LogEntryFactory.beginTransaction(0));
+            out.flush();
+            for (int i = 1; i <= 10; i++) {
+                LogEntryWithSequenceNumber entry = reader.nextEntry();
+                assertEquals(i, entry.logSequenceNumber.offset);
+                assertEquals(jsonRow(i).value, entry.entry.value);
+            }
+            assertEquals(11, reader.nextEntry().logSequenceNumber.offset);
+            assertNull(reader.nextEntry());
+        }
+    }
+
+    private static List<Path> listFiles(Path directory, String extension) throws Exception {
+        List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + extension)) {
+            stream.forEach(result::add);
+        }
+        return result;
+    }
+
     /**
      * Helper: writes one complete entry (ENTRY_START + seqNumber + serialized LogEntry + ENTRY_END).
      */
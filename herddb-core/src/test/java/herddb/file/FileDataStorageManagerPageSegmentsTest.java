@@ -0,0 +1,273 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.file;
+
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import herddb.core.DBManager;
+import herddb.model.ColumnTypes;
+import herddb.model.Record;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.Table;
+import herddb.model.TransactionContext;
+import herddb.model.commands.CreateTableSpaceStatement;
+import herddb.model.commands.CreateTableStatement;
+import herddb.model.commands.InsertStatement;
+import herddb.server.ServerConfiguration;
+import herddb.storage.DataPageDoesNotExistException;
+import herddb.utils.Bytes;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests about the segmented layout of data pages
+ */
+public class FileDataStorageManagerPageSegmentsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static FileDataStorageManager newStorageManager(Path dataPath, long segmentSize) {
+        return newStorageManager(dataPath, segmentSize, ServerConfiguration.PROPERTY_PAGE_SEGMENT_MAX_PAGES_DEFAULT);
+    }
+
+    private static FileDataStorageManager newStorageManager(Path dataPath, long segmentSize, int maxPages) {
+        return new FileDataStorageManager(dataPath, dataPath.resolve("tmp"),
+                ServerConfiguration.PROPERTY_DISK_SWAP_MAX_RECORDS_DEFAULT,
+                ServerConfiguration.PROPERTY_REQUIRE_FSYNC_DEFAULT,
+                false, false, true, true,
+                true, segmentSize, maxPages,
+                ServerConfiguration.PROPERTY_PAGE_SEGMENT_COMPACTION_THRESHOLD_DEFAULT,
+                new NullStatsLogger());
+    }
+
+    private static long countFiles(Path dir, String extension) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(extension)).count();
+        }
+    }
+
+    @Test
+    public void testReadWriteDataPages() throws Exception {
+        Path dataPath = folder.newFolder().toPath();
+        try (FileDataStorageManager man = newStorageManager(dataPath, 1024 * 1024)) {
+            man.start();
+            man.initTable("test1", "table1");
+            for (long pageId = 1; pageId <= 100; pageId++) {
+                List<Record> page = Arrays.asList(
+                        new Record(Bytes.from_long(pageId), Bytes.from_string("value" + pageId)));
+                man.writePage("test1", "table1", pageId, page);
+            }
+            for (long pageId = 1; pageId <= 100; pageId++) {
+                List<Record> result = man.readPage("test1", "table1", pageId);
+                assertEquals(1, result.size());
+                assertEquals(Bytes.from_string("value" + pageId), result.get(0).value);
+            }
+        }
+
+        Path tableDir = dataPath.resolve("test1.tablespace").resolve("table1.table");
+        assertEquals(0, countFiles(tableDir, FileDataStorageManager.FILEEXTENSION_PAGE));
+        assertEquals(1, countFiles(tableDir, PageSegmentStore.FILEEXTENSION_SEGMENT));
+
+        // the directory of the segments is reloaded at boot
+        try (FileDataStorageManager man = newStorageManager(dataPath, 1024 * 1024)) {
+            man.start();
+            for (long pageId = 1; pageId <= 100; pageId++) {
+                List<Record> result = man.readPage("test1", "table1", pageId);
+                assertEquals(Bytes.from_string("value" + pageId), result.get(0).value);
+            }
+        }
+    }
+
+    @Test
+    public void testMaxPagesPerSegment() throws Exception {
+        Path dataPath = folder.newFolder().toPath();
+        try (FileDataStorageManager man = newStorageManager(dataPath, 1024 * 1024, 10)) {
+            man.start();
+            man.initTable("test1", "table1");
+            for (long pageId = 1; pageId <= 100; pageId++) {
+                List<Record> page = Arrays.asList(
+                        new Record(Bytes.from_long(pageId), Bytes.from_string("value" + pageId)));
+                man.writePage("test1", "table1", pageId, page);
+            }
+            for (long pageId = 1; pageId <= 100; pageId++) {
+                List<Record> result = man.readPage("test1", "table1", pageId);
+                assertEquals(Bytes.from_string("value" + pageId), result.get(0).value);
+            }
+        }
+
+        Path tableDir = dataPath.resolve("test1.tablespace").resolve("table1.table");
+        assertEquals(10, countFiles(tableDir, PageSegmentStore.FILEEXTENSION_SEGMENT));
+    }
+
+    @Test(expected = DataPageDoesNotExistException.class)
+    public void testPageDoesNotExist() throws Exception {
+        Path dataPath = folder.newFolder().toPath();
+        try (FileDataStorageManager man = newStorageManager(dataPath, 1024 * 1024)) {
+            man.start();
+            man.initTable("test1", "table1");
+            man.readPage("test1", "table1", 1L);
+        }
+    }
+
+    @Test
+    public void testFreeAndCompactSegments() throws Exception {
+        Path dir = folder.newFolder().toPath();
+        byte[] data = new byte[100 * 1024];
+        try (PageSegmentStore store = PageSegmentStore.open(dir, 256 * 1024, 1024, false)) {
+            for (long pageId = 1; pageId <= 10; pageId++) {
+                Arrays.fill(data, (byte) pageId);
+                store.writePage(pageId, data, 0, data.length);
+            }
+            // two pages per segment
+            assertEquals(5, store.getNumSegments());
+            for (long pageId = 1; pageId <= 9; pageId += 2) {
+                store.freePage(pageId);
+            }
+            assertNull(store.readPage(1));
+            // every sealed segment is half empty
+            assertEquals(0, store.compact(0.4));
+            assertEquals(4, store.compact(0.6));
+            for (long pageId = 2; pageId <= 10; pageId += 2) {
+                byte[] read = store.readPage(pageId);
+                assertEquals(data.length, read.length);
+                for (byte b : read) {
+                    assertEquals((byte) pageId, b);
+                }
+            }
+        }
+        try (PageSegmentStore store = PageSegmentStore.open(dir, 256 * 1024, 1024, false)) {
+            assertEquals(5, store.getPageIds().size());
+            for (long pageId = 2; pageId <= 10; pageId += 2) {
+                assertTrue(store.containsPage(pageId));
+                assertEquals((byte) pageId, store.readPage(pageId)[0]);
+            }
+            assertFalse(store.containsPage(1));
+        }
+    }
+
+    @Test
+    public void testCompactionKeepsOldSlotsUntilDrop() throws Exception {
+        Path dir = folder.newFolder().toPath();
+        Path backup = folder.newFolder().toPath();
+        byte[] data = new byte[100 * 1024];
+        List<Path> oldSegments;
+        try (PageSegmentStore store = PageSegmentStore.open(dir, 256 * 1024, 1024, false)) {
+            for (long pageId = 1; pageId <= 10; pageId++) {
+                Arrays.fill(data, (byte) pageId);
+                store.writePage(pageId, data, 0, data.length);
+            }
+            for (long pageId = 1; pageId <= 9; pageId += 2) {
+                store.freePage(pageId);
+            }
+            try (Stream<Path> files = Files.list(dir)) {
+                oldSegments = files.collect(Collectors.toList());
+            }
+            // hard links see the writes done by the compaction on the old files
+            for (Path segment : oldSegments) {
+                Files.createLink(backup.resolve(segment.getFileName()), segment);
+            }
+            assertEquals(4, store.compact(0.6));
+        }
+        // simulate a crash after the copy but before dropping the old segments,
+        // with the new copies lost: the old slots must still be valid
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+        for (Path segment : oldSegments) {
+            Files.move(backup.resolve(segment.getFileName()), segment);
+        }
+        try (PageSegmentStore store = PageSegmentStore.open(dir, 256 * 1024, 1024, false)) {
+            assertEquals(5, store.getPageIds().size());
+            for (long pageId = 2; pageId <= 10; pageId += 2) {
+                assertEquals((byte) pageId, store.readPage(pageId)[0]);
+            }
+            assertFalse(store.containsPage(1));
+        }
+    }
+
+    @Test
+    public void testCheckpointAndRestart() throws Exception {
+        Path dataPath = folder.newFolder("data").toPath();
+        Path logsPath = folder.newFolder("logs").toPath();
+        Path metadataPath = folder.newFolder("metadata").toPath();
+        Path tmoDir = folder.newFolder("tmoDir").toPath();
+        String nodeId = "localhost";
+        Table table = Table
+                .builder()
+                .tablespace("tblspace1")
+                .name("t1")
+                .column("id", ColumnTypes.STRING)
+                .column("name", ColumnTypes.STRING)
+                .primaryKey("id")
+                .build();
+        String tableUuid;
+        try (DBManager manager = new DBManager(nodeId,
+                new FileMetadataStorageManager(metadataPath),
+                newStorageManager(dataPath, 1024 * 1024),
+                new FileCommitLogManager(logsPath),
+                tmoDir, null)) {
+            manager.start();
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+            manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            manager.waitForTablespace("tblspace1", 10000);
+            manager.executeStatement(new CreateTableStatement(table), StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            tableUuid = table.uuid;
+            for (int i = 0; i < 100; i++) {
+                manager.executeStatement(new InsertStatement("tblspace1", table.name,
+                        new Record(Bytes.from_string("k" + i), Bytes.from_string("v" + i))),
+                        StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+                if (i % 10 == 0) {
+                    manager.checkpoint();
+                }
+            }
+            manager.checkpoint();
+        }
+
+        try (DBManager manager = new DBManager(nodeId,
+                new FileMetadataStorageManager(metadataPath),
+                newStorageManager(dataPath, 1024 * 1024),
+                new FileCommitLogManager(logsPath),
+                tmoDir, null)) {
+            manager.start();
+            manager.waitForTablespace("tblspace1", 10000);
+            String uuid = manager.getTableSpaceManager("tblspace1").getTableSpaceUUID();
+            Path tableDir = dataPath.resolve(uuid + ".tablespace").resolve(tableUuid + ".table");
+            assertEquals(0, countFiles(tableDir, FileDataStorageManager.FILEEXTENSION_PAGE));
+            assertTrue(countFiles(tableDir, PageSegmentStore.FILEEXTENSION_SEGMENT) > 0);
+            assertEquals(100, scan(manager, "SELECT * FROM tblspace1.t1", Collections.emptyList()).consume().size());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Tests about the group commit window
+ */
+public class GroupCommitPolicyTest {
+
+    private static final long MAX_WAIT = TimeUnit.MILLISECONDS.toNanos(2);
+
+    @Test
+    public void testFixedWindow() {
+        GroupCommitPolicy policy = new GroupCommitPolicy(MAX_WAIT, false);
+        assertEquals(MAX_WAIT, policy.getWindowNanos());
+        policy.batchSynced(100, TimeUnit.MICROSECONDS.toNanos(10));
+        assertEquals(MAX_WAIT, policy.getWindowNanos());
+    }
+
+    @Test
+    public void testNoWaitWithSingleWriter() {
+        GroupCommitPolicy policy = new GroupCommitPolicy(MAX_WAIT, true);
+        assertEquals(0, policy.getWindowNanos());
+        for (int i = 0; i < 100; i++) {
+            policy.batchSynced(1, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertEquals(0, policy.getWindowNanos());
+    }
+
+    @Test
+    public void testWindowFollowsFsyncLatency() {
+        GroupCommitPolicy policy = new GroupCommitPolicy(MAX_WAIT, true);
+        for (int i = 0; i < 100; i++) {
+            policy.batchSynced(10, TimeUnit.MICROSECONDS.toNanos(400));
+        }
+        long window = policy.getWindowNanos();
+        assertTrue("window " + window, window > TimeUnit.MICROSECONDS.toNanos(150)
+                && window < TimeUnit.MICROSECONDS.toNanos(250));
+
+        // slow disk, the window is capped
+        for (int i = 0; i < 100; i++) {
+            policy.batchSynced(10, TimeUnit.MILLISECONDS.toNanos(20));
+        }
+        assertEquals(MAX_WAIT, policy.getWindowNanos());
+
+        // writers went away
+        for (int i = 0; i < 100; i++) {
+            policy.batchSynced(1, TimeUnit.MILLISECONDS.toNanos(20));
+        }
+        assertEquals(0, policy.getWindowNanos());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxWait() {
+        new GroupCommitPolicy(-1, true);
+    }
+}
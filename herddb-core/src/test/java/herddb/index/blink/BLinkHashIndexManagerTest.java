@@ -0,0 +1,353 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+*/
+
+package herddb.index.blink;
+
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import herddb.core.AbstractIndexManager;
+import herddb.core.DBManager;
+import herddb.file.FileCommitLogManager;
+import herddb.file.FileDataStorageManager;
+import herddb.file.FileMetadataStorageManager;
+import herddb.index.HashIndexMode;
+import herddb.model.ColumnTypes;
+import herddb.model.DataScanner;
+import herddb.model.Index;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.StatementExecutionException;
+import herddb.model.Table;
+import herddb.model.TransactionContext;
+import herddb.model.commands.CreateIndexStatement;
+import herddb.model.commands.CreateTableSpaceStatement;
+import herddb.server.ServerConfiguration;
+import herddb.storage.DataStorageManager.DataWriter;
+import herddb.storage.DataStorageManagerException;
+import herddb.utils.Bytes;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests on the paged HASH index
+ *
+ * @author enrico.olivelli
+ */
+public class BLinkHashIndexManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void enablePagedMode() {
+        // the mode is resolved once per JVM, every test class runs in a new fork
+        System.setProperty(HashIndexMode.PROPERTY_NAME, "paged");
+    }
+
+    /**
+     * Counts the pages written for each index.
+     */
+    private static final class CountingDataStorageManager extends FileDataStorageManager {
+
+        private final Map<String, AtomicInteger> indexPagesWritten = new ConcurrentHashMap<>();
+
+        CountingDataStorageManager(Path baseDirectory) {
+            super(baseDirectory);
+        }
+
+        @Override
+        public void writeIndexPage(String tableSpace, String indexName, long pageId, DataWriter writer) throws DataStorageManagerException {
+            indexPagesWritten.computeIfAbsent(indexName, k -> new AtomicInteger()).incrementAndGet();
+            super.writeIndexPage(tableSpace, indexName, pageId, writer);
+        }
+
+        int getIndexPagesWritten(String indexName) {
+            AtomicInteger count = indexPagesWritten.get(indexName);
+            return count != null ? count.get() : 0;
+        }
+    }
+
+    private static Set<String> keys(DBManager manager, String query, Object... parameters) throws Exception {
+        try (DataScanner scan = scan(manager, query, Arrays.asList(parameters))) {
+            return scan.consume().stream()
+                    .map(d -> d.get("k1").toString())
+                    .collect(Collectors.toCollection(TreeSet::new));
+        }
+    }
+
+    private static Set<String> expected(int count, java.util.function.IntPredicate filter) {
+        Set<String> result = new TreeSet<>();
+        for (int i = 0; i < count; i++) {
+            if (filter.test(i)) {
+                result.add("key" + i);
+            }
+        }
+        return result;
+    }
+
+    private static ServerConfiguration smallPages() {
+        ServerConfiguration configuration = new ServerConfiguration();
+        configuration.set(ServerConfiguration.PROPERTY_MAX_LOGICAL_PAGE_SIZE, 1024L);
+        return configuration;
+    }
+
+    @Test
+    public void testScansCheckpointAndRecovery() throws Exception {
+        Path dataPath = folder.newFolder("data").toPath();
+        Path logsPath = folder.newFolder("logs").toPath();
+        Path metadataPath = folder.newFolder("metadata").toPath();
+        Path tmoDir = folder.newFolder("tmoDir").toPath();
+        String nodeId = "localhost";
+        final int count = 2000;
+
+        try (DBManager manager = new DBManager(nodeId,
+                new FileMetadataStorageManager(metadataPath),
+                new FileDataStorageManager(dataPath),
+                new FileCommitLogManager(logsPath),
+                tmoDir, null, smallPages(), null)) {
+            manager.start();
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1",
+                    Collections.singleton(nodeId), nodeId, 1, 0, 0);
+            manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(),
+                    TransactionContext.NO_TRANSACTION);
+            manager.waitForTablespace("tblspace1", 10000);
+
+            execute(manager, "CREATE TABLE tblspace1.t1 (k1 string primary key, n1 int, s1 string)",
+                    Collections.emptyList());
+            execute(manager, "CREATE HASH INDEX ix_n1 ON tblspace1.t1(n1)", Collections.emptyList());
+            execute(manager, "CREATE HASH INDEX ix_s1 ON tblspace1.t1(s1)", Collections.emptyList());
+
+            AbstractIndexManager indexManager = manager.getTableSpaceManager("tblspace1").getIndexesOnTable("t1").get("ix_n1");
+            assertTrue(indexManager instanceof BLinkHashIndexManager);
+
+            for (int i = 0; i < count; i++) {
+                // n1 values contain zero bytes, s1 values share prefixes
+                executeUpdate(manager, "INSERT INTO tblspace1.t1(k1,n1,s1) values(?,?,?)",
+                        Arrays.asList("key" + i, i % 50, "s" + (i % 7) + "-" + (i % 3)));
+            }
+            // a deleted and an updated record
+            executeUpdate(manager, "DELETE FROM tblspace1.t1 WHERE k1=?", Arrays.asList("key0"));
+            executeUpdate(manager, "UPDATE tblspace1.t1 SET n1=1000, s1='moved' WHERE k1=?", Arrays.asList("key1"));
+
+            assertEquals(count - 1, ((BLinkHashIndexManager) indexManager).size());
+            assertScans(manager, count);
+
+            manager.checkpoint();
+            assertScans(manager, count);
+        }
+
+        try (DBManager manager = new DBManager(nodeId,
+                new FileMetadataStorageManager(metadataPath),
+                new FileDataStorageManager(dataPath),
+                new FileCommitLogManager(logsPath),
+                tmoDir, null, smallPages(), null)) {
+            manager.start();
+            manager.waitForTablespace("tblspace1", 10000);
+            assertScans(manager, count);
+
+            // changes after the checkpoint are recovered from the log
+            executeUpdate(manager, "DELETE FROM tblspace1.t1 WHERE k1=?", Arrays.asList("key2"));
+            executeUpdate(manager, "INSERT INTO tblspace1.t1(k1,n1,s1) values(?,?,?)",
+                    Arrays.asList("key0", 0, "s0-0"));
+        }
+
+        try (DBManager manager = new DBManager(nodeId,
+                new FileMetadataStorageManager(metadataPath),
+                new FileDataStorageManager(dataPath),
+                new FileCommitLogManager(logsPath),
+                tmoDir, null, smallPages(), null)) {
+            manager.start();
+            manager.waitForTablespace("tblspace1", 10000);
+            assertEquals(expected(count, i -> i % 50 == 2 && i != 2),
+                    keys(manager, "SELECT k1 FROM tblspace1.t1 WHERE n1=?", 2));
+            assertEquals(expected(count, i -> i % 50 == 0),
+                    keys(manager, "SELECT k1 FROM tblspace1.t1 WHERE n1=?", 0));
+        }
+    }
+
+    private static void assertScans(DBManager manager, int count) throws Exception {
+        assertEquals(expected(count, i -> i % 50 == 0 && i != 0),
+                keys(manager, "SELECT k1 FROM tblspace1.t1 WHERE n1=?", 0));
+        assertEquals(expected(count, i -> i % 50 == 7),
+                keys(manager, "SELECT k1 FROM tblspace1.t1 WHERE n1=?", 7));
+        assertEquals(Collections.singleton("key1"),
+                keys(manager, "SELECT k1 FROM tblspace1.t1 WHERE n1=?", 1000));
+        assertEquals(Collections.emptySet(),
+                keys(manager, "SELECT k1 FROM tblspace1.t1 WHERE n1=?", 51));
+        assertEquals(expected(count, i -> i % 50 >= 10 && i % 50 <= 20),
+                keys(manager, "SELECT k1 FROM tblspace1.t1 WHERE n1>=? and n1<=?", 10, 20));
+        assertEquals(expected(count, i -> i % 7 == 3 && i > 1),
+                keys(manager, "SELECT k1 FROM tblspace1.t1 WHERE s1 LIKE 's3%'"));
+        assertEquals(expected(count, i -> i % 7 == 4 && i % 3 == 2 && i > 1),
+                keys(manager, "SELECT k1 FROM tblspace1.t1 WHERE s1=?", "s4-2"));
+        assertEquals(Collections.singleton("key1"),
+                keys(manager, "SELECT k1 FROM tblspace1.t1 WHERE s1=?", "moved"));
+    }
+
+    @Test
+    public void testCheckpointWritesOnlyDirtyPages() throws Exception {
+        Path dataPath = folder.newFolder("data").toPath();
+        Path logsPath = folder.newFolder("logs").toPath();
+        Path metadataPath = folder.newFolder("metadata").toPath();
+        Path tmoDir = folder.newFolder("tmoDir").toPath();
+        String nodeId = "localhost";
+        final int count = 5000;
+
+        CountingDataStorageManager dataStorageManager = new CountingDataStorageManager(dataPath);
+        try (DBManager manager = new DBManager(nodeId,
+                new FileMetadataStorageManager(metadataPath),
+                dataStorageManager,
+                new FileCommitLogManager(logsPath),
+                tmoDir, null, smallPages(), null)) {
+            manager.start();
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1",
+                    Collections.singleton(nodeId), nodeId, 1, 0, 0);
+            manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(),
+                    TransactionContext.NO_TRANSACTION);
+            manager.waitForTablespace("tblspace1", 10000);
+
+            execute(manager, "CREATE TABLE tblspace1.t1 (k1 string primary key, n1 int)",
+                    Collections.emptyList());
+            execute(manager, "CREATE HASH INDEX ix_n1 ON tblspace1.t1(n1)", Collections.emptyList());
+            String indexUuid = manager.getTableSpaceManager("tblspace1").getIndexesOnTable("t1").get("ix_n1").getIndex().uuid;
+
+            for (int i = 0; i < count; i++) {
+                executeUpdate(manager, "INSERT INTO tblspace1.t1(k1,n1) values(?,?)",
+                        Arrays.asList("key" + i, i));
+            }
+            manager.checkpoint();
+            int fullWrite = dataStorageManager.getIndexPagesWritten(indexUuid);
+            assertTrue("index too small for the test: " + fullWrite + " pages", fullWrite > 20);
+
+            // nothing changed, nothing to write
+            manager.checkpoint();
+            assertEquals(fullWrite, dataStorageManager.getIndexPagesWritten(indexUuid));
+
+            // a single change dirties only a few pages
+            executeUpdate(manager, "UPDATE tblspace1.t1 SET n1=? WHERE k1=?", Arrays.asList(-1, "key10"));
+            manager.checkpoint();
+            int incrementalWrite = dataStorageManager.getIndexPagesWritten(indexUuid) - fullWrite;
+            assertTrue("wrote " + incrementalWrite + " pages of " + fullWrite, incrementalWrite > 0 && incrementalWrite <= 4);
+
+            assertEquals(Collections.singleton("key10"), keys(manager, "SELECT k1 FROM tblspace1.t1 WHERE n1=?", -1));
+            assertEquals(Collections.emptySet(), keys(manager, "SELECT k1 FROM tblspace1.t1 WHERE n1=?", 10));
+        }
+    }
+
+    @Test
+    public void testUniqueIndex() throws Exception {
+        Path dataPath = folder.newFolder("data").toPath();
+        Path logsPath = folder.newFolder("logs").toPath();
+        Path metadataPath = folder.newFolder("metadata").toPath();
+        Path tmoDir = folder.newFolder("tmoDir").toPath();
+        String nodeId = "localhost";
+
+        try (DBManager manager = new DBManager(nodeId,
+                new FileMetadataStorageManager(metadataPath),
+                new FileDataStorageManager(dataPath),
+                new FileCommitLogManager(logsPath),
+                tmoDir, null)) {
+            manager.start();
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1",
+                    Collections.singleton(nodeId), nodeId, 1, 0, 0);
+            manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(),
+                    TransactionContext.NO_TRANSACTION);
+            manager.waitForTablespace("tblspace1", 10000);
+
+            execute(manager, "CREATE TABLE tblspace1.t1 (k1 string primary key, n1 int)",
+                    Collections.emptyList());
+            Table table = manager.getTableSpaceManager("tblspace1").getTableManager("t1").getTable();
+            Index index = Index.builder().onTable(table).name("ix_n1").column("n1", ColumnTypes.INTEGER)
+                    .type(Index.TYPE_HASH).unique(true).build();
+            manager.executeStatement(new CreateIndexStatement(index), StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(),
+                    TransactionContext.NO_TRANSACTION);
+            assertTrue(manager.getTableSpaceManager("tblspace1").getIndexesOnTable("t1").get("ix_n1") instanceof BLinkHashIndexManager);
+
+            executeUpdate(manager, "INSERT INTO tblspace1.t1(k1,n1) values(?,?)", Arrays.asList("a", 0));
+            executeUpdate(manager, "INSERT INTO tblspace1.t1(k1,n1) values(?,?)", Arrays.asList("b", 256));
+            try {
+                executeUpdate(manager, "INSERT INTO tblspace1.t1(k1,n1) values(?,?)", Arrays.asList("c", 0));
+                fail();
+            } catch (StatementExecutionException expected) {
+            }
+            // updating the record with the same value is allowed
+            executeUpdate(manager, "UPDATE tblspace1.t1 SET n1=? WHERE k1=?", Arrays.asList(0, "a"));
+            try {
+                executeUpdate(manager, "UPDATE tblspace1.t1 SET n1=? WHERE k1=?", Arrays.asList(256, "a"));
+                fail();
+            } catch (StatementExecutionException expected) {
+            }
+            executeUpdate(manager, "DELETE FROM tblspace1.t1 WHERE k1=?", Arrays.asList("b"));
+            executeUpdate(manager, "UPDATE tblspace1.t1 SET n1=? WHERE k1=?", Arrays.asList(256, "a"));
+            assertEquals(Collections.singleton("a"), keys(manager, "SELECT k1 FROM tblspace1.t1 WHERE n1=?", 256));
+        }
+    }
+
+    @Test
+    public void testCompositeKeyOrder() {
+        // index keys sharing a prefix and containing zero bytes must keep their order
+        List<Bytes> indexKeys = Arrays.asList(
+                Bytes.from_array(new byte[]{}),
+                Bytes.from_array(new byte[]{0}),
+                Bytes.from_array(new byte[]{0, 0}),
+                Bytes.from_array(new byte[]{0, 1}),
+                Bytes.from_array(new byte[]{1}),
+                Bytes.from_array(new byte[]{1, 0}),
+                Bytes.from_array(new byte[]{(byte) 0xFF}),
+                Bytes.from_array(new byte[]{(byte) 0xFF, 0}));
+        Bytes[] primaryKeys = {Bytes.from_array(new byte[]{(byte) 0xFF, (byte) 0xFF}), Bytes.from_array(new byte[]{0})};
+        Map<Bytes, Bytes> entries = new HashMap<>();
+        Bytes previous = null;
+        for (Bytes indexKey : indexKeys) {
+            Bytes start = BLinkHashIndexManager.encodeSeekStart(indexKey);
+            if (previous != null) {
+                assertTrue(previous.compareTo(start) < 0);
+            }
+            for (Bytes pk : primaryKeys) {
+                Bytes entry = BLinkHashIndexManager.encodeEntry(indexKey, pk);
+                assertTrue(start.compareTo(entry) < 0);
+                if (previous != null) {
+                    assertTrue(previous.compareTo(entry) < 0);
+                }
+                entries.put(entry, pk);
+            }
+            previous = BLinkHashIndexManager.encodeEntry(indexKey, primaryKeys[0]);
+        }
+        entries.forEach((entry, pk) -> {
+            Map.Entry<Bytes, Long> mapEntry = new java.util.AbstractMap.SimpleEntry<>(entry, (long) (entry.getLength() - pk.getLength()));
+            assertEquals(pk, BLinkHashIndexManager.primaryKey(mapEntry));
+        });
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+*/
+
+package herddb.index.blink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import herddb.core.MemoryManager;
+import herddb.log.LogSequenceNumber;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.utils.ByteBufCursor;
+import herddb.utils.Bytes;
+import herddb.utils.ExtendedDataOutputStream;
+import herddb.utils.VisibleByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Tests about the format of BLink node pages
+ */
+public class BLinkNodePageCodecTest {
+
+    private static Bytes key(int i) {
+        return Bytes.from_string("tenant-0001/customer/" + String.format("%06d", i));
+    }
+
+    private static byte[] write(byte type, Map<Bytes, Long> data, long version) throws Exception {
+        VisibleByteArrayOutputStream buffer = new VisibleByteArrayOutputStream();
+        try (ExtendedDataOutputStream out = new ExtendedDataOutputStream(buffer)) {
+            BLinkNodePageCodec.writeNodePage(out, type, data, version);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static Map<Bytes, Long> read(byte type, byte[] page) throws Exception {
+        Map<Bytes, Long> result = new HashMap<>();
+        try (ByteBufCursor in = ByteBufCursor.wrap(page)) {
+            BLinkNodePageCodec.readNodePage(in, 1, type, result);
+        }
+        return result;
+    }
+
+    @Test
+    public void testLeafAndInnerPagesVersion1() throws Exception {
+        testLeafAndInnerPages(BLinkNodePageCodec.NODE_PAGE_VERSION_1);
+    }
+
+    @Test
+    public void testLeafAndInnerPagesVersion2() throws Exception {
+        testLeafAndInnerPages(BLinkNodePageCodec.NODE_PAGE_VERSION_2);
+    }
+
+    private void testLeafAndInnerPages(long version) throws Exception {
+        Map<Bytes, Long> leaf = new TreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            leaf.put(key(i), (long) i);
+        }
+        leaf.put(Bytes.from_string("t"), 5000L);
+        leaf.put(Bytes.from_string(""), 5001L);
+        assertEquals(leaf, read(BLinkKeyToPageIndex.LEAF_NODE_PAGE, write(BLinkKeyToPageIndex.LEAF_NODE_PAGE, leaf, version)));
+
+        // inner pages are not sorted and contain the positive infinity
+        Map<Bytes, Long> inner = new HashMap<>();
+        for (int i = 0; i < 1000; i += 10) {
+            inner.put(key(i), (long) i);
+        }
+        inner.put(Bytes.POSITIVE_INFINITY, 42L);
+        Map<Bytes, Long> result = read(BLinkKeyToPageIndex.INNER_NODE_PAGE, write(BLinkKeyToPageIndex.INNER_NODE_PAGE, inner, version));
+        assertEquals(inner, result);
+        assertTrue(result.keySet().stream().anyMatch(k -> k == Bytes.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void testKeysArePrefixCompressed() throws Exception {
+        Map<Bytes, Long> leaf = new TreeMap<>();
+        int keysSize = 0;
+        for (int i = 0; i < 1000; i++) {
+            leaf.put(key(i), (long) i);
+            keysSize += key(i).getLength();
+        }
+        byte[] page = write(BLinkKeyToPageIndex.LEAF_NODE_PAGE, leaf, BLinkNodePageCodec.NODE_PAGE_VERSION_2);
+        assertTrue("page size " + page.length, page.length * 2 < keysSize);
+        byte[] fullKeysPage = write(BLinkKeyToPageIndex.LEAF_NODE_PAGE, leaf, BLinkNodePageCodec.NODE_PAGE_VERSION_1);
+        assertTrue("page size " + fullKeysPage.length, fullKeysPage.length > keysSize);
+    }
+
+    @Test
+    public void testReadVersion1() throws Exception {
+        VisibleByteArrayOutputStream buffer = new VisibleByteArrayOutputStream();
+        try (ExtendedDataOutputStream out = new ExtendedDataOutputStream(buffer)) {
+            out.writeVLong(BLinkNodePageCodec.NODE_PAGE_VERSION_1);
+            out.writeVLong(0);
+            out.writeByte(BLinkKeyToPageIndex.INNER_NODE_PAGE);
+            out.writeByte(1);
+            out.writeArray(key(1).to_array());
+            out.writeVLong(1);
+            out.writeByte(2);
+            out.writeVLong(2);
+            out.writeByte(0);
+        }
+        Map<Bytes, Long> expected = new HashMap<>();
+        expected.put(key(1), 1L);
+        expected.put(Bytes.POSITIVE_INFINITY, 2L);
+        assertEquals(expected, read(BLinkKeyToPageIndex.INNER_NODE_PAGE, buffer.toByteArray()));
+    }
+
+    @Test
+    public void testLeafSeparator() {
+        assertEquals(Bytes.from_string("tenant-0001/customer/001"),
+                BytesLongSizeEvaluator.INSTANCE.leafSeparator(key(999), key(1000)));
+        Bytes key10 = key(10);
+        assertSame(key10, BytesLongSizeEvaluator.INSTANCE.leafSeparator(key10, key(11)));
+        // no shorter separator
+        Bytes last = Bytes.from_string("ab");
+        assertSame(last, BytesLongSizeEvaluator.INSTANCE.leafSeparator(last, Bytes.from_string("ac")));
+        assertSame(last, BytesLongSizeEvaluator.INSTANCE.leafSeparator(last, Bytes.from_string("abc")));
+        // the left key is a prefix of the right one
+        assertEquals(Bytes.from_string("abc"), BytesLongSizeEvaluator.INSTANCE.leafSeparator(last, Bytes.from_string("abcd")));
+    }
+
+    @Test
+    public void testIndexWithCompositeKeys() throws Exception {
+        MemoryManager mem = new MemoryManager(5 * (1L << 20), 0, 10 * (128L << 10), (128L << 10));
+        MemoryDataStorageManager ds = new MemoryDataStorageManager();
+        IncrementalBLinkKeyToPageIndex idx = new IncrementalBLinkKeyToPageIndex("ts", "tbl", mem, ds);
+        idx.start(LogSequenceNumber.START_OF_TIME, true);
+        for (int i = 0; i < 20000; i++) {
+            idx.put(key(i), (long) i);
+        }
+        LogSequenceNumber lsn = new LogSequenceNumber(1, 100);
+        idx.checkpoint(lsn, false);
+        idx.close();
+
+        IncrementalBLinkKeyToPageIndex idx2 = new IncrementalBLinkKeyToPageIndex("ts", "tbl", mem, ds);
+        idx2.start(lsn, false);
+        assertEquals(20000L, idx2.size());
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(Long.valueOf(i), idx2.get(key(i)));
+        }
+        assertEquals(null, idx2.get(Bytes.from_string("tenant-0001/customer/0001")));
+        idx2.close();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index.blink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import herddb.core.RandomPageReplacementPolicy;
+import herddb.utils.Bytes;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+/**
+ * Tests about {@link BLink} with leaves kept off-heap
+ *
+ * @author enrico.olivelli
+ */
+public class OffHeapLeafBLinkTest {
+
+    private static final class MemoryStorage implements BLinkIndexDataStorage<Bytes, Long> {
+
+        private final AtomicLong newPageId = new AtomicLong();
+        private final Map<Long, Map<?, Long>> pages = new ConcurrentHashMap<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void loadNodePage(long pageId, Map<Bytes, Long> data) throws IOException {
+            data.putAll((Map<Bytes, Long>) pages.get(pageId));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void loadLeafPage(long pageId, Map<Bytes, Long> data) throws IOException {
+            data.putAll((Map<Bytes, Long>) pages.get(pageId));
+        }
+
+        @Override
+        public long createNodePage(Map<Bytes, Long> data) throws IOException {
+            long id = newPageId.incrementAndGet();
+            pages.put(id, new HashMap<>(data));
+            return id;
+        }
+
+        @Override
+        public long createLeafPage(Map<Bytes, Long> data) throws IOException {
+            long id = newPageId.incrementAndGet();
+            pages.put(id, new HashMap<>(data));
+            return id;
+        }
+
+        @Override
+        public void overwriteNodePage(long pageId, Map<Bytes, Long> data) throws IOException {
+            pages.put(pageId, new HashMap<>(data));
+        }
+
+        @Override
+        public void overwriteLeafPage(long pageId, Map<Bytes, Long> data) throws IOException {
+            pages.put(pageId, new HashMap<>(data));
+        }
+    }
+
+    private static Bytes key(int i) {
+        return Bytes.from_string("customer/" + String.format("%08d", i));
+    }
+
+    private static void check(BLink<Bytes, Long> blink, NavigableMap<Bytes, Long> expected) {
+        assertEquals(expected.size(), blink.size());
+        for (Entry<Bytes, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), blink.search(entry.getKey()));
+        }
+        assertNull(blink.search(Bytes.from_string("a")));
+        assertNull(blink.search(Bytes.from_string("customer/")));
+        assertNull(blink.search(Bytes.from_string("customer/00000000a")));
+        assertNull(blink.search(Bytes.from_string("z")));
+
+        assertEquals(new ArrayList<>(expected.entrySet()), blink.scan(null, null).collect(Collectors.toList()));
+        for (int i = 0; i < 5000; i += 777) {
+            List<Entry<Bytes, Long>> range = blink.scan(key(i), key(i + 300)).collect(Collectors.toList());
+            assertEquals(new ArrayList<>(expected.subMap(key(i), true, key(i + 300), false).entrySet()), range);
+            range = blink.scan(key(i), key(i + 300), true).collect(Collectors.toList());
+            assertEquals(new ArrayList<>(expected.subMap(key(i), true, key(i + 300), true).entrySet()), range);
+        }
+    }
+
+    @Test
+    public void testSearchScanAndChange() throws Exception {
+        MemoryStorage storage = new MemoryStorage();
+        NavigableMap<Bytes, Long> expected = new TreeMap<>();
+        BLinkMetadata<Bytes> metadata;
+        try (BLink<Bytes, Long> blink = new BLink<>(2048L, BytesLongSizeEvaluator.INSTANCE,
+                new RandomPageReplacementPolicy(5), storage, BytesLongOffHeapLeafCodec.INSTANCE)) {
+            for (int i = 0; i < 5000; i++) {
+                blink.insert(key(i), (long) i);
+                expected.put(key(i), (long) i);
+            }
+            // leaves are written and moved off-heap
+            metadata = blink.checkpoint();
+            assertTrue(metadata.nodes.size() > 10);
+            assertTrue(blink.getOffHeapLeavesMemory() > 0);
+            assertTrue(blink.getOffHeapLeavesMemory() <= blink.getUsedMemory());
+            check(blink, expected);
+
+            // change leaves which are off-heap
+            for (int i = 0; i < 5000; i += 3) {
+                blink.delete(key(i));
+                expected.remove(key(i));
+            }
+            for (int i = 1; i < 5000; i += 5) {
+                blink.insert(key(i), i * 10L);
+                expected.put(key(i), i * 10L);
+            }
+            assertTrue(blink.insert(key(1), 42L, 10L));
+            expected.put(key(1), 42L);
+            // no such key, the leaf is not changed
+            assertNull(blink.delete(Bytes.from_string("customer/x")));
+            check(blink, expected);
+            metadata = blink.checkpoint();
+            check(blink, expected);
+        }
+
+        try (BLink<Bytes, Long> blink = new BLink<>(2048L, BytesLongSizeEvaluator.INSTANCE,
+                new RandomPageReplacementPolicy(5), storage, metadata, BytesLongOffHeapLeafCodec.INSTANCE)) {
+            check(blink, expected);
+        }
+    }
+
+    @Test
+    public void testOffHeapMemoryReleased() throws Exception {
+        MemoryStorage storage = new MemoryStorage();
+        BLink<Bytes, Long> blink = new BLink<>(2048L, BytesLongSizeEvaluator.INSTANCE,
+                new RandomPageReplacementPolicy(1000), storage, BytesLongOffHeapLeafCodec.INSTANCE);
+        try {
+            for (int i = 0; i < 5000; i++) {
+                blink.insert(key(i), (long) i);
+            }
+            blink.checkpoint();
+            long offHeap = blink.getOffHeapLeavesMemory();
+            assertTrue(offHeap > 0);
+
+            // changing a leaf moves it back on heap and gives back its buffer
+            blink.insert(key(0), 42L);
+            assertTrue(blink.getOffHeapLeavesMemory() < offHeap);
+        } finally {
+            blink.close();
+        }
+        assertEquals(0, blink.getOffHeapLeavesMemory());
+    }
+}
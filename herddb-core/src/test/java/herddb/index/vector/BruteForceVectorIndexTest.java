@@ -0,0 +1,171 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index.vector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import herddb.utils.Bytes;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+import org.junit.Test;
+
+/**
+ * Tests about {@link BruteForceVectorIndex}.
+ *
+ * @author enrico.olivelli
+ */
+public class BruteForceVectorIndexTest {
+
+    @Test
+    public void testSearchMatchesExhaustiveSort() {
+        for (BruteForceVectorIndex.Similarity similarity : BruteForceVectorIndex.Similarity.values()) {
+            checkSearch(similarity, 500, 17, null);
+            checkSearch(similarity, 500, 17, pk -> pk.to_int() % 3 == 0);
+        }
+    }
+
+    @Test
+    public void testParallelSearch() {
+        int size = BruteForceVectorIndex.PARALLEL_THRESHOLD + BruteForceVectorIndex.CHUNK_SIZE / 2;
+        checkSearch(BruteForceVectorIndex.Similarity.COSINE, size, 8, null);
+        checkSearch(BruteForceVectorIndex.Similarity.EUCLIDEAN, size, 8, pk -> pk.to_int() % 2 == 0);
+    }
+
+    @Test
+    public void testRemoveAndReplace() {
+        BruteForceVectorIndex index = new BruteForceVectorIndex(BruteForceVectorIndex.Similarity.DOT);
+        index.add(Bytes.from_int(1), new float[]{1, 0});
+        index.add(Bytes.from_int(2), new float[]{0, 1});
+        index.add(Bytes.from_int(3), new float[]{1, 1});
+        assertEquals(3, index.size());
+
+        assertTrue(index.remove(Bytes.from_int(1)));
+        assertFalse(index.remove(Bytes.from_int(1)));
+        assertEquals(2, index.size());
+
+        // the last vector has been moved into the slot of the removed one
+        List<Map.Entry<Bytes, Float>> results = index.search(new float[]{1, 0}, 10, null);
+        assertEquals(2, results.size());
+        assertEquals(Bytes.from_int(3), results.get(0).getKey());
+        assertEquals(1f, results.get(0).getValue(), 0f);
+
+        // replace the vector of an existing key
+        index.add(Bytes.from_int(2), new float[]{5, 0});
+        assertEquals(2, index.size());
+        results = index.search(new float[]{1, 0}, 1, null);
+        assertEquals(Bytes.from_int(2), results.get(0).getKey());
+        assertEquals(5f, results.get(0).getValue(), 0f);
+
+        // add from the serialized form
+        Bytes serialized = Bytes.from_float_array(new float[]{7, 7});
+        index.add(Bytes.from_int(4), serialized.getBuffer(), serialized.getOffset(), serialized.getLength());
+        results = index.search(new float[]{1, 0}, 1, null);
+        assertEquals(Bytes.from_int(4), results.get(0).getKey());
+        assertEquals(7f, results.get(0).getValue(), 0f);
+
+        try {
+            index.add(Bytes.from_int(5), new float[]{1, 2, 3});
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            index.search(new float[]{1, 2, 3}, 1, null);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(-1, index.getDimension());
+        assertTrue(index.search(new float[]{1, 2, 3}, 1, null).isEmpty());
+    }
+
+    private static void checkSearch(BruteForceVectorIndex.Similarity similarity, int size, int dimension,
+                                    Predicate<Bytes> filter) {
+        Random random = new Random(size + dimension);
+        BruteForceVectorIndex index = new BruteForceVectorIndex(similarity);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            float[] vector = randomVector(random, dimension);
+            vectors.add(vector);
+            index.add(Bytes.from_int(i), vector);
+        }
+        float[] query = randomVector(random, dimension);
+
+        List<Map.Entry<Bytes, Float>> expected = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (filter != null && !filter.test(Bytes.from_int(i))) {
+                continue;
+            }
+            expected.add(new AbstractMap.SimpleImmutableEntry<>(Bytes.from_int(i),
+                    score(similarity, query, vectors.get(i))));
+        }
+        if (similarity == BruteForceVectorIndex.Similarity.EUCLIDEAN) {
+            expected.sort((a, b) -> Float.compare(a.getValue(), b.getValue()));
+        } else {
+            expected.sort((a, b) -> Float.compare(b.getValue(), a.getValue()));
+        }
+
+        int topK = 25;
+        List<Map.Entry<Bytes, Float>> results = index.search(query, topK, filter);
+        assertEquals(topK, results.size());
+        for (int i = 0; i < topK; i++) {
+            assertEquals(similarity + " at " + i, expected.get(i).getKey(), results.get(i).getKey());
+            assertEquals(expected.get(i).getValue(), results.get(i).getValue(), 1e-4f);
+        }
+    }
+
+    private static float score(BruteForceVectorIndex.Similarity similarity, float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        double squareDistance = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+            squareDistance += (a[i] - b[i]) * (a[i] - b[i]);
+        }
+        switch (similarity) {
+            case EUCLIDEAN:
+                return (float) Math.sqrt(squareDistance);
+            case DOT:
+                return (float) dot;
+            case COSINE:
+            default:
+                return (float) (dot / (Math.sqrt(normA) * Math.sqrt(normB)));
+        }
+    }
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index.vector;
+
+import static org.junit.Assert.assertEquals;
+import herddb.core.MemoryManager;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.utils.Bytes;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests about {@link PersistentVectorStore#searchBatch(java.util.List, int)}.
+ *
+ * @author enrico.olivelli
+ */
+public class PersistentVectorStoreBatchSearchTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private static float[] randomVector(Random rng, int dim) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            v[i] = rng.nextFloat();
+        }
+        return v;
+    }
+
+    private static void assertSameResults(PersistentVectorStore store, List<float[]> queries, int topK) {
+        List<List<Map.Entry<Bytes, Float>>> batch = store.searchBatch(queries, topK);
+        assertEquals(queries.size(), batch.size());
+        for (int i = 0; i < queries.size(); i++) {
+            List<Map.Entry<Bytes, Float>> single = store.search(queries.get(i), topK);
+            assertEquals(topK, batch.get(i).size());
+            assertEquals("query " + i, single, batch.get(i));
+        }
+    }
+
+    @Test
+    public void testSearchBatch() throws Exception {
+        Path tmpDir = tmpFolder.newFolder().toPath();
+        MemoryManager mm = new MemoryManager(64 * 1024 * 1024, 0, 1024 * 1024, 1024 * 1024);
+        try (PersistentVectorStore store = new PersistentVectorStore("testidx", "testtable", "tstblspace",
+                "vector_col", tmpDir, new MemoryDataStorageManager(), mm,
+                16, 100, 1.2f, 1.4f, true, 2_000_000_000L, 0,
+                Long.MAX_VALUE)) {
+            store.start();
+            Random rng = new Random(42);
+            int dim = 16;
+            for (int i = 0; i < 1000; i++) {
+                store.addVector(Bytes.from_int(i), randomVector(rng, dim));
+            }
+            List<float[]> queries = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                queries.add(randomVector(rng, dim));
+            }
+
+            // live shards
+            assertSameResults(store, queries, 10);
+
+            // on-disk segments and live shards
+            store.checkpoint();
+            for (int i = 1000; i < 1200; i++) {
+                store.addVector(Bytes.from_int(i), randomVector(rng, dim));
+            }
+            assertSameResults(store, queries, 10);
+
+            assertEquals(0, store.searchBatch(new ArrayList<>(), 10).size());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index.vector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import herddb.core.MemoryManager;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.utils.Bytes;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests about the search of {@link PersistentVectorStore} with a filter on
+ * the primary keys.
+ *
+ * @author enrico.olivelli
+ */
+public class PersistentVectorStoreFilterTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private static float[] randomVector(Random rng, int dim) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            v[i] = rng.nextFloat();
+        }
+        return v;
+    }
+
+    private static void assertFiltered(PersistentVectorStore store, float[] query, Set<Bytes> allowed) {
+        List<Map.Entry<Bytes, Float>> results = store.search(query, 5, allowed);
+        // the filter is applied while visiting the graph: the best nodes
+        // of the allow-list are found even if they are far from the query
+        assertEquals(5, results.size());
+        for (Map.Entry<Bytes, Float> entry : results) {
+            assertTrue(entry.getKey() + " is not allowed", allowed.contains(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testSearchWithFilter() throws Exception {
+        Path tmpDir = tmpFolder.newFolder().toPath();
+        MemoryManager mm = new MemoryManager(64 * 1024 * 1024, 0, 1024 * 1024, 1024 * 1024);
+        try (PersistentVectorStore store = new PersistentVectorStore("testidx", "testtable", "tstblspace",
+                "vector_col", tmpDir, new MemoryDataStorageManager(), mm,
+                16, 100, 1.2f, 1.4f, true, 2_000_000_000L, 0,
+                Long.MAX_VALUE)) {
+            store.start();
+            Random rng = new Random(42);
+            int dim = 16;
+            Set<Bytes> allowed = new HashSet<>();
+            for (int i = 0; i < 1000; i++) {
+                store.addVector(Bytes.from_int(i), randomVector(rng, dim));
+                if (i % 100 == 3) {
+                    allowed.add(Bytes.from_int(i));
+                }
+            }
+            float[] query = randomVector(rng, dim);
+
+            // live shards
+            assertFiltered(store, query, allowed);
+
+            // on-disk segments
+            store.checkpoint();
+            assertFiltered(store, query, allowed);
+
+            // both
+            for (int i = 1000; i < 1100; i++) {
+                store.addVector(Bytes.from_int(i), randomVector(rng, dim));
+            }
+            allowed.add(Bytes.from_int(1050));
+            List<Map.Entry<Bytes, Float>> results = store.search(query, 100, allowed);
+            assertEquals(allowed.size(), results.size());
+
+            // deleted keys are never returned
+            store.removeVector(Bytes.from_int(1050));
+            results = store.search(query, 100, allowed);
+            assertEquals(allowed.size() - 1, results.size());
+        }
+    }
+
+    @Test
+    public void testSearchWithAllowListsOfDifferentSizes() throws Exception {
+        Path tmpDir = tmpFolder.newFolder().toPath();
+        MemoryManager mm = new MemoryManager(64 * 1024 * 1024, 0, 1024 * 1024, 1024 * 1024);
+        try (PersistentVectorStore store = new PersistentVectorStore("testidx", "testtable", "tstblspace",
+                "vector_col", tmpDir, new MemoryDataStorageManager(), mm,
+                16, 100, 1.2f, 1.4f, true, 2_000_000_000L, 0,
+                Long.MAX_VALUE)) {
+            store.start();
+            Random rng = new Random(42);
+            int dim = 16;
+            for (int i = 0; i < 1000; i++) {
+                store.addVector(Bytes.from_int(i), randomVector(rng, dim));
+            }
+            float[] query = randomVector(rng, dim);
+            // resolved and scored directly, resolved to accept bits,
+            // checked on each visited node
+            for (int step : new int[]{100, 10, 2}) {
+                Set<Bytes> allowed = new HashSet<>();
+                for (int i = 0; i < 1000; i += step) {
+                    allowed.add(Bytes.from_int(i));
+                }
+                // keys which are not in the store are ignored
+                allowed.add(Bytes.from_int(5000));
+
+                assertFiltered(store, query, allowed);
+                store.checkpoint();
+                assertFiltered(store, query, allowed);
+            }
+        }
+    }
+}
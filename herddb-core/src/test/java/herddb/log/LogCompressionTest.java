@@ -0,0 +1,106 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.log;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import herddb.utils.Bytes;
+import io.netty.buffer.ByteBuf;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+/**
+ * Tests about compression of log entries
+ */
+public class LogCompressionTest {
+
+    static String jsonRow(int i) {
+        StringBuilder res = new StringBuilder();
+        for (int j = 0; j < 10; j++) {
+            res.append("{\"id\":").append(i).append(",\"name\":\"customer name\",\"status\":\"active\",\"field").append(j).append("\":true}");
+        }
+        return res.toString();
+    }
+
+    @Test
+    public void testCodec() {
+        assertFalse(LogCompression.isCompressionEnabled("none"));
+        assertFalse(LogCompression.isCompressionEnabled(""));
+        assertTrue(LogCompression.isCompressionEnabled("LZ4"));
+        try {
+            LogCompression.isCompressionEnabled("zstd");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testCompressDecompress() throws Exception {
+        byte[] data = jsonRow(1).getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = LogCompression.compress(data, 0, data.length);
+        assertTrue(compressed.length < data.length / 2);
+        assertArrayEquals(data, LogCompression.decompress(compressed, 0, data.length));
+
+        // small data is never compressed
+        assertNull(LogCompression.compress(data, 0, 10));
+    }
+
+    @Test
+    public void testCompressedEntry() throws Exception {
+        LogEntry entry = new LogEntry(System.currentTimeMillis(), LogEntryType.INSERT, 1, "mytable",
+                Bytes.from_int(1), Bytes.from_string(jsonRow(1)));
+        byte[] plain = entry.serialize();
+        ByteBuf compressed = entry.serializeAsByteBuf(true);
+        try {
+            assertEquals(LogEntry.COMPRESSED_ENTRY, compressed.getByte(0));
+            assertTrue(compressed.readableBytes() < plain.length / 2);
+            byte[] copy = new byte[compressed.readableBytes()];
+            compressed.getBytes(0, copy);
+            assertEntryEquals(entry, LogEntry.deserialize(copy));
+            assertEntryEquals(entry, LogEntry.deserialize(compressed));
+        } finally {
+            compressed.release();
+        }
+
+        // entries which do not shrink are written as usual
+        LogEntry small = LogEntryFactory.beginTransaction(1);
+        ByteBuf notCompressed = small.serializeAsByteBuf(true);
+        try {
+            assertEquals(small.serialize().length, notCompressed.readableBytes());
+            assertEntryEquals(small, LogEntry.deserialize(notCompressed));
+        } finally {
+            notCompressed.release();
+        }
+    }
+
+    private static void assertEntryEquals(LogEntry expected, LogEntry actual) {
+        assertEquals(expected.timestamp, actual.timestamp);
+        assertEquals(expected.type, actual.type);
+        assertEquals(expected.transactionId, actual.transactionId);
+        assertEquals(expected.tableName, actual.tableName);
+        assertEquals(expected.key, actual.key);
+        assertEquals(expected.value, actual.value);
+    }
+}
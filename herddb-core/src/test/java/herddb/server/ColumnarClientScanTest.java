@@ -0,0 +1,119 @@
+/*
+ * Licensed to Diennea S.r.l. under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Diennea S.r.l. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package herddb.server;
+
+import static herddb.core.TestUtils.newServerConfigurationWithAutoPort;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import herddb.client.ClientConfiguration;
+import herddb.client.HDBClient;
+import herddb.client.HDBConnection;
+import herddb.client.ScanResultSet;
+import herddb.model.TableSpace;
+import herddb.utils.DataAccessor;
+import herddb.utils.RawString;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Scans with the columnar encoding of the result set
+ *
+ * @author enrico.olivelli
+ */
+public class ColumnarClientScanTest {
+
+    private static final int NUM_RECORDS = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testColumnar() throws Exception {
+        testColumnar(false, false);
+    }
+
+    @Test
+    public void testColumnarCompressed() throws Exception {
+        testColumnar(true, false);
+    }
+
+    @Test
+    public void testColumnarCompressedStreaming() throws Exception {
+        testColumnar(true, true);
+    }
+
+    private void testColumnar(boolean compression, boolean streaming) throws Exception {
+        try (Server server = new Server(newServerConfigurationWithAutoPort(folder.newFolder().toPath()))) {
+            server.start();
+            server.waitForStandaloneBoot();
+
+            ClientConfiguration clientConfiguration = new ClientConfiguration(folder.newFolder().toPath());
+            clientConfiguration.set(ClientConfiguration.PROPERTY_CLIENT_CONNECT_LOCALVM_SERVER, false);
+            clientConfiguration.set(ClientConfiguration.PROPERTY_SCANNER_COLUMNAR, true);
+            clientConfiguration.set(ClientConfiguration.PROPERTY_SCANNER_COLUMNAR_COMPRESSION, compression);
+            clientConfiguration.set(ClientConfiguration.PROPERTY_SCANNER_STREAMING, streaming);
+            try (HDBClient client = new HDBClient(clientConfiguration);
+                    HDBConnection connection = client.openConnection()) {
+                client.setClientSideMetadataProvider(new StaticClientSideMetadataProvider(server));
+
+                connection.executeUpdate(TableSpace.DEFAULT,
+                        "CREATE TABLE mytable (id int primary key, n1 long, s1 string, category string, t1 timestamp, d1 double, b1 boolean, bin blob)",
+                        0, false, true, Collections.emptyList());
+                for (int i = 0; i < NUM_RECORDS; i++) {
+                    connection.executeUpdate(TableSpace.DEFAULT,
+                            "INSERT INTO mytable (id,n1,s1,category,t1,d1,b1,bin) values(?,?,?,?,?,?,?,?)", 0, false, true,
+                            Arrays.asList(i, i % 3 == 0 ? null : i * 10L, "value" + i, "cat" + (i % 4), new Timestamp(i * 1000L),
+                                    i / 2d, i % 2 == 0, new byte[]{(byte) i}));
+                }
+
+                for (int fetchSize : new int[]{1, 100, 5000}) {
+                    int expected = 0;
+                    try (ScanResultSet scan = connection.executeScan(TableSpace.DEFAULT, "SELECT * FROM mytable ORDER BY id", true,
+                            Collections.emptyList(), 0, 0, fetchSize, true)) {
+                        while (scan.hasNext()) {
+                            DataAccessor row = scan.next();
+                            int i = expected++;
+                            assertEquals(i, row.get("id"));
+                            assertEquals(i % 3 == 0 ? null : i * 10L, row.get("n1"));
+                            assertEquals(RawString.of("value" + i), row.get("s1"));
+                            assertEquals(RawString.of("cat" + (i % 4)), row.get("category"));
+                            assertEquals(new Timestamp(i * 1000L), row.get("t1"));
+                            assertEquals(i / 2d, row.get("d1"));
+                            assertEquals(i % 2 == 0, row.get("b1"));
+                            assertArrayEquals(new byte[]{(byte) i}, (byte[]) row.get("bin"));
+                            assertEquals(i, row.get(0));
+                        }
+                    }
+                    assertEquals(NUM_RECORDS, expected);
+                }
+
+                // aggregates and projections
+                assertEquals(Long.valueOf(NUM_RECORDS), connection.executeScan(TableSpace.DEFAULT, "SELECT COUNT(*) as cc FROM mytable", true,
+                        Collections.emptyList(), 0, 0, 10, true).consume().get(0).get("cc"));
+                assertEquals(0, connection.executeScan(TableSpace.DEFAULT, "SELECT * FROM mytable WHERE id=-1", true,
+                        Collections.emptyList(), 0, 0, 5, true).consume().size());
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Licensed to Diennea S.r.l. under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Diennea S.r.l. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package herddb.server;
+
+import static herddb.core.TestUtils.newServerConfigurationWithAutoPort;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import herddb.client.ClientConfiguration;
+import herddb.client.DMLResult;
+import herddb.client.HDBClient;
+import herddb.client.HDBConnection;
+import herddb.client.HDBException;
+import herddb.client.ScanResultSet;
+import herddb.model.TableSpace;
+import herddb.utils.TestUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Many statements in flight on the same connection
+ *
+ * @author enrico.olivelli
+ */
+public class PipelinedClientTest {
+
+    private static final int NUM_RECORDS = 500;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPipelining() throws Exception {
+        // a very small limit, in order to make the server stop reading from the socket
+        ServerConfiguration serverConfiguration = newServerConfigurationWithAutoPort(folder.newFolder().toPath());
+        serverConfiguration.set(ServerConfiguration.PROPERTY_NETWORK_MAX_INFLIGHT_REQUESTS, 4);
+        try (Server server = new Server(serverConfiguration)) {
+            server.start();
+            server.waitForStandaloneBoot();
+
+            ClientConfiguration clientConfiguration = new ClientConfiguration(folder.newFolder().toPath());
+            clientConfiguration.set(ClientConfiguration.PROPERTY_CLIENT_CONNECT_LOCALVM_SERVER, false);
+            clientConfiguration.set(ClientConfiguration.PROPERTY_MAX_CONNECTIONS_PER_SERVER, 1);
+            try (HDBClient client = new HDBClient(clientConfiguration);
+                    HDBConnection connection = client.openConnection()) {
+                client.setClientSideMetadataProvider(new StaticClientSideMetadataProvider(server));
+
+                connection.executeUpdate(TableSpace.DEFAULT,
+                        "CREATE TABLE mytable (id int primary key, n1 long)", 0, false, true, Collections.emptyList());
+
+                List<CompletableFuture<DMLResult>> inserts = new ArrayList<>();
+                for (int i = 0; i < NUM_RECORDS; i++) {
+                    inserts.add(connection.executeUpdateAsync(TableSpace.DEFAULT,
+                            "INSERT INTO mytable (id,n1) values(?,?)", 0, false, true, Arrays.asList(i, i * 10L)));
+                }
+                for (CompletableFuture<DMLResult> insert : inserts) {
+                    assertEquals(1, insert.get().updateCount);
+                }
+
+                // lookups, each result is matched to its own request
+                List<CompletableFuture<ScanResultSet>> lookups = new ArrayList<>();
+                for (int i = 0; i < NUM_RECORDS; i++) {
+                    lookups.add(connection.executeScanAsync(TableSpace.DEFAULT,
+                            "SELECT n1 FROM mytable WHERE id=?", true, Arrays.asList(i), 0, 0, 10, true));
+                }
+                for (int i = 0; i < NUM_RECORDS; i++) {
+                    try (ScanResultSet scan = lookups.get(i).get()) {
+                        List<Map<String, Object>> rows = scan.consume();
+                        assertEquals(1, rows.size());
+                        assertEquals(i * 10L, rows.get(0).get("n1"));
+                    }
+                }
+
+                // scans with many chunks in flight together
+                List<CompletableFuture<ScanResultSet>> scans = new ArrayList<>();
+                for (int i = 0; i < 20; i++) {
+                    scans.add(connection.executeScanAsync(TableSpace.DEFAULT,
+                            "SELECT * FROM mytable", true, Collections.emptyList(), 0, 0, 7, true));
+                }
+                for (CompletableFuture<ScanResultSet> scan : scans) {
+                    try (ScanResultSet scanResultSet = scan.get()) {
+                        assertEquals(NUM_RECORDS, scanResultSet.consume().size());
+                    }
+                }
+
+                // errors are reported on the future of the failed statement
+                CompletableFuture<ScanResultSet> bad = connection.executeScanAsync(TableSpace.DEFAULT,
+                        "SELECT * FROM nottable", true, Collections.emptyList(), 0, 0, 10, true);
+                CompletableFuture<ScanResultSet> good = connection.executeScanAsync(TableSpace.DEFAULT,
+                        "SELECT COUNT(*) FROM mytable", true, Collections.emptyList(), 0, 0, 10, true);
+                try {
+                    bad.get();
+                } catch (ExecutionException err) {
+                    assertTrue(err.getCause() instanceof HDBException);
+                }
+                assertTrue(bad.isCompletedExceptionally());
+                try (ScanResultSet scanResultSet = good.get()) {
+                    assertEquals(1, scanResultSet.consume().size());
+                }
+            }
+            TestUtils.waitForCondition(() -> {
+                for (ServerSideConnectionPeer peer : server.getConnections().values()) {
+                    if (!peer.getScanners().isEmpty()) {
+                        return false;
+                    }
+                }
+                return true;
+            }, TestUtils.NOOP, 100, "there is at least one scanner");
+        }
+    }
+
+    @Test
+    public void testInFlightRequestsLimit() throws Exception {
+        ServerConfiguration serverConfiguration = newServerConfigurationWithAutoPort(folder.newFolder().toPath());
+        serverConfiguration.set(ServerConfiguration.PROPERTY_NETWORK_MAX_INFLIGHT_REQUESTS, 2);
+        try (Server server = new Server(serverConfiguration)) {
+            server.start();
+            server.waitForStandaloneBoot();
+
+            ClientConfiguration clientConfiguration = new ClientConfiguration(folder.newFolder().toPath());
+            clientConfiguration.set(ClientConfiguration.PROPERTY_CLIENT_CONNECT_LOCALVM_SERVER, false);
+            clientConfiguration.set(ClientConfiguration.PROPERTY_MAX_CONNECTIONS_PER_SERVER, 1);
+            try (HDBClient client = new HDBClient(clientConfiguration);
+                    HDBConnection connection = client.openConnection()) {
+                client.setClientSideMetadataProvider(new StaticClientSideMetadataProvider(server));
+
+                connection.executeUpdate(TableSpace.DEFAULT,
+                        "CREATE TABLE mytable (id int primary key, n1 long)", 0, false, true, Collections.emptyList());
+                connection.executeUpdate(TableSpace.DEFAULT,
+                        "INSERT INTO mytable (id,n1) values(1,1)", 0, false, true, Collections.emptyList());
+
+                try (HDBConnection other = client.openConnection()) {
+                    // lock the record on another connection, the next updates wait for the lock
+                    long tx = other.beginTransaction(TableSpace.DEFAULT);
+                    other.executeUpdate(TableSpace.DEFAULT,
+                            "UPDATE mytable set n1=2 WHERE id=1", tx, false, true, Collections.emptyList());
+
+                    List<CompletableFuture<DMLResult>> updates = new ArrayList<>();
+                    for (int i = 0; i < 10; i++) {
+                        updates.add(connection.executeUpdateAsync(TableSpace.DEFAULT,
+                                "UPDATE mytable set n1=n1+1 WHERE id=1", 0, false, true, Collections.emptyList()));
+                    }
+                    ServerSideConnectionPeer peer = findPeerWithInFlightRequests(server);
+                    Thread.sleep(500);
+                    // the server stopped reading the other requests
+                    assertEquals(2, peer.getChannel().getInFlightRequests());
+                    for (CompletableFuture<DMLResult> update : updates) {
+                        assertTrue(!update.isDone());
+                    }
+
+                    other.commitTransaction(TableSpace.DEFAULT, tx);
+                    for (CompletableFuture<DMLResult> update : updates) {
+                        assertEquals(1, update.get().updateCount);
+                    }
+                    assertEquals(0, peer.getChannel().getInFlightRequests());
+                }
+                try (ScanResultSet scan = connection.executeScan(TableSpace.DEFAULT,
+                        "SELECT n1 FROM mytable WHERE id=1", true, Collections.emptyList(), 0, 0, 10, true)) {
+                    assertEquals(12L, scan.consume().get(0).get("n1"));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPipeliningBehindOwnTransaction() throws Exception {
+        ServerConfiguration serverConfiguration = newServerConfigurationWithAutoPort(folder.newFolder().toPath());
+        serverConfiguration.set(ServerConfiguration.PROPERTY_NETWORK_MAX_INFLIGHT_REQUESTS, 2);
+        try (Server server = new Server(serverConfiguration)) {
+            server.start();
+            server.waitForStandaloneBoot();
+
+            ClientConfiguration clientConfiguration = new ClientConfiguration(folder.newFolder().toPath());
+            clientConfiguration.set(ClientConfiguration.PROPERTY_CLIENT_CONNECT_LOCALVM_SERVER, false);
+            clientConfiguration.set(ClientConfiguration.PROPERTY_MAX_CONNECTIONS_PER_SERVER, 1);
+            try (HDBClient client = new HDBClient(clientConfiguration);
+                    HDBConnection connection = client.openConnection()) {
+                client.setClientSideMetadataProvider(new StaticClientSideMetadataProvider(server));
+
+                connection.executeUpdate(TableSpace.DEFAULT,
+                        "CREATE TABLE mytable (id int primary key, n1 long)", 0, false, true, Collections.emptyList());
+                connection.executeUpdate(TableSpace.DEFAULT,
+                        "INSERT INTO mytable (id,n1) values(1,1)", 0, false, true, Collections.emptyList());
+
+                // the lock is held by a transaction of the same connection
+                long tx = connection.beginTransaction(TableSpace.DEFAULT);
+                connection.executeUpdate(TableSpace.DEFAULT,
+                        "UPDATE mytable set n1=2 WHERE id=1", tx, false, true, Collections.emptyList());
+
+                List<CompletableFuture<DMLResult>> updates = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    updates.add(connection.executeUpdateAsync(TableSpace.DEFAULT,
+                            "UPDATE mytable set n1=n1+1 WHERE id=1", 0, false, true, Collections.emptyList()));
+                }
+                ServerSideConnectionPeer peer = findPeerWithInFlightRequests(server);
+                TestUtils.waitForCondition(() -> peer.getChannel().getInFlightRequests() == 2, TestUtils.NOOP, 100);
+                for (CompletableFuture<DMLResult> update : updates) {
+                    assertTrue(!update.isDone());
+                }
+
+                // the COMMIT is not delayed behind the requests waiting for the lock
+                connection.commitTransaction(TableSpace.DEFAULT, tx);
+                for (CompletableFuture<DMLResult> update : updates) {
+                    assertEquals(1, update.get().updateCount);
+                }
+                assertEquals(0, peer.getChannel().getInFlightRequests());
+                try (ScanResultSet scan = connection.executeScan(TableSpace.DEFAULT,
+                        "SELECT n1 FROM mytable WHERE id=1", true, Collections.emptyList(), 0, 0, 10, true)) {
+                    assertEquals(5L, scan.consume().get(0).get("n1"));
+                }
+            }
+        }
+    }
+
+    private static ServerSideConnectionPeer findPeerWithInFlightRequests(Server server) throws Exception {
+        ServerSideConnectionPeer[] result = new ServerSideConnectionPeer[1];
+        TestUtils.waitForCondition(() -> {
+            for (ServerSideConnectionPeer peer : server.getConnections().values()) {
+                if (peer.getChannel().getInFlightRequests() > 0) {
+                    result[0] = peer;
+                    return true;
+                }
+            }
+            return false;
+        }, TestUtils.NOOP, 100, "no connection with requests in flight");
+        return result[0];
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to Diennea S.r.l. under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Diennea S.r.l. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package herddb.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import herddb.model.Column;
+import herddb.model.ColumnTypes;
+import herddb.model.DataScanner;
+import herddb.model.DataScannerException;
+import herddb.utils.DataAccessor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * Close of a streaming scanner while data is being pushed to the client
+ *
+ * @author enrico.olivelli
+ */
+public class ServerSideScannerPeerTest {
+
+    private static class CountingDataScanner extends DataScanner {
+
+        private final AtomicInteger closeCount = new AtomicInteger();
+
+        CountingDataScanner() {
+            super(null, new String[]{"k"}, new Column[]{Column.column("k", ColumnTypes.STRING)});
+        }
+
+        @Override
+        public boolean hasNext() throws DataScannerException {
+            return false;
+        }
+
+        @Override
+        public DataAccessor next() throws DataScannerException {
+            throw new DataScannerException("no data");
+        }
+
+        @Override
+        public void close() throws DataScannerException {
+            closeCount.incrementAndGet();
+            super.close();
+        }
+    }
+
+    @Test
+    public void testCloseWhilePushing() throws Exception {
+        CountingDataScanner dataScanner = new CountingDataScanner();
+        ServerSideScannerPeer scanner = new ServerSideScannerPeer(dataScanner, 10, true);
+        assertTrue(scanner.startPushing());
+
+        // CLOSESCANNER from the client, the pushing thread is still using the scanner
+        scanner.clientClose();
+        assertTrue(scanner.isCloseRequested());
+        assertEquals(0, dataScanner.closeCount.get());
+
+        // last chunk, the pushing thread closes the scanner too
+        scanner.close();
+        assertEquals(0, dataScanner.closeCount.get());
+
+        scanner.stopPushing();
+        assertEquals(1, dataScanner.closeCount.get());
+
+        // nobody can push data anymore
+        assertFalse(scanner.startPushing());
+        scanner.close();
+        assertEquals(1, dataScanner.closeCount.get());
+    }
+
+    @Test
+    public void testCloseWhenNotPushing() throws Exception {
+        CountingDataScanner dataScanner = new CountingDataScanner();
+        ServerSideScannerPeer scanner = new ServerSideScannerPeer(dataScanner, 10, true);
+        assertTrue(scanner.startPushing());
+        scanner.stopPushing();
+        assertEquals(0, dataScanner.closeCount.get());
+
+        scanner.clientClose();
+        assertEquals(1, dataScanner.closeCount.get());
+        assertFalse(scanner.startPushing());
+        scanner.clientClose();
+        assertEquals(1, dataScanner.closeCount.get());
+    }
+
+    @Test
+    public void testConcurrentCloseAndPush() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            CountingDataScanner dataScanner = new CountingDataScanner();
+            ServerSideScannerPeer scanner = new ServerSideScannerPeer(dataScanner, 10, true);
+            AtomicInteger pushesOnClosedScanner = new AtomicInteger();
+            Thread pusher = new Thread(() -> {
+                while (scanner.startPushing()) {
+                    if (dataScanner.isClosed()) {
+                        pushesOnClosedScanner.incrementAndGet();
+                    }
+                    scanner.stopPushing();
+                }
+            });
+            pusher.start();
+            scanner.clientClose();
+            pusher.join();
+            assertEquals(0, pushesOnClosedScanner.get());
+            assertEquals(1, dataScanner.closeCount.get());
+        }
+    }
+}
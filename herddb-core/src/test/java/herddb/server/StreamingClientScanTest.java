@@ -0,0 +1,161 @@
+/*
+ * Licensed to Diennea S.r.l. under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Diennea S.r.l. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package herddb.server;
+
+import static herddb.core.TestUtils.newServerConfigurationWithAutoPort;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import herddb.client.ClientConfiguration;
+import herddb.client.HDBClient;
+import herddb.client.HDBConnection;
+import herddb.client.ScanResultSet;
+import herddb.model.TableSpace;
+import herddb.utils.TestUtils;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Scans with data pushed by the server
+ *
+ * @author enrico.olivelli
+ */
+public class StreamingClientScanTest {
+
+    private static final int NUM_RECORDS = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLocalVM() throws Exception {
+        testStreaming(true);
+    }
+
+    @Test
+    public void testNetwork() throws Exception {
+        testStreaming(false);
+    }
+
+    private void testStreaming(boolean localVm) throws Exception {
+        try (Server server = new Server(newServerConfigurationWithAutoPort(folder.newFolder().toPath()))) {
+            server.start();
+            server.waitForStandaloneBoot();
+
+            ClientConfiguration clientConfiguration = new ClientConfiguration(folder.newFolder().toPath());
+            clientConfiguration.set(ClientConfiguration.PROPERTY_CLIENT_CONNECT_LOCALVM_SERVER, localVm);
+            clientConfiguration.set(ClientConfiguration.PROPERTY_SCANNER_STREAMING, true);
+            // very small window, in order to exercise flow control
+            clientConfiguration.set(ClientConfiguration.PROPERTY_SCANNER_STREAMING_CREDITS, 20);
+            try (HDBClient client = new HDBClient(clientConfiguration);
+                    HDBConnection connection = client.openConnection()) {
+                client.setClientSideMetadataProvider(new StaticClientSideMetadataProvider(server));
+
+                connection.executeUpdate(TableSpace.DEFAULT,
+                        "CREATE TABLE mytable (id int primary key, n1 long)", 0, false, true, Collections.emptyList());
+                for (int i = 0; i < NUM_RECORDS; i++) {
+                    connection.executeUpdate(TableSpace.DEFAULT,
+                            "INSERT INTO mytable (id,n1) values(?,?)", 0, false, true, Arrays.asList(i, i * 10L));
+                }
+
+                for (int fetchSize : new int[]{1, 7, 100, 5000}) {
+                    List<Map<String, Object>> all = connection.executeScan(TableSpace.DEFAULT, "SELECT * FROM mytable", true,
+                            Collections.emptyList(), 0, 0, fetchSize, true).consume();
+                    assertEquals(NUM_RECORDS, all.size());
+                    Set<Object> ids = new HashSet<>();
+                    for (Map<String, Object> row : all) {
+                        ids.add(row.get("id"));
+                    }
+                    assertEquals(NUM_RECORDS, ids.size());
+                    checkNoScannersOnTheServer(server);
+                }
+
+                // the order of the chunks is preserved
+                int expected = 0;
+                try (ScanResultSet scan = connection.executeScan(TableSpace.DEFAULT, "SELECT id FROM mytable ORDER BY id", true,
+                        Collections.emptyList(), 0, 0, 3, true)) {
+                    while (scan.hasNext()) {
+                        assertEquals(expected++, scan.next().get("id"));
+                    }
+                }
+                assertEquals(NUM_RECORDS, expected);
+
+                // maxRows
+                assertEquals(17, connection.executeScan(TableSpace.DEFAULT, "SELECT * FROM mytable", true,
+                        Collections.emptyList(), 0, 17, 5, true).consume().size());
+
+                // empty result set
+                assertEquals(0, connection.executeScan(TableSpace.DEFAULT, "SELECT * FROM mytable WHERE id=-1", true,
+                        Collections.emptyList(), 0, 0, 5, true).consume().size());
+
+                // in transaction
+                long tx = connection.beginTransaction(TableSpace.DEFAULT);
+                assertEquals(NUM_RECORDS, connection.executeScan(TableSpace.DEFAULT, "SELECT * FROM mytable", true,
+                        Collections.emptyList(), tx, 0, 10, true).consume().size());
+                connection.rollbackTransaction(TableSpace.DEFAULT, tx);
+                checkNoScannersOnTheServer(server);
+
+                // the server does not push more than the credits granted by the client
+                try (ScanResultSet scan = connection.executeScan(TableSpace.DEFAULT, "SELECT * FROM mytable", true,
+                        Collections.emptyList(), 0, 0, 5, true)) {
+                    assertTrue(scan.hasNext());
+                    scan.next();
+                    ServerSideScannerPeer scanner = findScanner(server);
+                    assertTrue(scanner.isStreaming());
+                    TestUtils.waitForCondition(() -> scanner.getCredits() == 0, TestUtils.NOOP, 100);
+                    Thread.sleep(200);
+                    assertFalse(scanner.getScanner().isFinished());
+                    assertEquals(0, scanner.getCredits());
+                }
+                // the client closed the result set before the end
+                checkNoScannersOnTheServer(server);
+            }
+            checkNoScannersOnTheServer(server);
+        }
+    }
+
+    private static ServerSideScannerPeer findScanner(Server server) {
+        for (ServerSideConnectionPeer peer : server.getConnections().values()) {
+            for (ServerSideScannerPeer scanner : peer.getScanners().values()) {
+                return scanner;
+            }
+        }
+        throw new AssertionError("no scanner on the server");
+    }
+
+    private static void checkNoScannersOnTheServer(Server server) throws Exception {
+        TestUtils.waitForCondition(() -> {
+            for (ServerSideConnectionPeer peer : server.getConnections().values()) {
+                if (!peer.getScanners().isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }, TestUtils.NOOP, 100, "there is at least one scanner");
+    }
+}
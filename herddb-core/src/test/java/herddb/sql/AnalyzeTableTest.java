@@ -0,0 +1,246 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.sql;
+
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import herddb.core.DBManager;
+import herddb.file.FileCommitLogManager;
+import herddb.file.FileDataStorageManager;
+import herddb.file.FileMetadataStorageManager;
+import herddb.index.IndexOperation;
+import herddb.index.SecondaryIndexRangeScan;
+import herddb.index.SecondaryIndexSeek;
+import herddb.mem.MemoryCommitLogManager;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.mem.MemoryMetadataStorageManager;
+import herddb.model.DataScanner;
+import herddb.model.StatementExecutionException;
+import herddb.model.TableDoesNotExistException;
+import herddb.model.TableSpace;
+import herddb.model.commands.ScanStatement;
+import herddb.utils.DataAccessor;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests about ANALYZE TABLE
+ *
+ * @author enrico.olivelli
+ */
+public class AnalyzeTableTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, DataAccessor> columnStats(DBManager manager, String table) throws Exception {
+        Map<String, DataAccessor> result = new HashMap<>();
+        try (DataScanner scan = scan(manager, "SELECT * FROM syscolumnstats WHERE table_name=?", Arrays.asList(table))) {
+            for (DataAccessor record : scan.consume()) {
+                result.put(record.get("column_name").toString(), record);
+            }
+        }
+        return result;
+    }
+
+    private static IndexOperation indexOperation(DBManager manager, String query) {
+        TranslatedQuery translated = manager.getPlanner().translate(TableSpace.DEFAULT, query, Collections.emptyList(), true, true, false, -1);
+        ScanStatement scan = translated.plan.mainStatement.unwrap(ScanStatement.class);
+        return scan.getPredicate() != null ? scan.getPredicate().getIndexOperation() : null;
+    }
+
+    /**
+     * Number of rows estimated by the planner for the scan of the table
+     */
+    private static double estimatedRows(DBManager manager, String query) throws Exception {
+        try (DataScanner scan = scan(manager, "EXPLAIN " + query, Collections.emptyList())) {
+            for (DataAccessor record : scan.consume()) {
+                if (record.get("name").toString().equals("plan")) {
+                    String plan = record.get("value").toString();
+                    Matcher matcher = Pattern.compile("BindableTableScan.*: rowcount = ([0-9.E]+),").matcher(plan);
+                    assertTrue(plan, matcher.find());
+                    return Double.parseDouble(matcher.group(1));
+                }
+            }
+        }
+        throw new AssertionError("no plan for " + query);
+    }
+
+    private static long number(DataAccessor record, String field) {
+        return ((Number) record.get(field)).longValue();
+    }
+
+    @Test
+    public void testAnalyzeTable() throws Exception {
+        try (DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(),
+                new MemoryCommitLogManager(), null, null)) {
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+            execute(manager, "CREATE TABLE t1 (id int primary key, n int, s string, d double)", Collections.emptyList());
+            for (int i = 0; i < 1000; i++) {
+                executeUpdate(manager, "INSERT INTO t1(id,n,s,d) values(?,?,?,?)",
+                        Arrays.asList(i, i % 10, i % 4 == 0 ? null : "v" + (i % 100), i * 1.5));
+            }
+            assertTrue(columnStats(manager, "t1").isEmpty());
+
+            execute(manager, "ANALYZE TABLE t1", Collections.emptyList());
+            Map<String, DataAccessor> stats = columnStats(manager, "t1");
+            assertEquals(4, stats.size());
+
+            DataAccessor id = stats.get("id");
+            assertEquals(1000, number(id, "analyzed_rows"));
+            assertEquals(0, number(id, "null_count"));
+            assertTrue(Math.abs(number(id, "distinct_values") - 1000) <= 20);
+            assertEquals("0", id.get("min_value").toString());
+            assertEquals("999", id.get("max_value").toString());
+            assertEquals(64, number(id, "histogram_buckets"));
+
+            assertEquals(10, number(stats.get("n"), "distinct_values"));
+
+            DataAccessor s = stats.get("s");
+            assertEquals(250, number(s, "null_count"));
+            // values v1, v2, v3, v5...
+            assertEquals(75, number(s, "distinct_values"));
+
+            DataAccessor d = stats.get("d");
+            assertEquals("0.0", d.get("min_value").toString());
+            assertEquals("1498.5", d.get("max_value").toString());
+
+            // other syntaxes
+            execute(manager, "analyze table herd.t1", Collections.emptyList());
+            execute(manager, "ANALYZE TABLE `t1`", Collections.emptyList());
+            try {
+                execute(manager, "ANALYZE TABLE t2", Collections.emptyList());
+            } catch (TableDoesNotExistException expected) {
+            }
+            try {
+                execute(manager, "ANALYZE TABLE", Collections.emptyList());
+            } catch (StatementExecutionException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testIndexChoice() throws Exception {
+        try (DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(),
+                new MemoryCommitLogManager(), null, null)) {
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+            execute(manager, "CREATE TABLE t1 (id int primary key, status int, code int)", Collections.emptyList());
+            execute(manager, "CREATE INDEX t1_status ON t1(status)", Collections.emptyList());
+            execute(manager, "CREATE INDEX t1_code ON t1(code)", Collections.emptyList());
+            for (int i = 0; i < 1000; i++) {
+                executeUpdate(manager, "INSERT INTO t1(id,status,code) values(?,?,?)", Arrays.asList(i, i % 2, i));
+            }
+
+            // without statistics every index is good
+            IndexOperation op = indexOperation(manager, "SELECT * FROM t1 WHERE status=1");
+            assertTrue(op instanceof SecondaryIndexSeek);
+
+            execute(manager, "ANALYZE TABLE t1", Collections.emptyList());
+
+            // half of the table, full scan
+            assertNull(indexOperation(manager, "SELECT * FROM t1 WHERE status=1"));
+            // the most selective index
+            op = indexOperation(manager, "SELECT * FROM t1 WHERE status=1 and code=5");
+            assertTrue(op instanceof SecondaryIndexSeek);
+            assertEquals("t1_code", ((SecondaryIndexSeek) op).indexName);
+            op = indexOperation(manager, "SELECT * FROM t1 WHERE status=? and code=?");
+            assertEquals("t1_code", ((SecondaryIndexSeek) op).indexName);
+            // ranges
+            op = indexOperation(manager, "SELECT * FROM t1 WHERE code>=990");
+            assertTrue(op instanceof SecondaryIndexRangeScan);
+            assertNull(indexOperation(manager, "SELECT * FROM t1 WHERE code>=10"));
+
+            // results do not change
+            try (DataScanner scan = scan(manager, "SELECT * FROM t1 WHERE status=1", Collections.emptyList())) {
+                assertEquals(500, scan.consume().size());
+            }
+            try (DataScanner scan = scan(manager, "SELECT * FROM t1 WHERE code>=990", Collections.emptyList())) {
+                assertEquals(10, scan.consume().size());
+            }
+
+            // estimates of the cost model
+            assertEquals(500, estimatedRows(manager, "SELECT * FROM t1 WHERE status=1"), 0.1);
+            assertEquals(1, estimatedRows(manager, "SELECT * FROM t1 WHERE code=5"), 0.1);
+            assertEquals(10, estimatedRows(manager, "SELECT * FROM t1 WHERE code>=990"), 2);
+            assertEquals(250, estimatedRows(manager, "SELECT * FROM t1 WHERE code<500 and status=0"), 10);
+
+            // equi-joins are estimated using the number of distinct values
+            execute(manager, "CREATE TABLE t2 (id int primary key, t1id int)", Collections.emptyList());
+            for (int i = 0; i < 100; i++) {
+                executeUpdate(manager, "INSERT INTO t2(id,t1id) values(?,?)", Arrays.asList(i, i * 2));
+            }
+            execute(manager, "ANALYZE TABLE t2", Collections.emptyList());
+            try (DataScanner scan = scan(manager, "SELECT t1.id FROM t1 JOIN t2 ON t1.id=t2.t1id WHERE t1.status=0", Collections.emptyList())) {
+                assertEquals(100, scan.consume().size());
+            }
+        }
+    }
+
+    @Test
+    public void testStatisticsArePersisted() throws Exception {
+        Path baseDir = folder.newFolder().toPath();
+        try (DBManager manager = new DBManager("localhost", new FileMetadataStorageManager(baseDir.resolve("metadata")),
+                new FileDataStorageManager(baseDir.resolve("data")), new FileCommitLogManager(baseDir.resolve("logs")),
+                baseDir.resolve("tmp"), null)) {
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+            execute(manager, "CREATE TABLE t1 (id int primary key, n int)", Collections.emptyList());
+            for (int i = 0; i < 100; i++) {
+                executeUpdate(manager, "INSERT INTO t1(id,n) values(?,?)", Arrays.asList(i, i % 7));
+            }
+            execute(manager, "ANALYZE TABLE t1", Collections.emptyList());
+            manager.checkpoint();
+        }
+        try (DBManager manager = new DBManager("localhost", new FileMetadataStorageManager(baseDir.resolve("metadata")),
+                new FileDataStorageManager(baseDir.resolve("data")), new FileCommitLogManager(baseDir.resolve("logs")),
+                baseDir.resolve("tmp"), null)) {
+            manager.start();
+            manager.waitForTablespace(TableSpace.DEFAULT, 10000);
+            Map<String, DataAccessor> stats = columnStats(manager, "t1");
+            assertEquals(2, stats.size());
+            DataAccessor n = stats.get("n");
+            assertNotNull(n);
+            assertEquals(100, number(n, "analyzed_rows"));
+            assertEquals(7, number(n, "distinct_values"));
+            assertEquals("0", n.get("min_value").toString());
+            assertEquals("6", n.get("max_value").toString());
+            List<String> histogram = Arrays.asList(n.get("histogram").toString().split(","));
+            assertEquals("0", histogram.get(0));
+            assertEquals("6", histogram.get(histogram.size() - 1));
+        }
+    }
+}
@@ -22,6 +22,8 @@ package herddb.sql;
 import static herddb.core.TestUtils.execute;
 import static herddb.core.TestUtils.scan;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import herddb.core.DBManager;
 import herddb.mem.MemoryCommitLogManager;
 import herddb.mem.MemoryDataStorageManager;
@@ -58,4 +60,18 @@ public class JSQLParserPlannerTest {
             }
         }
     }
+
+    @Test
+    public void testIsLateralVectorSearch() {
+        assertTrue(JSQLParserPlanner.isLateralVectorSearch(
+                "SELECT q.qid, t.id FROM (VALUES (0, ?)) AS q(qid, qvec), "
+                        + "LATERAL (SELECT id FROM t1 ORDER BY ann_of(vec, q.qvec) DESC LIMIT 3) AS t"));
+        // the words appear, but not the shape
+        assertFalse(JSQLParserPlanner.isLateralVectorSearch(
+                "SELECT id FROM t1 WHERE name='lateral' ORDER BY ann_of(vec, ?) DESC LIMIT 3"));
+        assertFalse(JSQLParserPlanner.isLateralVectorSearch(
+                "SELECT q.qid, t.id FROM (VALUES (0, 'ann_of')) AS q(qid, name), "
+                        + "LATERAL (SELECT id FROM t1 WHERE t1.name = q.name) AS t"));
+        assertFalse(JSQLParserPlanner.isLateralVectorSearch("SELECT * FROM t1"));
+    }
 }
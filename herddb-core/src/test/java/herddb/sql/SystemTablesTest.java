@@ -181,7 +181,7 @@ public class SystemTablesTest {
                         .findAny()
                         .isPresent());
                 // to be changed every time we add a new system table
-                assertEquals(30, records.size());
+                assertEquals(33, records.size());
             }
 
             try (DataScanner scan = scan(manager, "SELECT * FROM tblspace1.sysindexcolumns where table_name like '%tsql' order by index_name, column_name",
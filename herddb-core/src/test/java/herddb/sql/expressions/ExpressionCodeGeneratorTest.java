@@ -0,0 +1,156 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.sql.expressions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import herddb.model.ColumnTypes;
+import herddb.model.StatementEvaluationContext;
+import herddb.sql.SQLStatementEvaluationContext;
+import herddb.utils.DataAccessor;
+import herddb.utils.MapDataAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Checks that generated expressions return the same results as the
+ * interpreter.
+ *
+ * @author enrico.olivelli
+ */
+public class ExpressionCodeGeneratorTest {
+
+    private static final String[] FIELDS = {"id", "n1", "s1"};
+
+    private static AccessCurrentRowExpression column(int index) {
+        return new AccessCurrentRowExpression(index, ColumnTypes.ANYTYPE);
+    }
+
+    private static ConstantExpression constant(Object value) {
+        return new ConstantExpression(value, ColumnTypes.ANYTYPE);
+    }
+
+    private static List<DataAccessor> rows() {
+        List<DataAccessor> rows = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("id", i);
+            // some NULL values
+            data.put("n1", i % 3 == 0 ? null : i * 10);
+            data.put("s1", i % 4 == 0 ? null : "s" + (i % 5));
+            rows.add(new MapDataAccessor(data, FIELDS));
+        }
+        return rows;
+    }
+
+    private static void assertSameResults(CompiledSQLExpression expression, StatementEvaluationContext context) {
+        CompiledSQLExpression generated = ExpressionCodeGenerator.generate(expression);
+        assertTrue(generated instanceof CodeGeneratedExpression);
+        for (DataAccessor row : rows()) {
+            Object expected = expression.evaluate(row, context);
+            // the generated code returns false instead of NULL, like toBoolean
+            assertEquals(expression + " on " + row.toMap(), CodeGeneratedExpression.toBoolean(expected), generated.evaluate(row, context));
+        }
+    }
+
+    @Test
+    public void testComparisons() throws Exception {
+        StatementEvaluationContext context = StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT();
+        assertSameResults(new CompiledEqualsExpression(column(0), constant(5)), context);
+        assertSameResults(new CompiledNotEqualsExpression(column(1), constant(50)), context);
+        assertSameResults(new CompiledGreaterThanExpression(column(1), constant(50)), context);
+        assertSameResults(new CompiledGreaterThanEqualsExpression(column(1), constant(50)), context);
+        assertSameResults(new CompiledMinorThanExpression(column(0), constant(7)), context);
+        assertSameResults(new CompiledMinorThanEqualsExpression(column(0), constant(7)), context);
+        assertSameResults(new CompiledEqualsExpression(column(2), constant("s1")), context);
+        assertSameResults(new CompiledEqualsExpression(column(2), constant(null)), context);
+        assertSameResults(new CompiledIsNullExpression(false, column(1)), context);
+        assertSameResults(new CompiledIsNullExpression(true, column(2)), context);
+        // constant on the left side
+        assertSameResults(new CompiledGreaterThanExpression(constant(50), column(1)), context);
+    }
+
+    @Test
+    public void testLogicalOperators() throws Exception {
+        StatementEvaluationContext context = StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT();
+        CompiledSQLExpression a = new CompiledGreaterThanExpression(column(0), constant(3));
+        CompiledSQLExpression b = new CompiledIsNullExpression(false, column(1));
+        CompiledSQLExpression c = new CompiledEqualsExpression(column(2), constant("s2"));
+        assertSameResults(new CompiledAndExpression(a, b), context);
+        assertSameResults(new CompiledOrExpression(a, c), context);
+        assertSameResults(new CompiledMultiAndExpression(new CompiledSQLExpression[]{a, new CompiledNotExpression(b), c}), context);
+        assertSameResults(new CompiledMultiOrExpression(new CompiledSQLExpression[]{b, c, new CompiledNotExpression(a)}), context);
+        assertSameResults(new CompiledParenthesisExpression(true, new CompiledOrExpression(b, c)), context);
+        assertSameResults(new CompiledAndExpression(new CompiledParenthesisExpression(false, new CompiledOrExpression(a, b)), c), context);
+    }
+
+    @Test
+    public void testInterpretedLeaves() throws Exception {
+        List<Object> parameters = Arrays.asList(100, "s3");
+        StatementEvaluationContext context = new SQLStatementEvaluationContext("query", parameters, false, false);
+        // n1 + 5 > ?
+        assertSameResults(new CompiledGreaterThanExpression(
+                new CompiledAddExpression(column(1), constant(5)), new JdbcParameterExpression(0)), context);
+        // s1 = ? OR id = 1
+        assertSameResults(new CompiledOrExpression(
+                new CompiledEqualsExpression(column(2), new JdbcParameterExpression(1)),
+                new CompiledEqualsExpression(column(0), constant(1))), context);
+        // NOT over a value which can be NULL is left to the interpreter
+        assertSameResults(new CompiledAndExpression(
+                new CompiledNotExpression(column(1)),
+                new CompiledGreaterThanExpression(column(0), constant(1))), context);
+    }
+
+    @Test
+    public void testClassesAreSharedByShape() throws Exception {
+        CompiledSQLExpression first = ExpressionCodeGenerator.generate(new CompiledAndExpression(
+                new CompiledEqualsExpression(column(0), constant(1)),
+                new CompiledGreaterThanExpression(column(1), constant(10))));
+        CompiledSQLExpression second = ExpressionCodeGenerator.generate(new CompiledAndExpression(
+                new CompiledEqualsExpression(column(0), constant(7)),
+                new CompiledGreaterThanExpression(column(1), constant(70))));
+        CompiledSQLExpression other = ExpressionCodeGenerator.generate(new CompiledOrExpression(
+                new CompiledEqualsExpression(column(0), constant(7)),
+                new CompiledGreaterThanExpression(column(1), constant(70))));
+        assertSame(first.getClass(), second.getClass());
+        assertNotSame(first.getClass(), other.getClass());
+
+        StatementEvaluationContext context = StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT();
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", 7);
+        data.put("n1", 100);
+        DataAccessor row = new MapDataAccessor(data, FIELDS);
+        assertEquals(Boolean.FALSE, first.evaluate(row, context));
+        assertEquals(Boolean.TRUE, second.evaluate(row, context));
+    }
+
+    @Test
+    public void testNotBooleanExpression() throws Exception {
+        CompiledSQLExpression expression = new CompiledAddExpression(column(1), constant(5));
+        assertSame(expression, ExpressionCodeGenerator.generate(expression));
+    }
+}
@@ -21,17 +21,19 @@
 package herddb.indexing;
 
 import herddb.index.vector.AbstractVectorStore;
+import herddb.index.vector.BruteForceVectorIndex;
 import herddb.utils.Bytes;
-import java.util.AbstractMap;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Predicate;
 
 /**
  * In-memory brute-force vector store used by the IndexingServiceEngine.
  * Stores vectors keyed by primary key and supports similarity search.
+ * Vectors are kept in contiguous storage and scored with SIMD kernels,
+ * see {@link BruteForceVectorIndex}.
  *
  * @author enrico.olivelli
  */
@@ -39,7 +41,8 @@ class InMemoryVectorStore extends AbstractVectorStore {
 
     enum SimilarityType { COSINE, EUCLIDEAN, DOT }
 
-    private final List<VectorEntry> entries = Collections.synchronizedList(new ArrayList<>());
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final BruteForceVectorIndex index;
     private final SimilarityType similarityType;
 
     InMemoryVectorStore(String vectorColumnName) {
@@ -49,6 +52,7 @@ class InMemoryVectorStore extends AbstractVectorStore {
     InMemoryVectorStore(String vectorColumnName, SimilarityType similarityType) {
         super(vectorColumnName);
         this.similarityType = similarityType;
+        this.index = new BruteForceVectorIndex(toSimilarity(similarityType));
     }
 
     SimilarityType getSimilarityType() {
@@ -70,67 +74,76 @@ class InMemoryVectorStore extends AbstractVectorStore {
         }
     }
 
+    private static BruteForceVectorIndex.Similarity toSimilarity(SimilarityType similarityType) {
+        switch (similarityType) {
+            case EUCLIDEAN:
+                return BruteForceVectorIndex.Similarity.EUCLIDEAN;
+            case DOT:
+                return BruteForceVectorIndex.Similarity.DOT;
+            case COSINE:
+            default:
+                return BruteForceVectorIndex.Similarity.COSINE;
+        }
+    }
+
     @Override
     public void addVector(Bytes pk, float[] vector) {
-        entries.add(new VectorEntry(pk, vector));
+        lock.writeLock().lock();
+        try {
+            index.add(pk, vector);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Override
     public void removeVector(Bytes pk) {
-        entries.removeIf(e -> e.pk.equals(pk));
+        lock.writeLock().lock();
+        try {
+            index.remove(pk);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Override
     public int size() {
-        return entries.size();
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     @Override
-    public List<Map.Entry<Bytes, Float>> search(float[] queryVector, int topK) {
-        List<Map.Entry<Bytes, Float>> results = new ArrayList<>();
-        // Take a snapshot to avoid ConcurrentModificationException
-        List<VectorEntry> snapshot;
-        synchronized (entries) {
-            snapshot = new ArrayList<>(entries);
-        }
-        for (VectorEntry entry : snapshot) {
-            float score = computeSimilarity(queryVector, entry.vector);
-            results.add(new AbstractMap.SimpleEntry<>(entry.pk, score));
+    public List<Map.Entry<Bytes, Float>> search(float[] queryVector, int topK, Set<Bytes> acceptedPrimaryKeys) {
+        lock.readLock().lock();
+        try {
+            return index.search(queryVector, topK, acceptedPrimaryKeys != null ? acceptedPrimaryKeys::contains : null);
+        } finally {
+            lock.readLock().unlock();
         }
-        if (similarityType == SimilarityType.EUCLIDEAN) {
-            // Lower distance = more similar
-            results.sort((a, b) -> Float.compare(a.getValue(), b.getValue()));
-        } else {
-            // Higher score = more similar (cosine, dot)
-            results.sort((a, b) -> Float.compare(b.getValue(), a.getValue()));
-        }
-        return results.size() <= topK ? results : results.subList(0, topK);
     }
 
     @Override
     public void forEachPrimaryKey(boolean includeOnDisk, Predicate<Bytes> visitor) {
-        List<VectorEntry> snapshot;
-        synchronized (entries) {
-            snapshot = new ArrayList<>(entries);
-        }
-        for (VectorEntry entry : snapshot) {
-            if (!visitor.test(entry.pk)) {
-                return;
-            }
+        lock.readLock().lock();
+        try {
+            index.forEachPrimaryKey(visitor);
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
     @Override
     public long estimatedMemoryUsageBytes() {
-        long total = 0;
-        List<VectorEntry> snapshot;
-        synchronized (entries) {
-            snapshot = new ArrayList<>(entries);
+        lock.readLock().lock();
+        try {
+            return index.estimatedMemoryUsageBytes();
+        } finally {
+            lock.readLock().unlock();
         }
-        for (VectorEntry entry : snapshot) {
-            total += entry.pk.to_array().length + (long) entry.vector.length * 4;
-        }
-        return total;
     }
 
     @Override
@@ -140,59 +153,11 @@ class InMemoryVectorStore extends AbstractVectorStore {
 
     @Override
     public void close() throws Exception {
-        entries.clear();
-    }
-
-    private float computeSimilarity(float[] a, float[] b) {
-        switch (similarityType) {
-            case EUCLIDEAN:
-                return euclideanDistance(a, b);
-            case DOT:
-                return dotProduct(a, b);
-            case COSINE:
-            default:
-                return cosineSimilarity(a, b);
-        }
-    }
-
-    private static float cosineSimilarity(float[] a, float[] b) {
-        float dot = 0, normA = 0, normB = 0;
-        int len = Math.min(a.length, b.length);
-        for (int i = 0; i < len; i++) {
-            dot += a[i] * b[i];
-            normA += a[i] * a[i];
-            normB += b[i] * b[i];
-        }
-        float denom = (float) (Math.sqrt(normA) * Math.sqrt(normB));
-        return denom == 0 ? 0 : dot / denom;
-    }
-
-    private static float euclideanDistance(float[] a, float[] b) {
-        float sum = 0;
-        int len = Math.min(a.length, b.length);
-        for (int i = 0; i < len; i++) {
-            float diff = a[i] - b[i];
-            sum += diff * diff;
-        }
-        return (float) Math.sqrt(sum);
-    }
-
-    private static float dotProduct(float[] a, float[] b) {
-        float dot = 0;
-        int len = Math.min(a.length, b.length);
-        for (int i = 0; i < len; i++) {
-            dot += a[i] * b[i];
-        }
-        return dot;
-    }
-
-    private static class VectorEntry {
-        final Bytes pk;
-        final float[] vector;
-
-        VectorEntry(Bytes pk, float[] vector) {
-            this.pk = pk;
-            this.vector = vector;
+        lock.writeLock().lock();
+        try {
+            index.clear();
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 }
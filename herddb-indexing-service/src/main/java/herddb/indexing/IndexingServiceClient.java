@@ -21,10 +21,14 @@
 package herddb.indexing;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.ByteString;
 import herddb.index.vector.RemoteVectorIndexService;
+import herddb.indexing.proto.BatchSearchRequest;
+import herddb.indexing.proto.BatchSearchResponse;
 import herddb.indexing.proto.GetIndexStatusRequest;
 import herddb.indexing.proto.GetIndexStatusResponse;
 import herddb.indexing.proto.IndexingServiceGrpc;
+import herddb.indexing.proto.QueryVector;
 import herddb.indexing.proto.SearchRequest;
 import herddb.indexing.proto.SearchResponse;
 import herddb.indexing.proto.SearchResult;
@@ -34,18 +38,21 @@ import herddb.utils.Bytes;
 import io.grpc.ClientInterceptor;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.stub.StreamObserver;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -203,6 +210,17 @@ public class IndexingServiceClient implements RemoteVectorIndexService, DynamicS
      */
     public List<Map.Entry<Bytes, Float>> search(String tablespace, String table, String index,
                                                   float[] vector, int limit) {
+        return search(tablespace, table, index, vector, limit, null);
+    }
+
+    /**
+     * Same as {@link #search(String, String, String, float[], int)}, but only
+     * the given primary keys can be returned: the allow-list is sent to every
+     * instance, which applies it while traversing the graph.
+     */
+    @Override
+    public List<Map.Entry<Bytes, Float>> search(String tablespace, String table, String index,
+                                                  float[] vector, int limit, Set<Bytes> allowedPrimaryKeys) {
         ServerSnapshot s = this.snapshot;
 
         if (s.servers.isEmpty()) {
@@ -228,6 +246,15 @@ public class IndexingServiceClient implements RemoteVectorIndexService, DynamicS
         for (float v : vector) {
             requestBuilder.addVector(v);
         }
+        if (allowedPrimaryKeys != null) {
+            if (allowedPrimaryKeys.isEmpty()) {
+                // an empty list on the wire means "no filter"
+                return Collections.emptyList();
+            }
+            for (Bytes pk : allowedPrimaryKeys) {
+                requestBuilder.addAllowedPrimaryKeys(ByteString.copyFrom(pk.getBuffer(), pk.getOffset(), pk.getLength()));
+            }
+        }
         SearchRequest request = requestBuilder.build();
 
         if (!multiInstance) {
@@ -301,6 +328,159 @@ public class IndexingServiceClient implements RemoteVectorIndexService, DynamicS
         return out;
     }
 
+    /**
+     * Searches many query vectors with a single BatchSearch RPC to each
+     * instance. The results of every query are merged across the instances
+     * with the same bounded top-K merge used by
+     * {@link #search(String, String, String, float[], int, Set)}.
+     */
+    @Override
+    public List<List<Map.Entry<Bytes, Float>>> searchBatch(String tablespace, String table, String index,
+                                                            List<float[]> vectors, int limit) {
+        return searchBatch(tablespace, table, index, vectors, limit, null);
+    }
+
+    /**
+     * Same as {@link #searchBatch(String, String, String, List, int)}, but
+     * only the given primary keys can be returned: the allow-list is sent once
+     * with the batch and it is shared by all the query vectors.
+     */
+    @Override
+    public List<List<Map.Entry<Bytes, Float>>> searchBatch(String tablespace, String table, String index,
+                                                            List<float[]> vectors, int limit,
+                                                            Set<Bytes> allowedPrimaryKeys) {
+        ServerSnapshot s = this.snapshot;
+
+        if (s.servers.isEmpty()) {
+            throw new RuntimeException("No indexing service instances available");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("search limit must be positive, got " + limit);
+        }
+
+        boolean multiInstance = s.servers.size() > 1;
+        LOGGER.log(Level.FINE, "client batch search: tablespace={0}, table={1}, index={2}, limit={3}, queries={4}, instances={5}",
+                new Object[]{tablespace, table, index, limit, vectors.size(), s.servers.size()});
+        long start = System.nanoTime();
+
+        BatchSearchRequest.Builder requestBuilder = BatchSearchRequest.newBuilder()
+                .setTablespace(tablespace)
+                .setTable(table)
+                .setIndex(index)
+                .setLimit(limit)
+                .setReturnScore(multiInstance);
+        for (float[] vector : vectors) {
+            QueryVector.Builder query = QueryVector.newBuilder();
+            for (float v : vector) {
+                query.addVector(v);
+            }
+            requestBuilder.addQueries(query);
+        }
+
+        List<List<Map.Entry<Bytes, Float>>> results = new ArrayList<>(vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            results.add(Collections.emptyList());
+        }
+        if (allowedPrimaryKeys != null) {
+            if (allowedPrimaryKeys.isEmpty()) {
+                // an empty list on the wire means "no filter"
+                return results;
+            }
+            for (Bytes pk : allowedPrimaryKeys) {
+                requestBuilder.addAllowedPrimaryKeys(ByteString.copyFrom(pk.getBuffer(), pk.getOffset(), pk.getLength()));
+            }
+        }
+        BatchSearchRequest request = requestBuilder.build();
+
+        if (!multiInstance) {
+            // Single instance: blocking fast-path, the results are already sorted
+            ManagedChannel channel = s.channels.values().iterator().next();
+            IndexingServiceGrpc.IndexingServiceBlockingStub stub =
+                    IndexingServiceGrpc.newBlockingStub(channel)
+                            .withDeadlineAfter(timeoutSeconds, TimeUnit.SECONDS);
+            Iterator<BatchSearchResponse> responses = stub.batchSearch(request);
+            while (responses.hasNext()) {
+                BatchSearchResponse response = responses.next();
+                results.set(response.getQueryIndex(), toEntryList(response.getResultsList()));
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            LOGGER.log(Level.FINE, "client batch search completed (single instance): index={0}, {1} queries in {2} ms",
+                    new Object[]{index, vectors.size(), elapsedMs});
+            return results;
+        }
+
+        // Multiple instances: stream from every instance in parallel, then
+        // merge the results of each query
+        List<Map.Entry<String, CompletableFuture<List<BatchSearchResponse>>>> inflight =
+                new ArrayList<>(s.channels.size());
+        for (Map.Entry<String, ManagedChannel> entry : s.channels.entrySet()) {
+            IndexingServiceGrpc.IndexingServiceStub stub =
+                    IndexingServiceGrpc.newStub(entry.getValue())
+                            .withDeadlineAfter(timeoutSeconds, TimeUnit.SECONDS);
+            CompletableFuture<List<BatchSearchResponse>> future = new CompletableFuture<>();
+            stub.batchSearch(request, new StreamObserver<BatchSearchResponse>() {
+                private final List<BatchSearchResponse> received = new ArrayList<>();
+
+                @Override
+                public void onNext(BatchSearchResponse value) {
+                    received.add(value);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    future.completeExceptionally(t);
+                }
+
+                @Override
+                public void onCompleted() {
+                    future.complete(received);
+                }
+            });
+            inflight.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), future));
+        }
+
+        List<PriorityQueue<Map.Entry<Bytes, Float>>> topKs = new ArrayList<>(vectors.size());
+        int initialCapacity = Math.max(1, Math.min(limit, 1024));
+        for (int i = 0; i < vectors.size(); i++) {
+            topKs.add(new PriorityQueue<>(initialCapacity, Comparator.comparing(Map.Entry::getValue)));
+        }
+        for (Map.Entry<String, CompletableFuture<List<BatchSearchResponse>>> f : inflight) {
+            List<BatchSearchResponse> responses;
+            try {
+                responses = f.getValue().get(timeoutSeconds, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Batch search failed on indexing-service instance: "
+                        + f.getKey() + " — " + e.getCause(), e.getCause());
+            } catch (TimeoutException e) {
+                throw new RuntimeException("Batch search timed out waiting for indexing-service instances after "
+                        + timeoutSeconds + "s", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Batch search interrupted while waiting for indexing-service instances", e);
+            }
+            for (BatchSearchResponse response : responses) {
+                PriorityQueue<Map.Entry<Bytes, Float>> topK = topKs.get(response.getQueryIndex());
+                for (Map.Entry<Bytes, Float> e : toEntryList(response.getResultsList())) {
+                    if (topK.size() < limit) {
+                        topK.offer(e);
+                    } else if (e.getValue() > topK.peek().getValue()) {
+                        topK.poll();
+                        topK.offer(e);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < vectors.size(); i++) {
+            List<Map.Entry<Bytes, Float>> out = new ArrayList<>(topKs.get(i));
+            out.sort(Comparator.<Map.Entry<Bytes, Float>, Float>comparing(Map.Entry::getValue).reversed());
+            results.set(i, out);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOGGER.log(Level.FINE, "client batch search completed (multi-instance fan-out): index={0}, {1} queries in {2} ms",
+                new Object[]{index, vectors.size(), elapsedMs});
+        return results;
+    }
+
     private static void cancelAll(List<Map.Entry<String, ListenableFuture<SearchResponse>>> futures) {
         for (Map.Entry<String, ListenableFuture<SearchResponse>> f : futures) {
             if (!f.getValue().isDone()) {
@@ -359,8 +539,12 @@ public class IndexingServiceClient implements RemoteVectorIndexService, DynamicS
     }
 
     private static List<Map.Entry<Bytes, Float>> toEntryList(SearchResponse response) {
-        List<Map.Entry<Bytes, Float>> results = new ArrayList<>(response.getResultsCount());
-        for (SearchResult result : response.getResultsList()) {
+        return toEntryList(response.getResultsList());
+    }
+
+    private static List<Map.Entry<Bytes, Float>> toEntryList(List<SearchResult> searchResults) {
+        List<Map.Entry<Bytes, Float>> results = new ArrayList<>(searchResults.size());
+        for (SearchResult result : searchResults) {
             byte[] pkBytes = result.getPrimaryKey().toByteArray();
             results.add(new AbstractMap.SimpleImmutableEntry<>(
                     Bytes.from_array(pkBytes), result.getScore()));
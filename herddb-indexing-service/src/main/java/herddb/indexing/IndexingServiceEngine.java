@@ -23,6 +23,7 @@ package herddb.indexing;
 import herddb.cluster.BookKeeperCommitLogTailer;
 import herddb.cluster.ZookeeperMetadataStorageManager;
 import herddb.codec.DataAccessorForFullRecord;
+import herddb.codec.RecordDelta;
 import herddb.core.MemoryManager;
 import herddb.file.FileMetadataStorageManager;
 import herddb.index.vector.AbstractVectorStore;
@@ -49,6 +50,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
@@ -693,6 +695,7 @@ public class IndexingServiceEngine implements AutoCloseable, VectorMemoryBudget
     private static boolean isDmlType(short type) {
         return type == LogEntryType.INSERT
                 || type == LogEntryType.UPDATE
+                || type == LogEntryType.UPDATE_DELTA
                 || type == LogEntryType.DELETE;
     }
 
@@ -781,6 +784,9 @@ public class IndexingServiceEngine implements AutoCloseable, VectorMemoryBudget
             case LogEntryType.UPDATE:
                 applyUpdate(entry);
                 break;
+            case LogEntryType.UPDATE_DELTA:
+                applyUpdateDelta(entry);
+                break;
             case LogEntryType.DELETE:
                 applyDelete(entry);
                 break;
@@ -892,6 +898,36 @@ public class IndexingServiceEngine implements AutoCloseable, VectorMemoryBudget
         }
     }
 
+    /**
+     * The delta carries only the changed columns, vectors are touched only if
+     * the vector column has been changed.
+     */
+    private void applyUpdateDelta(LogEntry entry) {
+        String tableName = entry.tableName;
+        Collection<Index> vectorIndexes = schemaTracker.getVectorIndexesForTable(tableName);
+        if (vectorIndexes.isEmpty()) {
+            return;
+        }
+        Table table = schemaTracker.getTable(tableName);
+        if (table == null) {
+            return;
+        }
+        Set<String> changedColumns = RecordDelta.changedColumns(entry.value, table);
+        Record record = new Record(entry.key, RecordDelta.changedValues(entry.value));
+        DataAccessorForFullRecord accessor = new DataAccessorForFullRecord(table, record);
+        for (Index idx : vectorIndexes) {
+            AbstractVectorStore store = vectorStores.get(storeKey(tableName, idx.name));
+            if (store == null || !changedColumns.contains(store.getVectorColumnName())) {
+                continue;
+            }
+            store.removeVector(entry.key);
+            float[] vector = extractVector(accessor, store.getVectorColumnName());
+            if (vector != null) {
+                store.addVector(entry.key, vector);
+            }
+        }
+    }
+
     private void applyDelete(LogEntry entry) {
         String tableName = entry.tableName;
         Collection<Index> vectorIndexes = schemaTracker.getVectorIndexesForTable(tableName);
@@ -983,12 +1019,51 @@ public class IndexingServiceEngine implements AutoCloseable, VectorMemoryBudget
 
     public List<Map.Entry<Bytes, Float>> search(String tablespace, String table, String index,
                                                   float[] vector, int limit) {
+        return search(tablespace, table, index, vector, limit, null);
+    }
+
+    /**
+     * Searches the nearest vectors among the ones whose primary key is in
+     * the given allow-list (null means no filter).
+     */
+    public List<Map.Entry<Bytes, Float>> search(String tablespace, String table, String index,
+                                                  float[] vector, int limit,
+                                                  Set<Bytes> acceptedPrimaryKeys) {
         AbstractVectorStore store = vectorStores.get(storeKey(table, index));
         if (store == null) {
             LOGGER.log(Level.WARNING, "No vector store found for {0}.{1}", new Object[]{table, index});
             return Collections.emptyList();
         }
-        return store.search(vector, limit);
+        return store.search(vector, limit, acceptedPrimaryKeys);
+    }
+
+    /**
+     * Searches the nearest vectors of many query vectors, visiting each
+     * source of the store only once for the whole batch.
+     */
+    public List<List<Map.Entry<Bytes, Float>>> searchBatch(String tablespace, String table, String index,
+                                                            List<float[]> vectors, int limit) {
+        return searchBatch(tablespace, table, index, vectors, limit, null);
+    }
+
+    /**
+     * Same as {@link #searchBatch(String, String, String, List, int)}, only
+     * the primary keys in the given allow-list (null means no filter) can be
+     * returned.
+     */
+    public List<List<Map.Entry<Bytes, Float>>> searchBatch(String tablespace, String table, String index,
+                                                            List<float[]> vectors, int limit,
+                                                            Set<Bytes> acceptedPrimaryKeys) {
+        AbstractVectorStore store = vectorStores.get(storeKey(table, index));
+        if (store == null) {
+            LOGGER.log(Level.WARNING, "No vector store found for {0}.{1}", new Object[]{table, index});
+            List<List<Map.Entry<Bytes, Float>>> empty = new ArrayList<>(vectors.size());
+            for (int i = 0; i < vectors.size(); i++) {
+                empty.add(Collections.emptyList());
+            }
+            return empty;
+        }
+        return store.searchBatch(vectors, limit, acceptedPrimaryKeys);
     }
 
     public IndexStatusInfo getIndexStatus(String tablespace, String table, String index) {
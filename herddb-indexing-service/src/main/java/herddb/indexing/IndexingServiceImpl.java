@@ -21,6 +21,8 @@
 package herddb.indexing;
 
 import com.google.protobuf.ByteString;
+import herddb.indexing.proto.BatchSearchRequest;
+import herddb.indexing.proto.BatchSearchResponse;
 import herddb.indexing.proto.DescribeIndexRequest;
 import herddb.indexing.proto.DescribeIndexResponse;
 import herddb.indexing.proto.GetEngineStatsRequest;
@@ -35,16 +37,20 @@ import herddb.indexing.proto.ListIndexesRequest;
 import herddb.indexing.proto.ListIndexesResponse;
 import herddb.indexing.proto.ListPrimaryKeysRequest;
 import herddb.indexing.proto.PrimaryKeysChunk;
+import herddb.indexing.proto.QueryVector;
 import herddb.indexing.proto.SearchRequest;
 import herddb.indexing.proto.SearchResponse;
 import herddb.indexing.proto.SearchResult;
 import herddb.log.LogSequenceNumber;
 import herddb.utils.Bytes;
 import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -63,6 +69,7 @@ public class IndexingServiceImpl extends IndexingServiceGrpc.IndexingServiceImpl
 
     private static final int DEFAULT_PK_CHUNK_SIZE = 1000;
     private static final int MAX_PK_CHUNK_SIZE = 10000;
+    private static final int BATCH_SEARCH_CHUNK_SIZE = 64;
 
     private final IndexingServiceEngine engine;
 
@@ -94,12 +101,21 @@ public class IndexingServiceImpl extends IndexingServiceGrpc.IndexingServiceImpl
                 vector[i] = request.getVector(i);
             }
 
+            Set<Bytes> allowedPrimaryKeys = null;
+            if (request.getAllowedPrimaryKeysCount() > 0) {
+                allowedPrimaryKeys = new HashSet<>(request.getAllowedPrimaryKeysCount());
+                for (ByteString pk : request.getAllowedPrimaryKeysList()) {
+                    allowedPrimaryKeys.add(Bytes.from_array(pk.toByteArray()));
+                }
+            }
+
             List<Map.Entry<Bytes, Float>> results = engine.search(
                     request.getTablespace(),
                     request.getTable(),
                     request.getIndex(),
                     vector,
-                    request.getLimit());
+                    request.getLimit(),
+                    allowedPrimaryKeys);
 
             SearchResponse.Builder responseBuilder = SearchResponse.newBuilder();
             for (Map.Entry<Bytes, Float> entry : results) {
@@ -130,6 +146,80 @@ public class IndexingServiceImpl extends IndexingServiceGrpc.IndexingServiceImpl
         }
     }
 
+    /**
+     * Searches many query vectors. The queries are processed in chunks of
+     * {@link #BATCH_SEARCH_CHUNK_SIZE}, every chunk visits each source of the
+     * store once, and the results of a query are sent as soon as its chunk
+     * completes, so the client can start consuming them while the service is
+     * still working on the next chunks.
+     */
+    @Override
+    public void batchSearch(BatchSearchRequest request, StreamObserver<BatchSearchResponse> responseObserver) {
+        searchRequests.inc();
+        long start = System.nanoTime();
+        try {
+            Set<Bytes> allowedPrimaryKeys = null;
+            if (request.getAllowedPrimaryKeysCount() > 0) {
+                allowedPrimaryKeys = new HashSet<>(request.getAllowedPrimaryKeysCount());
+                for (ByteString pk : request.getAllowedPrimaryKeysList()) {
+                    allowedPrimaryKeys.add(Bytes.from_array(pk.toByteArray()));
+                }
+            }
+            int count = request.getQueriesCount();
+            for (int from = 0; from < count; from += BATCH_SEARCH_CHUNK_SIZE) {
+                if (responseObserver instanceof ServerCallStreamObserver
+                        && ((ServerCallStreamObserver<BatchSearchResponse>) responseObserver).isCancelled()) {
+                    LOGGER.log(Level.FINE, "BatchSearch cancelled by the client for index {0}", request.getIndex());
+                    return;
+                }
+                int to = Math.min(count, from + BATCH_SEARCH_CHUNK_SIZE);
+                List<float[]> vectors = new ArrayList<>(to - from);
+                for (int q = from; q < to; q++) {
+                    QueryVector query = request.getQueries(q);
+                    float[] vector = new float[query.getVectorCount()];
+                    for (int i = 0; i < vector.length; i++) {
+                        vector[i] = query.getVector(i);
+                    }
+                    vectors.add(vector);
+                }
+                List<List<Map.Entry<Bytes, Float>>> results = engine.searchBatch(
+                        request.getTablespace(),
+                        request.getTable(),
+                        request.getIndex(),
+                        vectors,
+                        request.getLimit(),
+                        allowedPrimaryKeys);
+                for (int q = from; q < to; q++) {
+                    BatchSearchResponse.Builder responseBuilder = BatchSearchResponse.newBuilder()
+                            .setQueryIndex(q);
+                    for (Map.Entry<Bytes, Float> entry : results.get(q - from)) {
+                        SearchResult.Builder resultBuilder = SearchResult.newBuilder()
+                                .setPrimaryKey(ByteString.copyFrom(entry.getKey().getBuffer(),
+                                        entry.getKey().getOffset(), entry.getKey().getLength()));
+                        if (request.getReturnScore()) {
+                            resultBuilder.setScore(entry.getValue());
+                        }
+                        responseBuilder.addResults(resultBuilder);
+                    }
+                    responseObserver.onNext(responseBuilder.build());
+                }
+            }
+            long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            searchLatency.registerSuccessfulEvent(elapsedMicros, TimeUnit.MICROSECONDS);
+            searchBytes.inc();
+            responseObserver.onCompleted();
+        } catch (RuntimeException e) {
+            searchErrors.inc();
+            long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            searchLatency.registerFailedEvent(elapsedMicros, TimeUnit.MICROSECONDS);
+            LOGGER.log(Level.SEVERE, "BatchSearch failed for index " + request.getIndex(), e);
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription(e.getMessage())
+                    .withCause(e)
+                    .asRuntimeException());
+        }
+    }
+
     @Override
     public void getIndexStatus(GetIndexStatusRequest request, StreamObserver<GetIndexStatusResponse> responseObserver) {
         statusRequests.inc();
@@ -613,6 +613,33 @@ public class HerdDBPreparedStatement extends HerdDBStatement implements Prepared
 
     }
 
+    @Override
+    public CompletableFuture<ResultSet> executeQueryAsync() {
+        CompletableFuture<ResultSet> res = new CompletableFuture<>();
+        long tx;
+        try {
+            parent.discoverTableSpace(sql);
+            tx = parent.ensureTransaction();
+        } catch (SQLException err) {
+            res.completeExceptionally(err);
+            return res;
+        }
+        parent.getConnection()
+                .executeScanAsync(parent.getTableSpace(), sql, true, new ArrayList<>(parameters), tx, maxRows,
+                        fetchSize, parent.isKeepReadLocks())
+                .whenComplete((scanResult, error) -> {
+                    if (error != null) {
+                        res.completeExceptionally(SQLExceptionUtils.wrapException(error));
+                        return;
+                    }
+                    parent.bindToTransaction(scanResult.transactionId);
+                    HerdDBResultSet resultSet = new HerdDBResultSet(scanResult, this);
+                    lastResultSet = resultSet;
+                    res.complete(resultSet);
+                });
+        return res;
+    }
+
     @Override
     public <T> T unwrap(Class<T> clazz) throws SQLException {
         if (clazz.isAssignableFrom(PreparedStatementAsync.class)) {
@@ -21,6 +21,7 @@
 package herddb.jdbc;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -36,4 +37,13 @@ public interface PreparedStatementAsync extends PreparedStatement {
 
     CompletableFuture<Integer> executeUpdateAsync();
 
+    /**
+     * Executes the query without waiting for the server, many statements can
+     * be in flight on the same Connection and they can complete in any order.
+     *
+     * @return a future which is completed with the ResultSet
+     */
+    CompletableFuture<ResultSet> executeQueryAsync();
+
+
 }
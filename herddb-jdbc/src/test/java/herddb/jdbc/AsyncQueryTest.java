@@ -0,0 +1,100 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+package herddb.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import herddb.client.ClientConfiguration;
+import herddb.client.HDBClient;
+import herddb.server.Server;
+import herddb.server.StaticClientSideMetadataProvider;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Many queries in flight on the same Connection
+ *
+ * @author enrico.olivelli
+ */
+public class AsyncQueryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testExecuteQueryAsync() throws Exception {
+        try (Server server = new Server(TestUtils.newServerConfigurationWithAutoPort(folder.newFolder().toPath()))) {
+            server.start();
+            server.waitForStandaloneBoot();
+            ClientConfiguration clientConfiguration = new ClientConfiguration(folder.newFolder().toPath());
+            clientConfiguration.set(ClientConfiguration.PROPERTY_CLIENT_CONNECT_LOCALVM_SERVER, false);
+            try (HDBClient client = new HDBClient(clientConfiguration)) {
+                client.setClientSideMetadataProvider(new StaticClientSideMetadataProvider(server));
+                try (BasicHerdDBDataSource dataSource = new BasicHerdDBDataSource(client);
+                     Connection con = dataSource.getConnection();
+                     Statement statement = con.createStatement()) {
+                    statement.execute("CREATE TABLE mytable (n1 int primary key, name string)");
+                    for (int i = 0; i < 100; i++) {
+                        statement.executeUpdate("INSERT INTO mytable (n1, name) values(" + i + ",'name" + i + "')");
+                    }
+
+                    List<PreparedStatementAsync> statements = new ArrayList<>();
+                    List<CompletableFuture<ResultSet>> results = new ArrayList<>();
+                    for (int i = 0; i < 100; i++) {
+                        PreparedStatementAsync ps = con.prepareStatement("SELECT name FROM mytable WHERE n1=?")
+                                .unwrap(PreparedStatementAsync.class);
+                        ps.setInt(1, i);
+                        statements.add(ps);
+                        results.add(ps.executeQueryAsync());
+                    }
+                    for (int i = 0; i < 100; i++) {
+                        try (ResultSet rs = results.get(i).get()) {
+                            assertTrue(rs.next());
+                            assertEquals("name" + i, rs.getString(1));
+                            assertFalse(rs.next());
+                        }
+                        statements.get(i).close();
+                    }
+
+                    try (PreparedStatementAsync ps = con.prepareStatement("SELECT * FROM notable")
+                            .unwrap(PreparedStatementAsync.class)) {
+                        CompletableFuture<ResultSet> result = ps.executeQueryAsync();
+                        try {
+                            result.get();
+                        } catch (ExecutionException err) {
+                            assertTrue(err.getCause() instanceof SQLException);
+                        }
+                        assertTrue(result.isCompletedExceptionally());
+                    }
+                }
+            }
+        }
+    }
+}
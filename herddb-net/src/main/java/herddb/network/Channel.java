@@ -64,6 +64,27 @@ public abstract class Channel implements AutoCloseable {
 
     public abstract void channelIdle();
 
+    /**
+     * Limits the number of requests received from the peer which are processed
+     * concurrently. The other requests wait for some reply to be sent, when
+     * as many requests are waiting the channel stops reading from the network,
+     * this way a client which pipelines many requests cannot make the server
+     * queue an unbounded amount of work. Transaction commands are never
+     * delayed.
+     *
+     * @param maxInFlightRequests the limit, 0 means no limit
+     */
+    public abstract void setMaxInFlightRequests(int maxInFlightRequests);
+
+    /**
+     * Number of requests received from the peer which are being processed,
+     * only if there is a limit.
+     *
+     * @return the number of requests
+     * @see #setMaxInFlightRequests(int)
+     */
+    public abstract int getInFlightRequests();
+
     public abstract String getRemoteAddress();
 
     @Override
@@ -24,8 +24,12 @@ import herddb.network.SendResultCallback;
 import herddb.proto.Pdu;
 import io.netty.buffer.ByteBuf;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
@@ -50,6 +54,12 @@ public abstract class AbstractChannel extends Channel {
     protected boolean ioErrors = false;
     private final long id = idGenerator.incrementAndGet();
     private final String remoteAddress;
+    private volatile int maxInFlightRequests;
+    // guarded by inFlightRequests
+    private final Set<Long> inFlightRequests = new HashSet<>();
+    // requests received after reaching the limit, guarded by inFlightRequests
+    private final Queue<Pdu> delayedRequests = new ArrayDeque<>();
+    private boolean readingPaused;
 
     public AbstractChannel(
             String name, String remoteAddress,
@@ -74,6 +84,10 @@ public abstract class AbstractChannel extends Channel {
      */
     public final void pduReceived(Pdu message) {
         if (message.isRequest()) {
+            if (maxInFlightRequests > 0 && isLimitedRequest(message)) {
+                limitedRequestReceived(message);
+                return;
+            }
             handlePduRequest(message);
         } else {
             processPduResponse(message);
@@ -123,8 +137,103 @@ public abstract class AbstractChannel extends Channel {
         }
     }
 
+    /**
+     * Requests which are always replied and which may hold resources on the
+     * server, other requests, like the credits for a scanner, do not count.
+     * Transaction commands are never delayed, a COMMIT or a ROLLBACK may be
+     * the only way to release the locks that the delayed requests of the same
+     * client are waiting for.
+     */
+    private static boolean isLimitedRequest(Pdu message) {
+        switch (message.type) {
+            case Pdu.TYPE_EXECUTE_STATEMENT:
+            case Pdu.TYPE_EXECUTE_STATEMENTS:
+            case Pdu.TYPE_PREPARE_STATEMENT:
+            case Pdu.TYPE_OPENSCANNER:
+            case Pdu.TYPE_FETCHSCANNERDATA:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public final void setMaxInFlightRequests(int maxInFlightRequests) {
+        this.maxInFlightRequests = maxInFlightRequests;
+        requestCompleted(-1);
+    }
+
+    @Override
+    public final int getInFlightRequests() {
+        synchronized (inFlightRequests) {
+            return inFlightRequests.size();
+        }
+    }
+
+    private void limitedRequestReceived(Pdu request) {
+        synchronized (inFlightRequests) {
+            int max = maxInFlightRequests;
+            if (max <= 0 || (inFlightRequests.size() < max && delayedRequests.isEmpty())) {
+                inFlightRequests.add(request.messageId);
+                handlePduRequest(request);
+            } else {
+                // processed as soon as some reply is sent
+                delayedRequests.add(request);
+            }
+            updateReadingPaused();
+        }
+    }
+
+    private void requestCompleted(long messageId) {
+        synchronized (inFlightRequests) {
+            if (!inFlightRequests.remove(messageId) && delayedRequests.isEmpty() && !readingPaused) {
+                return;
+            }
+            int max = maxInFlightRequests;
+            while (!delayedRequests.isEmpty() && (max <= 0 || inFlightRequests.size() < max)) {
+                Pdu request = delayedRequests.poll();
+                if (max > 0) {
+                    inFlightRequests.add(request.messageId);
+                }
+                handlePduRequest(request);
+            }
+            updateReadingPaused();
+        }
+    }
+
+    private void updateReadingPaused() {
+        int max = maxInFlightRequests;
+        // keep reading while there is room for delayed requests, the client
+        // may still send the COMMIT which unblocks the requests in flight
+        boolean pause = max > 0 && delayedRequests.size() >= max;
+        if (pause != readingPaused) {
+            readingPaused = pause;
+            LOGGER.log(Level.FINE, "{0}: {1} reading, {2} requests in flight", new Object[]{this, pause ? "pause" : "resume", inFlightRequests.size()});
+            setReadingPaused(pause);
+        }
+    }
+
+    private void releaseDelayedRequests() {
+        synchronized (inFlightRequests) {
+            Pdu request;
+            while ((request = delayedRequests.poll()) != null) {
+                request.close();
+            }
+            inFlightRequests.clear();
+        }
+    }
+
+    /**
+     * Stops or restarts reading from the network.
+     *
+     * @param paused true to stop reading
+     */
+    protected void setReadingPaused(boolean paused) {
+    }
+
     @Override
     public final void sendReplyMessage(long inAnswerTo, ByteBuf message) {
+        requestCompleted(inAnswerTo);
 
         if (!isValid()) {
             LOGGER.log(Level.SEVERE, this + " channel not active, discarding reply message " + message);
@@ -202,6 +311,7 @@ public abstract class AbstractChannel extends Channel {
         String socketDescription = describeSocket();
         doClose();
         failPendingMessages(socketDescription);
+        releaseDelayedRequests();
     }
 
     @Override
@@ -228,6 +338,7 @@ public abstract class AbstractChannel extends Channel {
 
     final void channelClosed() {
         failPendingMessages(describeSocket());
+        releaseDelayedRequests();
         submitCallback(() -> {
             if (this.messagesReceiver != null) {
                 this.messagesReceiver.channelClosed(this);
@@ -107,6 +107,14 @@ public class NettyChannel extends AbstractChannel {
         }
     }
 
+    @Override
+    protected void setReadingPaused(boolean paused) {
+        io.netty.channel.Channel _socket = this.socket;
+        if (_socket != null) {
+            _socket.config().setAutoRead(!paused);
+        }
+    }
+
 // visible for testing only
     public io.netty.channel.Channel getSocket() {
         return socket;
@@ -38,6 +38,8 @@ import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -130,6 +132,11 @@ public class PromotableRemoteFileDataStorageManager extends DataStorageManager {
         return activeDelegate.readPage(tableSpace, uuid, pageId);
     }
 
+    @Override
+    public CompletableFuture<List<Record>> readPageAsync(String tableSpace, String uuid, Long pageId, Executor executor) {
+        return activeDelegate.readPageAsync(tableSpace, uuid, pageId, executor);
+    }
+
     @Override
     public <X> X readIndexPage(String tableSpace, String uuid, Long pageId, DataReader<X> reader) throws DataStorageManagerException {
         return activeDelegate.readIndexPage(tableSpace, uuid, pageId, reader);
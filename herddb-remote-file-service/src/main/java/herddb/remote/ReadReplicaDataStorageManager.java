@@ -46,6 +46,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -201,6 +204,23 @@ public class ReadReplicaDataStorageManager extends DataStorageManager {
         }
     }
 
+    @Override
+    public CompletableFuture<List<Record>> readPageAsync(String tableSpace, String uuid, Long pageId, Executor executor) {
+        String path = remoteDataPagePath(tableSpace, uuid, pageId);
+        return client.readFileAsync(path).thenApply(data -> {
+            if (data == null) {
+                throw new CompletionException(new DataPageDoesNotExistException(
+                        "No such remote page: " + tableSpace + "_" + uuid + "." + pageId));
+            }
+            try {
+                return deserializeDataPage(data);
+            } catch (IOException e) {
+                throw new CompletionException(
+                        new DataStorageManagerException("Error reading remote data page: " + path, e));
+            }
+        });
+    }
+
     @Override
     public <X> X readIndexPage(String tableSpace, String uuid, Long pageId, DataReader<X> reader)
             throws DataStorageManagerException {
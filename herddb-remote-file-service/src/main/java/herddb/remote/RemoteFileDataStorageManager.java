@@ -57,7 +57,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.LongConsumer;
@@ -432,6 +435,28 @@ public class RemoteFileDataStorageManager extends DataStorageManager
         }
     }
 
+    /**
+     * Reads the page with an asynchronous gRPC call, the executor is not used.
+     */
+    @Override
+    public CompletableFuture<List<Record>> readPageAsync(String tableSpace, String uuid, Long pageId, Executor executor) {
+        String path = remoteDataPagePath(tableSpace, uuid, pageId);
+        return client.readFileAsByteBufAsync(path).thenApply(data -> {
+            if (data == null) {
+                throw new CompletionException(new DataPageDoesNotExistException(
+                        "No such remote page: " + tableSpace + "_" + uuid + "." + pageId));
+            }
+            try {
+                return deserializeDataPage(data);
+            } catch (IOException e) {
+                throw new CompletionException(
+                        new DataStorageManagerException("Error reading remote data page: " + path, e));
+            } finally {
+                data.release();
+            }
+        });
+    }
+
     @Override
     public void writePage(String tableSpace, String uuid, long pageId,
             Collection<Record> newPage) throws DataStorageManagerException {
@@ -429,8 +429,11 @@ public class ClockAdaptiveReplacement implements PageReplacementPolicy {
     private static <P extends Page<?>> P hit(P page) {
 
         if (page != null && page.metadata != null) {
-            /* Set the page as referenced */
-            ((CARMetadata) page.metadata).reference = true;
+            /* Set the page as referenced, avoid useless writes to the shared volatile field */
+            final CARMetadata metadata = (CARMetadata) page.metadata;
+            if (!metadata.reference) {
+                metadata.reference = true;
+            }
         }
 
         return page;
@@ -1069,8 +1069,11 @@ public class ClockProPolicy implements PageReplacementPolicy {
     private static <P extends Page<?>> P hit(P page) {
 
         if (page != null && page.metadata != null) {
-            /* Set the page as referenced */
-            ((CPMetadata) page.metadata).reference = true;
+            /* Set the page as referenced, avoid useless writes to the shared volatile field */
+            final CPMetadata metadata = (CPMetadata) page.metadata;
+            if (!metadata.reference) {
+                metadata.reference = true;
+            }
         }
 
         return page;
@@ -0,0 +1,157 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * {@link PageReplacementPolicy} which splits the pages among many independent
+ * policies, in order to reduce the contention on the lock of the policy when
+ * many threads load pages at the same time.
+ * <p>
+ * Each page always belongs to the same shard, chosen by the hash of its owner
+ * and of its id, and each shard manages a fraction of the capacity: adding a
+ * page can unload only a page of the same shard, even if other shards are not
+ * full. Page hits are passed to the shard without any lock, policies as
+ * {@link ClockProPolicy} record them with a single volatile write.
+ * <p>
+ * The number of shards is a power of two and it is reduced for small
+ * capacities, in order to keep at least {@link #MIN_SHARD_CAPACITY} pages in
+ * each shard.
+ *
+ * @author enrico.olivelli
+ */
+public class ShardedPageReplacementPolicy implements PageReplacementPolicy {
+
+    /**
+     * Minimum number of pages managed by a shard
+     */
+    static final int MIN_SHARD_CAPACITY = 64;
+
+    private final PageReplacementPolicy[] shards;
+    private final int mask;
+    private final int capacity;
+
+    /**
+     * @param capacity       maximum number of pages
+     * @param requiredShards maximum number of shards
+     * @param factory        builds the policy of a shard given its capacity
+     */
+    public ShardedPageReplacementPolicy(int capacity, int requiredShards, IntFunction<PageReplacementPolicy> factory) {
+        final int count = shardsCount(capacity, requiredShards);
+        this.shards = new PageReplacementPolicy[count];
+        this.mask = count - 1;
+        this.capacity = capacity;
+        for (int i = 0; i < count; i++) {
+            // spread the remainder on the first shards
+            shards[i] = factory.apply(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+    }
+
+    static int shardsCount(int capacity, int requiredShards) {
+        int max = Math.max(1, Math.min(requiredShards, capacity / MIN_SHARD_CAPACITY));
+        return Integer.highestOneBit(max);
+    }
+
+    private int shardIndex(Page<?> page) {
+        int hash = 31 * System.identityHashCode(page.owner) + Long.hashCode(page.pageId);
+        // spread the bits, page ids are usually sequential
+        hash ^= (hash >>> 16);
+        hash *= 0x85ebca6b;
+        hash ^= (hash >>> 13);
+        return hash & mask;
+    }
+
+    private PageReplacementPolicy shard(Page<?> page) {
+        return shards[shardIndex(page)];
+    }
+
+    int getShardsCount() {
+        return shards.length;
+    }
+
+    @Override
+    public void pageHit(Page<?> page) {
+        shard(page).pageHit(page);
+    }
+
+    @Override
+    public Page.Metadata add(Page<?> page) {
+        return shard(page).add(page);
+    }
+
+    @Override
+    public boolean remove(Page<?> page) {
+        return shard(page).remove(page);
+    }
+
+    @Override
+    public <P extends Page<?>> void remove(Collection<P> pages) {
+        if (shards.length == 1) {
+            shards[0].remove(pages);
+            return;
+        }
+        /* Group the pages in order to acquire the lock of each shard only once */
+        @SuppressWarnings("unchecked")
+        List<P>[] byShard = new List[shards.length];
+        for (P page : pages) {
+            int index = shardIndex(page);
+            if (byShard[index] == null) {
+                byShard[index] = new ArrayList<>();
+            }
+            byShard[index].add(page);
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (byShard[i] != null) {
+                shards[i].remove(byShard[i]);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (PageReplacementPolicy shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void clear() {
+        for (PageReplacementPolicy shard : shards) {
+            shard.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ShardedPageReplacementPolicy{capacity=" + capacity + ", shards=" + shards.length + '}';
+    }
+}
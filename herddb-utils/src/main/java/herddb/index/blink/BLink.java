@@ -152,6 +152,20 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
     private final BLinkIndexDataStorage<K, V> storage;
     private final PageReplacementPolicy policy;
 
+    /**
+     * When not null leaves read from the storage are kept off-heap, see
+     * {@link OffHeapLeaf}
+     */
+    private final OffHeapLeafCodec<K, V> offHeapLeafCodec;
+
+    /**
+     * Direct memory used by off-heap leaves. It is always part of
+     * {@link #usedMemory}: a leaf is moved off-heap only if its buffer fits in
+     * the size accounted for the node, which is bound by the page replacement
+     * policy.
+     */
+    private final LongAdder offHeapMemory;
+
     private final AtomicBoolean closed;
 
     private final LongAdder size;
@@ -228,11 +242,33 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
          */
         X getPosiviveInfinityKey();
 
+        /**
+         * Returns the separator to use when a leaf is split: a value greater
+         * or equal to the last key kept in the left leaf and lower than the
+         * first key moved to the right leaf. Separators are copied up to the
+         * inner nodes, shorter separators increase their fan-out.
+         *
+         * @param lastLeft   the greatest key of the left leaf
+         * @param firstRight the lowest key of the right leaf
+         * @return the separator, by default the last key of the left leaf
+         */
+        default X leafSeparator(X lastLeft, X firstRight) {
+            return lastLeft;
+        }
+
     }
 
     public BLink(
             long maxSize, SizeEvaluator<K, V> evaluator,
             PageReplacementPolicy policy, BLinkIndexDataStorage<K, V> storage
+    ) {
+        this(maxSize, evaluator, policy, storage, (OffHeapLeafCodec<K, V>) null);
+    }
+
+    public BLink(
+            long maxSize, SizeEvaluator<K, V> evaluator,
+            PageReplacementPolicy policy, BLinkIndexDataStorage<K, V> storage,
+            OffHeapLeafCodec<K, V> offHeapLeafCodec
     ) {
         this.positiveInfinity = evaluator.getPosiviveInfinityKey();
         if (this.positiveInfinity != evaluator.getPosiviveInfinityKey()) {
@@ -272,6 +308,8 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
 
         this.storage = storage;
         this.policy = policy;
+        this.offHeapLeafCodec = offHeapLeafCodec;
+        this.offHeapMemory = new LongAdder();
 
         this.nextID = new AtomicLong(1L);
         this.closed = new AtomicBoolean(false);
@@ -294,6 +332,14 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             long maxSize, SizeEvaluator<K, V> evaluator,
             PageReplacementPolicy policy, BLinkIndexDataStorage<K, V> storage,
             BLinkMetadata<K> metadata
+    ) {
+        this(maxSize, evaluator, policy, storage, metadata, null);
+    }
+
+    public BLink(
+            long maxSize, SizeEvaluator<K, V> evaluator,
+            PageReplacementPolicy policy, BLinkIndexDataStorage<K, V> storage,
+            BLinkMetadata<K> metadata, OffHeapLeafCodec<K, V> offHeapLeafCodec
     ) {
         this.positiveInfinity = evaluator.getPosiviveInfinityKey();
         if (this.positiveInfinity != evaluator.getPosiviveInfinityKey()) {
@@ -333,6 +379,8 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
 
         this.storage = storage;
         this.policy = policy;
+        this.offHeapLeafCodec = offHeapLeafCodec;
+        this.offHeapMemory = new LongAdder();
 
         this.nextID = new AtomicLong(metadata.nextID);
         this.closed = new AtomicBoolean(false);
@@ -456,6 +504,16 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
         return usedMemory.sum();
     }
 
+    /**
+     * Returns the direct memory used by leaves kept off-heap, it is already
+     * included in {@link #getUsedMemory()}.
+     *
+     * @return direct memory used by the tree
+     */
+    public long getOffHeapLeavesMemory() {
+        return offHeapMemory.sum();
+    }
+
     /**
      * Returns the current nodes count.
      *
@@ -1622,7 +1680,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
                         final LockAndUnload<K, V> loadLock = node.loadAndLock(true);
                         try {
                             for (Entry<K, V> child
-                                    : (Collection<Entry<K, V>>) (Collection<?>) node.map.entrySet()) {
+                                    : (Collection<Entry<K, V>>) (Collection<?>) node.leafEntries().entrySet()) {
 
                                 builder.append(child.getValue()).append(" <- ").append(child.getKey()).append(" | ");
                             }
@@ -1796,6 +1854,12 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
          */
         NavigableMap<X, Object> map;
 
+        /**
+         * Content of a leaf kept off-heap, when set {@link #map} is null. It is
+         * moved back to {@link #map} before any change.
+         */
+        OffHeapLeaf<X, Y> offHeap;
+
         /*
          * Next fields won't need to be volatile. They are written only during write lock AND no other thread
          * will have an opportunity do read this field until the lock is released.
@@ -1848,6 +1912,64 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             return new TreeMap<>();
         }
 
+        /**
+         * Moves back the content of an off-heap leaf to {@link #map}, in order
+         * to change it.
+         */
+        NavigableMap<X, Object> onHeap() {
+            if (offHeap != null) {
+                final NavigableMap<X, Object> unpacked = newNodeMap();
+                offHeap.unpack(unpacked);
+                map = unpacked;
+                releaseOffHeap();
+            }
+            return map;
+        }
+
+        /**
+         * Gives back the direct memory of an off-heap leaf.
+         */
+        private void releaseOffHeap() {
+            if (offHeap != null) {
+                owner.offHeapMemory.add(-offHeap.memory());
+                offHeap.release();
+                offHeap = null;
+            }
+        }
+
+        /**
+         * Moves the content of a leaf off-heap, if enabled for the tree and if
+         * the packed leaf fits in the size accounted for the node.
+         * <p>
+         * <b>Must</b> be invoked when already holding {@link loadLock} write
+         * lock.
+         * </p>
+         */
+        @SuppressWarnings("unchecked")
+        void moveOffHeap() {
+            if (leaf && owner.offHeapLeafCodec != null && map != null) {
+                final OffHeapLeaf<X, Y> packed = OffHeapLeaf.pack((NavigableMap<X, Y>) (NavigableMap<X, ?>) map,
+                        owner.offHeapLeafCodec, owner.positiveInfinity, size);
+                if (packed != null) {
+                    owner.offHeapMemory.add(packed.memory());
+                    offHeap = packed;
+                    map = null;
+                }
+            }
+        }
+
+        /**
+         * Content of the leaf, a copy if the leaf is off-heap.
+         */
+        NavigableMap<X, Object> leafEntries() {
+            if (offHeap != null) {
+                final NavigableMap<X, Object> unpacked = newNodeMap();
+                offHeap.unpack(unpacked);
+                return unpacked;
+            }
+            return map;
+        }
+
         /**
          * Create a node from his metadata.
          * <p>
@@ -1947,7 +2069,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
                     rightUnloaded = rightLoadLock.unloadIfNot(this, owner);
 
                     // the sequence in r is transferred to the end of the sequence in l
-                    map.putAll(right.map);
+                    onHeap().putAll(right.onHeap());
 
                     dirty = true;
 
@@ -2048,6 +2170,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             int count = 0;
 
             X lastKey = null;
+            X firstRightKey = null;
             /*
              * No other nodes currently loaded (right isn't currently known to page policy) and can't require
              * to unload itself.
@@ -2056,10 +2179,13 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             try {
 
                 boolean toright = false;
-                for (Iterator<Entry<X, Object>> entryIt = map.entrySet().iterator();
+                for (Iterator<Entry<X, Object>> entryIt = onHeap().entrySet().iterator();
                      entryIt.hasNext(); ) {
                     Entry<X, Object> entry = entryIt.next();
                     if (toright) {
+                        if (firstRightKey == null) {
+                            firstRightKey = entry.getKey();
+                        }
                         right.map.put(entry.getKey(), entry.getValue());
                         entryIt.remove();
                     } else {
@@ -2102,7 +2228,9 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             // if n and new are leaves, their separators are set equal to the largest keys in them
             right.rightsep = rightsep;
 
-            rightsep = lastKey;
+            rightsep = leaf && firstRightKey != null
+                    ? owner.evaluator.leafSeparator(lastKey, firstRightKey)
+                    : lastKey;
 
             // the return value is the new rightmost separator in n
             // Cast to K, is K for sure because it has a right sibling
@@ -2125,6 +2253,15 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             final Map<X, Object> sub;
             try {
 
+                if (offHeap != null) {
+                    if ((start == null && startInclusive) || (end == null && endInclusive)) {
+                        throw new NullPointerException("Null inclusive bound");
+                    }
+                    final List<Entry<X, Y>> list = new ArrayList<>();
+                    offHeap.copyRange(start, startInclusive, end, endInclusive, list);
+                    return list;
+                }
+
                 /*
                  * In reality ConcurrentSkipListMap.subMap could handle null start/end but it places some null
                  * checks. So we have to check start/end nullity too and route to the right method that will...
@@ -2198,6 +2335,9 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             /* No other nodes currently loaded and can't require to unload itself */
             final LockAndUnload<X, Y> loadLock = loadAndLock(true);
             try {
+                if (offHeap != null) {
+                    return offHeap.get(key);
+                }
                 /* Cast to Y: is a leaf */
                 return (Y) map.get(key);
             } finally {
@@ -2221,7 +2361,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             final LockAndUnload<X, Y> loadLock = loadAndLock(true);
             try {
                 /* Cast to Y: is a leaf */
-                old = (Y) map.put(key, value);
+                old = (Y) onHeap().put(key, value);
 
                 dirty = true;
             } finally {
@@ -2264,7 +2404,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
 
                 if (expected == null) {
                     /* Cast to Y: is a leaf */
-                    old = (Y) map.putIfAbsent(key, value);
+                    old = (Y) onHeap().putIfAbsent(key, value);
 
                     /* If there was a value and we didn't expect something abort replacement */
                     if (old != null) {
@@ -2278,7 +2418,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
                      */
                     BooleanHolder replaced = new BooleanHolder(false);
                     Holder<Y> hold = new Holder<>();
-                    map.computeIfPresent(key, (skey, currentValue) -> {
+                    onHeap().computeIfPresent(key, (skey, currentValue) -> {
                         if (expected.equals(currentValue)) {
                             replaced.value = true;
                             /* Cast to Y: is a leaf */
@@ -2337,8 +2477,12 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             /* No other nodes currently loaded and can't require to unload itself */
             final LockAndUnload<X, Y> loadLock = loadAndLock(true);
             try {
+                if (offHeap != null && offHeap.search(key) < 0) {
+                    /* Nothing to remove, no need to move the leaf on heap */
+                    return null;
+                }
                 /* Cast to Y: is a leaf */
-                old = (Y) map.remove(key);
+                old = (Y) onHeap().remove(key);
 
                 if (old != null) {
                     dirty = true;
@@ -2694,8 +2838,11 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
                     }
                 }
 
-                map.clear();
+                if (map != null) {
+                    map.clear();
+                }
                 map = null;
+                releaseOffHeap();
                 loaded = false;
 
                 if (LOGGER.isLoggable(Level.FINER)) {
@@ -2807,6 +2954,11 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
 
                 }
 
+                if (loaded) {
+                    /* The leaf is now clean, it can go back off-heap */
+                    moveOffHeap();
+                }
+
                 return new BLinkNodeMetadata<>(
                         leaf,
                         pageId,
@@ -2862,10 +3014,10 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
         private long writeLeafPage(long pageId) throws IOException {
 
             if (pageId == BLinkIndexDataStorage.NEW_PAGE) {
-                return owner.storage.createLeafPage((Map<X, Y>) map);
+                return owner.storage.createLeafPage((Map<X, Y>) leafEntries());
             }
 
-            owner.storage.overwriteLeafPage(pageId, (Map<X, Y>) map);
+            owner.storage.overwriteLeafPage(pageId, (Map<X, Y>) leafEntries());
             return pageId;
         }
 
@@ -2930,6 +3082,8 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
 
             /* Loaded, add loaded memory count */
             owner.usedMemory.add(size);
+
+            moveOffHeap();
         }
 
         @Override
@@ -0,0 +1,262 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index.blink;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+
+/**
+ * Immutable content of a {@link BLink} leaf packed into a direct buffer.
+ * <p>
+ * Buffers come from the pooled allocator, so memory is reused across leaves,
+ * and they are given back explicitly with {@link #release()} as soon as the
+ * leaf is moved back on heap or unloaded.
+ * <p>
+ * Keys share the longest common prefix of the leaf, which is stored only once,
+ * they can be searched with a binary search directly on the buffer:
+ * <pre>
+ * prefix bytes
+ * long value * count
+ * int end of the suffix * count
+ * suffix bytes * count
+ * </pre>
+ * Keys and values are rebuilt as java objects only when they are returned to
+ * the caller.
+ *
+ * @author enrico.olivelli
+ */
+final class OffHeapLeaf<K, V> {
+
+    private final OffHeapLeafCodec<K, V> codec;
+    private final K positiveInfinity;
+    private final ByteBuf buffer;
+    private final int count;
+    private final int prefixLength;
+    private final int valuesStart;
+    private final int endsStart;
+    private final int suffixesStart;
+
+    private OffHeapLeaf(OffHeapLeafCodec<K, V> codec, K positiveInfinity, ByteBuf buffer, int count, int prefixLength) {
+        this.codec = codec;
+        this.positiveInfinity = positiveInfinity;
+        this.buffer = buffer;
+        this.count = count;
+        this.prefixLength = prefixLength;
+        this.valuesStart = prefixLength;
+        this.endsStart = valuesStart + count * Long.BYTES;
+        this.suffixesStart = endsStart + count * Integer.BYTES;
+    }
+
+    /**
+     * Packs the content of a leaf.
+     *
+     * @param entries          the sorted entries of the leaf
+     * @param codec            the codec
+     * @param positiveInfinity the positive infinity key of the tree, greater
+     *                         than any key
+     * @param maxMemory        maximum size of the buffer
+     * @return the packed leaf or null if it would need more than maxMemory
+     * bytes
+     */
+    static <K, V> OffHeapLeaf<K, V> pack(NavigableMap<K, V> entries, OffHeapLeafCodec<K, V> codec, K positiveInfinity,
+                                         long maxMemory) {
+        final int count = entries.size();
+        int prefixLength = 0;
+        if (count > 0) {
+            /* Keys are sorted, the common prefix of all of them is the one of the first and the last */
+            K first = entries.firstKey();
+            K last = entries.lastKey();
+            byte[] firstBuffer = codec.keyBuffer(first);
+            int firstOffset = codec.keyOffset(first);
+            byte[] lastBuffer = codec.keyBuffer(last);
+            int lastOffset = codec.keyOffset(last);
+            int max = Math.min(codec.keyLength(first), codec.keyLength(last));
+            while (prefixLength < max
+                    && firstBuffer[firstOffset + prefixLength] == lastBuffer[lastOffset + prefixLength]) {
+                prefixLength++;
+            }
+        }
+        long suffixesSize = 0;
+        for (K key : entries.keySet()) {
+            suffixesSize += codec.keyLength(key) - prefixLength;
+        }
+        long total = prefixLength + (long) count * (Long.BYTES + Integer.BYTES) + suffixesSize;
+        if (total > maxMemory || total > Integer.MAX_VALUE) {
+            return null;
+        }
+        final ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer((int) total, (int) total);
+        final OffHeapLeaf<K, V> leaf = new OffHeapLeaf<>(codec, positiveInfinity, buffer, count, prefixLength);
+        int index = 0;
+        int suffixEnd = 0;
+        for (Entry<K, V> entry : entries.entrySet()) {
+            K key = entry.getKey();
+            byte[] keyBuffer = codec.keyBuffer(key);
+            int keyOffset = codec.keyOffset(key);
+            int keyLength = codec.keyLength(key);
+            if (index == 0) {
+                for (int i = 0; i < prefixLength; i++) {
+                    buffer.setByte(i, keyBuffer[keyOffset + i]);
+                }
+            }
+            buffer.setLong(leaf.valuesStart + index * Long.BYTES, codec.writeValue(entry.getValue()));
+            for (int i = prefixLength; i < keyLength; i++) {
+                buffer.setByte(leaf.suffixesStart + suffixEnd++, keyBuffer[keyOffset + i]);
+            }
+            buffer.setInt(leaf.endsStart + index * Integer.BYTES, suffixEnd);
+            index++;
+        }
+        return leaf;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Memory used outside of the heap.
+     */
+    int memory() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Gives back the memory of the leaf, it must not be used anymore.
+     */
+    void release() {
+        buffer.release();
+    }
+
+    private int suffixStart(int index) {
+        return index == 0 ? 0 : buffer.getInt(endsStart + (index - 1) * Integer.BYTES);
+    }
+
+    private int suffixEnd(int index) {
+        return buffer.getInt(endsStart + index * Integer.BYTES);
+    }
+
+    /**
+     * Same contract of {@link java.util.Arrays#binarySearch(long[], long)}.
+     */
+    int search(K key) {
+        if (key == positiveInfinity) {
+            return -(count + 1);
+        }
+        final byte[] keyBuffer = codec.keyBuffer(key);
+        final int keyOffset = codec.keyOffset(key);
+        final int keyLength = codec.keyLength(key);
+
+        /* Check the common prefix first, if it does not match the key is outside of the leaf */
+        final int common = Math.min(keyLength, prefixLength);
+        for (int i = 0; i < common; i++) {
+            int a = keyBuffer[keyOffset + i] & 0xff;
+            int b = buffer.getByte(i) & 0xff;
+            if (a != b) {
+                return a < b ? -1 : -(count + 1);
+            }
+        }
+        if (keyLength < prefixLength) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareSuffix(keyBuffer, keyOffset + prefixLength, keyLength - prefixLength, mid);
+            if (cmp > 0) {
+                low = mid + 1;
+            } else if (cmp < 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private int compareSuffix(byte[] keyBuffer, int offset, int length, int index) {
+        final int start = suffixesStart + suffixStart(index);
+        final int end = suffixesStart + suffixEnd(index);
+        for (int i = offset, j = start; i < offset + length && j < end; i++, j++) {
+            int a = keyBuffer[i] & 0xff;
+            int b = buffer.getByte(j) & 0xff;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return length - (end - start);
+    }
+
+    V get(K key) {
+        int index = search(key);
+        return index >= 0 ? valueAt(index) : null;
+    }
+
+    K keyAt(int index) {
+        final int start = suffixStart(index);
+        final int end = suffixEnd(index);
+        final byte[] bytes = new byte[prefixLength + end - start];
+        for (int i = 0; i < prefixLength; i++) {
+            bytes[i] = buffer.getByte(i);
+        }
+        for (int i = start, j = prefixLength; i < end; i++, j++) {
+            bytes[j] = buffer.getByte(suffixesStart + i);
+        }
+        return codec.readKey(bytes);
+    }
+
+    V valueAt(int index) {
+        return codec.readValue(buffer.getLong(valuesStart + index * Long.BYTES));
+    }
+
+    /**
+     * Copies the entries in a range, a null bound means no bound.
+     */
+    void copyRange(K start, boolean startInclusive, K end, boolean endInclusive, List<Entry<K, V>> result) {
+        int from = 0;
+        if (start != null) {
+            int index = search(start);
+            from = index >= 0 ? (startInclusive ? index : index + 1) : -(index + 1);
+        }
+        int to = count;
+        if (end != null) {
+            int index = search(end);
+            to = index >= 0 ? (endInclusive ? index + 1 : index) : -(index + 1);
+        }
+        for (int i = from; i < to; i++) {
+            result.add(new SimpleImmutableEntry<>(keyAt(i), valueAt(i)));
+        }
+    }
+
+    /**
+     * Rebuilds all of the entries.
+     */
+    void unpack(Map<K, ? super V> result) {
+        for (int i = 0; i < count; i++) {
+            result.put(keyAt(i), valueAt(i));
+        }
+    }
+}
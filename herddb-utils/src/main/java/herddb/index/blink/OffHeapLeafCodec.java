@@ -0,0 +1,62 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index.blink;
+
+/**
+ * Maps keys and values of a {@link BLink} to the binary form used by
+ * {@link OffHeapLeaf off-heap leaves}.
+ * <p>
+ * Keys are stored as byte arrays: the unsigned lexicographic order of the bytes
+ * <b>must</b> be the same as the natural order of the keys, this way a leaf can
+ * be searched without rebuilding the keys. Values are stored as longs.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @author enrico.olivelli
+ */
+public interface OffHeapLeafCodec<K, V> {
+
+    /**
+     * Array containing the bytes of the key.
+     */
+    byte[] keyBuffer(K key);
+
+    /**
+     * Offset of the bytes of the key inside {@link #keyBuffer(java.lang.Object)}.
+     */
+    int keyOffset(K key);
+
+    /**
+     * Number of bytes of the key.
+     */
+    int keyLength(K key);
+
+    /**
+     * Rebuilds a key.
+     *
+     * @param bytes the bytes of the key, owned by the key
+     */
+    K readKey(byte[] bytes);
+
+    long writeValue(V value);
+
+    V readValue(long value);
+}
@@ -0,0 +1,456 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+*/
+
+package herddb.proto;
+
+import herddb.utils.ByteBufUtils;
+import herddb.utils.DataAccessor;
+import herddb.utils.IntHolder;
+import herddb.utils.RawString;
+import herddb.utils.SystemProperties;
+import herddb.utils.TuplesList;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.util.HashMap;
+import java.util.Map;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Columnar encoding of the data of a TYPE_RESULTSET_CHUNK.
+ * <p>
+ * After the number of records, for each column: a byte with the type of
+ * the vector (plus {@link #FLAG_HAS_NULLS}), a bitmap of the NULL values if
+ * needed and then the values of the rows which are not NULL, without a
+ * type tag for each value. Strings with many repeated values are written
+ * with a dictionary. The section of the columns can be compressed with LZ4.
+ *
+ * @author enrico.olivelli
+ */
+public final class ColumnarChunkCodec {
+
+    /**
+     * Minimum size of the columns data to try compression.
+     */
+    private static final int COMPRESSION_THRESHOLD = SystemProperties.getIntSystemProperty("herddb.network.columnar.compressionthreshold", 4096);
+
+    private static final byte NOT_COMPRESSED = 0;
+    private static final byte COMPRESSED_LZ4 = 1;
+
+    static final byte VECTOR_MIXED = 0;
+    static final byte VECTOR_LONG = 1;
+    static final byte VECTOR_INTEGER = 2;
+    static final byte VECTOR_DOUBLE = 3;
+    static final byte VECTOR_BOOLEAN = 4;
+    static final byte VECTOR_TIMESTAMP = 5;
+    static final byte VECTOR_STRING = 6;
+    static final byte VECTOR_DICTIONARY = 7;
+    private static final byte FLAG_HAS_NULLS = 0x40;
+
+    private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+    private ColumnarChunkCodec() {
+    }
+
+    static void write(ByteBuf byteBuf, TuplesList tuplesList, boolean compress) {
+        Object[][] columns = toColumns(tuplesList);
+        int numRecords = tuplesList.tuples.size();
+        if (!compress) {
+            byteBuf.writeByte(NOT_COMPRESSED);
+            writeColumns(byteBuf, columns, numRecords);
+            return;
+        }
+        ByteBuf data = PooledByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            writeColumns(data, columns, numRecords);
+            int size = data.readableBytes();
+            if (size >= COMPRESSION_THRESHOLD) {
+                LZ4Compressor compressor = LZ4.fastCompressor();
+                byte[] compressed = new byte[compressor.maxCompressedLength(size)];
+                int compressedSize = compressor.compress(data.array(), data.arrayOffset() + data.readerIndex(), size,
+                        compressed, 0, compressed.length);
+                if (compressedSize < size) {
+                    byteBuf.writeByte(COMPRESSED_LZ4);
+                    byteBuf.writeInt(size);
+                    byteBuf.writeInt(compressedSize);
+                    byteBuf.writeBytes(compressed, 0, compressedSize);
+                    return;
+                }
+            }
+            byteBuf.writeByte(NOT_COMPRESSED);
+            byteBuf.writeBytes(data);
+        } finally {
+            data.release();
+        }
+    }
+
+    private static Object[][] toColumns(TuplesList tuplesList) {
+        int numColumns = tuplesList.columnNames.length;
+        int numRecords = tuplesList.tuples.size();
+        Object[][] columns = new Object[numColumns][numRecords];
+        IntHolder currentRow = new IntHolder();
+        for (DataAccessor da : tuplesList.tuples) {
+            IntHolder currentColumn = new IntHolder();
+            da.forEach((String key, Object value) -> {
+                // nulls are not returned for some special accessors, like DataAccessorForFullRecord
+                while (!key.equals(tuplesList.columnNames[currentColumn.value])) {
+                    currentColumn.value++;
+                }
+                columns[currentColumn.value][currentRow.value] = value;
+                currentColumn.value++;
+            });
+            if (currentColumn.value > numColumns) {
+                throw new RuntimeException("unexpected number of columns " + currentColumn.value + " > " + numColumns);
+            }
+            currentRow.value++;
+        }
+        return columns;
+    }
+
+    private static void writeColumns(ByteBuf byteBuf, Object[][] columns, int numRecords) {
+        for (Object[] values : columns) {
+            writeColumn(byteBuf, values, numRecords);
+        }
+    }
+
+    private static byte vectorType(Object value) {
+        if (value instanceof Long) {
+            return VECTOR_LONG;
+        } else if (value instanceof Integer) {
+            return VECTOR_INTEGER;
+        } else if (value instanceof Double) {
+            return VECTOR_DOUBLE;
+        } else if (value instanceof Boolean) {
+            return VECTOR_BOOLEAN;
+        } else if (value instanceof java.util.Date) {
+            return VECTOR_TIMESTAMP;
+        } else if (value instanceof RawString || value instanceof String) {
+            return VECTOR_STRING;
+        } else {
+            return VECTOR_MIXED;
+        }
+    }
+
+    private static void writeColumn(ByteBuf byteBuf, Object[] values, int numRecords) {
+        int nulls = 0;
+        byte type = -1;
+        for (Object value : values) {
+            if (value == null) {
+                nulls++;
+            } else if (type == -1) {
+                type = vectorType(value);
+            } else if (type != VECTOR_MIXED && type != vectorType(value)) {
+                type = VECTOR_MIXED;
+            }
+        }
+        if (type == -1) {
+            // only NULL values
+            type = VECTOR_MIXED;
+        }
+        Map<Object, Integer> dictionary = null;
+        if (type == VECTOR_STRING) {
+            dictionary = buildDictionary(values, numRecords - nulls);
+            if (dictionary != null) {
+                type = VECTOR_DICTIONARY;
+            }
+        }
+        byteBuf.writeByte(nulls > 0 ? type | FLAG_HAS_NULLS : type);
+        if (nulls > 0) {
+            byte[] bitmap = new byte[(numRecords + 7) / 8];
+            for (int i = 0; i < numRecords; i++) {
+                if (values[i] == null) {
+                    bitmap[i >> 3] |= 1 << (i & 7);
+                }
+            }
+            byteBuf.writeBytes(bitmap);
+        }
+        if (type == VECTOR_DICTIONARY) {
+            Object[] entries = new Object[dictionary.size()];
+            dictionary.forEach((value, index) -> entries[index] = value);
+            ByteBufUtils.writeVInt(byteBuf, entries.length);
+            for (Object entry : entries) {
+                writeString(byteBuf, entry);
+            }
+        }
+        for (Object value : values) {
+            if (value == null) {
+                continue;
+            }
+            switch (type) {
+                case VECTOR_LONG:
+                    byteBuf.writeLong((Long) value);
+                    break;
+                case VECTOR_INTEGER:
+                    byteBuf.writeInt((Integer) value);
+                    break;
+                case VECTOR_DOUBLE:
+                    byteBuf.writeDouble((Double) value);
+                    break;
+                case VECTOR_BOOLEAN:
+                    byteBuf.writeBoolean((Boolean) value);
+                    break;
+                case VECTOR_TIMESTAMP:
+                    byteBuf.writeLong(((java.util.Date) value).getTime());
+                    break;
+                case VECTOR_STRING:
+                    writeString(byteBuf, value);
+                    break;
+                case VECTOR_DICTIONARY:
+                    ByteBufUtils.writeVInt(byteBuf, dictionary.get(value));
+                    break;
+                default:
+                    PduCodec.writeObject(byteBuf, value);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Builds the dictionary of the values of a column of strings.
+     *
+     * @return the dictionary, null if there are too many distinct values
+     */
+    private static Map<Object, Integer> buildDictionary(Object[] values, int numValues) {
+        int maxSize = numValues / 2;
+        if (maxSize == 0) {
+            return null;
+        }
+        Map<Object, Integer> dictionary = new HashMap<>();
+        for (Object value : values) {
+            if (value != null) {
+                dictionary.putIfAbsent(value, dictionary.size());
+                if (dictionary.size() > maxSize) {
+                    return null;
+                }
+            }
+        }
+        return dictionary;
+    }
+
+    private static void writeString(ByteBuf byteBuf, Object value) {
+        if (value instanceof RawString) {
+            ByteBufUtils.writeRawString(byteBuf, (RawString) value);
+        } else {
+            ByteBufUtils.writeString(byteBuf, (String) value);
+        }
+    }
+
+    /**
+     * Reads the columns of a chunk.
+     *
+     * @param buffer the buffer, positioned after the number of records
+     * @param numColumns the number of columns
+     * @param numRecords the number of records
+     * @return the columns
+     */
+    public static ColumnVector[] read(ByteBuf buffer, int numColumns, int numRecords) {
+        byte compression = buffer.readByte();
+        ByteBuf data = buffer;
+        if (compression == COMPRESSED_LZ4) {
+            int size = buffer.readInt();
+            int compressedSize = buffer.readInt();
+            byte[] compressed = new byte[compressedSize];
+            buffer.readBytes(compressed);
+            byte[] uncompressed = new byte[size];
+            LZ4FastDecompressor decompressor = LZ4.fastDecompressor();
+            decompressor.decompress(compressed, 0, uncompressed, 0, size);
+            data = Unpooled.wrappedBuffer(uncompressed);
+        } else if (compression != NOT_COMPRESSED) {
+            throw new IllegalArgumentException("bad compression " + compression);
+        }
+        ColumnVector[] columns = new ColumnVector[numColumns];
+        for (int i = 0; i < numColumns; i++) {
+            columns[i] = readColumn(data, numRecords);
+        }
+        return columns;
+    }
+
+    private static ColumnVector readColumn(ByteBuf buffer, int numRecords) {
+        byte header = buffer.readByte();
+        byte[] nulls = null;
+        if ((header & FLAG_HAS_NULLS) == FLAG_HAS_NULLS) {
+            nulls = new byte[(numRecords + 7) / 8];
+            buffer.readBytes(nulls);
+        }
+        byte type = (byte) (header & ~FLAG_HAS_NULLS);
+        switch (type) {
+            case VECTOR_LONG:
+            case VECTOR_TIMESTAMP: {
+                long[] values = new long[numRecords];
+                for (int i = 0; i < numRecords; i++) {
+                    if (!isNull(nulls, i)) {
+                        values[i] = buffer.readLong();
+                    }
+                }
+                return type == VECTOR_LONG ? new LongVector(nulls, values) : new TimestampVector(nulls, values);
+            }
+            case VECTOR_INTEGER: {
+                int[] values = new int[numRecords];
+                for (int i = 0; i < numRecords; i++) {
+                    if (!isNull(nulls, i)) {
+                        values[i] = buffer.readInt();
+                    }
+                }
+                return new IntegerVector(nulls, values);
+            }
+            case VECTOR_DOUBLE: {
+                double[] values = new double[numRecords];
+                for (int i = 0; i < numRecords; i++) {
+                    if (!isNull(nulls, i)) {
+                        values[i] = buffer.readDouble();
+                    }
+                }
+                return new DoubleVector(nulls, values);
+            }
+            case VECTOR_DICTIONARY: {
+                RawString[] dictionary = new RawString[ByteBufUtils.readVInt(buffer)];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = ByteBufUtils.readUnpooledRawString(buffer);
+                }
+                Object[] values = new Object[numRecords];
+                for (int i = 0; i < numRecords; i++) {
+                    if (!isNull(nulls, i)) {
+                        values[i] = dictionary[ByteBufUtils.readVInt(buffer)];
+                    }
+                }
+                return new ObjectVector(values);
+            }
+            case VECTOR_BOOLEAN:
+            case VECTOR_STRING:
+            case VECTOR_MIXED: {
+                Object[] values = new Object[numRecords];
+                for (int i = 0; i < numRecords; i++) {
+                    if (!isNull(nulls, i)) {
+                        if (type == VECTOR_BOOLEAN) {
+                            values[i] = buffer.readBoolean();
+                        } else if (type == VECTOR_STRING) {
+                            values[i] = ByteBufUtils.readUnpooledRawString(buffer);
+                        } else {
+                            values[i] = PduCodec.readObject(buffer);
+                        }
+                    }
+                }
+                return new ObjectVector(values);
+            }
+            default:
+                throw new IllegalArgumentException("bad column vector type " + type);
+        }
+    }
+
+    private static boolean isNull(byte[] nulls, int row) {
+        return nulls != null && (nulls[row >> 3] & (1 << (row & 7))) != 0;
+    }
+
+    /**
+     * The values of a column.
+     */
+    public abstract static class ColumnVector {
+
+        /**
+         * Value of a row.
+         *
+         * @param row the index of the row
+         * @return the value, it is the same value that would be returned by
+         * {@link PduCodec#readObject(io.netty.buffer.ByteBuf)} for the
+         * row-based format
+         */
+        public abstract Object get(int row);
+    }
+
+    private static final class ObjectVector extends ColumnVector {
+
+        private final Object[] values;
+
+        ObjectVector(Object[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int row) {
+            return values[row];
+        }
+    }
+
+    private static final class LongVector extends ColumnVector {
+
+        private final byte[] nulls;
+        private final long[] values;
+
+        LongVector(byte[] nulls, long[] values) {
+            this.nulls = nulls;
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(nulls, row) ? null : values[row];
+        }
+    }
+
+    private static final class TimestampVector extends ColumnVector {
+
+        private final byte[] nulls;
+        private final long[] values;
+
+        TimestampVector(byte[] nulls, long[] values) {
+            this.nulls = nulls;
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(nulls, row) ? null : new java.sql.Timestamp(values[row]);
+        }
+    }
+
+    private static final class IntegerVector extends ColumnVector {
+
+        private final byte[] nulls;
+        private final int[] values;
+
+        IntegerVector(byte[] nulls, int[] values) {
+            this.nulls = nulls;
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(nulls, row) ? null : values[row];
+        }
+    }
+
+    private static final class DoubleVector extends ColumnVector {
+
+        private final byte[] nulls;
+        private final double[] values;
+
+        DoubleVector(byte[] nulls, double[] values) {
+            this.nulls = nulls;
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(nulls, row) ? null : values[row];
+        }
+    }
+}
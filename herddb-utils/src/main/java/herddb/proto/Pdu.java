@@ -54,6 +54,7 @@ public class Pdu implements AutoCloseable {
     public static final byte TYPE_RESTORE_FINISHED = 23;
     public static final byte TYPE_TX_COMMAND = 24;
     public static final byte TYPE_TX_COMMAND_RESULT = 25;
+    public static final byte TYPE_SCANNER_CREDITS = 26;
     public static final byte TYPE_SASL_TOKEN_MESSAGE_REQUEST = 100;
     public static final byte TYPE_SASL_TOKEN_SERVER_RESPONSE = 101;
     public static final byte TYPE_SASL_TOKEN_MESSAGE_TOKEN = 102;
@@ -64,6 +65,20 @@ public class Pdu implements AutoCloseable {
     public static final byte FLAGS_ISRESPONSE = 2;
     public static final byte FLAGS_OPENSCANNER_DONTKEEP_READ_LOCKS = 4;
     public static final byte FLAGS_OPENSCANNER_ALLOW_FOLLOWER_READS = 8;
+    /**
+     * On TYPE_OPENSCANNER the client asks the server to push the result set,
+     * on the first TYPE_RESULTSET_CHUNK the server tells that it accepted.
+     */
+    public static final byte FLAGS_STREAMING_RESULTSET = 16;
+    /**
+     * On TYPE_OPENSCANNER the client asks for the columnar encoding of the
+     * result set, on TYPE_RESULTSET_CHUNK it tells that the data is columnar.
+     */
+    public static final byte FLAGS_COLUMNAR_RESULTSET = 32;
+    /**
+     * On TYPE_OPENSCANNER the client accepts LZ4 compressed columnar data.
+     */
+    public static final byte FLAGS_COMPRESSED_RESULTSET = 64;
 
 
     private static final Recycler<Pdu> RECYCLER = new Recycler<Pdu>() {
@@ -427,6 +427,10 @@ public abstract class PduCodec {
         }
 
         private static ByteBuf write(long messageId, String error, boolean notLeader, boolean missingPreparedStatement, boolean sqlIntegrityConstraintViolation) {
+            return write(Pdu.FLAGS_ISRESPONSE, messageId, error, notLeader, missingPreparedStatement, sqlIntegrityConstraintViolation);
+        }
+
+        private static ByteBuf write(byte pduFlags, long messageId, String error, boolean notLeader, boolean missingPreparedStatement, boolean sqlIntegrityConstraintViolation) {
             if (error == null) {
                 error = "";
             }
@@ -439,7 +443,7 @@ public abstract class PduCodec {
                                     + ONE_BYTE
                                     + error.length());
             byteBuf.writeByte(VERSION_3);
-            byteBuf.writeByte(Pdu.FLAGS_ISRESPONSE);
+            byteBuf.writeByte(pduFlags);
             byteBuf.writeByte(Pdu.TYPE_ERROR);
             byteBuf.writeLong(messageId);
             byte flags = FLAG_NONE;
@@ -458,6 +462,23 @@ public abstract class PduCodec {
         }
 
         public static ByteBuf write(long messageId, Throwable error, boolean notLeader, boolean missingPreparedStatementError) {
+            return write(messageId, errorMessageForClient(error), notLeader, missingPreparedStatementError, false);
+        }
+
+        /**
+         * Error on a streaming scanner, it is pushed to the client as a
+         * request, the messageId is the id of the scanner.
+         *
+         * @param scannerId the scanner
+         * @param error the error
+         * @return the message
+         * @see ResultSetChunk#writePush(long, int, herddb.utils.TuplesList, boolean, long, byte)
+         */
+        public static ByteBuf writePush(long scannerId, Throwable error) {
+            return write(Pdu.FLAGS_ISREQUEST, scannerId, errorMessageForClient(error), false, false, false);
+        }
+
+        private static String errorMessageForClient(Throwable error) {
             String errorMessageForClient;
             if (SEND_FULL_STACKTRACES) {
                 StringWriter writer = new StringWriter();
@@ -467,7 +488,7 @@ public abstract class PduCodec {
                 // no stacktrace
                 errorMessageForClient = error + "";
             }
-            return write(messageId, errorMessageForClient, notLeader, missingPreparedStatementError, false);
+            return errorMessageForClient;
         }
 
         public static ByteBuf write(long messageId, Throwable error) {
@@ -614,6 +635,30 @@ public abstract class PduCodec {
                 long scannerId, long tx, List<Object> params, long statementId, int fetchSize, int maxRows,
                 boolean keepReadLocks, boolean allowFollowerReads
         ) {
+            return write(messageId, tableSpace, query, scannerId, tx, params, statementId, fetchSize, maxRows, keepReadLocks, allowFollowerReads, false);
+        }
+
+        public static ByteBuf write(
+                long messageId, String tableSpace, String query,
+                long scannerId, long tx, List<Object> params, long statementId, int fetchSize, int maxRows,
+                boolean keepReadLocks, boolean allowFollowerReads, boolean streaming
+        ) {
+            return write(messageId, tableSpace, query, scannerId, tx, params, statementId, fetchSize, maxRows, keepReadLocks, allowFollowerReads, streaming,
+                    ResultSetChunk.FORMAT_ROWS);
+        }
+
+        /**
+         * Opens a scanner.
+         *
+         * @param resultSetFormat the encoding of the chunks requested by the
+         * client, see {@link ResultSetChunk#FORMAT_ROWS}, the server may
+         * ignore it
+         */
+        public static ByteBuf write(
+                long messageId, String tableSpace, String query,
+                long scannerId, long tx, List<Object> params, long statementId, int fetchSize, int maxRows,
+                boolean keepReadLocks, boolean allowFollowerReads, boolean streaming, byte resultSetFormat
+        ) {
 
             ByteBuf byteBuf = PooledByteBufAllocator.DEFAULT
                     .directBuffer(
@@ -654,6 +699,15 @@ public abstract class PduCodec {
             if (allowFollowerReads) {
                 trailer |= Pdu.FLAGS_OPENSCANNER_ALLOW_FOLLOWER_READS;
             }
+            if (streaming) {
+                trailer |= Pdu.FLAGS_STREAMING_RESULTSET;
+            }
+            if (resultSetFormat != ResultSetChunk.FORMAT_ROWS) {
+                trailer |= Pdu.FLAGS_COLUMNAR_RESULTSET;
+            }
+            if (resultSetFormat == ResultSetChunk.FORMAT_COLUMNAR_COMPRESSED) {
+                trailer |= Pdu.FLAGS_COMPRESSED_RESULTSET;
+            }
             if (trailer != 0) {
                 byteBuf.writeByte(trailer);
             }
@@ -763,11 +817,68 @@ public abstract class PduCodec {
 
     public static class ResultSetChunk {
 
+        /**
+         * One record after the other, each value with its type.
+         */
+        public static final byte FORMAT_ROWS = 0;
+        /**
+         * Column after column, see {@link ColumnarChunkCodec}.
+         */
+        public static final byte FORMAT_COLUMNAR = 1;
+        /**
+         * Column after column, compressed with LZ4 if the chunk is big enough.
+         */
+        public static final byte FORMAT_COLUMNAR_COMPRESSED = 2;
+
         private static int estimateTupleListSize(TuplesList data) {
             return data.tuples.size() * 1024 + data.columnNames.length * 64;
         }
 
         public static ByteBuf write(long messageId, TuplesList tuplesList, boolean last, long tx) {
+            return write(Pdu.FLAGS_ISRESPONSE, messageId, tuplesList, last, tx, FORMAT_ROWS);
+        }
+
+        /**
+         * Reply to a request on a scanner.
+         *
+         * @param messageId the id of the request
+         * @param tuplesList the data
+         * @param last if this is the last chunk
+         * @param tx the transaction
+         * @param streaming if the server accepted to stream the result set,
+         * this is meaningful only for the reply to TYPE_OPENSCANNER
+         * @param format the encoding of the data
+         * @return the message
+         */
+        public static ByteBuf write(long messageId, TuplesList tuplesList, boolean last, long tx, boolean streaming, byte format) {
+            byte flags = Pdu.FLAGS_ISRESPONSE;
+            if (streaming) {
+                flags |= Pdu.FLAGS_STREAMING_RESULTSET;
+            }
+            return write(flags, messageId, tuplesList, last, tx, format);
+        }
+
+        /**
+         * Chunk pushed by the server on a streaming scanner. This is not the
+         * reply to a request, the messageId is the id of the scanner and the
+         * sequence number of the chunk is appended after the data, because the
+         * client may process the chunks out of order.
+         *
+         * @param scannerId the scanner
+         * @param sequence the sequence number of the chunk, the first pushed chunk is 1
+         * @param tuplesList the data
+         * @param last if this is the last chunk
+         * @param tx the transaction
+         * @param format the encoding of the data
+         * @return the message
+         */
+        public static ByteBuf writePush(long scannerId, int sequence, TuplesList tuplesList, boolean last, long tx, byte format) {
+            ByteBuf byteBuf = write(Pdu.FLAGS_ISREQUEST, scannerId, tuplesList, last, tx, format);
+            byteBuf.writeInt(sequence);
+            return byteBuf;
+        }
+
+        private static ByteBuf write(byte flags, long messageId, TuplesList tuplesList, boolean last, long tx, byte format) {
             int dataSize = estimateTupleListSize(tuplesList);
             ByteBuf byteBuf = PooledByteBufAllocator.DEFAULT
                     .directBuffer(
@@ -779,8 +890,11 @@ public abstract class PduCodec {
                                     + ONE_BYTE
                                     + dataSize);
 
+            if (format != FORMAT_ROWS) {
+                flags |= Pdu.FLAGS_COLUMNAR_RESULTSET;
+            }
             byteBuf.writeByte(VERSION_3);
-            byteBuf.writeByte(Pdu.FLAGS_ISRESPONSE);
+            byteBuf.writeByte(flags);
             byteBuf.writeByte(Pdu.TYPE_RESULTSET_CHUNK);
             byteBuf.writeLong(messageId);
             byteBuf.writeLong(tx);
@@ -794,6 +908,10 @@ public abstract class PduCodec {
 
             // num records
             byteBuf.writeInt(tuplesList.tuples.size());
+            if (format != FORMAT_ROWS) {
+                ColumnarChunkCodec.write(byteBuf, tuplesList, format == FORMAT_COLUMNAR_COMPRESSED);
+                return byteBuf;
+            }
             for (DataAccessor da : tuplesList.tuples) {
                 IntHolder currentColumn = new IntHolder();
                 da.forEach((String key, Object value) -> {
@@ -837,6 +955,19 @@ public abstract class PduCodec {
             ) == 1;
         }
 
+        public static boolean readIsStreaming(Pdu pdu) {
+            return (pdu.flags & Pdu.FLAGS_STREAMING_RESULTSET) == Pdu.FLAGS_STREAMING_RESULTSET;
+        }
+
+        public static boolean readIsColumnar(Pdu pdu) {
+            return (pdu.flags & Pdu.FLAGS_COLUMNAR_RESULTSET) == Pdu.FLAGS_COLUMNAR_RESULTSET;
+        }
+
+        public static int readPushSequence(Pdu pdu) {
+            ByteBuf buffer = pdu.buffer;
+            return buffer.getInt(buffer.writerIndex() - ONE_INT);
+        }
+
         public static RecordsBatch startReadingData(Pdu pdu) {
             ByteBuf buffer = pdu.buffer;
             buffer.readerIndex(VERSION_SIZE
@@ -849,6 +980,44 @@ public abstract class PduCodec {
         }
     }
 
+    public static class ScannerCredits {
+
+        public static ByteBuf write(long messageId, long scannerId, int credits) {
+            ByteBuf byteBuf = PooledByteBufAllocator.DEFAULT
+                    .directBuffer(
+                            VERSION_SIZE
+                                    + FLAGS_SIZE
+                                    + TYPE_SIZE
+                                    + MSGID_SIZE
+                                    + ONE_LONG
+                                    + ONE_INT);
+            byteBuf.writeByte(VERSION_3);
+            byteBuf.writeByte(Pdu.FLAGS_ISREQUEST);
+            byteBuf.writeByte(Pdu.TYPE_SCANNER_CREDITS);
+            byteBuf.writeLong(messageId);
+            byteBuf.writeLong(scannerId);
+            byteBuf.writeInt(credits);
+            return byteBuf;
+        }
+
+        public static long readScannerId(Pdu pdu) {
+            ByteBuf buffer = pdu.buffer;
+            return buffer.getLong(VERSION_SIZE
+                    + FLAGS_SIZE
+                    + TYPE_SIZE
+                    + MSGID_SIZE);
+        }
+
+        public static int readCredits(Pdu pdu) {
+            ByteBuf buffer = pdu.buffer;
+            return buffer.getInt(VERSION_SIZE
+                    + FLAGS_SIZE
+                    + TYPE_SIZE
+                    + MSGID_SIZE
+                    + ONE_LONG);
+        }
+    }
+
     public static class FetchScannerData {
 
         public static ByteBuf write(long messageId, long scannerId, int fetchSize) {
@@ -1862,6 +2031,20 @@ public abstract class PduCodec {
             return ((trailer & Pdu.FLAGS_OPENSCANNER_ALLOW_FOLLOWER_READS) == Pdu.FLAGS_OPENSCANNER_ALLOW_FOLLOWER_READS);
         }
 
+        public static boolean isStreaming(byte trailer) {
+            return ((trailer & Pdu.FLAGS_STREAMING_RESULTSET) == Pdu.FLAGS_STREAMING_RESULTSET);
+        }
+
+        public static byte getResultSetFormat(byte trailer) {
+            if ((trailer & Pdu.FLAGS_COLUMNAR_RESULTSET) != Pdu.FLAGS_COLUMNAR_RESULTSET) {
+                return ResultSetChunk.FORMAT_ROWS;
+            }
+            if ((trailer & Pdu.FLAGS_COMPRESSED_RESULTSET) == Pdu.FLAGS_COMPRESSED_RESULTSET) {
+                return ResultSetChunk.FORMAT_COLUMNAR_COMPRESSED;
+            }
+            return ResultSetChunk.FORMAT_COLUMNAR;
+        }
+
     }
 
     static void writeObject(ByteBuf byteBuf, Object v) {
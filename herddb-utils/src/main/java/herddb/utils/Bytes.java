@@ -146,18 +146,37 @@ public final class Bytes implements Comparable<Bytes>, SizeAwareObject {
     }
 
     public static float[] to_float_array(byte[] buffer, int offset, int length) {
+        if (length % 4 != 0) {
+            throw new IllegalArgumentException("Invalid byte array length");
+        }
+        float[] result = new float[length / 4];
+        to_float_array(buffer, offset, length, result, 0);
+        return result;
+    }
+
+    /**
+     * Decodes a serialized float array directly into the given array,
+     * this way contiguous vector storage can be filled without allocating a
+     * float[] for each vector.
+     *
+     * @param buffer the serialized data
+     * @param offset offset of the data in the buffer
+     * @param length length of the data, in bytes
+     * @param dest the destination array
+     * @param destOffset position in the destination array
+     */
+    public static void to_float_array(byte[] buffer, int offset, int length, float[] dest, int destOffset) {
         if (length % 4 != 0) {
             throw new IllegalArgumentException("Invalid byte array length");
         }
         int floatCount = length / 4;
-        float[] result = new float[floatCount];
         if (HAS_UNSAFE && UNALIGNED) {
             for (int i = 0; i < floatCount; i++) {
                 int v = PlatformDependent.getInt(buffer, offset);
                 if (!BIG_ENDIAN_NATIVE_ORDER) {
                     v = Integer.reverseBytes(v);
                 }
-                result[i] = Float.intBitsToFloat(v);
+                dest[destOffset + i] = Float.intBitsToFloat(v);
                 offset += 4;
             }
         } else {
@@ -166,11 +185,10 @@ public final class Bytes implements Comparable<Bytes>, SizeAwareObject {
                         | (buffer[offset + 1] & 0xff) << 16
                         | (buffer[offset + 2] & 0xff) << 8
                         | buffer[offset + 3] & 0xff;
-                result[i] = Float.intBitsToFloat(v);
+                dest[destOffset + i] = Float.intBitsToFloat(v);
                 offset += 4;
             }
         }
-        return result;
     }
 
     public static Bytes from_float_array(float[] floatArray) {
@@ -0,0 +1,91 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.utils;
+
+/**
+ * Java 8 compatible version. Scoring kernels for float vectors stored in
+ * contiguous arrays, the loops are unrolled with independent accumulators
+ * in order to let the JIT pipeline the multiplications.
+ * <p>
+ * On Java 17+ the multi-release jar contains a version which uses the
+ * incubating Vector API when the jdk.incubator.vector module is available.
+ */
+public final class FloatVectorUtils {
+
+    private FloatVectorUtils() {
+    }
+
+    /**
+     * Tells whether the kernels use SIMD instructions.
+     *
+     * @return true if the Vector API is used
+     */
+    public static boolean isVectorized() {
+        return false;
+    }
+
+    public static float dotProduct(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum0 = 0;
+        float sum1 = 0;
+        float sum2 = 0;
+        float sum3 = 0;
+        int i = 0;
+        int upperBound = length & ~3;
+        for (; i < upperBound; i += 4) {
+            sum0 += a[aOffset + i] * b[bOffset + i];
+            sum1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            sum2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            sum3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            sum0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    public static float squareDistance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum0 = 0;
+        float sum1 = 0;
+        float sum2 = 0;
+        float sum3 = 0;
+        int i = 0;
+        int upperBound = length & ~3;
+        for (; i < upperBound; i += 4) {
+            float diff0 = a[aOffset + i] - b[bOffset + i];
+            float diff1 = a[aOffset + i + 1] - b[bOffset + i + 1];
+            float diff2 = a[aOffset + i + 2] - b[bOffset + i + 2];
+            float diff3 = a[aOffset + i + 3] - b[bOffset + i + 3];
+            sum0 += diff0 * diff0;
+            sum1 += diff1 * diff1;
+            sum2 += diff2 * diff2;
+            sum3 += diff3 * diff3;
+        }
+        for (; i < length; i++) {
+            float diff = a[aOffset + i] - b[bOffset + i];
+            sum0 += diff * diff;
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    public static float squareNorm(float[] a, int aOffset, int length) {
+        return dotProduct(a, aOffset, a, aOffset, length);
+    }
+}
@@ -20,6 +20,8 @@
 
 package herddb.utils;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Handle locks by key
  *
@@ -31,6 +33,32 @@ public interface ILocalLockManager {
 
     LockHandle acquireWriteLockForKey(Bytes key);
 
+    /**
+     * Acquires the lock for read without blocking the current thread.
+     *
+     * @return a future which completes when the lock is granted
+     */
+    default CompletableFuture<LockHandle> acquireReadLockForKeyAsync(Bytes key) {
+        try {
+            return CompletableFuture.completedFuture(acquireReadLockForKey(key));
+        } catch (RuntimeException err) {
+            return Futures.exception(err);
+        }
+    }
+
+    /**
+     * Acquires the lock for write without blocking the current thread.
+     *
+     * @return a future which completes when the lock is granted
+     */
+    default CompletableFuture<LockHandle> acquireWriteLockForKeyAsync(Bytes key) {
+        try {
+            return CompletableFuture.completedFuture(acquireWriteLockForKey(key));
+        } catch (RuntimeException err) {
+            return Futures.exception(err);
+        }
+    }
+
     void clear();
 
     void releaseLock(LockHandle handle);
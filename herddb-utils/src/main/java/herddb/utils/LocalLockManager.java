@@ -20,13 +20,25 @@
 
 package herddb.utils;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.StampedLock;
 
 /**
  * Handle locks by key
+ * <p>
+ * Requests which cannot be granted immediately wait in a FIFO queue of the
+ * key, without holding any thread: the request is granted by the thread which
+ * releases the lock. Subsequent readers at the head of the queue are granted
+ * together. Blocking acquisitions simply wait for the same request to be
+ * granted.
  *
  * @author enrico.olivelli
  * @author diego.salvi
@@ -37,54 +49,195 @@ public class LocalLockManager implements ILocalLockManager {
 
     private int readLockTimeout = 60 * 30;
 
-    private StampedLock makeLock() {
-        return new StampedLock();
+    /**
+     * Expires the requests which wait for too long, the thread is needed only
+     * in case of contention
+     */
+    private static final class TimeoutScheduler {
+
+        private static final ScheduledThreadPoolExecutor INSTANCE;
+
+        static {
+            INSTANCE = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "herddb-lock-timeout");
+                t.setDaemon(true);
+                return t;
+            });
+            INSTANCE.setRemoveOnCancelPolicy(true);
+        }
     }
 
     private final ConcurrentMap<Bytes, LockInstance> locks = new ConcurrentHashMap<>();
 
-    private static class LockInstance {
+    /**
+     * State of the lock of a key, it is accessed only inside the atomic
+     * operations on the map of the locks
+     */
+    private static final class LockInstance {
 
-        private final StampedLock lock;
-        private int count;
+        private int readers;
+        private boolean writer;
+        private ArrayDeque<LockRequest> waiters;
+
+        private boolean isAvailable(boolean write) {
+            return write ? !writer && readers == 0 : !writer;
+        }
 
-        public LockInstance(StampedLock lock, int count) {
-            super();
-            this.lock = lock;
-            this.count = count;
+        private boolean hasWaiters() {
+            return waiters != null && !waiters.isEmpty();
+        }
+
+        private boolean isIdle() {
+            return !writer && readers == 0 && !hasWaiters();
+        }
+
+        private void grant(LockRequest request) {
+            if (request.write) {
+                writer = true;
+            } else {
+                readers++;
+            }
+            request.handle = new LockHandle(0, request.key, request.write, this);
+        }
+
+        /**
+         * Grants the requests at the head of the queue, in order
+         */
+        private void grantWaiters(List<LockRequest> granted) {
+            while (hasWaiters() && isAvailable(waiters.peek().write)) {
+                LockRequest request = waiters.poll();
+                grant(request);
+                granted.add(request);
+            }
         }
 
         @Override
         public String toString() {
-            return "LockInstance{" + "lock=" + lock + ", count=" + count + '}';
+            return "LockInstance{" + "readers=" + readers + ", writer=" + writer
+                    + ", waiters=" + (waiters != null ? waiters.size() : 0) + '}';
         }
+    }
+
+    private static final class LockRequest {
+
+        private final Bytes key;
+        private final boolean write;
+        private final CompletableFuture<LockHandle> future = new CompletableFuture<>();
+        private LockHandle handle;
+        private volatile ScheduledFuture<?> timeout;
 
+        private LockRequest(Bytes key, boolean write) {
+            this.key = key;
+            this.write = write;
+        }
     }
 
-    private LockInstance makeLockForKey(Bytes key) {
-        LockInstance instance = locks.compute(key, (k, existing) -> {
-            if (existing != null) {
-                existing.count++;
-                return existing;
+    private CompletableFuture<LockHandle> acquire(Bytes key, boolean write, int timeoutSeconds) {
+        LockRequest request = new LockRequest(key, write);
+        locks.compute(key, (k, existing) -> {
+            LockInstance lock = existing != null ? existing : new LockInstance();
+            if (!lock.hasWaiters() && lock.isAvailable(write)) {
+                lock.grant(request);
             } else {
-                LockInstance lock = new LockInstance(makeLock(), 1);
-                return lock;
+                if (lock.waiters == null) {
+                    lock.waiters = new ArrayDeque<>();
+                }
+                lock.waiters.add(request);
+            }
+            return lock;
+        });
+        if (request.handle != null) {
+            // fast path, no contention
+            return CompletableFuture.completedFuture(request.handle);
+        }
+        final ScheduledFuture<?> timeout = TimeoutScheduler.INSTANCE.schedule(() -> {
+            if (abandon(request)) {
+                request.future.completeExceptionally(
+                        new LockAcquireTimeoutException(write ? "timed out acquiring lock for write" : "timedout trying to read lock"));
+            }
+        }, timeoutSeconds, TimeUnit.SECONDS);
+        request.timeout = timeout;
+        // the request may have been granted before the timeout was scheduled,
+        // in this case the callback runs immediately
+        request.future.whenComplete((handle, error) -> {
+            if (error == null) {
+                timeout.cancel(false);
+            }
+        });
+        return request.future;
+    }
+
+    /**
+     * Removes a request from the queue of the key.
+     *
+     * @return false if the request has already been granted
+     */
+    private boolean abandon(LockRequest request) {
+        List<LockRequest> granted = new ArrayList<>(0);
+        boolean[] removed = new boolean[1];
+        locks.computeIfPresent(request.key, (k, lock) -> {
+            if (lock.waiters != null && lock.waiters.remove(request)) {
+                removed[0] = true;
+                // a writer at the head of the queue could have been blocking readers
+                lock.grantWaiters(granted);
             }
+            return lock.isIdle() ? null : lock;
         });
-        return instance;
+        completeGranted(granted);
+        return removed[0];
     }
 
-    private void returnLockForKey(LockInstance instance, Bytes key) throws IllegalStateException {
-        locks.compute(key, (Bytes t, LockInstance u) -> {
+    private void completeGranted(List<LockRequest> granted) {
+        for (LockRequest request : granted) {
+            if (!request.future.complete(request.handle)) {
+                // the caller is no more interested in the lock
+                releaseLock(request.handle);
+            }
+        }
+    }
+
+    private LockHandle waitForLock(CompletableFuture<LockHandle> lock) {
+        if (lock.isDone()) {
+            return lock.join();
+        }
+        try {
+            return lock.get();
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            // release the lock if it is granted meanwhile
+            lock.cancel(false);
+            throw new LockAcquireTimeoutException(err);
+        } catch (ExecutionException err) {
+            if (err.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) err.getCause();
+            }
+            throw new LockAcquireTimeoutException(err.getCause());
+        }
+    }
+
+    private void release(LockHandle handle) throws IllegalStateException {
+        /* Retrieve the instance... other threads could have this pointer too */
+        LockInstance instance = (LockInstance) handle.handle;
+        List<LockRequest> granted = new ArrayList<>(0);
+        locks.compute(handle.key, (Bytes t, LockInstance u) -> {
             if (instance != u) {
                 throw new IllegalStateException("trying to release un-owned lock");
             }
-            if (--u.count == 0) {
-                return null;
+            if (handle.write) {
+                if (!u.writer) {
+                    throw new IllegalStateException("trying to release un-owned lock");
+                }
+                u.writer = false;
             } else {
-                return u;
+                if (u.readers == 0) {
+                    throw new IllegalStateException("trying to release un-owned lock");
+                }
+                u.readers--;
             }
+            u.grantWaiters(granted);
+            return u.isIdle() ? null : u;
         });
+        completeGranted(granted);
     }
 
     public int getWriteLockTimeout() {
@@ -105,47 +258,32 @@ public class LocalLockManager implements ILocalLockManager {
 
     @Override
     public LockHandle acquireWriteLockForKey(Bytes key) {
-        LockInstance lock = makeLockForKey(key);
-        try {
-            long tryWriteLock = lock.lock.tryWriteLock(writeLockTimeout, TimeUnit.SECONDS);
-            if (tryWriteLock == 0) {
-                throw new LockAcquireTimeoutException("timed out acquiring lock for write");
-            }
-            return new LockHandle(tryWriteLock, key, true, lock);
-        } catch (InterruptedException err) {
-            Thread.currentThread().interrupt();
-            throw new LockAcquireTimeoutException(err);
-        }
+        return waitForLock(acquireWriteLockForKeyAsync(key));
+    }
+
+    @Override
+    public CompletableFuture<LockHandle> acquireWriteLockForKeyAsync(Bytes key) {
+        return acquire(key, true, writeLockTimeout);
     }
 
     @Override
     public void releaseWriteLock(LockHandle handle) {
-        /* Retrieve the instance... other threads could have this pointer too */
-        LockInstance instance = (LockInstance) handle.handle;
-        instance.lock.unlockWrite(handle.stamp);
-        returnLockForKey(instance, handle.key);
+        release(handle);
     }
 
     @Override
     public LockHandle acquireReadLockForKey(Bytes key) {
-        LockInstance lock = makeLockForKey(key);
-        try {
-            long tryReadLock = lock.lock.tryReadLock(readLockTimeout, TimeUnit.SECONDS);
-            if (tryReadLock == 0) {
-                throw new LockAcquireTimeoutException("timedout trying to read lock");
-            }
-            return new LockHandle(tryReadLock, key, false, lock);
-        } catch (InterruptedException err) {
-            Thread.currentThread().interrupt();
-            throw new LockAcquireTimeoutException(err);
-        }
+        return waitForLock(acquireReadLockForKeyAsync(key));
+    }
+
+    @Override
+    public CompletableFuture<LockHandle> acquireReadLockForKeyAsync(Bytes key) {
+        return acquire(key, false, readLockTimeout);
     }
 
     @Override
     public void releaseReadLock(LockHandle handle) {
-        LockInstance instance = (LockInstance) handle.handle;
-        instance.lock.unlockRead(handle.stamp);
-        returnLockForKey(instance, handle.key);
+        release(handle);
     }
 
     @Override
@@ -162,7 +300,22 @@ public class LocalLockManager implements ILocalLockManager {
 
     @Override
     public void clear() {
-        this.locks.clear();
+        List<LockRequest> waiting = new ArrayList<>();
+        for (Bytes key : locks.keySet()) {
+            locks.computeIfPresent(key, (k, lock) -> {
+                if (lock.waiters != null) {
+                    waiting.addAll(lock.waiters);
+                }
+                return null;
+            });
+        }
+        for (LockRequest request : waiting) {
+            ScheduledFuture<?> timeout = request.timeout;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            request.future.completeExceptionally(new LockAcquireTimeoutException("lock manager has been cleared"));
+        }
     }
 
     @Override
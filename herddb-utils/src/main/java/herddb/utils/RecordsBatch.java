@@ -20,6 +20,8 @@
 
 package herddb.utils;
 
+import herddb.proto.ColumnarChunkCodec;
+import herddb.proto.ColumnarChunkCodec.ColumnVector;
 import herddb.proto.Pdu;
 import herddb.proto.PduCodec;
 import io.netty.buffer.ByteBuf;
@@ -43,6 +45,7 @@ public class RecordsBatch {
     private DataAccessor next;
     private boolean finished;
     public Map<String, Integer> columnNameToPosition;
+    private final ColumnVector[] columns;
 
     public RecordsBatch(Pdu message) {
         this.buffer = message.buffer;
@@ -58,6 +61,11 @@ public class RecordsBatch {
         if (numRecords == 0) {
             finished = true;
         }
+        if (PduCodec.ResultSetChunk.readIsColumnar(message)) {
+            this.columns = ColumnarChunkCodec.read(buffer, numColumns, numRecords);
+        } else {
+            this.columns = null;
+        }
     }
 
     private void ensureColumnNameToPosition() {
@@ -109,7 +117,48 @@ public class RecordsBatch {
 
     }
 
+    /**
+     * Record of a columnar chunk, values are read from the column vectors.
+     */
+    private final class ColumnarRowDataAccessor implements DataAccessor {
+
+        private final int row;
+
+        public ColumnarRowDataAccessor(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public Object get(int index) {
+            return columns[index].get(row);
+        }
+
+        @Override
+        public int getNumFields() {
+            return columnNames.length;
+        }
+
+        @Override
+        public Object get(String property) {
+            ensureColumnNameToPosition();
+            Integer i = columnNameToPosition.get(property);
+            if (i == null) {
+                return null;
+            }
+            return get(i);
+        }
+
+        @Override
+        public String[] getFieldNames() {
+            return columnNames;
+        }
+
+    }
+
     private DataAccessor readRecordAtCurrentPosition() {
+        if (columns != null) {
+            return new ColumnarRowDataAccessor(currentRecordIndex);
+        }
         Object[] values = new Object[columnNames.length];
         for (int i = 0; i < columnNames.length; i++) {
             values[i] = PduCodec.readObject(buffer);
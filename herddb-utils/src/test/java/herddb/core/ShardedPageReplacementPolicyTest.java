@@ -0,0 +1,151 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Tests about {@link ShardedPageReplacementPolicy}
+ *
+ * @author enrico.olivelli
+ */
+public class ShardedPageReplacementPolicyTest {
+
+    private static class MyOwner implements Page.Owner {
+
+        final Map<Long, MyPage> loaded = new ConcurrentHashMap<>();
+
+        @Override
+        public void unload(long pageId) {
+            if (loaded.remove(pageId) == null) {
+                throw new IllegalStateException("page " + pageId + " is not loaded");
+            }
+        }
+    }
+
+    private static class MyPage extends Page<MyOwner> {
+
+        MyPage(MyOwner owner, long pageId) {
+            super(owner, pageId);
+        }
+    }
+
+    @Test
+    public void testShardsCount() {
+        assertEquals(1, ShardedPageReplacementPolicy.shardsCount(10, 16));
+        assertEquals(1, ShardedPageReplacementPolicy.shardsCount(1000, 1));
+        assertEquals(8, ShardedPageReplacementPolicy.shardsCount(1000, 16));
+        assertEquals(8, ShardedPageReplacementPolicy.shardsCount(100000, 12));
+        assertEquals(64, ShardedPageReplacementPolicy.shardsCount(100000, 64));
+
+        ShardedPageReplacementPolicy policy = new ShardedPageReplacementPolicy(1001, 16, ClockProPolicy::new);
+        assertEquals(8, policy.getShardsCount());
+        assertEquals(1001, policy.capacity());
+    }
+
+    @Test
+    public void testAddRemove() {
+        MyOwner owner = new MyOwner();
+        ShardedPageReplacementPolicy policy = new ShardedPageReplacementPolicy(1024, 8, ClockProPolicy::new);
+        assertEquals(8, policy.getShardsCount());
+
+        for (long i = 0; i < 5000; i++) {
+            MyPage page = new MyPage(owner, i);
+            owner.loaded.put(i, page);
+            Page.Metadata unload = policy.add(page);
+            if (unload != null) {
+                assertTrue(unload.owner == owner);
+                unload.owner.unload(unload.pageId);
+            }
+            assertTrue(policy.size() <= policy.capacity());
+            if (i % 3 == 0) {
+                policy.pageHit(page);
+            }
+        }
+        // every shard is full
+        assertEquals(1024, policy.size());
+        assertEquals(1024, owner.loaded.size());
+
+        List<MyPage> pages = new ArrayList<>(owner.loaded.values());
+        assertTrue(policy.remove(pages.get(0)));
+        assertFalse(policy.remove(pages.get(0)));
+        policy.remove(pages.subList(1, 100));
+        assertEquals(924, policy.size());
+
+        // there is room in the shards of the removed pages
+        MyPage page = pages.get(0);
+        assertNull(policy.add(page));
+        assertNotNull(page.metadata);
+
+        policy.clear();
+        assertEquals(0, policy.size());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        MyOwner owner = new MyOwner();
+        ShardedPageReplacementPolicy policy = new ShardedPageReplacementPolicy(512, 8, ClockProPolicy::new);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final long base = t * 1_000_000L;
+                results.add(threads.submit(() -> {
+                    for (long i = 0; i < 20000; i++) {
+                        MyPage page = new MyPage(owner, base + i);
+                        owner.loaded.put(page.pageId, page);
+                        Page.Metadata unload = policy.add(page);
+                        if (unload != null) {
+                            unload.owner.unload(unload.pageId);
+                        }
+                        MyPage hit = owner.loaded.get(base + ThreadLocalRandom.current().nextLong(i + 1));
+                        if (hit != null) {
+                            policy.pageHit(hit);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            threads.shutdown();
+            assertTrue(threads.awaitTermination(1, TimeUnit.MINUTES));
+        }
+        assertEquals(512, policy.size());
+        assertEquals(512, owner.loaded.size());
+    }
+}
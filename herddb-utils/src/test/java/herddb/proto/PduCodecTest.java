@@ -19,17 +19,27 @@
  */
 package herddb.proto;
 
+import static herddb.proto.PduCodec.ObjectListReader.getResultSetFormat;
 import static herddb.proto.PduCodec.ObjectListReader.isAllowFollowerReads;
 import static herddb.proto.PduCodec.ObjectListReader.isDontKeepReadLocks;
+import static herddb.proto.PduCodec.ObjectListReader.isStreaming;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import herddb.utils.DataAccessor;
+import herddb.utils.MapDataAccessor;
 import herddb.utils.RawString;
+import herddb.utils.RecordsBatch;
+import herddb.utils.TuplesList;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.junit.Test;
 
 /**
@@ -155,6 +165,74 @@ public class PduCodecTest {
         }
     }
 
+    @Test
+    public void streamingScanner() throws Exception {
+        List<Object> params = Arrays.asList("1", 12L, 3d);
+        ByteBuf write = PduCodec.OpenScanner.write(1, "ts", "q", 2, 3, params, 0, 10, 0, true, false, true);
+        try (Pdu pdu = PduCodec.decodePdu(write)) {
+            PduCodec.ObjectListReader paramsReader = PduCodec.OpenScanner.startReadParameters(pdu);
+            for (int i = 0; i < paramsReader.getNumParams(); i++) {
+                paramsReader.nextObject();
+            }
+            byte trailer = paramsReader.readTrailer();
+            assertTrue(isStreaming(trailer));
+            assertFalse(isDontKeepReadLocks(trailer));
+            assertFalse(isAllowFollowerReads(trailer));
+        }
+
+        String[] columns = {"a", "b"};
+        DataAccessor row = new MapDataAccessor(Collections.singletonMap("a", 1), columns);
+        TuplesList tuples = new TuplesList(columns, Collections.singletonList(row));
+
+        // first chunk, reply to OPENSCANNER
+        write = PduCodec.ResultSetChunk.write(1, tuples, false, 3, true, PduCodec.ResultSetChunk.FORMAT_ROWS);
+        try (Pdu pdu = PduCodec.decodePdu(write)) {
+            assertTrue(pdu.isResponse());
+            assertTrue(PduCodec.ResultSetChunk.readIsStreaming(pdu));
+            assertFalse(PduCodec.ResultSetChunk.readIsLast(pdu));
+        }
+        write = PduCodec.ResultSetChunk.write(1, tuples, false, 3);
+        try (Pdu pdu = PduCodec.decodePdu(write)) {
+            assertTrue(pdu.isResponse());
+            assertFalse(PduCodec.ResultSetChunk.readIsStreaming(pdu));
+        }
+
+        // pushed chunk
+        write = PduCodec.ResultSetChunk.writePush(2, 7, tuples, true, 3, PduCodec.ResultSetChunk.FORMAT_ROWS);
+        try (Pdu pdu = PduCodec.decodePdu(write)) {
+            assertTrue(pdu.isRequest());
+            assertEquals(Pdu.TYPE_RESULTSET_CHUNK, pdu.type);
+            assertEquals(2, pdu.messageId);
+            assertEquals(7, PduCodec.ResultSetChunk.readPushSequence(pdu));
+            assertTrue(PduCodec.ResultSetChunk.readIsLast(pdu));
+            assertEquals(3, PduCodec.ResultSetChunk.readTx(pdu));
+            RecordsBatch batch = PduCodec.ResultSetChunk.startReadingData(pdu);
+            assertArrayEquals(columns, batch.columnNames);
+            assertTrue(batch.hasNext());
+            DataAccessor next = batch.next();
+            assertEquals(1, next.get("a"));
+            assertEquals(null, next.get("b"));
+            assertFalse(batch.hasNext());
+        }
+
+        // pushed error
+        write = PduCodec.ErrorResponse.writePush(2, new Exception("boom"));
+        try (Pdu pdu = PduCodec.decodePdu(write)) {
+            assertTrue(pdu.isRequest());
+            assertEquals(Pdu.TYPE_ERROR, pdu.type);
+            assertEquals(2, pdu.messageId);
+            assertTrue(PduCodec.ErrorResponse.readError(pdu).contains("boom"));
+        }
+
+        write = PduCodec.ScannerCredits.write(5, 2, 1000);
+        try (Pdu pdu = PduCodec.decodePdu(write)) {
+            assertTrue(pdu.isRequest());
+            assertEquals(Pdu.TYPE_SCANNER_CREDITS, pdu.type);
+            assertEquals(2, PduCodec.ScannerCredits.readScannerId(pdu));
+            assertEquals(1000, PduCodec.ScannerCredits.readCredits(pdu));
+        }
+    }
+
     @Test
     public void testNormalizeParametersListWriteReadObject() {
         long now = System.currentTimeMillis();
@@ -190,4 +268,91 @@ public class PduCodecTest {
         }
 
     }
+
+    @Test
+    public void columnarResultSet() throws Exception {
+        List<Object> params = Collections.emptyList();
+        ByteBuf write = PduCodec.OpenScanner.write(1, "ts", "q", 2, 3, params, 0, 10, 0, true, false, false,
+                PduCodec.ResultSetChunk.FORMAT_COLUMNAR_COMPRESSED);
+        try (Pdu pdu = PduCodec.decodePdu(write)) {
+            PduCodec.ObjectListReader paramsReader = PduCodec.OpenScanner.startReadParameters(pdu);
+            assertEquals(PduCodec.ResultSetChunk.FORMAT_COLUMNAR_COMPRESSED, getResultSetFormat(paramsReader.readTrailer()));
+        }
+        write = PduCodec.OpenScanner.write(1, "ts", "q", 2, 3, params, 0, 10, 0, true, false, false,
+                PduCodec.ResultSetChunk.FORMAT_COLUMNAR);
+        try (Pdu pdu = PduCodec.decodePdu(write)) {
+            PduCodec.ObjectListReader paramsReader = PduCodec.OpenScanner.startReadParameters(pdu);
+            assertEquals(PduCodec.ResultSetChunk.FORMAT_COLUMNAR, getResultSetFormat(paramsReader.readTrailer()));
+        }
+        write = PduCodec.OpenScanner.write(1, "ts", "q", 2, 3, params, 0, 10, 0, true);
+        try (Pdu pdu = PduCodec.decodePdu(write)) {
+            PduCodec.ObjectListReader paramsReader = PduCodec.OpenScanner.startReadParameters(pdu);
+            assertEquals(PduCodec.ResultSetChunk.FORMAT_ROWS, getResultSetFormat(paramsReader.readTrailer()));
+        }
+
+        String[] columns = {"id", "n", "d", "b", "ts", "s", "category", "mixed", "empty", "missing"};
+        List<DataAccessor> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Map<String, Object> record = new HashMap<>();
+            record.put("id", (long) i);
+            record.put("n", i % 3 == 0 ? null : i);
+            record.put("d", i / 2d);
+            record.put("b", i % 2 == 0);
+            record.put("ts", new java.sql.Timestamp(1000L * i));
+            record.put("s", i % 5 == 0 ? null : "value" + i);
+            record.put("category", RawString.of("cat" + (i % 4)));
+            record.put("mixed", i % 2 == 0 ? "x" : new byte[]{(byte) i});
+            record.put("empty", null);
+            rows.add(new MapDataAccessor(record, columns));
+        }
+        TuplesList tuples = new TuplesList(columns, rows);
+
+        for (byte format : new byte[]{PduCodec.ResultSetChunk.FORMAT_COLUMNAR, PduCodec.ResultSetChunk.FORMAT_COLUMNAR_COMPRESSED}) {
+            write = PduCodec.ResultSetChunk.write(1, tuples, true, 3, false, format);
+            try (Pdu pdu = PduCodec.decodePdu(write)) {
+                assertTrue(PduCodec.ResultSetChunk.readIsColumnar(pdu));
+                assertTrue(PduCodec.ResultSetChunk.readIsLast(pdu));
+                RecordsBatch batch = PduCodec.ResultSetChunk.startReadingData(pdu);
+                assertArrayEquals(columns, batch.columnNames);
+                for (int i = 0; i < 1000; i++) {
+                    assertTrue(batch.hasNext());
+                    DataAccessor next = batch.next();
+                    assertEquals((long) i, next.get("id"));
+                    assertEquals(i % 3 == 0 ? null : i, next.get("n"));
+                    assertEquals(i / 2d, next.get("d"));
+                    assertEquals(i % 2 == 0, next.get("b"));
+                    assertEquals(new java.sql.Timestamp(1000L * i), next.get("ts"));
+                    assertEquals(i % 5 == 0 ? null : RawString.of("value" + i), next.get(5));
+                    assertEquals(RawString.of("cat" + (i % 4)), next.get("category"));
+                    if (i % 2 == 0) {
+                        assertEquals(RawString.of("x"), next.get("mixed"));
+                    } else {
+                        assertArrayEquals(new byte[]{(byte) i}, (byte[]) next.get("mixed"));
+                    }
+                    assertEquals(null, next.get("empty"));
+                    assertEquals(null, next.get("missing"));
+                }
+                assertFalse(batch.hasNext());
+            }
+        }
+
+        // compressed data is smaller
+        int uncompressedSize;
+        write = PduCodec.ResultSetChunk.write(1, tuples, true, 3, false, PduCodec.ResultSetChunk.FORMAT_COLUMNAR);
+        try (Pdu pdu = PduCodec.decodePdu(write)) {
+            uncompressedSize = pdu.buffer.readableBytes();
+        }
+        write = PduCodec.ResultSetChunk.write(1, tuples, true, 3, false, PduCodec.ResultSetChunk.FORMAT_COLUMNAR_COMPRESSED);
+        try (Pdu pdu = PduCodec.decodePdu(write)) {
+            assertTrue(pdu.buffer.readableBytes() < uncompressedSize);
+        }
+
+        // pushed chunk, the sequence number follows the columnar data
+        write = PduCodec.ResultSetChunk.writePush(2, 7, tuples, false, 3, PduCodec.ResultSetChunk.FORMAT_COLUMNAR_COMPRESSED);
+        try (Pdu pdu = PduCodec.decodePdu(write)) {
+            assertEquals(7, PduCodec.ResultSetChunk.readPushSequence(pdu));
+            RecordsBatch batch = PduCodec.ResultSetChunk.startReadingData(pdu);
+            assertEquals(1000, batch.numRecords);
+        }
+    }
 }
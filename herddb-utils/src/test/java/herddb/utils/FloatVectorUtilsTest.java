@@ -0,0 +1,73 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Test on {@link FloatVectorUtils} kernels
+ *
+ * @author enrico.olivelli
+ */
+public class FloatVectorUtilsTest {
+
+    @Test
+    public void testKernelsMatchScalarLoops() {
+        Random random = new Random(1234);
+        // cover lengths which are not multiple of the unroll factor or of the SIMD lanes
+        for (int length = 0; length <= 70; length++) {
+            float[] a = new float[length + 3];
+            float[] b = new float[length + 5];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = random.nextFloat() * 2 - 1;
+            }
+            for (int i = 0; i < b.length; i++) {
+                b[i] = random.nextFloat() * 2 - 1;
+            }
+            double dot = 0;
+            double squareDistance = 0;
+            double squareNorm = 0;
+            for (int i = 0; i < length; i++) {
+                dot += a[3 + i] * b[5 + i];
+                float diff = a[3 + i] - b[5 + i];
+                squareDistance += diff * diff;
+                squareNorm += a[3 + i] * a[3 + i];
+            }
+            assertEquals(dot, FloatVectorUtils.dotProduct(a, 3, b, 5, length), 1e-4);
+            assertEquals(squareDistance, FloatVectorUtils.squareDistance(a, 3, b, 5, length), 1e-4);
+            assertEquals(squareNorm, FloatVectorUtils.squareNorm(a, 3, length), 1e-4);
+        }
+    }
+
+    @Test
+    public void testDecodeFloatArrayIntoContiguousStorage() {
+        float[] vector = {1.5f, -2.25f, 0f, 3.125f};
+        Bytes serialized = Bytes.from_float_array(vector);
+        float[] storage = new float[10];
+        Bytes.to_float_array(serialized.getBuffer(), serialized.getOffset(), serialized.getLength(), storage, 3);
+        float[] expected = {0, 0, 0, 1.5f, -2.25f, 0f, 3.125f, 0, 0, 0};
+        assertArrayEquals(expected, storage, 0f);
+        assertArrayEquals(vector, serialized.to_float_array(), 0f);
+    }
+}
@@ -21,9 +21,13 @@
 package herddb.utils;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -245,6 +249,73 @@ public class LocalLockManagerTest {
 
     }
 
+    @Test
+    public void testAsyncFifoOrder() {
+        ILocalLockManager manager = makeLockManager();
+        List<String> granted = new ArrayList<>();
+        LockHandle first = manager.acquireWriteLockForKey(KEY);
+
+        CompletableFuture<LockHandle> writer = manager.acquireWriteLockForKeyAsync(KEY);
+        writer.thenRun(() -> granted.add("writer"));
+        CompletableFuture<LockHandle> reader1 = manager.acquireReadLockForKeyAsync(KEY);
+        reader1.thenRun(() -> granted.add("reader1"));
+        CompletableFuture<LockHandle> reader2 = manager.acquireReadLockForKeyAsync(KEY);
+        reader2.thenRun(() -> granted.add("reader2"));
+        assertFalse(writer.isDone());
+        assertFalse(reader1.isDone());
+        assertFalse(reader2.isDone());
+
+        // the current thread is not blocked, waiters are granted in order
+        manager.releaseLock(first);
+        assertEquals(Arrays.asList("writer"), granted);
+
+        // the readers are granted together
+        manager.releaseLock(writer.join());
+        assertEquals(Arrays.asList("writer", "reader1", "reader2"), granted);
+
+        // a reader cannot overtake a waiting writer
+        CompletableFuture<LockHandle> writer2 = manager.acquireWriteLockForKeyAsync(KEY);
+        CompletableFuture<LockHandle> reader3 = manager.acquireReadLockForKeyAsync(KEY);
+        manager.releaseLock(reader1.join());
+        assertFalse(writer2.isDone());
+        manager.releaseLock(reader2.join());
+        assertTrue(writer2.isDone());
+        assertFalse(reader3.isDone());
+        manager.releaseLock(writer2.join());
+        manager.releaseLock(reader3.join());
+        assertEquals(0, manager.getNumKeys());
+    }
+
+    @Test
+    public void testAsyncTimeout() throws Exception {
+        ILocalLockManager manager = makeLockManager();
+        LockHandle reader = manager.acquireReadLockForKey(KEY);
+        CompletableFuture<LockHandle> writer = manager.acquireWriteLockForKeyAsync(KEY);
+        CompletableFuture<LockHandle> reader2 = manager.acquireReadLockForKeyAsync(KEY);
+        assertFalse(reader2.isDone());
+
+        // when the writer expires the reader behind it is granted
+        try {
+            writer.get();
+        } catch (ExecutionException err) {
+            assertTrue(err.getCause() instanceof LockAcquireTimeoutException);
+        }
+        assertTrue(writer.isCompletedExceptionally());
+        manager.releaseLock(reader2.get(10, TimeUnit.SECONDS));
+        manager.releaseLock(reader);
+        assertEquals(0, manager.getNumKeys());
+    }
+
+    @Test
+    public void testClearFailsWaiters() {
+        ILocalLockManager manager = makeLockManager();
+        manager.acquireWriteLockForKey(KEY);
+        CompletableFuture<LockHandle> writer = manager.acquireWriteLockForKeyAsync(KEY);
+        manager.clear();
+        assertTrue(writer.isCompletedExceptionally());
+        assertEquals(0, manager.getNumKeys());
+    }
+
     private ILocalLockManager makeLockManager() {
         LocalLockManager res = new LocalLockManager();
         res.setWriteLockTimeout(1);
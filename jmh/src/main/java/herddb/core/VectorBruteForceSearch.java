@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2014, Oracle America, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of Oracle nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package herddb.core;
+
+import herddb.index.vector.BruteForceVectorIndex;
+import herddb.utils.Bytes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the brute-force top-K search over contiguous storage (SIMD
+ * kernels, parallel chunks) with a scalar loop over per-row float[] followed
+ * by a full sort, which was the previous implementation.
+ */
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class VectorBruteForceSearch {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"128", "768"})
+    public int dimension;
+
+    @Param({"10"})
+    public int topK;
+
+    BruteForceVectorIndex index;
+    List<float[]> rows;
+    float[] query;
+
+    @Setup
+    public void setup() throws Exception {
+        Random random = new Random(size);
+        index = new BruteForceVectorIndex(BruteForceVectorIndex.Similarity.COSINE);
+        rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            float[] vector = randomVector(random);
+            rows.add(vector);
+            index.add(Bytes.from_int(i), vector);
+        }
+        query = randomVector(random);
+    }
+
+    private float[] randomVector(Random random) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public List<Map.Entry<Bytes, Float>> contiguousTopK() throws Exception {
+        return index.search(query, topK, null);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public float[] scalarFullSort() throws Exception {
+        float[] scores = new float[rows.size()];
+        int i = 0;
+        for (float[] row : rows) {
+            float dot = 0;
+            float normA = 0;
+            float normB = 0;
+            for (int j = 0; j < row.length; j++) {
+                dot += query[j] * row[j];
+                normA += query[j] * query[j];
+                normB += row[j] * row[j];
+            }
+            float denom = (float) (Math.sqrt(normA) * Math.sqrt(normB));
+            scores[i++] = denom == 0 ? 0 : dot / denom;
+        }
+        Arrays.sort(scores);
+        return scores;
+    }
+}